@@ -27,6 +27,8 @@ import java.util.function.Predicate;
 
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.SPMMBuilder;
 import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
 import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
 import de.learnlib.spmm.model.defaultspmm.DefaultSPMM;
@@ -50,9 +52,35 @@ public class Generator {
                                                            SPMMInputAlphabet<I> inputAlphabet,
                                                            SPMMOutputAlphabet<O> outputAlphabet,
                                                            int procedureSize) {
+        // the default builder always creates default SPMMs
+        return (DefaultSPMM<Integer, I, O>) create(random,
+                                                   inputAlphabet,
+                                                   outputAlphabet,
+                                                   procedureSize,
+                                                   new DefaultSPMMBuilder<Integer, I, O>());
+    }
 
+    public static <I, J, O> SPMM<Integer, I, J, O> create(Random random,
+                                                          SPMMInputAlphabet<I> inputAlphabet,
+                                                          SPMMOutputAlphabet<O> outputAlphabet,
+                                                          int procedureSize,
+                                                          SPMMBuilder<Integer, I, J, O> builder) {
         final Map<I, MealyMachine<Integer, I, ?, O>> procedures =
                 Maps.newHashMapWithExpectedSize(inputAlphabet.getNumCalls());
+        final I initialProcedure = generateProcedures(random, inputAlphabet, outputAlphabet, procedureSize, procedures);
+
+        return builder.createSPMM(inputAlphabet,
+                                  inputAlphabet.getCallAlphabet(),
+                                  outputAlphabet,
+                                  initialProcedure,
+                                  procedures);
+    }
+
+    private static <I, O> I generateProcedures(Random random,
+                                               SPMMInputAlphabet<I> inputAlphabet,
+                                               SPMMOutputAlphabet<O> outputAlphabet,
+                                               int procedureSize,
+                                               Map<I, MealyMachine<Integer, I, ?, O>> procedures) {
 
         final int numCalls = inputAlphabet.getNumCalls();
         final int numInternals = inputAlphabet.getNumInternals();
@@ -103,11 +131,7 @@ public class Generator {
             // otherwise repeat the loop and generate a difference Mealy machine
         }
 
-        return new DefaultSPMMBuilder<Integer, I, O>().createSPMM(inputAlphabet,
-                                                                  inputAlphabet.getCallAlphabet(),
-                                                                  outputAlphabet,
-                                                                  initialProcedure,
-                                                                  procedures);
+        return initialProcedure;
     }
 
     private static <I, O> CompactMealy<I, O> generateProcedure(Random random,
@@ -0,0 +1,134 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.efficiency_tests;
+
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.SPMMBuilder;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMOutputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.defaultspmm.DefaultSPMMBuilder;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import net.automatalib.words.impl.Alphabets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Measures the simulation cost per symbol of a recursive procedure at different recursion depths. The simulated word
+ * first descends to the given depth and then performs many call-return pairs at that depth, so with a shared call
+ * stack the cost per symbol should not depend on the depth.
+ */
+public class RecursionDepthBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecursionDepthBenchmark.class);
+
+    private static final int[] RECURSION_DEPTHS = {10, 100, 1000};
+    private static final int CALL_RETURN_PAIRS = 100_000;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 10;
+
+    private static final Integer CALL = 0;
+    private static final Integer INTERNAL = 1;
+    private static final Integer RETURN = 2;
+
+    private static final Integer INTERNAL_OUTPUT = 3;
+    private static final Integer PROCEDURE_START = 4;
+    private static final Integer PROCEDURE_END = 5;
+    private static final Integer ERROR = 6;
+    private static final Integer POST_RETURN = 7;
+
+    public static void main(String[] args) {
+        run(createSystem(new DefaultSPMMBuilder<>()));
+    }
+
+    static <J> SPMM<Integer, Integer, J, Integer> createSystem(SPMMBuilder<Integer, Integer, J, Integer> builder) {
+        final SPMMInputAlphabet<Integer> inputAlphabet = new DefaultSPMMInputAlphabet<>(
+                Alphabets.fromArray(INTERNAL), Alphabets.fromArray(CALL), RETURN);
+        final SPMMOutputAlphabet<Integer> outputAlphabet = new DefaultSPMMOutputAlphabet<>(
+                Alphabets.fromArray(INTERNAL_OUTPUT), PROCEDURE_START, PROCEDURE_END, ERROR, POST_RETURN);
+
+        return builder.createSPMM(inputAlphabet,
+                inputAlphabet.getCallAlphabet(),
+                outputAlphabet,
+                CALL,
+                createRecursiveProcedure(inputAlphabet, outputAlphabet));
+    }
+
+    public static void run(SPMM<?, Integer, ?, ?> spmm) {
+        for (int depth : RECURSION_DEPTHS) {
+            final Word<Integer> input = buildInput(depth);
+
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                spmm.computeOutput(input);
+            }
+
+            final long start = System.nanoTime();
+            for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+                spmm.computeOutput(input);
+            }
+            final long elapsed = System.nanoTime() - start;
+
+            LOGGER.info("Recursion depth {}: {} ns per symbol", depth,
+                    elapsed / ((double) MEASUREMENT_ITERATIONS * input.size()));
+        }
+    }
+
+    private static Map<Integer, MealyMachine<Integer, Integer, ?, Integer>> createRecursiveProcedure(
+            SPMMInputAlphabet<Integer> inputAlphabet,
+            SPMMOutputAlphabet<Integer> outputAlphabet) {
+
+        final CompactMealy<Integer, Integer> procedure = new CompactMealy<>(inputAlphabet, 2);
+        final Integer init = procedure.addInitialState();
+        final Integer left = procedure.addState();
+
+        procedure.addTransition(init, INTERNAL, init, INTERNAL_OUTPUT);
+        procedure.addTransition(init, CALL, init, outputAlphabet.getProcedureStart());
+        procedure.addTransition(init, RETURN, left, outputAlphabet.getProcedureEnd());
+
+        for (final Integer i : inputAlphabet) {
+            procedure.addTransition(left, i, left, outputAlphabet.getPostReturn());
+        }
+
+        return Collections.singletonMap(CALL, procedure);
+    }
+
+    static Word<Integer> buildInput(int depth) {
+        final WordBuilder<Integer> wb = new WordBuilder<>(2 * depth + 3 * CALL_RETURN_PAIRS + 2);
+
+        // initial call
+        wb.append(CALL);
+
+        for (int i = 0; i < depth; i++) {
+            wb.append(CALL);
+        }
+        for (int i = 0; i < CALL_RETURN_PAIRS; i++) {
+            wb.append(CALL);
+            wb.append(INTERNAL);
+            wb.append(RETURN);
+        }
+        for (int i = 0; i <= depth; i++) {
+            wb.append(RETURN);
+        }
+
+        return wb.toWord();
+    }
+}
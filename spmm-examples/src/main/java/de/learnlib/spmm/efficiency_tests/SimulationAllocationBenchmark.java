@@ -0,0 +1,106 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.efficiency_tests;
+
+import de.learnlib.spmm.model.IntSPMM;
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.SPMMCursor;
+import de.learnlib.spmm.model.compactspmm.CompactSPMMBuilder;
+import de.learnlib.spmm.model.compactspmm.CompiledSPMMBuilder;
+import de.learnlib.spmm.model.defaultspmm.DefaultSPMMBuilder;
+import net.automatalib.words.Word;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the heap allocation per simulated symbol of {@link SPMMCursor}s in steady state. The allocated bytes are
+ * taken from the per-thread allocation counter of the JVM, so this benchmark requires a HotSpot based JVM.
+ */
+public class SimulationAllocationBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SimulationAllocationBenchmark.class);
+
+    private static final int RECURSION_DEPTH = 100;
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int MEASUREMENT_ITERATIONS = 20;
+
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) {
+        final Word<Integer> input = RecursionDepthBenchmark.buildInput(RECURSION_DEPTH);
+
+        run("DefaultSPMM", RecursionDepthBenchmark.createSystem(new DefaultSPMMBuilder<>()), input);
+
+        final SPMM<Integer, Integer, ?, Integer> compactSPMM =
+                RecursionDepthBenchmark.createSystem(new CompactSPMMBuilder<>());
+        run("CompactSPMM", compactSPMM, input);
+        runOnIds("CompactSPMM on ids", (IntSPMM<Integer, Integer>) compactSPMM, input);
+
+        final SPMM<Integer, Integer, ?, Integer> compiledSPMM =
+                RecursionDepthBenchmark.createSystem(new CompiledSPMMBuilder<>());
+        run("CompiledSPMM", compiledSPMM, input);
+        runOnIds("CompiledSPMM on ids", (IntSPMM<Integer, Integer>) compiledSPMM, input);
+    }
+
+    public static <I> void run(String name, SPMM<?, I, ?, ?> spmm, Word<I> input) {
+        final SPMMCursor<I, ?> cursor = spmm.cursor();
+        measure(name, () -> replay(cursor, input), input.size());
+    }
+
+    public static <I> void runOnIds(String name, IntSPMM<I, ?> spmm, Word<I> input) {
+        final int[] ids = new int[input.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = spmm.getInputAlphabet().getSymbolIndex(input.getSymbol(i));
+        }
+        final IntSPMM.IntCursor cursor = spmm.intCursor();
+        measure(name, () -> replay(cursor, ids), ids.length);
+    }
+
+    private static void measure(String name, Runnable replay, int length) {
+        final com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            replay.run();
+        }
+
+        final long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            replay.run();
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        final double symbols = (double) MEASUREMENT_ITERATIONS * length;
+        LOGGER.info("{}: {} bytes per symbol, {} ns per symbol", name, allocated / symbols, elapsed / symbols);
+    }
+
+    private static <I> void replay(SPMMCursor<I, ?> cursor, Word<I> input) {
+        cursor.reset();
+        for (int i = 0; i < input.size(); i++) {
+            cursor.step(input.getSymbol(i));
+        }
+    }
+
+    private static void replay(IntSPMM.IntCursor cursor, int[] input) {
+        cursor.reset();
+        for (int symbol : input) {
+            cursor.step(symbol);
+        }
+    }
+}
@@ -21,6 +21,8 @@ import de.learnlib.spmm.evaluation.LearningStatistics;
 import de.learnlib.spmm.model.SPMM;
 import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
 import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.compactspmm.CompactSPMMBuilder;
+import de.learnlib.spmm.model.compactspmm.CompiledSPMMBuilder;
 import de.learnlib.spmm.model.componenets.State;
 import net.automatalib.automata.transout.impl.MealyTransition;
 import org.slf4j.Logger;
@@ -47,8 +49,11 @@ public class SystemBenchmark {
             Random random = new Random(89 + i * 8);
             LOGGER.info("current seed is " + (89 + i * 8));
 
+            // the system under learning is compiled once and simulated on ids. All calls are activated on creation,
+            // so it does not change anymore and can be shared by the simulating threads
+            final CompactSPMMBuilder<I, O> builder = new CompiledSPMMBuilder<>();
             SPMM<Integer, I, MealyTransition<State<I, Integer>, O>, O> spmm
-                    = Generator.create(random, inputAlphabet, outputAlphabet, procedureSize);
+                    = Generator.create(random, inputAlphabet, outputAlphabet, procedureSize, builder);
 
             singleSystemsResults.add(BenchmarkUtil.runBenchmarkForOneSPMM(spmm, SimpleATProvider::new, 1));
             // singleSystemsResults.get(singleSystemsResults.size() - 1));
@@ -0,0 +1,110 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.efficiency_tests;
+
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.SPMMCursor;
+import de.learnlib.spmm.model.compactspmm.CompactSPMMBuilder;
+import de.learnlib.spmm.monitor.TraceMonitor;
+import de.learnlib.spmm.monitor.TraceReport;
+import de.learnlib.spmm.monitor.TraceWriter;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Measures the throughput of a {@link TraceMonitor} in symbols per second per core. The traces are random walks
+ * through the recursive system of {@link RecursionDepthBenchmark}, a few of them with a falsified output.
+ */
+public class TraceMonitorBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TraceMonitorBenchmark.class);
+
+    private static final int NUM_TRACES = 20_000;
+    private static final int MAX_TRACE_LENGTH = 1000;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+
+    private static final Integer CALL = 0;
+    private static final Integer INTERNAL = 1;
+    private static final Integer RETURN = 2;
+
+    public static void main(String[] args) throws IOException {
+        final SPMM<Integer, Integer, ?, Integer> spmm = RecursionDepthBenchmark.createSystem(new CompactSPMMBuilder<>());
+        final Path file = Files.createTempFile("traces", ".bin");
+        try {
+            writeTraces(spmm, file, new Random(42));
+            LOGGER.info("Trace file has {} MiB", Files.size(file) >> 20);
+
+            final TraceMonitor<Integer, Integer> monitor = new TraceMonitor<>(spmm);
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                monitor.check(file);
+            }
+            for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+                final TraceReport report = monitor.check(file);
+                LOGGER.info("{}", report);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void writeTraces(SPMM<?, Integer, ?, Integer> spmm, Path file, Random random) throws IOException {
+        final SPMMCursor<Integer, Integer> cursor = spmm.cursor();
+        try (TraceWriter<Integer, Integer> writer =
+                     new TraceWriter<>(file, spmm.getInputAlphabet(), spmm.getOutputAlphabet())) {
+            for (int t = 0; t < NUM_TRACES; t++) {
+                final Word<Integer> input = randomWalk(random, 1 + random.nextInt(MAX_TRACE_LENGTH));
+                final WordBuilder<Integer> output = new WordBuilder<>(input.size());
+                cursor.reset();
+                for (Integer symbol : input) {
+                    output.append(cursor.step(symbol));
+                }
+                if (random.nextInt(100) == 0) {
+                    // falsify the last output
+                    output.truncate(output.size() - 1);
+                    output.append(spmm.getOutputAlphabet().getError());
+                }
+                writer.write(input, output.toWord());
+            }
+        }
+    }
+
+    private static Word<Integer> randomWalk(Random random, int length) {
+        final WordBuilder<Integer> wb = new WordBuilder<>(length);
+        // initial call
+        wb.append(CALL);
+        int depth = 0;
+        for (int i = 1; i < length; i++) {
+            final int choice = random.nextInt(3);
+            if (choice == 0) {
+                wb.append(CALL);
+                depth++;
+            } else if (choice == 1 && depth > 0) {
+                wb.append(RETURN);
+                depth--;
+            } else {
+                wb.append(INTERNAL);
+            }
+        }
+        return wb.toWord();
+    }
+}
@@ -18,12 +18,13 @@ import de.learnlib.api.AccessSequenceTransformer;
 import de.learnlib.api.algorithm.LearningAlgorithm;
 import de.learnlib.api.algorithm.feature.SupportsGrowingAlphabet;
 import de.learnlib.api.oracle.MembershipOracle;
-import de.learnlib.oracle.membership.SimulatorOracle;
 import de.learnlib.spmm.aal.ATProvider.ATProvider;
 import de.learnlib.spmm.aal.learner.LocalRefinementCounter;
 import de.learnlib.spmm.aal.learner.SPMMLearner;
+import de.learnlib.spmm.aal.learner.refiner.CounterexampleAnalysis;
 import de.learnlib.spmm.equivalenceoracle.SPMMEqOr;
 import de.learnlib.spmm.equivalenceoracle.SPMMEquivalenceOracle;
+import de.learnlib.spmm.membershiporacle.SPMMSimulatorOracle;
 import de.learnlib.spmm.model.SPMM;
 import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
 import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
@@ -33,6 +34,7 @@ import net.automatalib.automata.transout.impl.MealyTransition;
 import net.automatalib.words.Alphabet;
 import net.automatalib.words.Word;
 
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
 
 public class Evaluation {
@@ -49,7 +51,23 @@ public class Evaluation {
             final SPMM<S, I, MealyTransition<State<I, S>, O>, O> sul,
             final BiFunction<Alphabet<I>, MembershipOracle<I, Word<O>>, L> learnerProvider,
             final BiFunction<SPMMInputAlphabet<I>, SPMMOutputAlphabet<O>, ATProvider<I, O>> atrProvider) {
-        final MembershipOracle<I, Word<O>> mqOracle = new SimulatorOracle<>(sul);
+        return createSPMMLearner(sul, learnerProvider, atrProvider, CounterexampleAnalysis.FIRST_MISMATCH);
+    }
+
+    public static <
+            S,
+            I,
+            O,
+            L extends LearningAlgorithm.MealyLearner<I, O>
+                    & SupportsGrowingAlphabet<I>
+                    & AccessSequenceTransformer<I>
+                    & LocalRefinementCounter>
+    SPMMLearner<S, I, MealyTransition<State<I, S>, O>, O, L> createSPMMLearner(
+            final SPMM<S, I, MealyTransition<State<I, S>, O>, O> sul,
+            final BiFunction<Alphabet<I>, MembershipOracle<I, Word<O>>, L> learnerProvider,
+            final BiFunction<SPMMInputAlphabet<I>, SPMMOutputAlphabet<O>, ATProvider<I, O>> atrProvider,
+            final CounterexampleAnalysis analysis) {
+        final MembershipOracle<I, Word<O>> mqOracle = SPMMSimulatorOracle.create(sul, ForkJoinPool.commonPool());
         final SPMMEquivalenceOracle<S, I, O> eqOracle = new SPMMEqOr<>(sul);
 
         final SPMMLearner<S, I, MealyTransition<State<I, S>, O>, O, L> learner =
@@ -59,7 +77,8 @@ public class Evaluation {
                         sul.getOutputAlphabet(),
                         learnerProvider,
                         atrProvider.apply(sul.getInputAlphabet(), sul.getOutputAlphabet()),
-                        new DefaultSPMMBuilder<>());
+                        new DefaultSPMMBuilder<>(),
+                        analysis);
 
         return learner;
 
@@ -20,6 +20,7 @@ import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
 import de.learnlib.spmm.model.alphabet.DefaultSPMMOutputAlphabet;
 import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
 import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.componenets.PersistentStack;
 import de.learnlib.spmm.model.componenets.State;
 import de.learnlib.spmm.model.defaultspmm.DefaultSPMMBuilder;
 import net.automatalib.automata.transout.impl.FastMealy;
@@ -235,8 +236,8 @@ public final class PalindromeExample {
         // read "P'"
         assertEquals(OutputSymbol.open, spmm.getTransition(start, InputSymbol.P).getOutput());
 
-        final Stack<State<InputSymbol, FastMealyState<OutputSymbol>>> stack = new Stack<>();
-        stack.add(start);
+        final PersistentStack<State<InputSymbol, FastMealyState<OutputSymbol>>> stack =
+                PersistentStack.<State<InputSymbol, FastMealyState<OutputSymbol>>>empty().push(start);
 
         State<InputSymbol, FastMealyState<OutputSymbol>> pInit = new State<InputSymbol, FastMealyState<OutputSymbol>>(
                 InputSymbol.P, spmm.getProcedures().get(InputSymbol.P).getInitialState(), stack);
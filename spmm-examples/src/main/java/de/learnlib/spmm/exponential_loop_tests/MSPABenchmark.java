@@ -39,6 +39,7 @@ import de.learnlib.spmm.aal.adapter.RivestSchapireAdapter;
 import de.learnlib.spmm.aal.adapter.TTTAdapter;
 import de.learnlib.spmm.aal.learner.LocalRefinementCounter;
 import de.learnlib.spmm.aal.learner.SPMMLearner;
+import de.learnlib.spmm.aal.learner.refiner.CounterexampleAnalysis;
 import de.learnlib.spmm.equivalenceoracle.SPMMEquivalenceOracle;
 import de.learnlib.spmm.evaluation.BenchmarkUtil;
 import de.learnlib.spmm.evaluation.LearningStatistics;
@@ -63,7 +64,14 @@ public class MSPABenchmark {
 
     private static final int[] LOOP_SIZE = {3, 10, 30};
 
+    /**
+     * @param args optionally the {@link CounterexampleAnalysis} the SPMM learners use, the first mismatch by default
+     */
     public static void main(String[] args) {
+        final CounterexampleAnalysis analysis =
+                args.length > 0 ? CounterexampleAnalysis.valueOf(args[0]) : CounterexampleAnalysis.FIRST_MISMATCH;
+        LOGGER.info("Counterexample analysis: " + analysis);
+
         for (int i = 0; i < LOOP_SIZE.length; i++) {
             LOGGER.info("Loop size: " + LOOP_SIZE[i]);
 
@@ -72,11 +80,11 @@ public class MSPABenchmark {
 
             LOGGER.info("Sync");
             runMSPABenchmark(sync);
-            runSPMMBenchmark(sync);
+            runSPMMBenchmark(sync, analysis);
 
             LOGGER.info("Async");
             runMSPABenchmark(async);
-            runSPMMBenchmark(async);
+            runSPMMBenchmark(async, analysis);
         }
     }
 
@@ -84,7 +92,7 @@ public class MSPABenchmark {
         Runner.runLearners(suite, Benchmark.SUCCESS_OUTPUT, Benchmark.ERROR_OUTPUT);
     }
 
-    private static void runSPMMBenchmark(BenchmarkSuite<Character, String> suite) {
+    private static void runSPMMBenchmark(BenchmarkSuite<Character, String> suite, CounterexampleAnalysis analysis) {
         final SPMMInputAlphabet<Character> inputAlphabet = new DefaultSPMMInputAlphabet<>(Benchmark.INTERNAL_ALPHABET,
                 Benchmark.CALL_ALPHABET,
                 Benchmark.RETURN_SYMBOL);
@@ -94,18 +102,20 @@ public class MSPABenchmark {
                 Benchmark.ERROR_OUTPUT,
                 "left");
 
-        runBenchmarkSuite(suite, inputAlphabet, outputAlphabet, 1);
+        runBenchmarkSuite(suite, inputAlphabet, outputAlphabet, analysis, 1);
     }
 
     private static <I, O> void runBenchmarkSuite(BenchmarkSuite<I, O> suite,
                                                  SPMMInputAlphabet<I> inputAlphabet,
                                                  SPMMOutputAlphabet<O> outputAlphabet,
+                                                 CounterexampleAnalysis analysis,
                                                  int numOfRuns) {
 
         LOGGER.info("Begin benchmark");
 
         final List<LearningStatistics> lstarResult =
-                BenchmarkUtil.buildAndRunTest(createLearner(suite, inputAlphabet, outputAlphabet, LStarAdapter::new),
+                BenchmarkUtil.buildAndRunTest(
+                        createLearner(suite, inputAlphabet, outputAlphabet, LStarAdapter::new, analysis),
                         null,
                         numOfRuns);
         LOGGER.info("SPMM [L*]");
@@ -114,7 +124,8 @@ public class MSPABenchmark {
         final List<LearningStatistics> rsResult = BenchmarkUtil.buildAndRunTest(createLearner(suite,
                 inputAlphabet,
                 outputAlphabet,
-                RivestSchapireAdapter::new),
+                RivestSchapireAdapter::new,
+                analysis),
                 null,
                 numOfRuns);
         LOGGER.info("SPMM [RS]");
@@ -123,7 +134,8 @@ public class MSPABenchmark {
         final List<LearningStatistics> kvResult = BenchmarkUtil.buildAndRunTest(createLearner(suite,
                 inputAlphabet,
                 outputAlphabet,
-                KearnsVaziraniAdapter::new),
+                KearnsVaziraniAdapter::new,
+                analysis),
                 null,
                 numOfRuns);
         LOGGER.info("SPMM [KV]");
@@ -132,14 +144,16 @@ public class MSPABenchmark {
         final List<LearningStatistics> dtResult = BenchmarkUtil.buildAndRunTest(createLearner(suite,
                 inputAlphabet,
                 outputAlphabet,
-                DiscriminationTreeAdapter::new),
+                DiscriminationTreeAdapter::new,
+                analysis),
                 null,
                 numOfRuns);
         LOGGER.info("SPMM [DT]");
         BenchmarkUtil.printStatictics(BenchmarkUtil.buildAverageStatictics(dtResult));
 
         final List<LearningStatistics> tttResult =
-                BenchmarkUtil.buildAndRunTest(createLearner(suite, inputAlphabet, outputAlphabet, TTTAdapter::new),
+                BenchmarkUtil.buildAndRunTest(
+                        createLearner(suite, inputAlphabet, outputAlphabet, TTTAdapter::new, analysis),
                         null,
                         numOfRuns);
         LOGGER.info("SPMM [TTT]");
@@ -152,7 +166,8 @@ public class MSPABenchmark {
             BenchmarkSuite<I, O> suite,
             SPMMInputAlphabet<I> inputAlphabet,
             SPMMOutputAlphabet<O> outputAlphabet,
-            BiFunction<Alphabet<I>, MembershipOracle<I, Word<O>>, L> learnerProvider) {
+            BiFunction<Alphabet<I>, MembershipOracle<I, Word<O>>, L> learnerProvider,
+            CounterexampleAnalysis analysis) {
 
         final MembershipOracle<I, Word<O>> mqo = suite.getMembershipOracle();
         final EquivalenceOracle<SuffixOutput<I, Word<O>>, I, Word<O>> eqo = suite.getEquivalenceOracle();
@@ -173,7 +188,8 @@ public class MSPABenchmark {
                 outputAlphabet,
                 learnerProvider,
                 new SimpleATProvider<>(inputAlphabet, outputAlphabet),
-                new DefaultSPMMBuilder<>());
+                new DefaultSPMMBuilder<>(),
+                analysis);
     }
 
 }
@@ -18,12 +18,13 @@ import de.learnlib.api.AccessSequenceTransformer;
 import de.learnlib.api.algorithm.LearningAlgorithm;
 import de.learnlib.api.algorithm.feature.SupportsGrowingAlphabet;
 import de.learnlib.api.oracle.MembershipOracle;
-import de.learnlib.oracle.membership.SimulatorOracle;
 import de.learnlib.spmm.aal.ATProvider.ATProvider;
 import de.learnlib.spmm.aal.learner.LocalRefinementCounter;
 import de.learnlib.spmm.aal.learner.SPMMLearner;
+import de.learnlib.spmm.aal.learner.refiner.CounterexampleAnalysis;
 import de.learnlib.spmm.equivalenceoracle.SPMMEqOr;
 import de.learnlib.spmm.equivalenceoracle.SPMMEquivalenceOracle;
+import de.learnlib.spmm.membershiporacle.SPMMSimulatorOracle;
 import de.learnlib.spmm.model.SPMM;
 import de.learnlib.spmm.model.componenets.State;
 import de.learnlib.spmm.model.defaultspmm.DefaultSPMMBuilder;
@@ -46,7 +47,23 @@ public class Learning {
             final SPMM<S, I, MealyTransition<State<I, S>, O>, O> sul,
             final BiFunction<Alphabet<I>, MembershipOracle<I, Word<O>>, L> learnerProvider,
             final ATProvider<I, O> atrProvider) {
-        final MembershipOracle<I, Word<O>> mqOracle = new SimulatorOracle<>(sul);
+        return learnSystemUsingLearnerProvider(sul, learnerProvider, atrProvider,
+                CounterexampleAnalysis.FIRST_MISMATCH);
+    }
+
+    public static <S,
+            I,
+            O,
+            L extends LearningAlgorithm.MealyLearner<I, O>
+                    & SupportsGrowingAlphabet<I>
+                    & AccessSequenceTransformer<I>
+                    & LocalRefinementCounter>
+    SPMM<S, I, MealyTransition<State<I, S>, O>, O> learnSystemUsingLearnerProvider(
+            final SPMM<S, I, MealyTransition<State<I, S>, O>, O> sul,
+            final BiFunction<Alphabet<I>, MembershipOracle<I, Word<O>>, L> learnerProvider,
+            final ATProvider<I, O> atrProvider,
+            final CounterexampleAnalysis analysis) {
+        final MembershipOracle<I, Word<O>> mqOracle = SPMMSimulatorOracle.create(sul, null);
         final SPMMEquivalenceOracle<S, I, O> eqOracle = new SPMMEqOr<>(sul);
 
         final SPMMLearner<S, I, MealyTransition<State<I, S>, O>, O, L> learner =
@@ -56,7 +73,8 @@ public class Learning {
                         sul.getOutputAlphabet(),
                         learnerProvider,
                         atrProvider,
-                        new DefaultSPMMBuilder<>());
+                        new DefaultSPMMBuilder<>(),
+                        analysis);
 
         return learner.computeLearnedModel();
 
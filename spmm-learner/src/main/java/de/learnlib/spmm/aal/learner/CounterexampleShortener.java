@@ -0,0 +1,194 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.aal.learner;
+
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.spmm.aal.ATProvider.ATProvider;
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.componenets.State;
+import de.learnlib.spmm.util.mapping.IndexFinder;
+import de.learnlib.util.MQUtil;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shortens global counterexamples before they are analyzed, so that fewer and shorter queries are needed for the
+ * local refinements.
+ * <p>
+ * The counterexample is first cut after its first differing output, which needs no query as outputs are prefix
+ * closed. Then two reductions are tried: every completed call of the system is replaced by the currently known
+ * terminating sequence of the called procedure if that is shorter, and every loop over configurations of the
+ * hypothesis is cut out. Both reductions and their combination are confirmed in one batch of membership queries, the
+ * shortest one that is still a counterexample is returned.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+class CounterexampleShortener<I, O> {
+
+    private final SPMMInputAlphabet<I> inputAlphabet;
+    private final SPMMOutputAlphabet<O> outputAlphabet;
+    private final MembershipOracle<I, Word<O>> oracle;
+    private final ATProvider<I, O> atProvider;
+
+    CounterexampleShortener(SPMMInputAlphabet<I> inputAlphabet,
+                            SPMMOutputAlphabet<O> outputAlphabet,
+                            MembershipOracle<I, Word<O>> oracle,
+                            ATProvider<I, O> atProvider) {
+        this.inputAlphabet = inputAlphabet;
+        this.outputAlphabet = outputAlphabet;
+        this.oracle = oracle;
+        this.atProvider = atProvider;
+    }
+
+    /**
+     * Returns a counterexample for the hypothesis that is not longer than the given one. Queries that are no
+     * counterexample, e.g. because they only contain new access or terminating sequences, are returned as they are.
+     */
+    @Nonnull
+    <S> DefaultQuery<I, Word<O>> shorten(@Nonnull SPMM<S, I, ?, O> hypothesis,
+                                         @Nonnull DefaultQuery<I, Word<O>> counterexample) {
+        final Word<I> input = counterexample.getInput();
+        final Word<O> output = counterexample.getOutput();
+        final Word<O> hypothesisOutput = hypothesis.computeOutput(input);
+
+        int mismatch = -1;
+        for (int i = 0; i < input.size() && mismatch == -1; i++) {
+            if (!output.getSymbol(i).equals(hypothesisOutput.getSymbol(i))) {
+                mismatch = i;
+            }
+        }
+        if (mismatch == -1) {
+            return counterexample;
+        }
+
+        final DefaultQuery<I, Word<O>> truncated =
+                new DefaultQuery<>(input.prefix(mismatch + 1), output.prefix(mismatch + 1));
+
+        final Word<I> replaced = replaceCalls(truncated.getInput(), truncated.getOutput());
+        final List<Word<I>> candidates = new ArrayList<>(3);
+        candidates.add(replaced);
+        candidates.add(cutLoops(hypothesis, replaced));
+        candidates.add(cutLoops(hypothesis, truncated.getInput()));
+
+        final List<DefaultQuery<I, Word<O>>> queries = new ArrayList<>(candidates.size());
+        for (final Word<I> candidate : candidates) {
+            if (candidate.length() < truncated.getInput().length() && !containsInput(queries, candidate)) {
+                queries.add(new DefaultQuery<>(candidate));
+            }
+        }
+        if (queries.isEmpty()) {
+            return truncated;
+        }
+        oracle.processQueries(queries);
+
+        DefaultQuery<I, Word<O>> shortest = truncated;
+        for (final DefaultQuery<I, Word<O>> query : queries) {
+            if (query.getInput().length() < shortest.getInput().length()
+                    && MQUtil.isCounterexample(query, hypothesis)) {
+                shortest = query;
+            }
+        }
+        return shortest;
+    }
+
+    /**
+     * Replaces the body of every outermost call that returns before the last symbol by the terminating sequence of
+     * the called procedure, if that is shorter.
+     */
+    private Word<I> replaceCalls(Word<I> input, Word<O> output) {
+        final int last = input.size() - 1;
+        final WordBuilder<I> wb = new WordBuilder<>(input.size());
+
+        int i = 0;
+        while (i < last) {
+            final I symbol = input.getSymbol(i);
+            wb.append(symbol);
+
+            if (inputAlphabet.isCallSymbol(symbol) && outputAlphabet.isProcedureStartSymbol(output.getSymbol(i))) {
+                final int returnIdx = IndexFinder.findReturnIndexByCallIndex(inputAlphabet, outputAlphabet,
+                        input, output, i);
+                final Word<I> terminatingSequence = atProvider.getTerminatingSequence(symbol);
+                if (returnIdx > -1 && returnIdx < last && terminatingSequence != null
+                        && terminatingSequence.length() < returnIdx - i) {
+                    wb.append(terminatingSequence);
+                    i = returnIdx + 1;
+                    continue;
+                }
+            }
+            i++;
+        }
+
+        wb.append(input.getSymbol(last));
+        return wb.toWord();
+    }
+
+    /**
+     * Cuts out every part of the input before the last symbol that leads the hypothesis from a configuration back
+     * to the same configuration.
+     */
+    private <S> Word<I> cutLoops(SPMM<S, I, ?, O> hypothesis, Word<I> input) {
+        final int last = input.size() - 1;
+        final List<I> kept = new ArrayList<>(input.size());
+        final List<State<I, S>> reached = new ArrayList<>(input.size());
+        // the length of the kept input at which each configuration was reached
+        final Map<State<I, S>, Integer> positions = new HashMap<>();
+
+        State<I, S> current = hypothesis.getInitialState();
+        reached.add(current);
+        positions.put(current, 0);
+
+        for (int i = 0; i < last; i++) {
+            final I symbol = input.getSymbol(i);
+            current = hypothesis.getSuccessor(current, symbol);
+            if (current == null) {
+                return input;
+            }
+
+            final Integer position = positions.get(current);
+            if (position == null) {
+                kept.add(symbol);
+                reached.add(current);
+                positions.put(current, kept.size());
+            } else {
+                for (int p = kept.size(); p > position; p--) {
+                    positions.remove(reached.remove(p));
+                    kept.remove(p - 1);
+                }
+            }
+        }
+
+        kept.add(input.getSymbol(last));
+        return Word.fromList(kept);
+    }
+
+    private static <I, D> boolean containsInput(List<DefaultQuery<I, D>> queries, Word<I> input) {
+        for (final DefaultQuery<I, D> query : queries) {
+            if (query.getInput().equals(input)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -21,6 +21,7 @@ import de.learnlib.api.oracle.MembershipOracle;
 import de.learnlib.api.query.DefaultQuery;
 import de.learnlib.filter.statistic.oracle.JointCounterOracle;
 import de.learnlib.spmm.aal.ATProvider.ATProvider;
+import de.learnlib.spmm.aal.learner.refiner.CounterexampleAnalysis;
 import de.learnlib.spmm.aal.learner.refiner.SPMMRefiner;
 import de.learnlib.spmm.equivalenceoracle.SPMMEquivalenceOracle;
 import de.learnlib.spmm.model.SPMM;
@@ -34,6 +35,8 @@ import net.automatalib.words.Alphabet;
 import net.automatalib.words.Word;
 
 import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
 
 /**
@@ -57,6 +60,7 @@ public class SPMMLearner<S,
     private final JointCounterOracle<I, Word<O>> mqOracle;
     private final SPMMEquivalenceOracle<S, I, O> eqOracle;
     private final SPMMRefiner<S, I, J, O, L> refiner;
+    private final CounterexampleShortener<I, O> shortener;
     private final SPMMBuilder<S, I, J, O> builder;
     private final SPMMInputAlphabet<I> inputAlphabet;
     private final SPMMOutputAlphabet<O> outputAlphabet;
@@ -68,12 +72,40 @@ public class SPMMLearner<S,
                        @Nonnull BiFunction<Alphabet<I>, MembershipOracle<I, Word<O>>, L> learnerProvider,
                        @Nonnull ATProvider<I, O> atrProvider,
                        @Nonnull SPMMBuilder<S, I, J, O> builder) {
+        this(mqOracle, eqOracle, inputAlphabet, outputAlphabet, learnerProvider, atrProvider, builder,
+                CounterexampleAnalysis.FIRST_MISMATCH);
+    }
+
+    public SPMMLearner(@Nonnull MembershipOracle<I, Word<O>> mqOracle,
+                       @Nonnull SPMMEquivalenceOracle<S, I, O> eqOracle,
+                       @Nonnull SPMMInputAlphabet<I> inputAlphabet,
+                       @Nonnull SPMMOutputAlphabet<O> outputAlphabet,
+                       @Nonnull BiFunction<Alphabet<I>, MembershipOracle<I, Word<O>>, L> learnerProvider,
+                       @Nonnull ATProvider<I, O> atrProvider,
+                       @Nonnull SPMMBuilder<S, I, J, O> builder,
+                       @Nonnull CounterexampleAnalysis analysis) {
+        this(mqOracle, eqOracle, inputAlphabet, outputAlphabet, learnerProvider, atrProvider, builder, analysis,
+                ForkJoinPool.commonPool());
+    }
+
+    public SPMMLearner(@Nonnull MembershipOracle<I, Word<O>> mqOracle,
+                       @Nonnull SPMMEquivalenceOracle<S, I, O> eqOracle,
+                       @Nonnull SPMMInputAlphabet<I> inputAlphabet,
+                       @Nonnull SPMMOutputAlphabet<O> outputAlphabet,
+                       @Nonnull BiFunction<Alphabet<I>, MembershipOracle<I, Word<O>>, L> learnerProvider,
+                       @Nonnull ATProvider<I, O> atrProvider,
+                       @Nonnull SPMMBuilder<S, I, J, O> builder,
+                       @Nonnull CounterexampleAnalysis analysis,
+                       @Nonnull ForkJoinPool pool) {
         this.eqOracle = eqOracle;
         this.mqOracle = new JointCounterOracle<>(mqOracle);
         this.builder = builder;
         this.inputAlphabet = inputAlphabet;
         this.outputAlphabet = outputAlphabet;
-        this.refiner = new SPMMRefiner<>(this.inputAlphabet, this.outputAlphabet, this.mqOracle, learnerProvider, atrProvider, this.builder);
+        this.refiner = new SPMMRefiner<>(this.inputAlphabet, this.outputAlphabet, this.mqOracle, learnerProvider,
+                atrProvider, this.builder, analysis, pool);
+        this.shortener = new CounterexampleShortener<>(this.inputAlphabet, this.outputAlphabet, this.mqOracle,
+                atrProvider);
     }
 
     @Nonnull
@@ -82,39 +114,29 @@ public class SPMMLearner<S,
         refiner.startLearning();
         SPMM<S, I, J, O> hyp = refiner.getHypothesisModel();
 
-        DefaultQuery<I, Word<O>> counterexample;
+        List<DefaultQuery<I, Word<O>>> counterexamples;
 
-        while ((counterexample = eqOracle.getSPMMQueryForCounterExample(hyp, builder, refiner.getActiveAlphabet())) != null) {
+        // all counterexamples of a round are used before the equivalence oracle is asked again
+        while (!(counterexamples = eqOracle.getSPMMQueriesForCounterExamples(hyp, builder,
+                refiner.getActiveAlphabet())).isEmpty()) {
             boolean refined = false;
-            if (refiner.refineHypothesis(counterexample)) {
-                refined = true;
-                // Visualization.visualize(hyp);
+            for (final DefaultQuery<I, Word<O>> originalCounterexample : counterexamples) {
+                final DefaultQuery<I, Word<O>> counterexample = shortener.shorten(hyp, originalCounterexample);
+                // an earlier refinement of this round may have fixed the counterexample already. Sequences are
+                // taken from the original, because the shortener may have cut calls that carry new ones
+                if (refineHypothesis(originalCounterexample, counterexample)) {
+                    refined = true;
+                    hyp = refiner.getHypothesisModel();
+                    checkRefinement(hyp, counterexample);
+                    // Visualization.visualize(hyp);
+                }
             }
 
-            hyp = refiner.getHypothesisModel();
-
             if (!refined) {
                 Visualization.visualize(hyp);
-                throw new AssertionError("Hypothesis could not be refined using counterexample " +
-                        counterexample);
+                throw new AssertionError("Hypothesis could not be refined using counterexamples " +
+                        counterexamples);
             }
-
-            int firstPostReturnIndex = SPMMOutputInterpreter.findIndexOFFirstPostReturn(
-                    outputAlphabet, counterexample.getOutput());
-            if (firstPostReturnIndex == -1) {
-                firstPostReturnIndex = counterexample.getOutput().length();
-            }
-            if (MQUtil.isCounterexample(
-                    new DefaultQuery<>(counterexample.getInput().subWord(0, firstPostReturnIndex),
-                            counterexample.getOutput().subWord(0, firstPostReturnIndex)),
-                    hyp)) {
-                throw new AssertionError("After refining hypothesis using counterexample " +
-                        counterexample.getInput() + " it is still a counterexample. That means that the refinement " +
-                        "was not done properly." +
-                        " Oracle output is " + mqOracle.answerQuery(counterexample.getInput()) +
-                        ". Hypothesis output is " + hyp.computeOutput(counterexample.getInput()));
-            }
-
         }
 
         //Visualization.visualize(hyp);
@@ -123,6 +145,36 @@ public class SPMMLearner<S,
     }
 
 
+    /**
+     * Refines the hypothesis with a counterexample of the equivalence oracle and its shortened version, see
+     * {@link SPMMRefiner#refineHypothesis(DefaultQuery, DefaultQuery)}.
+     */
+    protected boolean refineHypothesis(@Nonnull DefaultQuery<I, Word<O>> originalCounterexample,
+                                       @Nonnull DefaultQuery<I, Word<O>> counterexample) {
+        return refiner.refineHypothesis(originalCounterexample, counterexample);
+    }
+
+    /**
+     * Checks that the given counterexample is no counterexample for the hypothesis that was refined with it.
+     */
+    private void checkRefinement(SPMM<S, I, J, O> hyp, DefaultQuery<I, Word<O>> counterexample) {
+        int firstPostReturnIndex = SPMMOutputInterpreter.findIndexOFFirstPostReturn(
+                outputAlphabet, counterexample.getOutput());
+        if (firstPostReturnIndex == -1) {
+            firstPostReturnIndex = counterexample.getOutput().length();
+        }
+        if (MQUtil.isCounterexample(
+                new DefaultQuery<>(counterexample.getInput().subWord(0, firstPostReturnIndex),
+                        counterexample.getOutput().subWord(0, firstPostReturnIndex)),
+                hyp)) {
+            throw new AssertionError("After refining hypothesis using counterexample " +
+                    counterexample.getInput() + " it is still a counterexample. That means that the refinement " +
+                    "was not done properly." +
+                    " Oracle output is " + mqOracle.answerQuery(counterexample.getInput()) +
+                    ". Hypothesis output is " + hyp.computeOutput(counterexample.getInput()));
+        }
+    }
+
     @Override
     public void startLearning() {
         // do nothing, as we have to wait for evidence that the potential main procedure actually terminates
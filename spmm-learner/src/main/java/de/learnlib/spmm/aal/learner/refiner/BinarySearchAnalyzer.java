@@ -0,0 +1,275 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.aal.learner.refiner;
+
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.spmm.aal.ATProvider.ATProvider;
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.componenets.PersistentStack;
+import de.learnlib.spmm.model.componenets.State;
+import de.learnlib.spmm.util.mapping.Expansion;
+import de.learnlib.spmm.util.mapping.IndexFinder;
+import de.learnlib.spmm.util.mapping.Projection;
+import de.learnlib.util.MQUtil;
+import net.automatalib.automata.concepts.InputAlphabetHolder;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.commons.util.Pair;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rivest-Schapire style analysis of a global counterexample. Every configuration of the hypothesis on the
+ * counterexample is rebuilt in the system from the access sequences of its local states, with all nested calls
+ * replaced by terminating sequences. A binary search then finds the configuration from which on the rest of the
+ * counterexample is no longer answered like the hypothesis does, the procedure on top of it gets a local
+ * counterexample that only contains the relevant part of the global one.
+ * <p>
+ * Needs O(log n) membership queries for a counterexample of length n. Only the prefix up to the first differing
+ * output is searched, so all configurations in it are regular configurations of the hypothesis.
+ *
+ * @param <S> state type
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+class BinarySearchAnalyzer<S, I, O> {
+
+    private final SPMMInputAlphabet<I> inputAlphabet;
+    private final SPMMOutputAlphabet<O> outputAlphabet;
+    private final MembershipOracle<I, Word<O>> oracle;
+    private final ATProvider<I, O> atProvider;
+    private final Map<I, ProceduralMembershipOracle<I, O>> proceduralOracles = new HashMap<>();
+
+    BinarySearchAnalyzer(SPMMInputAlphabet<I> inputAlphabet,
+                         SPMMOutputAlphabet<O> outputAlphabet,
+                         MembershipOracle<I, Word<O>> oracle,
+                         ATProvider<I, O> atProvider) {
+        this.inputAlphabet = inputAlphabet;
+        this.outputAlphabet = outputAlphabet;
+        this.oracle = oracle;
+        this.atProvider = atProvider;
+    }
+
+    /**
+     * Returns the procedure to refine and a local counterexample for it, null if none was found.
+     *
+     * @param hypothesis       the hypothesis the configurations belong to
+     * @param input            the input of the global counterexample
+     * @param hypothesisOutput the output of the hypothesis on the input
+     * @param configurations   the configuration of the hypothesis before every symbol of the input
+     * @param mismatch         the index of the first output of the hypothesis that differs from the system output
+     */
+    @Nullable
+    Pair<I, DefaultQuery<I, Word<O>>> analyze(SPMM<S, I, ?, O> hypothesis,
+                                              Word<I> input,
+                                              Word<O> hypothesisOutput,
+                                              List<State<I, S>> configurations,
+                                              int mismatch) {
+        final Word<I> relevantInput = input.prefix(mismatch + 1);
+        final Word<O> relevantOutput = hypothesisOutput.prefix(mismatch + 1);
+        final Map<I, Map<S, Word<I>>> accessSequences = new HashMap<>();
+
+        // the rest of the input is answered like the hypothesis does from agreeing on, but not from disagreeing on
+        int disagreeing = 0;
+        int agreeing = mismatch + 1;
+        while (agreeing - disagreeing > 1) {
+            final int middle = (disagreeing + agreeing) >>> 1;
+            final Word<I> prefix = rebuild(hypothesis, configurations.get(middle), accessSequences);
+            if (prefix == null) {
+                return null;
+            }
+            final WordBuilder<I> query = new WordBuilder<>(prefix.length() + relevantInput.length() - middle);
+            query.append(prefix).append(relevantInput.subWord(middle));
+            final Word<O> output = oracle.answerQuery(query.toWord());
+            if (output.subWord(prefix.length()).equals(relevantOutput.subWord(middle))) {
+                agreeing = middle;
+            } else {
+                disagreeing = middle;
+            }
+        }
+
+        final State<I, S> configuration = configurations.get(disagreeing);
+        if (configuration.getFirst() == null) {
+            return null;
+        }
+
+        DefaultQuery<I, Word<O>> localQuery = buildLocalQuery(hypothesis, configuration, relevantInput,
+                relevantOutput, disagreeing, accessSequences);
+        if (localQuery != null) {
+            return new Pair<>(configuration.getFirst(), localQuery);
+        }
+
+        // a wrong return output may as well be caused by the caller
+        if (inputAlphabet.isReturnSymbol(relevantInput.getSymbol(disagreeing))
+                && !configuration.getStack().isEmpty()) {
+            final State<I, S> caller = configuration.getStack().peek();
+            final int callIdx = IndexFinder.findCallIndexOfCurrentProcedure(inputAlphabet, outputAlphabet,
+                    relevantInput, relevantOutput, disagreeing);
+            if (caller.getFirst() != null && callIdx > -1) {
+                localQuery = buildLocalQuery(hypothesis, caller, relevantInput, relevantOutput, callIdx,
+                        accessSequences);
+                if (localQuery != null) {
+                    return new Pair<>(caller.getFirst(), localQuery);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns an input that leads the system to the given configuration of the hypothesis, null if there is none.
+     */
+    @Nullable
+    private Word<I> rebuild(SPMM<S, I, ?, O> hypothesis,
+                            State<I, S> configuration,
+                            Map<I, Map<S, Word<I>>> accessSequences) {
+        if (configuration.getFirst() == null) {
+            return null;
+        }
+
+        final List<State<I, S>> frames = new ArrayList<>(configuration.getStack().depth() + 1);
+        frames.add(configuration);
+        for (PersistentStack<State<I, S>> stack = configuration.getStack(); !stack.isEmpty(); stack = stack.pop()) {
+            frames.add(stack.peek());
+        }
+        Collections.reverse(frames);
+
+        final WordBuilder<I> wb = new WordBuilder<>();
+        for (final State<I, S> frame : frames) {
+            // the bottom of the stack belongs to the initial procedure
+            if (frame.getFirst() == null) {
+                continue;
+            }
+            final Word<I> localAccessSequence = getLocalAccessSequence(hypothesis, frame, accessSequences);
+            if (localAccessSequence == null) {
+                return null;
+            }
+            wb.append(frame.getFirst());
+            wb.append(Expansion.expandInput(inputAlphabet, localAccessSequence,
+                    atProvider.getTerminatingSequenceProvider()));
+        }
+        return wb.toWord();
+    }
+
+    /**
+     * Builds the local query of the procedure of the given frame, consisting of the access sequence of its local
+     * state and the projection of the input from the given index to the end of the procedure. Returns null if the
+     * query is not a counterexample for the procedure.
+     */
+    @Nullable
+    private DefaultQuery<I, Word<O>> buildLocalQuery(SPMM<S, I, ?, O> hypothesis,
+                                                     State<I, S> frame,
+                                                     Word<I> input,
+                                                     Word<O> hypothesisOutput,
+                                                     int index,
+                                                     Map<I, Map<S, Word<I>>> accessSequences) {
+        final Word<I> localAccessSequence = getLocalAccessSequence(hypothesis, frame, accessSequences);
+        if (localAccessSequence == null) {
+            return null;
+        }
+
+        final int lastIdx = IndexFinder.findLastIndexOfCurrentProcedure(inputAlphabet, outputAlphabet,
+                input, hypothesisOutput, index);
+        final Word<I> localSuffix = Projection.projectExpandedInputOutputPair(inputAlphabet, outputAlphabet,
+                input.subWord(index, lastIdx + 1), hypothesisOutput.subWord(index, lastIdx + 1)).getInput();
+        final Word<I> localInput = new WordBuilder<I>(localAccessSequence.length() + localSuffix.length())
+                .append(localAccessSequence).append(localSuffix).toWord();
+
+        // the query can only be expanded and simulated if all of its calls are known to terminate
+        for (final I symbol : localInput) {
+            if (inputAlphabet.isCallSymbol(symbol)
+                    && (atProvider.getTerminatingSequence(symbol) == null
+                    || !hypothesis.getInputAlphabetWithOnlyActivatedCalls().containsSymbol(symbol))) {
+                return null;
+            }
+        }
+
+        final I procedure = frame.getFirst();
+        final ProceduralMembershipOracle<I, O> proceduralOracle = proceduralOracles.computeIfAbsent(procedure,
+                p -> new ProceduralMembershipOracle<>(inputAlphabet, outputAlphabet, oracle, p, atProvider));
+        final DefaultQuery<I, Word<O>> localQuery =
+                new DefaultQuery<>(localInput, proceduralOracle.answerQuery(localInput));
+
+        return MQUtil.isCounterexample(localQuery, hypothesis.getProcedures().get(procedure)) ? localQuery : null;
+    }
+
+    @Nullable
+    private Word<I> getLocalAccessSequence(SPMM<S, I, ?, O> hypothesis,
+                                           State<I, S> frame,
+                                           Map<I, Map<S, Word<I>>> accessSequences) {
+        return accessSequences.computeIfAbsent(frame.getFirst(),
+                p -> computeLocalAccessSequences(hypothesis, hypothesis.getProcedures().get(p)))
+                .get(frame.getSecond());
+    }
+
+    /**
+     * Breadth-first search for the shortest local access sequences of all states of a procedure, that neither fail
+     * nor leave the procedure and only call procedures with a terminating sequence.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<S, Word<I>> computeLocalAccessSequences(SPMM<S, I, ?, O> hypothesis,
+                                                        MealyMachine<S, I, ?, O> procedure) {
+        final Map<S, Word<I>> result = new HashMap<>();
+        final S init = procedure.getInitialState();
+        if (init == null) {
+            return result;
+        }
+
+        final List<I> symbols = new ArrayList<>();
+        for (final I symbol : hypothesis.getInputAlphabetWithOnlyActivatedCalls()) {
+            if (inputAlphabet.isReturnSymbol(symbol)
+                    || (inputAlphabet.isCallSymbol(symbol) && atProvider.getTerminatingSequence(symbol) == null)) {
+                continue;
+            }
+            if (!(procedure instanceof InputAlphabetHolder)
+                    || ((InputAlphabetHolder<I>) procedure).getInputAlphabet().containsSymbol(symbol)) {
+                symbols.add(symbol);
+            }
+        }
+
+        final Deque<S> queue = new ArrayDeque<>();
+        result.put(init, Word.epsilon());
+        queue.add(init);
+        while (!queue.isEmpty()) {
+            final S state = queue.poll();
+            final Word<I> accessSequence = result.get(state);
+            for (final I symbol : symbols) {
+                final S successor = procedure.getSuccessor(state, symbol);
+                if (successor == null || result.containsKey(successor)) {
+                    continue;
+                }
+                final O output = procedure.getOutput(state, symbol);
+                if (outputAlphabet.isErrorSymbol(output) || outputAlphabet.isPostReturn(output)) {
+                    continue;
+                }
+                result.put(successor, accessSequence.append(symbol));
+                queue.add(successor);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,32 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.aal.learner.refiner;
+
+/**
+ * The ways {@link SPMMRefiner} can extract a local counterexample from a global one.
+ */
+public enum CounterexampleAnalysis {
+
+    /**
+     * Refines the procedure that reads the first symbol whose output differs from the hypothesis output.
+     */
+    FIRST_MISMATCH,
+
+    /**
+     * Binary search over the configurations of the hypothesis, see {@link BinarySearchAnalyzer}. Falls back to
+     * {@link #FIRST_MISMATCH} if the search does not yield a local counterexample.
+     */
+    BINARY_SEARCH
+}
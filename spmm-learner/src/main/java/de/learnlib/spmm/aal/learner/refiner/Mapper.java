@@ -14,7 +14,6 @@
  */
 package de.learnlib.spmm.aal.learner.refiner;
 
-import com.google.common.collect.Sets;
 import de.learnlib.api.AccessSequenceTransformer;
 import de.learnlib.api.query.DefaultQuery;
 import de.learnlib.spmm.aal.ATProvider.ATProvider;
@@ -67,18 +66,16 @@ class Mapper<I, O> {
         return atProvider.findNewProceduresAndUpdateSequences(query);
     }
 
-    Set<I> getOnlyTerminatingProcedures(Set<I> toCheck) {
-        final Set<I> checkedProcedures = Sets.newHashSetWithExpectedSize(toCheck.size());
-
-        for (I identifier : toCheck) {
-            if (atProvider.getAccessSequence(identifier) != null
-                    && atProvider.getTerminatingSequence(identifier) != null
-                    && outputAlphabet.isProcedureEndSymbol(atProvider.getTerminatingSequenceOutput(identifier).lastSymbol())) {
-                checkedProcedures.add(identifier);
-            }
+    /**
+     * Returns whether the given procedure has an access sequence and a terminating sequence that returns.
+     */
+    boolean isTerminating(I identifier) {
+        if (atProvider.getAccessSequence(identifier) == null) {
+            return false;
         }
-
-        return checkedProcedures;
+        final Word<O> terminatingSequenceOutput = atProvider.getTerminatingSequenceOutput(identifier);
+        return atProvider.getTerminatingSequence(identifier) != null && terminatingSequenceOutput != null
+                && outputAlphabet.isProcedureEndSymbol(terminatingSequenceOutput.lastSymbol());
     }
 
     DefaultQuery<I, Word<O>> getTerminatingQueryPrependedByCall(I identifier) {
@@ -28,16 +28,24 @@ import de.learnlib.spmm.model.SPMMBuilder;
 import de.learnlib.spmm.model.SPMMOutputInterpreter;
 import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
 import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.componenets.PersistentMap;
+import de.learnlib.spmm.model.componenets.State;
+import de.learnlib.spmm.util.ProcedureSnapshots;
 import de.learnlib.spmm.util.WordUtils;
 import de.learnlib.util.MQUtil;
 import net.automatalib.automata.transout.MealyMachine;
 import net.automatalib.commons.util.Pair;
 import net.automatalib.words.Alphabet;
 import net.automatalib.words.Word;
+import net.automatalib.words.impl.SimpleAlphabet;
 
 import javax.annotation.Nonnull;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 
 public class SPMMRefiner<S, I, J, O,
@@ -51,11 +59,30 @@ public class SPMMRefiner<S, I, J, O,
     private final MembershipOracle<I, Word<O>> oracle;
     private final BiFunction<Alphabet<I>, MembershipOracle<I, Word<O>>, L> learnerProvider;
     private final Mapper<I, O> mapper;
+    // combines the queries of sub-learners that are refined concurrently
+    private final SynchronizedBatchOracle<I, Word<O>> batchOracle;
+    private final ForkJoinPool pool;
     private final SPMMBuilder<S, I, J, O> builder;
+    // null if the first mismatch of a counterexample is analyzed only
+    private final BinarySearchAnalyzer<S, I, O> binarySearchAnalyzer;
 
     private final Map<I, L> subRefiners;
     private final Set<I> activeAlphabet;
     private I initialCallSymbol;
+
+    // snapshots of the hypotheses of the sub-learners, updated whenever a sub-learner changes
+    private PersistentMap<I, MealyMachine<S, I, ?, O>> subModels = PersistentMap.empty();
+    // the alphabet of the sub-learners, null if the active alphabet changed
+    private Alphabet<I> procedureAlphabet;
+    // the alphabets of the hypothesis, null if the procedures or the active alphabet changed
+    private SPMMInputAlphabet<I> hypothesisInputAlphabet;
+    private Alphabet<I> activatedCallsAlphabet;
+    // the cached hypothesis, null if it has to be rebuilt
+    private SPMM<S, I, J, O> hypothesis;
+    // the last built hypothesis, null if more than its sub-models changed since
+    private SPMM<S, I, J, O> lastHypothesis;
+    // the last successful conformance check of every terminating sequence
+    private final TSConformanceCache<I> tsConformance = new TSConformanceCache<>();
     private long numberOfRefinements = 0;
     private long numberOfCounterexamples = 0;
     private long numberOfCEForSequencesOnly = 0;
@@ -67,6 +94,32 @@ public class SPMMRefiner<S, I, J, O,
                        @Nonnull final BiFunction<Alphabet<I>, MembershipOracle<I, Word<O>>, L> learnerProvider,
                        @Nonnull final ATProvider<I, O> atProvider,
                        @Nonnull final SPMMBuilder<S, I, J, O> builder) {
+        this(inputAlphabet, outputAlphabet, oracle, learnerProvider, atProvider, builder,
+                CounterexampleAnalysis.FIRST_MISMATCH);
+    }
+
+    public SPMMRefiner(@Nonnull final SPMMInputAlphabet<I> inputAlphabet,
+                       @Nonnull final SPMMOutputAlphabet<O> outputAlphabet,
+                       @Nonnull final MembershipOracle<I, Word<O>> oracle,
+                       @Nonnull final BiFunction<Alphabet<I>, MembershipOracle<I, Word<O>>, L> learnerProvider,
+                       @Nonnull final ATProvider<I, O> atProvider,
+                       @Nonnull final SPMMBuilder<S, I, J, O> builder,
+                       @Nonnull final CounterexampleAnalysis analysis) {
+        this(inputAlphabet, outputAlphabet, oracle, learnerProvider, atProvider, builder, analysis,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool the pool in which the sub-learners of several procedures are refined concurrently
+     */
+    public SPMMRefiner(@Nonnull final SPMMInputAlphabet<I> inputAlphabet,
+                       @Nonnull final SPMMOutputAlphabet<O> outputAlphabet,
+                       @Nonnull final MembershipOracle<I, Word<O>> oracle,
+                       @Nonnull final BiFunction<Alphabet<I>, MembershipOracle<I, Word<O>>, L> learnerProvider,
+                       @Nonnull final ATProvider<I, O> atProvider,
+                       @Nonnull final SPMMBuilder<S, I, J, O> builder,
+                       @Nonnull final CounterexampleAnalysis analysis,
+                       @Nonnull final ForkJoinPool pool) {
         this.inputAlphabet = inputAlphabet;
         this.outputAlphabet = outputAlphabet;
         this.oracle = oracle;
@@ -75,6 +128,11 @@ public class SPMMRefiner<S, I, J, O,
 
         this.subRefiners = Maps.newHashMapWithExpectedSize(inputAlphabet.getNumCalls());
         this.mapper = new Mapper<>(atProvider, inputAlphabet, outputAlphabet);
+        this.batchOracle = new SynchronizedBatchOracle<>(oracle);
+        this.pool = pool;
+        this.binarySearchAnalyzer = analysis == CounterexampleAnalysis.BINARY_SEARCH
+                ? new BinarySearchAnalyzer<>(inputAlphabet, outputAlphabet, oracle, atProvider)
+                : null;
         this.activeAlphabet = Sets.newHashSetWithExpectedSize(inputAlphabet.getNumCalls()
                 + inputAlphabet.getNumInternals() + inputAlphabet.getNumReturns());
         this.activeAlphabet.addAll(inputAlphabet.getInternalAlphabet());
@@ -93,20 +151,24 @@ public class SPMMRefiner<S, I, J, O,
      *  has some post-return output symbols they must stay untouched
      */
     public boolean refineHypothesis(@Nonnull DefaultQuery<I, Word<O>> oracleQuery) {
-        if (!WordUtils.wordsHaveSameSize(oracleQuery.getInput(), oracleQuery.getOutput())) {
-            throw new AssertionError("Input and output oracleQuery must have same size."
-                    + " but now input is " + oracleQuery.getInput() + " and output is"
-                    + oracleQuery.getOutput());
-        }
+        return refineHypothesis(oracleQuery, oracleQuery);
+    }
 
-        if (!inputAlphabet.isCallSymbol(oracleQuery.getInput().firstSymbol())) {
-            throw new AssertionError("oracleQuery must begin with a call.");
-        }
+    /**
+     * Refines the hypothesis like {@link #refineHypothesis(DefaultQuery)}, but takes new procedures and access and
+     * terminating sequences from {@code evidence} and only the local counterexamples from {@code oracleQuery}. This
+     * allows to refine with a shortened counterexample without losing the sequences of the symbols cut from it.
+     */
+    public boolean refineHypothesis(@Nonnull DefaultQuery<I, Word<O>> evidence,
+                                    @Nonnull DefaultQuery<I, Word<O>> oracleQuery) {
+        checkQuery(evidence);
+        checkQuery(oracleQuery);
 
-        boolean sequencesChanged = findNewProceduresOrNewSequences(oracleQuery);
+        boolean sequencesChanged = findNewProceduresOrNewSequences(evidence);
 
         boolean refined = false;
-        while (refineHypothesisInternal(oracleQuery)) {
+        final CounterexampleTrace trace = new CounterexampleTrace(oracleQuery.getInput());
+        while (refineHypothesisInternal(oracleQuery, trace)) {
             numberOfRefinements++;
             refined = true;
         }
@@ -123,19 +185,50 @@ public class SPMMRefiner<S, I, J, O,
     }
 
 
+    private void checkQuery(DefaultQuery<I, Word<O>> oracleQuery) {
+        if (!WordUtils.wordsHaveSameSize(oracleQuery.getInput(), oracleQuery.getOutput())) {
+            throw new AssertionError("Input and output oracleQuery must have same size."
+                    + " but now input is " + oracleQuery.getInput() + " and output is"
+                    + oracleQuery.getOutput());
+        }
+
+        if (!inputAlphabet.isCallSymbol(oracleQuery.getInput().firstSymbol())) {
+            throw new AssertionError("oracleQuery must begin with a call.");
+        }
+    }
+
+    /**
+     * Returns the current hypothesis. The hypothesis is cached and only rebuilt after a sub-learner was refined, a
+     * procedure was added or the active alphabet or the initial call changed, so it must not be modified.
+     */
     @Override
     @Nonnull
     public SPMM<S, I, J, O> getHypothesisModel() {
+        if (hypothesis != null) {
+            return hypothesis;
+        }
+
         if (this.subRefiners.isEmpty()) {
-            return builder.createEmptySPMM(inputAlphabet, outputAlphabet);
+            hypothesis = builder.createEmptySPMM(inputAlphabet, outputAlphabet);
+            return hypothesis;
         }
 
-        final Map<I, MealyMachine<S, I, ?, O>> subModels = getSubModels();
+        if (lastHypothesis != null) {
+            // only sub-models were replaced, the alphabets and the initial call are still valid
+            hypothesis = builder.copySPMMReplaceProcedures(lastHypothesis, subModels);
+            lastHypothesis = hypothesis;
+            return hypothesis;
+        }
 
-        SPMMInputAlphabet<I> currentHypothesisInputAlphabet = builder.filterCallAlphabet(subRefiners.keySet(), inputAlphabet);
-        Alphabet<I> activatedCallsAlphabet = builder.filterCallAlphabet(activeAlphabet, inputAlphabet).getCallAlphabet();
-        return builder.createSPMM(currentHypothesisInputAlphabet, activatedCallsAlphabet, outputAlphabet,
+        if (hypothesisInputAlphabet == null) {
+            hypothesisInputAlphabet = builder.filterCallAlphabet(subRefiners.keySet(), inputAlphabet);
+            activatedCallsAlphabet = builder.filterCallAlphabet(activeAlphabet, inputAlphabet).getCallAlphabet();
+        }
+        // the sub-models are persistent, so the hypothesis can share them with later versions
+        hypothesis = builder.createSPMM(hypothesisInputAlphabet, activatedCallsAlphabet, outputAlphabet,
                 initialCallSymbol, subModels);
+        lastHypothesis = hypothesis;
+        return hypothesis;
     }
 
     @Nonnull
@@ -143,18 +236,15 @@ public class SPMMRefiner<S, I, J, O,
         return this.activeAlphabet;
     }
 
-    private boolean refineHypothesisInternal(DefaultQuery<I, Word<O>> oracleQuery) {
+    private boolean refineHypothesisInternal(DefaultQuery<I, Word<O>> oracleQuery, CounterexampleTrace trace) {
 
         SPMM<S, I, J, O> hypothesis = this.getHypothesisModel();
 
         final Word<I> input = oracleQuery.getInput();
         final Word<O> oracleOutput = oracleQuery.getOutput();
-        final Word<O> hypothesisOutput = hypothesis.computeOutput(input);
-
-        boolean localRefinement = false;
+        final Word<O> hypothesisOutput = trace.simulate(hypothesis);
 
-        final int firstDifferentOutputIdx = WordUtils.getFirstIndexWhenWordsDiffer(
-                oracleOutput, hypothesisOutput);
+        final int firstDifferentOutputIdx = trace.findFirstDifference(oracleOutput);
 
         if (!WordUtils.wordsHaveSameSize(oracleOutput, hypothesisOutput)) {
             throw new AssertionError("Oracle output must have same size as hypothesis output."
@@ -170,26 +260,35 @@ public class SPMMRefiner<S, I, J, O,
             return false;
         } else {
 
-            // extract local counterexample
-            final int callIdx;
             if (firstDifferentOutputIdx == -1) {
                 return false;
-            } else {
-                callIdx = mapper.findCallIndexOfProcedure(oracleQuery, firstDifferentOutputIdx);
             }
 
+            if (binarySearchAnalyzer != null) {
+                final Pair<I, DefaultQuery<I, Word<O>>> analysis = binarySearchAnalyzer.analyze(hypothesis, input,
+                        hypothesisOutput, trace.getConfigurations(), firstDifferentOutputIdx);
+                // the analyzer only returns local counterexamples of the hypothesis
+                if (analysis != null) {
+                    refineProcedure(analysis.getFirst(), analysis.getSecond(), oracleQuery, trace);
+                    return true;
+                }
+            }
+
+            // extract local counterexample
+            final int callIdx = mapper.findCallIndexOfProcedure(oracleQuery, firstDifferentOutputIdx);
+
             final DefaultQuery<I, Word<O>> localQuery;
-            final MealyLearner<I, O> localLearner;
+            final MealyMachine<S, I, ?, O> localModel;
 
             if (callIdx > -1) {
                 localQuery = mapper.getLocalInputAndOutput(oracleQuery, callIdx);
-                localLearner = this.subRefiners.get(input.getSymbol(callIdx));
+                localModel = getSubModels().get(input.getSymbol(callIdx));
             } else {
                 throw new AssertionError("could not find call index of procedure to refine. Oracle query is " +
                         oracleQuery + " hypothesis output is " + hypothesisOutput);
             }
 
-            if (!MQUtil.isCounterexample(localQuery, localLearner.getHypothesisModel())) {
+            if (!MQUtil.isCounterexample(localQuery, localModel)) {
                 /*System.out.println("local query " + localQuery + " is not a counterexample" +
                         " for procedure " + input.getSymbol(callIdx) + ".");
                 System.out.println("local procedure gives output "
@@ -202,17 +301,26 @@ public class SPMMRefiner<S, I, J, O,
             System.out.println("hypothesis procedure output is "
                     + localLearner.getHypothesisModel().computeOutput(localQuery.getInput()) + ".");*/
 
-            localRefinement = localRefinement | localLearner.refineHypothesis(localQuery);
-
+            refineProcedure(input.getSymbol(callIdx), localQuery, oracleQuery, trace);
             //Visualization.visualize(hypothesis);
-            if (!localRefinement) {
-                throw new AssertionError("No refinement to hypothesis was done using counterexample "
-                        + oracleQuery);
-            }
         }
         return true;
     }
 
+    private void refineProcedure(I procedure,
+                                 DefaultQuery<I, Word<O>> localQuery,
+                                 DefaultQuery<I, Word<O>> oracleQuery,
+                                 CounterexampleTrace trace) {
+        final boolean localRefinement = this.subRefiners.get(procedure).refineHypothesis(localQuery);
+        updateSubModel(procedure);
+        trace.resumeBefore(procedure);
+
+        if (!localRefinement) {
+            throw new AssertionError("No refinement to hypothesis was done using counterexample "
+                    + oracleQuery);
+        }
+    }
+
     private boolean findNewProceduresOrNewSequences(DefaultQuery<I, Word<O>> query) {
         boolean changedInformationAboutProcedures = false;
         final int errorIndex = SPMMOutputInterpreter.findIndexOFFirstErrorSymbol(outputAlphabet, query.getOutput());
@@ -222,6 +330,8 @@ public class SPMMRefiner<S, I, J, O,
                     || !initialCallSymbol.equals(query.getInput().firstSymbol())) {
                 changedInformationAboutProcedures = true;
                 this.initialCallSymbol = query.getInput().firstSymbol();
+                this.hypothesis = null;
+                this.lastHypothesis = null;
             }
         }
 
@@ -230,47 +340,48 @@ public class SPMMRefiner<S, I, J, O,
         changedInformationAboutProcedures |= queryScanResult.getSecond();
 
 
-        Collection<I> terminatingProcedures = mapper.getOnlyTerminatingProcedures(this.subRefiners.keySet());
-
-        for (final I call : terminatingProcedures) {
-            if (!this.activeAlphabet.contains(call)) {
-                this.activeAlphabet.add(call);
-
-                // System.out.println("found new terminating procedure " + call);
-
-                for (final L learner : this.subRefiners.values()) {
-                    learner.addAlphabetSymbol(call);
-                }
+        // calls that became terminating, either of known procedures or of new ones
+        final List<I> newActiveCalls = new ArrayList<>();
+        for (final I call : this.subRefiners.keySet()) {
+            if (!this.activeAlphabet.contains(call) && mapper.isTerminating(call)) {
+                newActiveCalls.add(call);
             }
         }
-
         for (final Pair<I, Integer> pair : newProcedures) {
+            if (mapper.isTerminating(pair.getFirst())) {
+                newActiveCalls.add(pair.getFirst());
+            }
+        }
+        newActiveCalls.sort(Comparator.comparingInt(inputAlphabet::getSymbolIndex));
+        this.activeAlphabet.addAll(newActiveCalls);
 
+        // the known sub-learners get all new calls at once, the new ones start with the complete alphabet
+        final Set<I> knownProcedures = new HashSet<>(this.subRefiners.keySet());
+        for (final Pair<I, Integer> pair : newProcedures) {
             I identifier = pair.getFirst();
-            final L newLearner = learnerProvider.apply(this.inputAlphabet.getInternalAlphabet(),
+            final L newLearner = learnerProvider.apply(createSubLearnerAlphabet(),
                     new ProceduralMembershipOracle<>(
                             inputAlphabet,
                             outputAlphabet,
-                            oracle,
+                            batchOracle,
                             identifier,
                             mapper.getATProvider()));
             this.subRefiners.put(identifier, newLearner);
+        }
 
-            newLearner.startLearning();
-
-            newLearner.addAlphabetSymbol(this.inputAlphabet.getReturnSymbol());
-            for (final I call : terminatingProcedures) {
-                newLearner.addAlphabetSymbol(call);
-            }
-
-            if (!mapper.getOnlyTerminatingProcedures(new HashSet<>(Collections.singletonList(identifier))).isEmpty()) {
-                this.activeAlphabet.add(identifier);
-
-
-                for (final L learner : this.subRefiners.values()) {
-                    learner.addAlphabetSymbol(identifier);
+        if (!newActiveCalls.isEmpty() || !newProcedures.isEmpty()) {
+            forEachSubLearner(this.subRefiners.keySet(), identifier -> {
+                final L learner = this.subRefiners.get(identifier);
+                if (knownProcedures.contains(identifier)) {
+                    for (final I call : newActiveCalls) {
+                        learner.addAlphabetSymbol(call);
+                    }
+                } else {
+                    learner.startLearning();
                 }
-            }
+            });
+            invalidateAlphabets();
+            updateSubModels();
         }
 
         if (!newProcedures.isEmpty() || changedInformationAboutProcedures) {
@@ -287,41 +398,102 @@ public class SPMMRefiner<S, I, J, O,
     }
 
     private Map<I, MealyMachine<S, I, ?, O>> getSubModels() {
-        final Map<I, MealyMachine<S, I, ?, O>> subModels =
-                Maps.newHashMapWithExpectedSize(this.subRefiners.size());
+        return subModels;
+    }
+
+    /**
+     * Takes a snapshot of the current hypothesis of the sub-learner of the given procedure, other procedures keep
+     * their models. All simulations of the procedure use the snapshot until the sub-learner changes again.
+     */
+    @SuppressWarnings("unchecked")
+    private void updateSubModel(I identifier) {
+        if (procedureAlphabet == null) {
+            procedureAlphabet = createSubLearnerAlphabet();
+        }
+        final MealyMachine<?, I, ?, O> snapshot =
+                ProcedureSnapshots.snapshot(subRefiners.get(identifier).getHypothesisModel(), procedureAlphabet);
+        subModels = subModels.plus(identifier, (MealyMachine<S, I, ?, O>) snapshot);
+        tsConformance.replaceSubModel(identifier);
+        hypothesis = null;
+    }
 
-        for (final Map.Entry<I, L> entry : this.subRefiners.entrySet()) {
-            subModels.put(entry.getKey(), (MealyMachine<S, I, ?, O>) entry.getValue().getHypothesisModel());
+    /**
+     * Takes the current hypotheses of all sub-learners, e.g. after a symbol was added to all of them.
+     */
+    private void updateSubModels() {
+        for (final I identifier : subRefiners.keySet()) {
+            updateSubModel(identifier);
         }
+    }
 
-        return subModels;
+    /**
+     * Returns a new alphabet of the internal symbols, the return symbol and the active calls. Every sub-learner gets
+     * its own instance, as learners may extend their alphabet.
+     */
+    private Alphabet<I> createSubLearnerAlphabet() {
+        final List<I> symbols = new ArrayList<>(inputAlphabet.getInternalAlphabet());
+        symbols.add(inputAlphabet.getReturnSymbol());
+        for (final I call : inputAlphabet.getCallAlphabet()) {
+            if (activeAlphabet.contains(call)) {
+                symbols.add(call);
+            }
+        }
+        return new SimpleAlphabet<>(symbols);
+    }
+
+    private void invalidateAlphabets() {
+        hypothesisInputAlphabet = null;
+        activatedCallsAlphabet = null;
+        procedureAlphabet = null;
+        hypothesis = null;
+        lastHypothesis = null;
     }
 
+    /**
+     * Checks the terminating sequences of all active procedures, except the ones that did not change and only
+     * embed procedures whose sub-models did not change since their last successful check. All procedures that do
+     * not conform are refined afterwards, see {@link #refineSubLearners(Map)}.
+     */
     private boolean isTSConform() {
-        boolean tsConform = true;
         numberOfTSConformanceChecks++;
+        final Map<I, Set<DefaultQuery<I, Word<O>>>> localCounterexamples = new LinkedHashMap<>();
         for (final I symbol : this.activeAlphabet) {
-            if (this.inputAlphabet.isCallSymbol(symbol)) {
-                tsConform = tsConform & !makeProcedureTSConform(symbol,
-                        this.getSubModels());
+            if (this.inputAlphabet.isCallSymbol(symbol) && !isKnownTSConform(symbol)) {
+                findTSNonConformities(symbol, localCounterexamples);
             }
         }
-        return tsConform;
+
+        if (localCounterexamples.isEmpty()) {
+            return true;
+        }
+        refineSubLearners(localCounterexamples);
+        return false;
     }
 
-    private boolean makeProcedureTSConform(I identifier, Map<I, MealyMachine<S, I, ?, O>> mmModels) {
-        boolean refined = false;
+    private boolean isKnownTSConform(I identifier) {
+        return tsConformance.isKnownConform(identifier, mapper.getATProvider().getTerminatingSequence(identifier));
+    }
+
+    /**
+     * Adds a local counterexample for every procedure whose sub-model does not conform to its part of the
+     * terminating sequence of the given procedure.
+     */
+    private void findTSNonConformities(I identifier, Map<I, Set<DefaultQuery<I, Word<O>>>> localCounterexamples) {
+        boolean conform = true;
+        final long revision = tsConformance.getRevision();
+        final Set<I> embeddedProcedures = new HashSet<>();
         final DefaultQuery<I, Word<O>> extendedTQ = mapper.getTerminatingQueryPrependedByCall(identifier);
 
         for (int i = 0; i < extendedTQ.getInput().size(); i++) {
             final I sym = extendedTQ.getInput().getSymbol(i);
 
             if (this.inputAlphabet.isCallSymbol(sym)) {
+                embeddedProcedures.add(sym);
 
                 final DefaultQuery<I, Word<O>> projectedTerminatingQuery
                         = mapper.getLocalInputAndOutput(extendedTQ, i);
 
-                Word<O> subModelOutput = mmModels.get(sym).computeOutput(projectedTerminatingQuery.getInput());
+                Word<O> subModelOutput = getSubModels().get(sym).computeOutput(projectedTerminatingQuery.getInput());
 
 
                 if (!WordUtils.wordsAreEqual(
@@ -333,16 +505,83 @@ public class SPMMRefiner<S, I, J, O,
                     // System.out.println("Expected output after reading TS is " + relevantProjectedTerminatingOutput);
                     // System.out.println("but got output " + relevantSubModelOutput);
 
-                    refined = true;
-                    subRefiners.get(sym).refineHypothesis(new DefaultQuery<>(projectedTerminatingQuery.getInput(),
-                            projectedTerminatingQuery.getOutput()));
+                    conform = false;
+                    localCounterexamples.computeIfAbsent(sym, k -> new LinkedHashSet<>())
+                            .add(new DefaultQuery<>(projectedTerminatingQuery.getInput(),
+                                    projectedTerminatingQuery.getOutput()));
                 }
             }
         }
 
-        return refined;
+        if (conform) {
+            tsConformance.setConform(identifier, mapper.getATProvider().getTerminatingSequence(identifier),
+                    embeddedProcedures, revision);
+        } else {
+            tsConformance.setNonConform(identifier);
+        }
+    }
+
+    /**
+     * Refines the sub-learners of the given procedures with their local counterexamples, see
+     * {@link #forEachSubLearner(Collection, Consumer)}.
+     */
+    private void refineSubLearners(Map<I, Set<DefaultQuery<I, Word<O>>>> localCounterexamples) {
+        forEachSubLearner(localCounterexamples.keySet(),
+                identifier -> refineSubLearner(subRefiners.get(identifier), localCounterexamples.get(identifier)));
+
+        for (final I procedure : localCounterexamples.keySet()) {
+            updateSubModel(procedure);
+        }
+    }
+
+    /**
+     * Applies the given action to the given procedures. The sub-learners are independent of each other, so the
+     * action is applied concurrently and the membership queries of all sub-learners are combined by
+     * {@link SynchronizedBatchOracle}. The action must not change this refiner.
+     */
+    private void forEachSubLearner(Collection<I> procedures, Consumer<I> action) {
+        if (procedures.size() == 1) {
+            action.accept(procedures.iterator().next());
+        } else if (procedures.size() > 1) {
+            // all parties are registered up front, so no batch is answered before every sub-learner has asked
+            final List<AtomicBoolean> registered = new ArrayList<>(procedures.size());
+            final List<ForkJoinTask<?>> tasks = new ArrayList<>(procedures.size());
+            for (final I identifier : procedures) {
+                final AtomicBoolean party = new AtomicBoolean(true);
+                batchOracle.register();
+                registered.add(party);
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    try {
+                        action.accept(identifier);
+                    } finally {
+                        if (party.getAndSet(false)) {
+                            batchOracle.deregister();
+                        }
+                    }
+                }));
+            }
+            try {
+                pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+            } finally {
+                // tasks that were cancelled after a failure never ran, so they did not deregister
+                for (final AtomicBoolean party : registered) {
+                    if (party.getAndSet(false)) {
+                        batchOracle.deregister();
+                    }
+                }
+            }
+        }
     }
 
+    private static <I, O> void refineSubLearner(LearningAlgorithm.MealyLearner<I, O> learner,
+                                                Collection<DefaultQuery<I, Word<O>>> localCounterexamples) {
+        for (final DefaultQuery<I, Word<O>> localCounterexample : localCounterexamples) {
+            // an earlier counterexample may have fixed this one already
+            if (MQUtil.isCounterexample(localCounterexample, learner.getHypothesisModel())) {
+                learner.refineHypothesis(localCounterexample);
+            }
+        }
+    }
 
     private void updateInputChecker() {
         this.mapper.updateATProvider(
@@ -398,4 +637,74 @@ public class SPMMRefiner<S, I, J, O,
         return WordUtils.addSymbol(original, alphabet.getReturnSymbol());
     }
 
-}
\ No newline at end of file
+    /**
+     * The simulation of a counterexample on the hypothesis. The configuration before every symbol is kept, so after
+     * a procedure was refined, the simulation resumes right before the first call of that procedure instead of at the
+     * initial state. The kept configurations stay valid for the next hypothesis, because only the sub-model of the
+     * refined procedure is replaced and the special states of the initial procedure are shared by all SPMMs.
+     */
+    private final class CounterexampleTrace {
+
+        private final Word<I> input;
+        // the configuration before every simulated symbol and after the last one
+        private final List<State<I, S>> configurations = new ArrayList<>();
+        private final List<O> outputs = new ArrayList<>();
+        // the number of outputs that are known to equal the expected ones
+        private int agreed;
+
+        CounterexampleTrace(Word<I> input) {
+            this.input = input;
+        }
+
+        Word<O> simulate(SPMM<S, I, J, O> hypothesis) {
+            if (configurations.isEmpty()) {
+                configurations.add(hypothesis.getInitialState());
+            }
+            State<I, S> current = configurations.get(outputs.size());
+            for (int i = outputs.size(); i < input.size(); i++) {
+                final J transition = hypothesis.getTransition(current, input.getSymbol(i));
+                outputs.add(hypothesis.getTransitionOutput(transition));
+                current = hypothesis.getSuccessor(transition);
+                configurations.add(current);
+            }
+            return Word.fromList(outputs);
+        }
+
+        /**
+         * Returns the configurations of the last simulation, one before every symbol and one after the last symbol.
+         */
+        List<State<I, S>> getConfigurations() {
+            return Collections.unmodifiableList(configurations);
+        }
+
+        /**
+         * Returns the index of the first simulated output that differs from the expected one, -1 if there is none.
+         * Outputs that agreed before are not compared again.
+         */
+        int findFirstDifference(Word<O> expected) {
+            for (int i = agreed; i < outputs.size(); i++) {
+                if (!Objects.equals(expected.getSymbol(i), outputs.get(i))) {
+                    agreed = i;
+                    return i;
+                }
+            }
+            agreed = outputs.size();
+            return -1;
+        }
+
+        /**
+         * Drops the simulation from the call that first entered the given procedure on.
+         */
+        void resumeBefore(I procedure) {
+            for (int i = 0; i < configurations.size(); i++) {
+                if (procedure.equals(configurations.get(i).getFirst())) {
+                    final int resume = Math.max(i - 1, 0);
+                    configurations.subList(resume + 1, configurations.size()).clear();
+                    outputs.subList(resume, outputs.size()).clear();
+                    agreed = Math.min(agreed, resume);
+                    return;
+                }
+            }
+        }
+    }
+}
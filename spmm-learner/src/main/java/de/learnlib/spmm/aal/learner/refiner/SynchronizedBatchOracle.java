@@ -0,0 +1,164 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.aal.learner.refiner;
+
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.Query;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Membership oracle that combines the queries of concurrently running parties into one batch. Every party registers
+ * before it starts to ask queries and deregisters when it is done. A party that asks queries waits until all other
+ * registered parties wait as well, the last one then answers the queries of all of them with a single call to the
+ * delegate. Without registered parties queries are passed on directly.
+ * <p>
+ * Waiting parties are blocked in a {@link ForkJoinPool.ManagedBlocker}, so they may run in a fork/join pool.
+ *
+ * @param <I> input symbol type
+ * @param <D> output domain type
+ */
+class SynchronizedBatchOracle<I, D> implements MembershipOracle<I, D> {
+
+    private final MembershipOracle<I, D> delegate;
+
+    private int parties;
+    private int waiting;
+    private List<Query<I, D>> pending = new ArrayList<>();
+    // the batch that currently collects queries, and the number of batches that have been answered
+    private long open;
+    private long answered;
+    // the last failure of the delegate and the batch it belongs to
+    private RuntimeException failure;
+    private long failedBatch = -1;
+
+    SynchronizedBatchOracle(MembershipOracle<I, D> delegate) {
+        this.delegate = delegate;
+    }
+
+    synchronized void register() {
+        parties++;
+    }
+
+    void deregister() {
+        final long batch;
+        final List<Query<I, D>> queries;
+        synchronized (this) {
+            parties--;
+            if (waiting == 0 || waiting < parties) {
+                return;
+            }
+            batch = open;
+            queries = close();
+        }
+        answer(batch, queries);
+    }
+
+    @Override
+    public void processQueries(@Nullable Collection<? extends Query<I, D>> collection) {
+        if (collection == null || collection.isEmpty()) {
+            return;
+        }
+
+        final long batch;
+        final List<Query<I, D>> queries;
+        synchronized (this) {
+            if (parties == 0) {
+                batch = -1;
+                queries = null;
+            } else {
+                pending.addAll(collection);
+                waiting++;
+                batch = open;
+                queries = waiting < parties ? null : close();
+            }
+        }
+
+        if (batch < 0) {
+            delegate.processQueries(collection);
+            return;
+        }
+        if (queries != null) {
+            answer(batch, queries);
+        }
+
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+
+                @Override
+                public boolean block() throws InterruptedException {
+                    synchronized (SynchronizedBatchOracle.this) {
+                        while (answered <= batch) {
+                            SynchronizedBatchOracle.this.wait();
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    synchronized (SynchronizedBatchOracle.this) {
+                        return answered > batch;
+                    }
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a batch of queries.", e);
+        }
+
+        synchronized (this) {
+            if (failure != null && failedBatch == batch) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Closes the open batch and returns its queries, must be called while holding the lock.
+     */
+    private List<Query<I, D>> close() {
+        final List<Query<I, D>> queries = pending;
+        pending = new ArrayList<>();
+        waiting = 0;
+        open++;
+        return queries;
+    }
+
+    /**
+     * Answers the queries of a closed batch without holding the lock and wakes up its parties. Since a batch is
+     * only closed once all registered parties wait, batches are answered one after another.
+     */
+    private void answer(long batch, List<Query<I, D>> queries) {
+        RuntimeException error = null;
+        try {
+            delegate.processQueries(queries);
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        synchronized (this) {
+            if (error != null) {
+                failure = error;
+                failedBatch = batch;
+            }
+            answered = batch + 1;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.aal.learner.refiner;
+
+import net.automatalib.words.Word;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers the terminating sequences that were found conform to the sub-models. A check stays valid as long as the
+ * terminating sequence of the procedure is the same and none of the procedures it embeds got a new sub-model since.
+ *
+ * @param <I> input symbol type
+ */
+class TSConformanceCache<I> {
+
+    // the revision of every sub-model, increased whenever a sub-model is replaced
+    private final Map<I, Long> subModelRevisions = new HashMap<>();
+    private long revision = 0;
+    private final Map<I, Conformance<I>> conformances = new HashMap<>();
+
+    /**
+     * Returns the current sub-model revision, which a check has to pass to {@link #setConform} once it is done.
+     */
+    long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Invalidates the checks of all terminating sequences that embed the given procedure.
+     */
+    void replaceSubModel(I procedure) {
+        subModelRevisions.put(procedure, ++revision);
+    }
+
+    boolean isKnownConform(I procedure, Word<I> terminatingSequence) {
+        final Conformance<I> conformance = conformances.get(procedure);
+        if (conformance == null || !conformance.terminatingSequence.equals(terminatingSequence)) {
+            return false;
+        }
+        for (final I embedded : conformance.embeddedProcedures) {
+            if (subModelRevisions.getOrDefault(embedded, 0L) > conformance.revision) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param revision the sub-model revision at the start of the check, see {@link #getRevision()}
+     */
+    void setConform(I procedure, Word<I> terminatingSequence, Set<I> embeddedProcedures, long revision) {
+        conformances.put(procedure, new Conformance<>(terminatingSequence, embeddedProcedures, revision));
+    }
+
+    void setNonConform(I procedure) {
+        conformances.remove(procedure);
+    }
+
+    /**
+     * A terminating sequence that was found conform, together with the procedures it embeds and the sub-model
+     * revision at the time of the check.
+     */
+    private static final class Conformance<I> {
+
+        private final Word<I> terminatingSequence;
+        private final Set<I> embeddedProcedures;
+        private final long revision;
+
+        Conformance(Word<I> terminatingSequence, Set<I> embeddedProcedures, long revision) {
+            this.terminatingSequence = terminatingSequence;
+            this.embeddedProcedures = embeddedProcedures;
+            this.revision = revision;
+        }
+    }
+}
@@ -30,7 +30,9 @@ import net.automatalib.words.Word;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -93,8 +95,29 @@ public class SPMMEqOr<S, I, O>
             @Nonnull SPMM<S, I, J, O> hypothesis,
             @Nonnull SPMMBuilder<S, I, J, O> builder,
             @Nonnull Set<I> activeAlphabet) {
+        final List<DefaultQuery<I, Word<O>>> counterexamples = findCounterexamples(hypothesis, activeAlphabet, false);
+        return counterexamples.isEmpty() ? null : counterexamples.get(0);
+    }
+
+    /**
+     * Returns one counterexample for every procedure of the hypothesis with a separating word. If there is none,
+     * one counterexample for every procedure without access sequence or without terminating sequence is returned.
+     */
+    @Nonnull
+    @Override
+    public <J> List<DefaultQuery<I, Word<O>>> getSPMMQueriesForCounterExamples(
+            @Nonnull SPMM<S, I, J, O> hypothesis,
+            @Nonnull SPMMBuilder<S, I, J, O> builder,
+            @Nonnull Set<I> activeAlphabet) {
+        return findCounterexamples(hypothesis, activeAlphabet, true);
+    }
+
+    private List<DefaultQuery<I, Word<O>>> findCounterexamples(SPMM<S, I, ?, O> hypothesis,
+                                                               Set<I> activeAlphabet,
+                                                               boolean all) {
 
         checkAlphabetCompatibility(hypothesis);
+        final List<DefaultQuery<I, Word<O>>> counterexamples = new ArrayList<>();
 
         // first counterexample
         if (!Objects.equals(spmm.getInitialCall(), hypothesis.getInitialCall())) {
@@ -102,7 +125,8 @@ public class SPMMEqOr<S, I, O>
             final I input = spmm.getInputAlphabet().getInternalSymbol(0);
             final Word<I> ce = Word.fromSymbols(spmm.getInitialCall(), input);
 
-            return new DefaultQuery<>(ce, spmm.computeOutput(ce));
+            counterexamples.add(new DefaultQuery<>(ce, spmm.computeOutput(ce)));
+            return counterexamples;
         }
 
         for (final I identifier : hypothesis.getProcedures().keySet()) {
@@ -140,9 +164,15 @@ public class SPMMEqOr<S, I, O>
                 System.out.println("Expanded counterexample has input: " + globalQuery.getInput()
                         + " , output: " + globalQuery.getOutput());*/
 
-                return globalQuery;
+                counterexamples.add(globalQuery);
+                if (!all) {
+                    return counterexamples;
+                }
             }
         }
+        if (!counterexamples.isEmpty()) {
+            return counterexamples;
+        }
 
         // if not all procedures in hypothesis have access sequences
         if (!hypothesis.getProcedures().keySet().containsAll(spmm.getInputAlphabet().getCallAlphabet())) {
@@ -155,10 +185,16 @@ public class SPMMEqOr<S, I, O>
                             Word.fromLetter(identifier),
                             Word.fromLetter(spmm.getInputAlphabet().getInternalSymbol(0)));
 
-                    return new DefaultQuery<>(input, spmm.computeOutput(input));
+                    counterexamples.add(new DefaultQuery<>(input, spmm.computeOutput(input)));
+                    if (!all) {
+                        return counterexamples;
+                    }
                 }
             }
         }
+        if (!counterexamples.isEmpty()) {
+            return counterexamples;
+        }
 
         // if not all procedures in hypothesis have terminating sequences
         if (!activeAlphabet.containsAll(spmm.getInputAlphabet().getCallAlphabet())) {
@@ -169,12 +205,15 @@ public class SPMMEqOr<S, I, O>
                             Word.fromLetter(identifier),
                             terminatingSequences.get(identifier));
 
-                    return new DefaultQuery<>(input, spmm.computeOutput(input));
+                    counterexamples.add(new DefaultQuery<>(input, spmm.computeOutput(input)));
+                    if (!all) {
+                        return counterexamples;
+                    }
                 }
             }
         }
 
-        return null;
+        return counterexamples;
     }
 
 
@@ -21,6 +21,8 @@ import net.automatalib.words.Word;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -44,4 +46,19 @@ public interface SPMMEquivalenceOracle<S, I, O> {
             @Nonnull SPMMBuilder<S, I, J, O> builder,
             @Nonnull Set<I> activeAlphabet);
 
+    /**
+     * Returns counterexamples for the hypothesis, ideally one for every procedure that is wrong, so several
+     * procedures can be refined in one round. An empty list is returned if no counterexample could be found.
+     * By default this is the single counterexample of {@link #getSPMMQueryForCounterExample(SPMM, SPMMBuilder, Set)}.
+     */
+    @Nonnull
+    default <J> List<DefaultQuery<I, Word<O>>> getSPMMQueriesForCounterExamples(
+            @Nonnull SPMM<S, I, J, O> hypothesis,
+            @Nonnull SPMMBuilder<S, I, J, O> builder,
+            @Nonnull Set<I> activeAlphabet) {
+        final DefaultQuery<I, Word<O>> counterexample =
+                getSPMMQueryForCounterExample(hypothesis, builder, activeAlphabet);
+        return counterexample == null ? Collections.emptyList() : Collections.singletonList(counterexample);
+    }
+
 }
@@ -0,0 +1,65 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.membershiporacle;
+
+import de.learnlib.spmm.model.IntSPMM;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Membership oracle that simulates an {@link IntSPMM} on ids. Queries are arranged in the same prefix trie as in
+ * {@link SPMMSimulatorOracle}, each edge of the trie maps its input symbol to the dense id and the output id back to
+ * the symbol, in between the simulation only works on ints.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+public class IntSPMMSimulatorOracle<I, O> extends TrieSimulatorOracle<I, IntSPMM.IntCursor, O> {
+
+    private final IntSPMM<I, O> spmm;
+    private final SPMMInputAlphabet<I> inputAlphabet;
+
+    public IntSPMMSimulatorOracle(IntSPMM<I, O> spmm) {
+        this(spmm, null);
+    }
+
+    public IntSPMMSimulatorOracle(IntSPMM<I, O> spmm, @Nullable ForkJoinPool pool) {
+        super(pool);
+        this.spmm = spmm;
+        this.inputAlphabet = spmm.getInputAlphabet();
+    }
+
+    @Override
+    IntSPMM.IntCursor cursor() {
+        return spmm.intCursor();
+    }
+
+    @Override
+    IntSPMM.IntCursor copy(IntSPMM.IntCursor cursor) {
+        return cursor.copy();
+    }
+
+    @Override
+    O step(IntSPMM.IntCursor cursor, I input) {
+        return spmm.getOutputSymbol(cursor.step(inputId(input)));
+    }
+
+    private int inputId(I symbol) {
+        final int code = inputAlphabet.getSymbolCode(symbol);
+        return code < 0 ? -1 : SPMMInputAlphabet.symbolIndex(code);
+    }
+}
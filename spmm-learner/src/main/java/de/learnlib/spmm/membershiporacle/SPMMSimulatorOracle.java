@@ -0,0 +1,83 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.membershiporacle;
+
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.spmm.model.IntSPMM;
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.SPMMCursor;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Membership oracle that answers queries by simulating an {@link SPMM}. In contrast to a plain simulator oracle, a
+ * batch of queries is first arranged in a prefix trie, so input prefixes that are shared by several queries (e.g. the
+ * access sequence and call symbol that the {@link de.learnlib.spmm.aal.learner.refiner.ProceduralMembershipOracle}
+ * prepends to every local query) are simulated only once. The trie is walked with an {@link SPMMCursor}, which is only
+ * copied at the divergence points of the trie.
+ * <p>
+ * If a {@link ForkJoinPool} is given, large subtrees of the trie are simulated in parallel. Queries are then answered
+ * from the worker threads of the pool and the SPMM must not be modified concurrently, see
+ * {@link de.learnlib.spmm.model.SPMMBuilder#freeze(SPMM)}.
+ * <p>
+ * Use {@link #create(SPMM, ForkJoinPool)} to simulate {@link IntSPMM}s on ids.
+ *
+ * @param <S> state type
+ * @param <I> input symbol type
+ * @param <T> transition type
+ * @param <O> output symbol type
+ */
+public class SPMMSimulatorOracle<S, I, T, O> extends TrieSimulatorOracle<I, SPMMCursor<I, O>, O> {
+
+    private final SPMM<S, I, T, O> spmm;
+
+    public SPMMSimulatorOracle(SPMM<S, I, T, O> spmm) {
+        this(spmm, null);
+    }
+
+    public SPMMSimulatorOracle(SPMM<S, I, T, O> spmm, @Nullable ForkJoinPool pool) {
+        super(pool);
+        this.spmm = spmm;
+    }
+
+    /**
+     * Returns a simulator oracle for the given SPMM, which simulates {@link IntSPMM}s on ids and all other SPMMs on
+     * symbols.
+     */
+    @SuppressWarnings("unchecked")
+    public static <S, I, T, O> MembershipOracle.MealyMembershipOracle<I, O> create(SPMM<S, I, T, O> spmm,
+                                                                                  @Nullable ForkJoinPool pool) {
+        if (spmm instanceof IntSPMM) {
+            return new IntSPMMSimulatorOracle<>((IntSPMM<I, O>) spmm, pool);
+        }
+        return new SPMMSimulatorOracle<>(spmm, pool);
+    }
+
+    @Override
+    SPMMCursor<I, O> cursor() {
+        return spmm.cursor();
+    }
+
+    @Override
+    SPMMCursor<I, O> copy(SPMMCursor<I, O> cursor) {
+        return cursor.copy();
+    }
+
+    @Override
+    O step(SPMMCursor<I, O> cursor, I input) {
+        return cursor.step(input);
+    }
+}
@@ -0,0 +1,202 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.membershiporacle;
+
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.Query;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Base of the simulator oracles that arrange a batch of queries in a prefix trie, so input prefixes that are shared by
+ * several queries are simulated only once. The trie is walked with a single cursor along non-branching runs, the cursor
+ * is only copied at the divergence points of the trie.
+ * <p>
+ * If a {@link ForkJoinPool} is given, large subtrees of the trie are simulated in parallel on copies of the cursor.
+ * Queries are then answered from the worker threads of the pool and the simulated system must not be modified
+ * concurrently.
+ *
+ * @param <I> input symbol type
+ * @param <C> cursor type
+ * @param <O> output symbol type
+ */
+abstract class TrieSimulatorOracle<I, C, O> implements MembershipOracle.MealyMembershipOracle<I, O> {
+
+    // number of queries below which a subtree is not forked off
+    private static final int THRESHOLD = 64;
+
+    private final ForkJoinPool pool;
+
+    TrieSimulatorOracle(@Nullable ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns a new cursor in the initial configuration.
+     */
+    abstract C cursor();
+
+    /**
+     * Returns an independent copy of the given cursor.
+     */
+    abstract C copy(C cursor);
+
+    /**
+     * Reads the given input symbol with the given cursor and returns the output.
+     */
+    abstract O step(C cursor, I input);
+
+    @Override
+    public void processQueries(@Nullable Collection<? extends Query<I, Word<O>>> collection) {
+        if (collection == null || collection.isEmpty()) {
+            return;
+        }
+
+        final Node<I, O> root = new Node<>();
+        for (Query<I, Word<O>> query : collection) {
+            root.insert(query);
+        }
+
+        final Walk walk = new Walk(root, cursor(), Word.epsilon());
+        if (pool == null || root.size < 2 * THRESHOLD) {
+            walk.compute();
+        } else {
+            pool.invoke(walk);
+        }
+    }
+
+    /**
+     * Walks a subtree of the trie depth-first. The outputs of the current path are kept in a single builder, which is
+     * truncated when the walk backtracks to a divergence point.
+     */
+    private final class Walk extends RecursiveAction {
+
+        private final Node<I, O> node;
+        private final C cursor;
+        private final Word<O> prefixOutput;
+
+        Walk(Node<I, O> node, C cursor, Word<O> prefixOutput) {
+            this.node = node;
+            this.cursor = cursor;
+            this.prefixOutput = prefixOutput;
+        }
+
+        @Override
+        protected void compute() {
+            // a walk outside the pool, e.g. of a small trie, forks nothing, as fork() would schedule in another pool
+            final boolean parallel = pool != null && ForkJoinTask.getPool() == pool;
+            final List<Walk> forked = new ArrayList<>();
+            final WordBuilder<O> path = new WordBuilder<>(prefixOutput);
+            final Deque<Frame<I, C, O>> frames = new ArrayDeque<>();
+            frames.push(new Frame<>(node, cursor, prefixOutput.length(), null));
+
+            while (!frames.isEmpty()) {
+                final Frame<I, C, O> frame = frames.pop();
+                if (frame.output != null) {
+                    path.truncate(frame.depth - 1);
+                    path.append(frame.output);
+                }
+
+                // follow the non-branching run with the cursor of the frame
+                Node<I, O> current = frame.node;
+                int depth = frame.depth;
+                answer(current, path, depth);
+                while (current.children.size() == 1) {
+                    final Map.Entry<I, Node<I, O>> child = current.children.entrySet().iterator().next();
+                    path.append(step(frame.cursor, child.getKey()));
+                    current = child.getValue();
+                    depth++;
+                    answer(current, path, depth);
+                }
+
+                // every child but the last one continues on a copy of the cursor
+                final Iterator<Map.Entry<I, Node<I, O>>> iter = current.children.entrySet().iterator();
+                while (iter.hasNext()) {
+                    final Map.Entry<I, Node<I, O>> child = iter.next();
+                    final C childCursor = iter.hasNext() ? copy(frame.cursor) : frame.cursor;
+                    final O output = step(childCursor, child.getKey());
+
+                    if (parallel && child.getValue().size >= THRESHOLD) {
+                        final Walk walk = new Walk(child.getValue(), childCursor, path.toWord().append(output));
+                        walk.fork();
+                        forked.add(walk);
+                    } else {
+                        frames.push(new Frame<>(child.getValue(), childCursor, depth + 1, output));
+                    }
+                }
+            }
+
+            for (Walk walk : forked) {
+                walk.join();
+            }
+        }
+
+        private void answer(Node<I, O> node, WordBuilder<O> path, int depth) {
+            for (Query<I, Word<O>> query : node.queries) {
+                query.answer(path.toWord(query.getPrefix().length(), depth));
+            }
+        }
+    }
+
+    private static final class Node<I, O> {
+
+        private final Map<I, Node<I, O>> children = new HashMap<>(4);
+        private final List<Query<I, Word<O>>> queries = new ArrayList<>(1);
+        // number of queries in this subtree
+        private int size;
+
+        void insert(Query<I, Word<O>> query) {
+            Node<I, O> node = this;
+            node.size++;
+            for (I symbol : query.getPrefix()) {
+                node = node.children.computeIfAbsent(symbol, s -> new Node<>());
+                node.size++;
+            }
+            for (I symbol : query.getSuffix()) {
+                node = node.children.computeIfAbsent(symbol, s -> new Node<>());
+                node.size++;
+            }
+            node.queries.add(query);
+        }
+    }
+
+    private static final class Frame<I, C, O> {
+
+        private final Node<I, O> node;
+        private final C cursor;
+        private final int depth;
+        private final O output;
+
+        Frame(Node<I, O> node, C cursor, int depth, O output) {
+            this.node = node;
+            this.cursor = cursor;
+            this.depth = depth;
+            this.output = output;
+        }
+    }
+}
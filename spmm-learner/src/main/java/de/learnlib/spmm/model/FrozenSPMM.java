@@ -0,0 +1,163 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model;
+
+import de.learnlib.api.oracle.QueryAnswerer;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.componenets.State;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.graphs.Graph;
+import net.automatalib.words.Word;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of an SPMM, created by {@link SPMMBuilder#freeze(SPMM)}. The snapshot owns a private copy of
+ * the SPMM that is never handed out, so its activated calls and alphabets cannot change anymore and the snapshot can
+ * be shared by concurrent simulations without further synchronization. {@link #addActivatedCall(Object)} is not
+ * supported.
+ * <p>
+ * The procedures themselves are shared with the original SPMM and must not be modified after freezing.
+ *
+ * @param <S> state type
+ * @param <I> input symbol type
+ * @param <J> transition type
+ * @param <O> output symbol type
+ */
+public final class FrozenSPMM<S, I, J, O> implements SPMM<S, I, J, O>, QueryAnswerer<I, Word<O>> {
+
+    private final SPMM<S, I, J, O> delegate;
+    private final Set<I> activatedCalls;
+    private final SPMMInputAlphabet<I> inputAlphabetWithOnlyActivatedCalls;
+    private final Map<I, MealyMachine<S, I, ?, O>> procedures;
+
+    // use SPMMBuilder#freeze
+    FrozenSPMM(@Nonnull SPMM<S, I, J, O> delegate) {
+        this.delegate = delegate;
+        this.activatedCalls = Collections.unmodifiableSet(new LinkedHashSet<>(delegate.getActivatedCalls()));
+        this.inputAlphabetWithOnlyActivatedCalls = delegate.getInputAlphabetWithOnlyActivatedCalls();
+        this.procedures = Collections.unmodifiableMap(new HashMap<>(delegate.getProcedures()));
+    }
+
+    @Nonnull
+    @Override
+    public SPMMInputAlphabet<I> getInputAlphabet() {
+        return delegate.getInputAlphabet();
+    }
+
+    @Override
+    public void addActivatedCall(I identifier) {
+        throw new UnsupportedOperationException("a frozen SPMM cannot be modified");
+    }
+
+    @Nonnull
+    @Override
+    public Set<I> getActivatedCalls() {
+        return activatedCalls;
+    }
+
+    @Nonnull
+    @Override
+    public SPMMInputAlphabet<I> getInputAlphabetWithOnlyActivatedCalls() {
+        return inputAlphabetWithOnlyActivatedCalls;
+    }
+
+    @Nonnull
+    @Override
+    public SPMMOutputAlphabet<O> getOutputAlphabet() {
+        return delegate.getOutputAlphabet();
+    }
+
+    @Nonnull
+    @Override
+    public Word<O> computeSuffixOutput(@Nonnull Iterable<? extends I> prefix, @Nonnull Iterable<? extends I> suffix) {
+        return delegate.computeSuffixOutput(prefix, suffix);
+    }
+
+    @Nonnull
+    @Override
+    public Word<O> computeOutput(@Nonnull Iterable<? extends I> input) {
+        return delegate.computeOutput(input);
+    }
+
+    @Nonnull
+    @Override
+    public Word<O> answerQuery(@Nonnull Word<I> prefix, @Nonnull Word<I> suffix) {
+        return delegate.computeSuffixOutput(prefix, suffix);
+    }
+
+    @Override
+    public Graph<?, ?> graphView() {
+        return delegate.graphView();
+    }
+
+    @Nullable
+    @Override
+    public State<I, S> getInitialState() {
+        return delegate.getInitialState();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Nullable
+    @Override
+    public I getInitialCall() {
+        return delegate.getInitialCall();
+    }
+
+    @Nonnull
+    @Override
+    public Map<I, MealyMachine<S, I, ?, O>> getProcedures() {
+        return procedures;
+    }
+
+    @Nonnull
+    @Override
+    public SPMMCursor<I, O> cursor() {
+        return delegate.cursor();
+    }
+
+    @Nullable
+    @Override
+    public J getTransition(State<I, S> state, @Nullable I input) {
+        return delegate.getTransition(state, input);
+    }
+
+    @Nullable
+    @Override
+    public State<I, S> getSuccessor(State<I, S> state, @Nullable I input) {
+        return delegate.getSuccessor(state, input);
+    }
+
+    @Override
+    public State<I, S> getSuccessor(J transition) {
+        return delegate.getSuccessor(transition);
+    }
+
+    @Override
+    public O getTransitionOutput(J transition) {
+        return delegate.getTransitionOutput(transition);
+    }
+}
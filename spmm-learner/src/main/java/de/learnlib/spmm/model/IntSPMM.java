@@ -0,0 +1,87 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model;
+
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An SPMM that can be simulated on dense integer ids instead of symbol objects. The id of an input symbol is its index
+ * in {@link #getInputAlphabet()}, output ids are resolved by {@link #getOutputSymbol(int)}. Input words are plain
+ * {@code int[]}s, so a simulation on ids neither boxes nor hashes symbols.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+public interface IntSPMM<I, O> {
+
+    @Nonnull
+    SPMMInputAlphabet<I> getInputAlphabet();
+
+    /**
+     * Returns the number of distinct output ids.
+     */
+    int getNumOutputIds();
+
+    /**
+     * Returns the output symbol of the given output id.
+     */
+    @Nonnull
+    O getOutputSymbol(int id);
+
+    /**
+     * Returns a new cursor for a stepwise simulation on ids.
+     */
+    @Nonnull
+    IntCursor intCursor();
+
+    /**
+     * Computes the output ids for the given input ids.
+     */
+    @Nonnull
+    default int[] computeOutput(@Nonnull int[] input) {
+        final IntCursor cursor = intCursor();
+        final int[] output = new int[input.length];
+        for (int i = 0; i < input.length; i++) {
+            output[i] = cursor.step(input[i]);
+        }
+        return output;
+    }
+
+    /**
+     * The id-based counterpart of {@link SPMMCursor}. Not thread-safe.
+     */
+    interface IntCursor {
+
+        void reset();
+
+        /**
+         * Reads the input symbol with the given id.
+         *
+         * @param input the id of the input symbol, or {@code -1} for a symbol that is not part of the input alphabet
+         * @return the id of the output symbol
+         */
+        int step(int input);
+
+        int depth();
+
+        /**
+         * Returns an independent cursor in the current configuration of this cursor, see {@link SPMMCursor#copy()}.
+         */
+        @Nonnull
+        IntCursor copy();
+    }
+}
@@ -0,0 +1,97 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model;
+
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork-join task behind {@link SPMM#computeOutputs(Collection, ForkJoinPool)}. A batch is split in halves until it is
+ * small enough to be simulated sequentially with a single cursor.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+final class ParallelSimulation<I, O> extends RecursiveAction {
+
+    // number of words that are not split any further
+    private static final int THRESHOLD = 64;
+
+    private final SPMM<?, I, ?, O> spmm;
+    private final List<? extends Word<? extends I>> inputs;
+    private final Word<O>[] outputs;
+    private final int from;
+    private final int to;
+
+    private ParallelSimulation(SPMM<?, I, ?, O> spmm,
+                               List<? extends Word<? extends I>> inputs,
+                               Word<O>[] outputs,
+                               int from,
+                               int to) {
+        this.spmm = spmm;
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.from = from;
+        this.to = to;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <I, O> List<Word<O>> computeOutputs(SPMM<?, I, ?, O> spmm,
+                                               Collection<? extends Word<? extends I>> inputs,
+                                               ForkJoinPool pool) {
+        final List<? extends Word<? extends I>> list = new ArrayList<>(inputs);
+        final Word<O>[] outputs = new Word[list.size()];
+        final ParallelSimulation<I, O> task = new ParallelSimulation<>(spmm, list, outputs, 0, outputs.length);
+
+        if (outputs.length <= THRESHOLD) {
+            task.simulate();
+        } else {
+            pool.invoke(task);
+        }
+        return Collections.unmodifiableList(Arrays.asList(outputs));
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= THRESHOLD) {
+            simulate();
+        } else {
+            final int mid = (from + to) >>> 1;
+            invokeAll(new ParallelSimulation<>(spmm, inputs, outputs, from, mid),
+                    new ParallelSimulation<>(spmm, inputs, outputs, mid, to));
+        }
+    }
+
+    private void simulate() {
+        final SPMMCursor<I, O> cursor = spmm.cursor();
+        final WordBuilder<O> wb = new WordBuilder<>();
+        for (int i = from; i < to; i++) {
+            cursor.reset();
+            wb.clear();
+            for (I symbol : inputs.get(i)) {
+                wb.append(cursor.step(symbol));
+            }
+            outputs[i] = wb.toWord();
+        }
+    }
+}
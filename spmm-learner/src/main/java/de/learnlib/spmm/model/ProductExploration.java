@@ -0,0 +1,215 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model;
+
+import de.learnlib.spmm.model.componenets.State;
+import de.learnlib.spmm.model.componenets.StateInterner;
+import net.automatalib.words.Word;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Breadth-first search behind {@link SPMMEquivalenceChecker#findSeparatingWord(SPMM, SPMM, int, ForkJoinPool)}. The
+ * search runs over pairs of configurations that are reachable by the same word in both SPMMs, one level (i.e. word
+ * length) at a time, so the first pair with different outputs yields a shortest separating word. Configurations are
+ * interned, so pairs are compared by identity and all configurations share their stacks. Large levels are expanded in
+ * parallel, the expanded successors are then checked against the visited pairs sequentially and in level order.
+ *
+ * @param <S1> state type of the first SPMM
+ * @param <J1> transition type of the first SPMM
+ * @param <S2> state type of the second SPMM
+ * @param <J2> transition type of the second SPMM
+ * @param <I>  input symbol type
+ * @param <O>  output symbol type
+ */
+final class ProductExploration<S1, J1, S2, J2, I, O> {
+
+    // number of pairs of a level that are not split any further
+    private static final int THRESHOLD = 64;
+
+    private final SPMM<S1, I, J1, O> first;
+    private final SPMM<S2, I, J2, O> second;
+    private final List<I> inputs;
+    private final int maxStackDepth;
+    private final ForkJoinPool pool;
+
+    private final StateInterner<I, S1> firstInterner = new StateInterner<>();
+    private final StateInterner<I, S2> secondInterner = new StateInterner<>();
+    // only accessed between the expansions of two levels
+    private final Set<Pair<I, S1, S2>> visited = new HashSet<>();
+
+    ProductExploration(SPMM<S1, I, J1, O> first, SPMM<S2, I, J2, O> second, int maxStackDepth, ForkJoinPool pool) {
+        this.first = first;
+        this.second = second;
+        this.inputs = new ArrayList<>(first.getInputAlphabet());
+        this.maxStackDepth = maxStackDepth;
+        this.pool = pool;
+    }
+
+    Word<I> run() {
+        final State<I, S1> firstInit = first.getInitialState();
+        final State<I, S2> secondInit = second.getInitialState();
+        if (firstInit == null || secondInit == null) {
+            throw new IllegalArgumentException("both SPMMs need an initial state");
+        }
+
+        final Pair<I, S1, S2> init =
+                new Pair<>(firstInterner.intern(firstInit), secondInterner.intern(secondInit), null, null);
+        visited.add(init);
+
+        List<Pair<I, S1, S2>> level = Collections.singletonList(init);
+        while (!level.isEmpty()) {
+            final Expansion expansion = new Expansion(level, 0, level.size());
+            if (level.size() <= THRESHOLD) {
+                expansion.expand();
+            } else {
+                pool.invoke(expansion);
+            }
+            if (expansion.separatingWord != null) {
+                return expansion.separatingWord;
+            }
+
+            final List<Pair<I, S1, S2>> next = new ArrayList<>();
+            for (Pair<I, S1, S2> successor : expansion.successors) {
+                if (visited.add(successor)) {
+                    next.add(successor);
+                }
+            }
+            level = next;
+        }
+        return null;
+    }
+
+    /**
+     * Expands a range of a level. The results of both halves are merged in order and the successors are not filtered
+     * by the visited pairs yet, so the successors and the separating word do not depend on the scheduling.
+     */
+    private final class Expansion extends RecursiveAction {
+
+        private final List<Pair<I, S1, S2>> level;
+        private final int from;
+        private final int to;
+
+        private List<Pair<I, S1, S2>> successors = new ArrayList<>();
+        private Word<I> separatingWord;
+
+        Expansion(List<Pair<I, S1, S2>> level, int from, int to) {
+            this.level = level;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                expand();
+            } else {
+                final int mid = (from + to) >>> 1;
+                final Expansion left = new Expansion(level, from, mid);
+                final Expansion right = new Expansion(level, mid, to);
+                invokeAll(left, right);
+
+                separatingWord = left.separatingWord != null ? left.separatingWord : right.separatingWord;
+                successors = left.successors;
+                successors.addAll(right.successors);
+            }
+        }
+
+        void expand() {
+            for (int p = from; p < to && separatingWord == null; p++) {
+                final Pair<I, S1, S2> pair = level.get(p);
+                for (I input : inputs) {
+                    final J1 firstTransition = first.getTransition(pair.first, input);
+                    final J2 secondTransition = second.getTransition(pair.second, input);
+                    if (firstTransition == null || secondTransition == null) {
+                        if (firstTransition != secondTransition) {
+                            separatingWord = pair.accessWord().append(input);
+                            break;
+                        }
+                        continue;
+                    }
+                    if (!Objects.equals(first.getTransitionOutput(firstTransition),
+                            second.getTransitionOutput(secondTransition))) {
+                        separatingWord = pair.accessWord().append(input);
+                        break;
+                    }
+
+                    final State<I, S1> firstSuccessor = first.getSuccessor(firstTransition);
+                    final State<I, S2> secondSuccessor = second.getSuccessor(secondTransition);
+                    if (firstSuccessor.getStack().depth() > maxStackDepth ||
+                            secondSuccessor.getStack().depth() > maxStackDepth) {
+                        continue;
+                    }
+                    successors.add(new Pair<>(firstInterner.intern(firstSuccessor),
+                            secondInterner.intern(secondSuccessor), pair, input));
+                }
+            }
+        }
+    }
+
+    /**
+     * A pair of interned configurations, with the pair and input it was reached from first.
+     */
+    private static final class Pair<I, S1, S2> {
+
+        private final State<I, S1> first;
+        private final State<I, S2> second;
+        private final Pair<I, S1, S2> predecessor;
+        private final I input;
+        private final int hash;
+
+        Pair(State<I, S1> first, State<I, S2> second, Pair<I, S1, S2> predecessor, I input) {
+            this.first = first;
+            this.second = second;
+            this.predecessor = predecessor;
+            this.input = input;
+            this.hash = 31 * System.identityHashCode(first) + System.identityHashCode(second);
+        }
+
+        Word<I> accessWord() {
+            final List<I> word = new ArrayList<>();
+            for (Pair<I, S1, S2> current = this; current.predecessor != null; current = current.predecessor) {
+                word.add(current.input);
+            }
+            Collections.reverse(word);
+            return Word.fromList(word);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Pair)) {
+                return false;
+            }
+            // the configurations are interned
+            final Pair<?, ?, ?> that = (Pair<?, ?, ?>) o;
+            return first == that.first && second == that.second;
+        }
+    }
+}
@@ -27,8 +27,11 @@ import net.automatalib.words.Word;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A system of procedural mealy-machines.
@@ -86,4 +89,34 @@ public interface SPMM<S, I, J, O> extends
     @Nonnull
     Map<I, MealyMachine<S, I, ?, O>> getProcedures();
 
+    /**
+     * Computes the outputs of the given input words on the common fork-join pool.
+     *
+     * @see #computeOutputs(Collection, ForkJoinPool)
+     */
+    @Nonnull
+    default List<Word<O>> computeOutputs(@Nonnull Collection<? extends Word<? extends I>> inputs) {
+        return computeOutputs(inputs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the outputs of the given input words, in the iteration order of the collection. Large batches are split
+     * over the given pool, each part is simulated with its own {@link #cursor() cursor}. The SPMM must not be modified
+     * while the outputs are computed, see {@link SPMMBuilder#freeze(SPMM)}.
+     */
+    @Nonnull
+    default List<Word<O>> computeOutputs(@Nonnull Collection<? extends Word<? extends I>> inputs,
+                                         @Nonnull ForkJoinPool pool) {
+        return ParallelSimulation.computeOutputs(this, inputs, pool);
+    }
+
+    /**
+     * Returns a new cursor for a stepwise simulation of this SPMM. The default implementation walks the transition
+     * system and therefore allocates a state and a transition per symbol, implementations should override it.
+     */
+    @Nonnull
+    default SPMMCursor<I, O> cursor() {
+        return new TransitionCursor<>(this, getInitialState());
+    }
+
 }
@@ -14,13 +14,16 @@
  */
 package de.learnlib.spmm.model;
 
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
 import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
 import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
 import net.automatalib.automata.transout.MealyMachine;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 
@@ -59,7 +62,88 @@ public interface SPMMBuilder<S, I, J, O> {
     SPMM<S, I, J, O> copySPMMAddInitialCallProcedure(@Nonnull SPMM<S, I, J, O> original,
                                                         @Nonnull I callSymbol, @Nonnull MealyMachine<S, I, ?, O> procedure);
 
+    /**
+     * Returns a copy of the given SPMM with the given procedures, e.g. after some procedures of a hypothesis were
+     * refined. The procedures must be defined for the same call symbols as the procedures of the original, the copy
+     * keeps the alphabets, the activated calls and the initial call of the original.
+     */
     @Nonnull
-    SPMMInputAlphabet<I> filterCallAlphabet(@Nonnull Collection<I> filter, @Nonnull SPMMInputAlphabet<I> inputAlphabet);
+    default SPMM<S, I, J, O> copySPMMReplaceProcedures(@Nonnull SPMM<S, I, J, O> original,
+                                                       @Nonnull Map<I, ? extends MealyMachine<S, I, ?, O>> procedures) {
+        return createSPMM(original.getInputAlphabet(),
+                new ArrayList<>(original.getActivatedCalls()),
+                original.getOutputAlphabet(),
+                original.getInitialCall(),
+                new HashMap<>(procedures));
+    }
+
+    /**
+     * Returns the given input alphabet with only the call symbols contained in the given filter. The result shares its
+     * internal and return symbols with the given alphabet, and the given alphabet itself is returned if no call symbol
+     * is filtered out.
+     */
+    @Nonnull
+    default SPMMInputAlphabet<I> filterCallAlphabet(@Nonnull Collection<I> filter,
+                                                    @Nonnull SPMMInputAlphabet<I> inputAlphabet) {
+        return DefaultSPMMInputAlphabet.copyOf(inputAlphabet).retainCalls(filter);
+    }
+
+    /**
+     * Checks the arguments of {@link #createSPMM(SPMMInputAlphabet, SPMMOutputAlphabet, Object, Map)}. The alphabets
+     * must not contain null, every call symbol must have exactly one procedure and the initial call must be a call
+     * symbol or null, even if there are procedures.
+     *
+     * @throws IllegalArgumentException if an argument is not valid
+     */
+    static <I, O> void checkArguments(@Nonnull SPMMInputAlphabet<I> inputAlphabet,
+                                      @Nonnull SPMMOutputAlphabet<O> outputAlphabet,
+                                      @Nullable I initialCall,
+                                      @Nonnull Map<I, ? extends MealyMachine<?, I, ?, O>> procedures) {
+        for (I symbol : inputAlphabet) {
+            if (symbol == null) {
+                throw new IllegalArgumentException("input symbol may not be null");
+            }
+        }
+        for (O symbol : outputAlphabet) {
+            if (symbol == null) {
+                throw new IllegalArgumentException("output symbol may not be null");
+            }
+        }
+
+        for (I callSymbol : procedures.keySet()) {
+            if (callSymbol == null || !inputAlphabet.isCallSymbol(callSymbol)) {
+                throw new IllegalArgumentException("every identifier in the map must be a call symbol");
+            }
+        }
+        for (MealyMachine<?, I, ?, O> mm : procedures.values()) {
+            if (mm == null) {
+                throw new IllegalArgumentException("a procedure may not be null");
+            }
+        }
+        if (procedures.size() != inputAlphabet.getNumCalls()) {
+            throw new IllegalArgumentException("every call symbol must respond to one procedure");
+        }
+
+        if (initialCall != null && !inputAlphabet.getCallAlphabet().containsSymbol(initialCall)) {
+            throw new IllegalArgumentException("initial call must be a call symbol from input alphabet or null");
+        }
+    }
+
+    /**
+     * Returns an immutable snapshot of the given SPMM that can be shared by concurrent simulations. The snapshot is
+     * built from a fresh copy of the SPMM. It simulates the same procedures and shares the special states, so
+     * configurations of the original SPMM are valid for the snapshot as well.
+     */
+    @Nonnull
+    default FrozenSPMM<S, I, J, O> freeze(@Nonnull SPMM<S, I, J, O> spmm) {
+        if (spmm instanceof FrozenSPMM) {
+            return (FrozenSPMM<S, I, J, O>) spmm;
+        }
+        return new FrozenSPMM<>(createSPMM(spmm.getInputAlphabet(),
+                new ArrayList<>(spmm.getActivatedCalls()),
+                spmm.getOutputAlphabet(),
+                spmm.getInitialCall(),
+                new HashMap<>(spmm.getProcedures())));
+    }
 
 }
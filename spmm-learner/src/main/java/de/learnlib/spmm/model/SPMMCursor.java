@@ -0,0 +1,57 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A reusable, stepwise simulation of an {@link SPMM}. A cursor starts in the initial configuration of the SPMM and
+ * reads one input symbol per {@link #step(Object)}. Implementations keep their working state in buffers that are
+ * reused across {@link #reset()}s, so replaying many words with the same cursor does not allocate per symbol.
+ * <p>
+ * Cursors are not thread-safe, use one cursor per thread.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+public interface SPMMCursor<I, O> {
+
+    /**
+     * Moves the cursor back to the initial configuration of the SPMM.
+     */
+    void reset();
+
+    /**
+     * Reads the given input symbol.
+     *
+     * @param input the input symbol
+     * @return the output of the SPMM for the given input symbol
+     */
+    @Nonnull
+    O step(@Nonnull I input);
+
+    /**
+     * Returns the number of pending procedure calls (including the initial call) of the current configuration.
+     */
+    int depth();
+
+    /**
+     * Returns an independent cursor in the current configuration of this cursor, so a simulation can branch without
+     * replaying the common prefix.
+     */
+    @Nonnull
+    SPMMCursor<I, O> copy();
+
+}
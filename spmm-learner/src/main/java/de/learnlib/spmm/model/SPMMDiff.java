@@ -0,0 +1,440 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model;
+
+import de.learnlib.spmm.util.MealyEquivalenceChecker;
+import de.learnlib.spmm.util.MealyEquivalenceChecker.Result;
+import de.learnlib.spmm.util.MealyEquivalenceChecker.Verdict;
+import net.automatalib.automata.concepts.StateIDs;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The structural differences between two SPMMs, e.g. two versions of a system, see
+ * {@link #compute(SPMM, SPMM, ForkJoinPool)}. The differences are reported from the point of view of the first SPMM:
+ * added symbols are only in the second one, removed symbols are only in the first one.
+ * <p>
+ * Procedures are compared over the input symbols both SPMMs have in common. For every changed procedure, the
+ * differing transitions are the first differences along the words of the product of both procedures: their access
+ * words do not separate the procedures, but the access word followed by the input does. Every transition of either
+ * procedure is reported at most once, with a shortest access word.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+public final class SPMMDiff<I, O> {
+
+    private final boolean alphabetsEqual;
+    private final Set<I> addedCalls;
+    private final Set<I> removedCalls;
+    private final Set<I> activatedCalls;
+    private final Set<I> deactivatedCalls;
+    private final Map<I, Word<I>> separatingWords;
+    private final Map<I, List<TransitionDiff<I, O>>> changedProcedures;
+
+    private SPMMDiff(boolean alphabetsEqual,
+                     Set<I> addedCalls,
+                     Set<I> removedCalls,
+                     Set<I> activatedCalls,
+                     Set<I> deactivatedCalls,
+                     Map<I, Word<I>> separatingWords,
+                     Map<I, List<TransitionDiff<I, O>>> changedProcedures) {
+        this.alphabetsEqual = alphabetsEqual;
+        this.addedCalls = Collections.unmodifiableSet(addedCalls);
+        this.removedCalls = Collections.unmodifiableSet(removedCalls);
+        this.activatedCalls = Collections.unmodifiableSet(activatedCalls);
+        this.deactivatedCalls = Collections.unmodifiableSet(deactivatedCalls);
+        this.separatingWords = Collections.unmodifiableMap(separatingWords);
+        this.changedProcedures = Collections.unmodifiableMap(changedProcedures);
+    }
+
+    /**
+     * Computes the differences of the given SPMMs on the common fork-join pool.
+     *
+     * @see #compute(SPMM, SPMM, ForkJoinPool)
+     */
+    @Nonnull
+    public static <I, O> SPMMDiff<I, O> compute(@Nonnull SPMM<?, I, ?, O> first, @Nonnull SPMM<?, I, ?, O> second) {
+        return compute(first, second, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the differences of the given SPMMs. The procedures of the common call symbols are first checked for
+     * equivalence, the differing transitions of the changed ones are then searched, both in parallel on the given
+     * pool.
+     *
+     * @throws IllegalArgumentException if a changed procedure has more than {@link Integer#MAX_VALUE} transitions
+     */
+    @Nonnull
+    public static <I, O> SPMMDiff<I, O> compute(@Nonnull SPMM<?, I, ?, O> first,
+                                                @Nonnull SPMM<?, I, ?, O> second,
+                                                @Nonnull ForkJoinPool pool) {
+        final Set<I> addedCalls = difference(second.getInputAlphabet().getCallAlphabet(),
+                first.getInputAlphabet().getCallAlphabet());
+        final Set<I> removedCalls = difference(first.getInputAlphabet().getCallAlphabet(),
+                second.getInputAlphabet().getCallAlphabet());
+        final Set<I> activatedCalls = difference(second.getActivatedCalls(), first.getActivatedCalls());
+        final Set<I> deactivatedCalls = difference(first.getActivatedCalls(), second.getActivatedCalls());
+
+        final List<I> commonInputs = new ArrayList<>();
+        for (I symbol : first.getInputAlphabet()) {
+            if (second.getInputAlphabet().containsSymbol(symbol)) {
+                commonInputs.add(symbol);
+            }
+        }
+        final List<I> commonCalls = new ArrayList<>();
+        for (I call : first.getInputAlphabet().getCallAlphabet()) {
+            if (second.getInputAlphabet().isCallSymbol(call)) {
+                commonCalls.add(call);
+            }
+        }
+
+        // the equivalence checks are cheap, only the changed procedures are searched for all differences
+        final Map<I, ? extends MealyMachine<?, I, ?, O>> firstProcedures = first.getProcedures();
+        final Map<I, ? extends MealyMachine<?, I, ?, O>> secondProcedures = second.getProcedures();
+        final Result<I> result = new MealyEquivalenceChecker<I, O>(commonInputs, pool)
+                .checkProcedures(firstProcedures, secondProcedures, commonCalls, false);
+
+        final Map<I, Word<I>> separatingWords = new LinkedHashMap<>();
+        final List<I> changedCalls = new ArrayList<>();
+        final List<Search<I, O>> searches = new ArrayList<>();
+        for (Map.Entry<I, Verdict> entry : result.getVerdicts().entrySet()) {
+            if (entry.getValue() == Verdict.DIFFERENT) {
+                final I call = entry.getKey();
+                separatingWords.put(call, result.getSeparatingWord(call));
+                changedCalls.add(call);
+                searches.add(new Search<>(firstProcedures.get(call), secondProcedures.get(call), commonInputs));
+            }
+        }
+        if (searches.size() == 1) {
+            searches.get(0).compute();
+        } else if (!searches.isEmpty()) {
+            pool.submit(() -> ForkJoinTask.invokeAll(searches)).join();
+        }
+
+        final Map<I, List<TransitionDiff<I, O>>> changedProcedures = new LinkedHashMap<>();
+        for (int i = 0; i < changedCalls.size(); i++) {
+            changedProcedures.put(changedCalls.get(i), Collections.unmodifiableList(searches.get(i).differences));
+        }
+
+        return new SPMMDiff<>(
+                SPMMEquivalenceChecker.inputAlphabetsEqual(first.getInputAlphabet(), second.getInputAlphabet()),
+                addedCalls,
+                removedCalls,
+                activatedCalls,
+                deactivatedCalls,
+                separatingWords,
+                changedProcedures);
+    }
+
+    private static <I> Set<I> difference(Collection<I> first, Collection<I> second) {
+        final Set<I> result = new LinkedHashSet<>(first);
+        result.removeAll(new HashSet<>(second));
+        return result;
+    }
+
+    /**
+     * Returns whether both SPMMs have the same input alphabet, see
+     * {@link SPMMEquivalenceChecker#inputAlphabetsEqual(de.learnlib.spmm.model.alphabet.SPMMInputAlphabet,
+     * de.learnlib.spmm.model.alphabet.SPMMInputAlphabet)}.
+     */
+    public boolean isAlphabetEqual() {
+        return alphabetsEqual;
+    }
+
+    /**
+     * Returns whether the SPMMs have no differences at all.
+     */
+    public boolean isEmpty() {
+        return alphabetsEqual && activatedCalls.isEmpty() && deactivatedCalls.isEmpty() && changedProcedures.isEmpty();
+    }
+
+    @Nonnull
+    public Set<I> getAddedCalls() {
+        return addedCalls;
+    }
+
+    @Nonnull
+    public Set<I> getRemovedCalls() {
+        return removedCalls;
+    }
+
+    /**
+     * Returns the calls that are activated in the second SPMM, but not in the first one.
+     */
+    @Nonnull
+    public Set<I> getActivatedCalls() {
+        return activatedCalls;
+    }
+
+    /**
+     * Returns the calls that are activated in the first SPMM, but not in the second one.
+     */
+    @Nonnull
+    public Set<I> getDeactivatedCalls() {
+        return deactivatedCalls;
+    }
+
+    /**
+     * Returns the differing transitions of every changed procedure. The list is empty if only one of the procedures
+     * is missing or has no initial state.
+     */
+    @Nonnull
+    public Map<I, List<TransitionDiff<I, O>>> getChangedProcedures() {
+        return changedProcedures;
+    }
+
+    /**
+     * Returns a shortest separating word of the procedures of the given call symbol, or {@code null} if they are not
+     * changed.
+     */
+    @Nullable
+    public Word<I> getSeparatingWord(@Nonnull I callSymbol) {
+        return separatingWords.get(callSymbol);
+    }
+
+    @Override
+    public String toString() {
+        return "SPMMDiff{added calls=" + addedCalls +
+                ", removed calls=" + removedCalls +
+                ", activated calls=" + activatedCalls +
+                ", deactivated calls=" + deactivatedCalls +
+                ", changed procedures=" + changedProcedures + '}';
+    }
+
+    /**
+     * A transition whose output differs between two procedures.
+     *
+     * @param <I> input symbol type
+     * @param <O> output symbol type
+     */
+    public static final class TransitionDiff<I, O> {
+
+        private final Word<I> accessWord;
+        private final I input;
+        private final O firstOutput;
+        private final O secondOutput;
+
+        TransitionDiff(Word<I> accessWord, I input, O firstOutput, O secondOutput) {
+            this.accessWord = accessWord;
+            this.input = input;
+            this.firstOutput = firstOutput;
+            this.secondOutput = secondOutput;
+        }
+
+        /**
+         * Returns a shortest word that leads to the source states of the transition in both procedures.
+         */
+        @Nonnull
+        public Word<I> getAccessWord() {
+            return accessWord;
+        }
+
+        @Nonnull
+        public I getInput() {
+            return input;
+        }
+
+        /**
+         * Returns the output of the first procedure, {@code null} if the transition is undefined.
+         */
+        @Nullable
+        public O getFirstOutput() {
+            return firstOutput;
+        }
+
+        /**
+         * Returns the output of the second procedure, {@code null} if the transition is undefined.
+         */
+        @Nullable
+        public O getSecondOutput() {
+            return secondOutput;
+        }
+
+        /**
+         * Returns the access word followed by the input, which separates both procedures.
+         */
+        @Nonnull
+        public Word<I> getSeparatingWord() {
+            return accessWord.append(input);
+        }
+
+        @Override
+        public String toString() {
+            return accessWord + " " + input + ": " + firstOutput + " / " + secondOutput;
+        }
+    }
+
+    /**
+     * The breadth-first search for the differing transitions of one pair of procedures. Differing transitions are not
+     * followed, so every reported difference is a first one.
+     */
+    private static final class Search<I, O> extends RecursiveAction {
+
+        private final MealyMachine<?, I, ?, O> first;
+        private final MealyMachine<?, I, ?, O> second;
+        private final List<I> inputs;
+        private final List<TransitionDiff<I, O>> differences = new ArrayList<>();
+
+        Search(MealyMachine<?, I, ?, O> first, MealyMachine<?, I, ?, O> second, List<I> inputs) {
+            this.first = first;
+            this.second = second;
+            this.inputs = inputs;
+        }
+
+        @Override
+        protected void compute() {
+            if (first != null && second != null &&
+                    first.getInitialState() != null && second.getInitialState() != null) {
+                search(first, second);
+            }
+        }
+
+        private <S1, T1, S2, T2> void search(MealyMachine<S1, I, T1, O> first, MealyMachine<S2, I, T2, O> second) {
+            final StateIDs<S1> firstIds = first.stateIDs();
+            final StateIDs<S2> secondIds = second.stateIDs();
+            final int numSecond = second.size();
+            final int numInputs = inputs.size();
+
+            // pairs by first id * number of second states + second id
+            final PairSet visited = new PairSet((long) first.size() * numSecond);
+            // the pairs in order of discovery, with the pair and the input index every pair was reached from first
+            int[] firstStates = new int[16];
+            int[] secondStates = new int[16];
+            int[] predecessors = new int[16];
+            int[] symbols = new int[16];
+            int numPairs = 0;
+            // reported transitions, by state id * number of inputs + input index
+            final BitSet firstReported = reportedTransitions(first.size(), numInputs);
+            final BitSet secondReported = reportedTransitions(numSecond, numInputs);
+
+            firstStates[0] = firstIds.getStateId(first.getInitialState());
+            secondStates[0] = secondIds.getStateId(second.getInitialState());
+            predecessors[0] = -1;
+            symbols[0] = -1;
+            visited.add((long) firstStates[0] * numSecond + secondStates[0]);
+            numPairs++;
+
+            for (int pair = 0; pair < numPairs; pair++) {
+                final int id1 = firstStates[pair];
+                final int id2 = secondStates[pair];
+                final S1 s1 = firstIds.getState(id1);
+                final S2 s2 = secondIds.getState(id2);
+                for (int i = 0; i < numInputs; i++) {
+                    final I input = inputs.get(i);
+                    final T1 t1 = first.getTransition(s1, input);
+                    final T2 t2 = second.getTransition(s2, input);
+                    if (t1 == null && t2 == null) {
+                        continue;
+                    }
+                    final O firstOutput = t1 == null ? null : first.getTransitionOutput(t1);
+                    final O secondOutput = t2 == null ? null : second.getTransitionOutput(t2);
+                    if (t1 == null || t2 == null || !Objects.equals(firstOutput, secondOutput)) {
+                        final boolean newFirst = !firstReported.get(id1 * numInputs + i);
+                        final boolean newSecond = !secondReported.get(id2 * numInputs + i);
+                        firstReported.set(id1 * numInputs + i);
+                        secondReported.set(id2 * numInputs + i);
+                        if (newFirst || newSecond) {
+                            differences.add(new TransitionDiff<>(accessWord(pair, predecessors, symbols),
+                                    input, firstOutput, secondOutput));
+                        }
+                        continue;
+                    }
+
+                    final int successor1 = firstIds.getStateId(first.getSuccessor(t1));
+                    final int successor2 = secondIds.getStateId(second.getSuccessor(t2));
+                    if (visited.add((long) successor1 * numSecond + successor2)) {
+                        if (numPairs == firstStates.length) {
+                            firstStates = Arrays.copyOf(firstStates, 2 * numPairs);
+                            secondStates = Arrays.copyOf(secondStates, 2 * numPairs);
+                            predecessors = Arrays.copyOf(predecessors, 2 * numPairs);
+                            symbols = Arrays.copyOf(symbols, 2 * numPairs);
+                        }
+                        firstStates[numPairs] = successor1;
+                        secondStates[numPairs] = successor2;
+                        predecessors[numPairs] = pair;
+                        symbols[numPairs] = i;
+                        numPairs++;
+                    }
+                }
+            }
+        }
+
+        private static BitSet reportedTransitions(int numStates, int numInputs) {
+            final long size = (long) numStates * numInputs;
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("a procedure with " + numStates + " states and " + numInputs +
+                        " inputs has too many transitions to be searched");
+            }
+            return new BitSet((int) size);
+        }
+
+        private Word<I> accessWord(int pair, int[] predecessors, int[] symbols) {
+            final List<I> word = new ArrayList<>();
+            for (int current = pair; predecessors[current] >= 0; current = predecessors[current]) {
+                word.add(inputs.get(symbols[current]));
+            }
+            Collections.reverse(word);
+            return Word.fromList(word);
+        }
+    }
+
+    /**
+     * The visited pairs of a {@link Search}. A bit set as long as the product of the procedure sizes stays small
+     * enough, a set of keys for very large procedures.
+     */
+    private static final class PairSet {
+
+        // 8 MiB of bits
+        private static final long MAX_BITS = 1L << 26;
+
+        private final BitSet bits;
+        private final Set<Long> keys;
+
+        PairSet(long size) {
+            this.bits = size <= MAX_BITS ? new BitSet((int) size) : null;
+            this.keys = bits == null ? new HashSet<>() : null;
+        }
+
+        boolean add(long key) {
+            if (bits == null) {
+                return keys.add(key);
+            }
+            if (bits.get((int) key)) {
+                return false;
+            }
+            bits.set((int) key);
+            return true;
+        }
+    }
+}
@@ -15,10 +15,13 @@
 package de.learnlib.spmm.model;
 
 import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
-import net.automatalib.automata.transout.MealyMachine;
-import net.automatalib.util.automata.Automata;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.spmm.util.MealyEquivalenceChecker;
+import net.automatalib.words.Word;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.concurrent.ForkJoinPool;
 
 public class SPMMEquivalenceChecker {
 
@@ -41,18 +44,68 @@ public class SPMMEquivalenceChecker {
         second.getActivatedCalls().containsAll(first.getActivatedCalls())
         ) {
 
-            for (final I procedure : first.getInputAlphabet().getCallAlphabet()) {
-                final MealyMachine<?, I, ?, O> expectedProcedure = first.getProcedures().get(procedure);
-                final MealyMachine<?, I, ?, O> actualProcedure = second.getProcedures().get(procedure);
+            // the procedures are checked in parallel, the first mismatch cancels the remaining checks
+            final MealyEquivalenceChecker<I, O> checker = new MealyEquivalenceChecker<>(first.getInputAlphabet());
+            return checker.checkProcedures(first.getProcedures(),
+                    second.getProcedures(),
+                    first.getInputAlphabet().getCallAlphabet(),
+                    true).isEquivalent();
+        }
+        return false;
+    }
 
-                if (!Automata.testEquivalence(expectedProcedure, actualProcedure, first.getInputAlphabet())) {
-                    return false;
-                }
-            }
+    /**
+     * Searches a shortest word on which the two SPMMs produce different outputs, on the common fork-join pool.
+     *
+     * @see #findSeparatingWord(SPMM, SPMM, int, ForkJoinPool)
+     */
+    @Nullable
+    public static <I, O> Word<I> findSeparatingWord(@Nonnull SPMM<?, I, ?, O> first,
+                                                    @Nonnull SPMM<?, I, ?, O> second,
+                                                    int maxStackDepth) {
+        return findSeparatingWord(first, second, maxStackDepth, ForkJoinPool.commonPool());
+    }
 
-            return true;
+    /**
+     * Searches a shortest word on which the two SPMMs produce different outputs. Unlike
+     * {@link #haveIsomorphProceduralMap(SPMM, SPMM)} this compares the global behaviour, so SPMMs whose procedures
+     * differ only on unreachable call contexts are not separated. The search explores the reachable pairs of
+     * configurations breadth-first, configurations with more than {@code maxStackDepth} pending calls are not
+     * explored further. A result of {@code null} therefore only means that the SPMMs agree on all words that stay
+     * within this bound.
+     *
+     * @return a shortest separating word, or {@code null} if there is none within the stack bound
+     */
+    @Nullable
+    public static <I, O> Word<I> findSeparatingWord(@Nonnull SPMM<?, I, ?, O> first,
+                                                    @Nonnull SPMM<?, I, ?, O> second,
+                                                    int maxStackDepth,
+                                                    @Nonnull ForkJoinPool pool) {
+        if (maxStackDepth < 0) {
+            throw new IllegalArgumentException("the stack bound must not be negative");
         }
-        return false;
+        if (!inputAlphabetsEqual(first.getInputAlphabet(), second.getInputAlphabet())) {
+            throw new IllegalArgumentException("the SPMMs have different input alphabets");
+        }
+        return new ProductExploration<>(first, second, maxStackDepth, pool).run();
+    }
+
+    /**
+     * Searches a shortest counterexample for the given hypothesis, see {@link #findSeparatingWord(SPMM, SPMM, int)}.
+     * The query is answered by the given system, so it can be passed to the learner's {@code refineHypothesis}
+     * directly.
+     *
+     * @return a counterexample, or {@code null} if there is none within the stack bound
+     */
+    @Nullable
+    public static <I, O> DefaultQuery<I, Word<O>> findCounterexample(@Nonnull SPMM<?, I, ?, O> system,
+                                                                   @Nonnull SPMM<?, I, ?, O> hypothesis,
+                                                                   int maxStackDepth) {
+        final Word<I> separatingWord = findSeparatingWord(system, hypothesis, maxStackDepth);
+        if (separatingWord == null) {
+            return null;
+        }
+        return new DefaultQuery<>(separatingWord, system.computeOutput(separatingWord));
     }
 
     public static <I> boolean inputAlphabetsEqual(SPMMInputAlphabet<I> first, SPMMInputAlphabet<I> second) {
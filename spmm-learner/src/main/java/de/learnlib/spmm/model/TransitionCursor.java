@@ -0,0 +1,63 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model;
+
+import de.learnlib.spmm.model.componenets.State;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Default cursor of {@link SPMM#cursor()}. Walks the transition system, so every step allocates a state and a
+ * transition. Configurations are persistent, so a copy only shares the current state.
+ *
+ * @param <S> state type
+ * @param <I> input symbol type
+ * @param <J> transition type
+ * @param <O> output symbol type
+ */
+final class TransitionCursor<S, I, J, O> implements SPMMCursor<I, O> {
+
+    private final SPMM<S, I, J, O> spmm;
+    private State<I, S> current;
+
+    TransitionCursor(SPMM<S, I, J, O> spmm, State<I, S> current) {
+        this.spmm = spmm;
+        this.current = current;
+    }
+
+    @Override
+    public void reset() {
+        current = spmm.getInitialState();
+    }
+
+    @Nonnull
+    @Override
+    public O step(@Nonnull I input) {
+        final J transition = spmm.getTransition(current, input);
+        current = spmm.getSuccessor(transition);
+        return spmm.getTransitionOutput(transition);
+    }
+
+    @Override
+    public int depth() {
+        return current.getStack().depth();
+    }
+
+    @Nonnull
+    @Override
+    public TransitionCursor<S, I, J, O> copy() {
+        return new TransitionCursor<>(spmm, current);
+    }
+}
@@ -23,24 +23,92 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.AbstractList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 public class DefaultSPMMInputAlphabet<I> extends AbstractList<I> implements SPMMInputAlphabet<I>, VPDAlphabet<I> {
 
     private final Alphabet<I> internalAlphabet;
-    private final Alphabet<I> callAlphabet;
+    private final PersistentAlphabet<I> callAlphabet;
     private final Alphabet<I> returnOuterAlphabet;
+    private final I returnSymbol;
+
+    // classification index of the internal symbols, see SPMMInputAlphabet#getSymbolCode. It never changes and is
+    // shared by all alphabets that only differ in their calls, calls are looked up in the persistent call alphabet
+    private final Map<I, Integer> internalCodes;
+    // classification index of all symbols of this alphabet. Built on the first lookup, so alphabets that are only
+    // derived to add or remove calls do not pay for it
+    private volatile Map<I, Integer> symbolCodes;
 
     public DefaultSPMMInputAlphabet(@Nonnull Alphabet<I> internalAlphabet,
                                     @Nonnull Alphabet<I> callAlphabet,
                                     @Nonnull I returnSymbol) {
         this.internalAlphabet = internalAlphabet;
-        this.callAlphabet = callAlphabet;
+        this.callAlphabet = PersistentAlphabet.copyOf(callAlphabet);
         this.returnOuterAlphabet = Alphabets.singleton(returnSymbol);
+        this.returnSymbol = returnSymbol;
 
         validateDisjointness(internalAlphabet, SymbolType.INTERNAL, callAlphabet, returnOuterAlphabet);
         validateDisjointness(callAlphabet, SymbolType.CALL, returnOuterAlphabet);
+
+        this.internalCodes = new HashMap<>(2 * internalAlphabet.size());
+        for (int i = 0; i < internalAlphabet.size(); i++) {
+            internalCodes.put(internalAlphabet.getSymbol(i), SPMMInputAlphabet.symbolCode(i, SymbolType.INTERNAL));
+        }
+    }
+
+    private DefaultSPMMInputAlphabet(DefaultSPMMInputAlphabet<I> base, PersistentAlphabet<I> callAlphabet) {
+        this.internalAlphabet = base.internalAlphabet;
+        this.callAlphabet = callAlphabet;
+        this.returnOuterAlphabet = base.returnOuterAlphabet;
+        this.returnSymbol = base.returnSymbol;
+        this.internalCodes = base.internalCodes;
+    }
+
+    /**
+     * Returns the given alphabet if it is a {@link DefaultSPMMInputAlphabet}, or a copy of it otherwise.
+     */
+    @Nonnull
+    public static <I> DefaultSPMMInputAlphabet<I> copyOf(@Nonnull SPMMInputAlphabet<I> alphabet) {
+        if (alphabet instanceof DefaultSPMMInputAlphabet) {
+            return (DefaultSPMMInputAlphabet<I>) alphabet;
+        }
+        return new DefaultSPMMInputAlphabet<>(alphabet.getInternalAlphabet(), alphabet.getCallAlphabet(),
+                alphabet.getReturnSymbol());
+    }
+
+    /**
+     * Returns an alphabet with the given call symbol appended to the calls of this alphabet. The new alphabet shares
+     * all other symbols and indices with this one, so this takes logarithmic time in the number of calls.
+     *
+     * @throws IllegalArgumentException if the symbol is null or already contained in this alphabet
+     */
+    @Nonnull
+    public DefaultSPMMInputAlphabet<I> withCallSymbol(@Nonnull I callSymbol) {
+        if (callSymbol == null || lookUpSymbolCode(callSymbol) >= 0) {
+            throw new IllegalArgumentException("new call symbol may not be null or contained in the alphabet");
+        }
+        return new DefaultSPMMInputAlphabet<>(this, callAlphabet.plus(callSymbol));
+    }
+
+    /**
+     * Returns an alphabet that only keeps the call symbols contained in the given filter. If no call symbol is
+     * filtered out, this alphabet is returned.
+     */
+    @Nonnull
+    public DefaultSPMMInputAlphabet<I> retainCalls(@Nonnull Collection<I> filter) {
+        if (filter.containsAll(callAlphabet)) {
+            return this;
+        }
+        PersistentAlphabet<I> retainedCalls = PersistentAlphabet.empty();
+        for (I call : callAlphabet) {
+            if (filter.contains(call)) {
+                retainedCalls = retainedCalls.plus(call);
+            }
+        }
+        return new DefaultSPMMInputAlphabet<>(this, retainedCalls);
     }
 
     @SafeVarargs
@@ -91,25 +159,18 @@ public class DefaultSPMMInputAlphabet<I> extends AbstractList<I> implements SPMM
     @Override
     @Nonnull
     public I getSymbol(int index) {
-        int localIndex = index;
-
-        if (localIndex < internalAlphabet.size()) {
-            return internalAlphabet.getSymbol(localIndex);
-        } else {
-            localIndex -= internalAlphabet.size();
+        // internal symbols come first, then the calls, then the return symbol
+        if (index >= 0 && index < internalAlphabet.size()) {
+            return internalAlphabet.getSymbol(index);
         }
-
-        if (localIndex < callAlphabet.size()) {
-            return callAlphabet.getSymbol(localIndex);
-        } else {
-            localIndex -= callAlphabet.size();
+        final int callIndex = index - internalAlphabet.size();
+        if (callIndex >= 0 && callIndex < callAlphabet.size()) {
+            return callAlphabet.getSymbol(callIndex);
         }
-
-        if (localIndex < returnOuterAlphabet.size()) {
-            return returnOuterAlphabet.getSymbol(localIndex);
-        } else {
-            throw new IllegalArgumentException("Index not within its expected bounds");
+        if (callIndex == callAlphabet.size()) {
+            return returnSymbol;
         }
+        throw new IllegalArgumentException("Index not within its expected bounds");
     }
 
     @Override
@@ -119,28 +180,54 @@ public class DefaultSPMMInputAlphabet<I> extends AbstractList<I> implements SPMM
 
     @Override
     public int getSymbolIndex(@Nullable I symbol) {
-        if (symbol == null) {
+        final int code = getSymbolCode(symbol);
+        if (code < 0) {
             throw new IllegalArgumentException("Alphabet does not contain the queried symbol");
         }
-        int offset = 0;
+        return SPMMInputAlphabet.symbolIndex(code);
+    }
 
-        if (internalAlphabet.containsSymbol(symbol)) {
-            return internalAlphabet.getSymbolIndex(symbol);
-        } else {
-            offset += internalAlphabet.size();
+    @Override
+    public int getSymbolCode(@Nullable I symbol) {
+        if (symbol == null) {
+            return -1;
         }
+        final Integer code = symbolCodes().get(symbol);
+        return code == null ? -1 : code;
+    }
 
-        if (callAlphabet.containsSymbol(symbol)) {
-            return offset + callAlphabet.getSymbolIndex(symbol);
-        } else {
-            offset += callAlphabet.size();
+    private Map<I, Integer> symbolCodes() {
+        Map<I, Integer> result = symbolCodes;
+        if (result == null) {
+            // concurrent lookups may build the map twice, both results are equal
+            result = new HashMap<>(2 * size());
+            result.putAll(internalCodes);
+            int index = internalAlphabet.size();
+            for (I call : callAlphabet) {
+                result.put(call, SPMMInputAlphabet.symbolCode(index++, SymbolType.CALL));
+            }
+            result.put(returnSymbol, SPMMInputAlphabet.symbolCode(index, SymbolType.RETURN));
+            symbolCodes = result;
         }
+        return result;
+    }
 
-        if (returnOuterAlphabet.containsSymbol(symbol)) {
-            return offset + returnOuterAlphabet.getSymbolIndex(symbol);
-        } else {
-            throw new IllegalArgumentException("Alphabet does not contain the queried symbol");
+    /**
+     * Looks up the code of the given symbol without building the flat map of this alphabet.
+     */
+    private int lookUpSymbolCode(I symbol) {
+        final Integer code = internalCodes.get(symbol);
+        if (code != null) {
+            return code;
         }
+        final int callIndex = callAlphabet.getSymbolIndex(symbol);
+        if (callIndex >= 0) {
+            return SPMMInputAlphabet.symbolCode(internalAlphabet.size() + callIndex, SymbolType.CALL);
+        }
+        if (returnSymbol.equals(symbol)) {
+            return SPMMInputAlphabet.symbolCode(internalAlphabet.size() + callAlphabet.size(), SymbolType.RETURN);
+        }
+        return -1;
     }
 
     @Override
@@ -151,8 +238,14 @@ public class DefaultSPMMInputAlphabet<I> extends AbstractList<I> implements SPMM
 
     @Override
     public boolean containsSymbol(@Nonnull I symbol) {
-        return internalAlphabet.containsSymbol(symbol) || callAlphabet.containsSymbol(symbol) ||
-                returnOuterAlphabet.containsSymbol(symbol);
+        return getSymbolCode(symbol) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        // hashed lookup instead of the linear scan of AbstractList
+        return getSymbolCode((I) o) >= 0;
     }
 
     @Override
@@ -168,8 +261,9 @@ public class DefaultSPMMInputAlphabet<I> extends AbstractList<I> implements SPMM
 
     @Override
     public int getInternalSymbolIndex(@Nonnull I symbol) {
-        if (internalAlphabet.containsSymbol(symbol)) {
-            return internalAlphabet.getSymbolIndex(symbol);
+        if (isInternalSymbol(symbol)) {
+            // internal symbols come first, so the global index is the internal index
+            return getSymbolIndex(symbol);
         } else {
             throw new IllegalArgumentException("Alphabet does not contain the queried symbol");
         }
@@ -206,15 +300,11 @@ public class DefaultSPMMInputAlphabet<I> extends AbstractList<I> implements SPMM
     @Override
     @Nonnull
     public SymbolType getSymbolType(@Nonnull I symbol) {
-        if (internalAlphabet.containsSymbol(symbol)) {
-            return SymbolType.INTERNAL;
-        } else if (callAlphabet.containsSymbol(symbol)) {
-            return SymbolType.CALL;
-        } else if (returnOuterAlphabet.containsSymbol(symbol)) {
-            return SymbolType.RETURN;
-        } else {
+        final int code = getSymbolCode(symbol);
+        if (code < 0) {
             throw new IllegalArgumentException("Symbol is not contained in this alphabet");
         }
+        return SPMMInputAlphabet.symbolType(code);
     }
 
     @Override
@@ -237,16 +327,21 @@ public class DefaultSPMMInputAlphabet<I> extends AbstractList<I> implements SPMM
 
     @Override
     public boolean isCallSymbol(@Nonnull I symbol) {
-        return this.callAlphabet.containsSymbol(symbol);
+        return hasType(symbol, SymbolType.CALL);
     }
 
     @Override
     public boolean isInternalSymbol(@Nonnull I symbol) {
-        return this.internalAlphabet.containsSymbol(symbol);
+        return hasType(symbol, SymbolType.INTERNAL);
     }
 
     @Override
     public boolean isReturnSymbol(@Nonnull I symbol) {
-        return this.returnOuterAlphabet.containsSymbol(symbol);
+        return hasType(symbol, SymbolType.RETURN);
+    }
+
+    private boolean hasType(I symbol, SymbolType type) {
+        final int code = getSymbolCode(symbol);
+        return code >= 0 && SPMMInputAlphabet.symbolType(code) == type;
     }
 }
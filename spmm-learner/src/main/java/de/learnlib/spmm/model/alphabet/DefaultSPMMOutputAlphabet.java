@@ -21,6 +21,8 @@ import net.automatalib.words.impl.Alphabets;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.Map;
 
 
 public class DefaultSPMMOutputAlphabet<O> extends AbstractList<O> implements SPMMOutputAlphabet<O> {
@@ -32,6 +34,9 @@ public class DefaultSPMMOutputAlphabet<O> extends AbstractList<O> implements SPM
     private final Alphabet<O> errorOutput;
     private final Alphabet<O> postReturnOutput;
 
+    // classification index, see SPMMOutputAlphabet#getSymbolCode
+    private final Map<O, Integer> codes;
+
     public DefaultSPMMOutputAlphabet(
             Alphabet<O> internalSymbolOutput,
             O procedureStartSymbol,
@@ -43,6 +48,26 @@ public class DefaultSPMMOutputAlphabet<O> extends AbstractList<O> implements SPM
         this.procedureEndOutput = Alphabets.singleton(procedureEndSymbol);
         this.errorOutput = Alphabets.singleton(errorSymbol);
         this.postReturnOutput = Alphabets.singleton(procedureLeftSymbol);
+
+        this.codes = new HashMap<>(2 * size());
+        int offset = 0;
+        offset = index(internalSymbolOutput, INTERNAL_OUTPUT, offset);
+        offset = index(procedureStartOutput, PROCEDURE_START, offset);
+        offset = index(procedureEndOutput, PROCEDURE_END, offset);
+        offset = index(errorOutput, ERROR, offset);
+        index(postReturnOutput, POST_RETURN, offset);
+    }
+
+    /**
+     * Adds the flag to all symbols of the given sub-alphabet. The index of a symbol that occurs in several
+     * sub-alphabets is the index of its first occurrence, as in {@link #getSymbolIndex(Object)}.
+     */
+    private int index(Alphabet<O> alphabet, int flag, int offset) {
+        for (int i = 0; i < alphabet.size(); i++) {
+            final int index = offset + i;
+            codes.merge(alphabet.getSymbol(i), SPMMOutputAlphabet.symbolCode(index, flag), (a, b) -> a | flag);
+        }
+        return offset + alphabet.size();
     }
 
     @Override
@@ -53,7 +78,7 @@ public class DefaultSPMMOutputAlphabet<O> extends AbstractList<O> implements SPM
 
     @Override
     public boolean isPostReturn(@Nonnull O symbol) {
-        return this.postReturnOutput.containsSymbol(symbol);
+        return SPMMOutputAlphabet.hasFlag(getSymbolCode(symbol), POST_RETURN);
     }
 
     @Override
@@ -64,7 +89,7 @@ public class DefaultSPMMOutputAlphabet<O> extends AbstractList<O> implements SPM
 
     @Override
     public boolean isErrorSymbol(@Nonnull O symbol) {
-        return this.errorOutput.containsSymbol(symbol);
+        return SPMMOutputAlphabet.hasFlag(getSymbolCode(symbol), ERROR);
     }
 
     @Override
@@ -75,7 +100,7 @@ public class DefaultSPMMOutputAlphabet<O> extends AbstractList<O> implements SPM
 
     @Override
     public boolean isProcedureStartSymbol(@Nonnull O symbol) {
-        return this.procedureStartOutput.containsSymbol(symbol);
+        return SPMMOutputAlphabet.hasFlag(getSymbolCode(symbol), PROCEDURE_START);
     }
 
     @Override
@@ -86,7 +111,7 @@ public class DefaultSPMMOutputAlphabet<O> extends AbstractList<O> implements SPM
 
     @Override
     public boolean isProcedureEndSymbol(@Nonnull O symbol) {
-        return this.procedureEndOutput.containsSymbol(symbol);
+        return SPMMOutputAlphabet.hasFlag(getSymbolCode(symbol), PROCEDURE_END);
     }
 
     @Override
@@ -134,42 +159,22 @@ public class DefaultSPMMOutputAlphabet<O> extends AbstractList<O> implements SPM
 
     @Override
     public int getSymbolIndex(@Nullable O symbol) throws IllegalArgumentException {
-        if (symbol == null) {
+        final int code = getSymbolCode(symbol);
+        if (code < 0) {
             throw new IllegalArgumentException("Alphabet does not contain the queried symbol");
         }
-        int offset = 0;
-
-        if (internalSymbolOutput.containsSymbol(symbol)) {
-            return internalSymbolOutput.getSymbolIndex(symbol);
-        } else {
-            offset += internalSymbolOutput.size();
-        }
-
-        if (procedureStartOutput.containsSymbol(symbol)) {
-            return offset + procedureStartOutput.getSymbolIndex(symbol);
-        } else {
-            offset += procedureStartOutput.size();
-        }
-
-        if (procedureEndOutput.containsSymbol(symbol)) {
-            return offset + procedureEndOutput.getSymbolIndex(symbol);
-        } else {
-            offset += procedureEndOutput.size();
-
-        }
-
-        if (errorOutput.containsSymbol(symbol)) {
-            return offset + errorOutput.getSymbolIndex(symbol);
-        } else {
-            offset += errorOutput.size();
+        return SPMMOutputAlphabet.symbolIndex(code);
+    }
 
-        }
+    @Override
+    public int getSymbolCode(@Nullable O symbol) {
+        final Integer code = symbol == null ? null : codes.get(symbol);
+        return code == null ? -1 : code;
+    }
 
-        if (postReturnOutput.containsSymbol(symbol)) {
-            return offset + postReturnOutput.getSymbolIndex(symbol);
-        } else {
-            throw new IllegalArgumentException("Alphabet does not contain the queried symbol");
-        }
+    @Override
+    public boolean containsSymbol(@Nullable O symbol) {
+        return codes.containsKey(symbol);
     }
 
 
@@ -0,0 +1,135 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model.alphabet;
+
+import de.learnlib.spmm.model.componenets.PersistentMap;
+import net.automatalib.words.Alphabet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractList;
+import java.util.Collection;
+
+/**
+ * An immutable alphabet to which symbols can be appended without copying it. Symbols and their indices are kept in two
+ * {@link PersistentMap}s, so {@link #plus(Object)} shares all but a few nodes with the original alphabet and index
+ * lookups take logarithmic time.
+ *
+ * @param <I> symbol type
+ * @author shashko
+ */
+public final class PersistentAlphabet<I> extends AbstractList<I> implements Alphabet<I> {
+
+    private static final PersistentAlphabet<?> EMPTY =
+            new PersistentAlphabet<>(PersistentMap.empty(), PersistentMap.empty());
+
+    private final PersistentMap<Integer, I> symbols;
+    private final PersistentMap<I, Integer> indices;
+
+    private PersistentAlphabet(PersistentMap<Integer, I> symbols, PersistentMap<I, Integer> indices) {
+        this.symbols = symbols;
+        this.indices = indices;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    public static <I> PersistentAlphabet<I> empty() {
+        return (PersistentAlphabet<I>) EMPTY;
+    }
+
+    /**
+     * Returns a persistent alphabet with the given symbols in iteration order. Persistent alphabets are returned as
+     * they are.
+     *
+     * @throws IllegalArgumentException if a symbol is null or contained twice
+     */
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    public static <I> PersistentAlphabet<I> copyOf(@Nonnull Collection<? extends I> symbols) {
+        if (symbols instanceof PersistentAlphabet) {
+            return (PersistentAlphabet<I>) symbols;
+        }
+        PersistentAlphabet<I> result = empty();
+        for (I symbol : symbols) {
+            result = result.plus(symbol);
+        }
+        return result;
+    }
+
+    /**
+     * Returns an alphabet with the symbols of this alphabet followed by the given symbol.
+     *
+     * @throws IllegalArgumentException if the symbol is null or already contained
+     */
+    @Nonnull
+    public PersistentAlphabet<I> plus(@Nonnull I symbol) {
+        if (symbol == null) {
+            throw new IllegalArgumentException("symbol may not be null");
+        }
+        if (indices.containsKey(symbol)) {
+            throw new IllegalArgumentException("Alphabet already contains the symbol " + symbol);
+        }
+        final int index = size();
+        return new PersistentAlphabet<>(symbols.plus(index, symbol), indices.plus(symbol, index));
+    }
+
+    @Override
+    @Nonnull
+    public I getSymbol(int index) {
+        final I symbol = symbols.get(index);
+        if (symbol == null) {
+            throw new IllegalArgumentException("Index not within its expected bounds");
+        }
+        return symbol;
+    }
+
+    @Override
+    public int getSymbolIndex(@Nullable I symbol) {
+        final Integer index = symbol == null ? null : indices.get(symbol);
+        return index == null ? -1 : index;
+    }
+
+    @Override
+    public boolean containsSymbol(@Nullable I symbol) {
+        return symbol != null && indices.containsKey(symbol);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o != null && indices.containsKey(o);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        final Integer index = o == null ? null : indices.get(o);
+        return index == null ? -1 : index;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    @Nonnull
+    public I get(int index) {
+        return getSymbol(index);
+    }
+
+    @Override
+    public int size() {
+        return symbols.size();
+    }
+}
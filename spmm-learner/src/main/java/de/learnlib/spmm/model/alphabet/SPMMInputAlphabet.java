@@ -16,6 +16,10 @@
 package de.learnlib.spmm.model.alphabet;
 
 import net.automatalib.words.VPDAlphabet;
+import net.automatalib.words.Word;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * A specialized input alphabet for systems of procedural mealy-machines. This is a specialized version of an {@link
@@ -35,4 +39,69 @@ public interface SPMMInputAlphabet<I> extends VPDAlphabet<I> {
         return getReturnSymbol(0);
     }
 
+    /**
+     * Returns the code of the given symbol, which combines the index of the symbol in this alphabet and its symbol
+     * type. Use {@link #symbolIndex(int)} and {@link #symbolType(int)} to decode it.
+     *
+     * @param symbol the symbol
+     * @return the code of the symbol, or {@code -1} if the symbol is not contained in this alphabet
+     */
+    default int getSymbolCode(@Nullable I symbol) {
+        if (symbol == null || !containsSymbol(symbol)) {
+            return -1;
+        }
+        return symbolCode(getSymbolIndex(symbol), getSymbolType(symbol));
+    }
+
+    /**
+     * Returns the codes of all symbols of the given word, see {@link #getSymbolCode(Object)}.
+     *
+     * @param word the word
+     * @return the code of every symbol of the word
+     */
+    @Nonnull
+    default int[] getSymbolCodes(@Nonnull Word<? extends I> word) {
+        final int[] codes = new int[word.length()];
+        int i = 0;
+        for (I symbol : word) {
+            codes[i++] = getSymbolCode(symbol);
+        }
+        return codes;
+    }
+
+    static int symbolCode(int index, @Nonnull SymbolType type) {
+        switch (type) {
+            case CALL:
+                return index << 2;
+            case INTERNAL:
+                return index << 2 | 1;
+            case RETURN:
+                return index << 2 | 2;
+            default:
+                throw new IllegalArgumentException("unknown symbol type " + type);
+        }
+    }
+
+    /**
+     * Returns the index in the alphabet of the symbol with the given (valid) code.
+     */
+    static int symbolIndex(int code) {
+        return code >>> 2;
+    }
+
+    /**
+     * Returns the symbol type of the symbol with the given (valid) code.
+     */
+    @Nonnull
+    static SymbolType symbolType(int code) {
+        switch (code & 3) {
+            case 0:
+                return SymbolType.CALL;
+            case 1:
+                return SymbolType.INTERNAL;
+            default:
+                return SymbolType.RETURN;
+        }
+    }
+
 }
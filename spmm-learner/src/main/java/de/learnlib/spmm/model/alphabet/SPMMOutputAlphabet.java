@@ -15,8 +15,10 @@
 package de.learnlib.spmm.model.alphabet;
 
 import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * A specialized output alphabet for systems of procedural mealy-machines.
@@ -25,6 +27,16 @@ import javax.annotation.Nonnull;
  */
 public interface SPMMOutputAlphabet<O> extends Alphabet<O> {
 
+    /**
+     * Flags of a symbol code, see {@link #getSymbolCode(Object)}. The special output symbols are not required to be
+     * distinct, so a code may carry several flags.
+     */
+    int INTERNAL_OUTPUT = 1;
+    int PROCEDURE_START = 1 << 1;
+    int PROCEDURE_END = 1 << 2;
+    int ERROR = 1 << 3;
+    int POST_RETURN = 1 << 4;
+
     @Nonnull
     O getPostReturn();
 
@@ -48,4 +60,68 @@ public interface SPMMOutputAlphabet<O> extends Alphabet<O> {
     @Nonnull
     Alphabet<O> getInternalOutputAlphabet();
 
+    /**
+     * Returns the code of the given symbol, which combines the index of the symbol in this alphabet and the flags of
+     * all roles of the symbol. Use {@link #symbolIndex(int)} and {@link #hasFlag(int, int)} to decode it.
+     *
+     * @param symbol the symbol
+     * @return the code of the symbol, or {@code -1} if the symbol is not contained in this alphabet
+     */
+    default int getSymbolCode(@Nullable O symbol) {
+        if (symbol == null || !containsSymbol(symbol)) {
+            return -1;
+        }
+        int flags = 0;
+        if (getInternalOutputAlphabet().containsSymbol(symbol)) {
+            flags |= INTERNAL_OUTPUT;
+        }
+        if (isProcedureStartSymbol(symbol)) {
+            flags |= PROCEDURE_START;
+        }
+        if (isProcedureEndSymbol(symbol)) {
+            flags |= PROCEDURE_END;
+        }
+        if (isErrorSymbol(symbol)) {
+            flags |= ERROR;
+        }
+        if (isPostReturn(symbol)) {
+            flags |= POST_RETURN;
+        }
+        return symbolCode(getSymbolIndex(symbol), flags);
+    }
+
+    /**
+     * Returns the codes of all symbols of the given word, see {@link #getSymbolCode(Object)}.
+     *
+     * @param word the word
+     * @return the code of every symbol of the word
+     */
+    @Nonnull
+    default int[] getSymbolCodes(@Nonnull Word<? extends O> word) {
+        final int[] codes = new int[word.length()];
+        int i = 0;
+        for (O symbol : word) {
+            codes[i++] = getSymbolCode(symbol);
+        }
+        return codes;
+    }
+
+    static int symbolCode(int index, int flags) {
+        return index << 5 | flags;
+    }
+
+    /**
+     * Returns the index in the alphabet of the symbol with the given (valid) code.
+     */
+    static int symbolIndex(int code) {
+        return code >>> 5;
+    }
+
+    /**
+     * Returns whether the symbol with the given code has the given flag. Always false for unknown symbols.
+     */
+    static boolean hasFlag(int code, int flag) {
+        return code >= 0 && (code & flag) != 0;
+    }
+
 }
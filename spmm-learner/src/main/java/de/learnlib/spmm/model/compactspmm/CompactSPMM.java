@@ -0,0 +1,779 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model.compactspmm;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import de.learnlib.api.oracle.QueryAnswerer;
+import de.learnlib.spmm.model.IntSPMM;
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.SPMMCursor;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.componenets.InitialProcedure;
+import de.learnlib.spmm.model.componenets.PersistentMap;
+import de.learnlib.spmm.model.componenets.PersistentStack;
+import de.learnlib.spmm.model.componenets.State;
+import de.learnlib.spmm.view.ReachabilityView;
+import net.automatalib.automata.concepts.InputAlphabetHolder;
+import net.automatalib.automata.concepts.StateIDs;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.automata.transout.impl.MealyTransition;
+import net.automatalib.graphs.Graph;
+import net.automatalib.ts.simple.SimpleDTS;
+import net.automatalib.ts.transout.DeterministicTransitionOutputTS;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import net.automatalib.words.impl.Alphabets;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * An implementation of SPMM that flattens all procedures into contiguous successor and output tables. Every local
+ * state of every procedure gets a global id, the tables are indexed by {@code globalId * numSymbols + symbolIndex}
+ * and the call stack of a simulation is a plain {@code int[]} of the table indices of the calls. Call symbols with the
+ * same procedure instance, e.g. of minimized procedures, share the global ids of the procedure.
+ * <p>
+ * The behaviour is the same as the one of {@link de.learnlib.spmm.model.defaultspmm.DefaultSPMM}. Transitions that
+ * are undefined in a procedure (e.g. for symbols that are not in the alphabet of the procedure) lead to the global
+ * error sink.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+public class CompactSPMM<I, O> implements
+        SPMM<Integer, I, MealyTransition<State<I, Integer>, O>, O>,
+        DeterministicTransitionOutputTS<State<I, Integer>, I, MealyTransition<State<I, Integer>, O>, O>,
+        SimpleDTS<State<I, Integer>, I>,
+        IntSPMM<I, O>,
+        QueryAnswerer<I, Word<O>> {
+
+    // special global ids
+    private static final int INITIAL = -1;
+    private static final int ACCEPT = -2;
+    private static final int SINK = -3;
+    static final int UNDEFINED = -4;
+
+    private static final StateIDs<Integer> LOCAL_IDS = new StateIDs<Integer>() {
+
+        @Override
+        public int getStateId(Integer state) {
+            return state;
+        }
+
+        @Override
+        public Integer getState(int id) {
+            return id;
+        }
+    };
+
+    private final InitialProcedure<Integer, I, O> initialProcedure;
+    private final SPMMInputAlphabet<I> inputAlphabet;
+    private final Set<I> activatedCalls;
+    private final SPMMOutputAlphabet<O> outputAlphabet;
+    private final Map<I, ? extends MealyMachine<Integer, I, ?, O>> procedures;
+
+    // the compiled tables, package-private for CompiledSPMM
+    final int numSymbols;
+    final Map<I, Integer> symbolIndices;
+    // procedure index of a call symbol (by symbol index), -1 for non-call symbols
+    final int[] calledProcedure;
+    // symbol index of the call symbol of a procedure (by procedure index)
+    final int[] callSymbolIndex;
+    final int returnSymbolIndex;
+    final int initialCallSymbolIndex;
+    final int initialProcedureIndex;
+    final boolean[] activated;
+
+    // global id of the initial state of a procedure (by procedure index), UNDEFINED if there is no procedure
+    final int[] initialStates;
+    final int numStates;
+    // first global id of a procedure (by procedure index)
+    final int[] offsets;
+    // number of global ids of a procedure (by procedure index)
+    final int[] sizes;
+    private final StateIDs<Integer>[] stateIDs;
+
+    final int[] successors;
+    final int[] outputs;
+    final O[] outputSymbols;
+    final int procedureStartOutput;
+    final int procedureEndOutput;
+    final int errorOutput;
+
+    // use CompactSPMMBuilder
+    @SuppressWarnings("unchecked")
+    CompactSPMM(@Nonnull SPMMInputAlphabet<I> inputAlphabet,
+                @Nonnull SPMMOutputAlphabet<O> outputAlphabet,
+                @Nullable I initialCall,
+                @Nonnull Map<I, ? extends MealyMachine<Integer, I, ?, O>> procedures) {
+        this.inputAlphabet = inputAlphabet;
+        this.activatedCalls = Sets.newHashSetWithExpectedSize(inputAlphabet.getNumCalls());
+        this.outputAlphabet = outputAlphabet;
+        this.initialProcedure = new InitialProcedure<>(initialCall, outputAlphabet.getError());
+        this.procedures = procedures;
+
+        // symbols
+        this.numSymbols = inputAlphabet.size();
+        this.symbolIndices = indexSymbols(inputAlphabet);
+        this.calledProcedure = calledProcedures(inputAlphabet);
+        this.callSymbolIndex = callSymbolIndices(inputAlphabet, symbolIndices);
+
+        final int numCalls = inputAlphabet.getNumCalls();
+        this.returnSymbolIndex = symbolIndices.get(inputAlphabet.getReturnSymbol());
+        this.initialCallSymbolIndex = initialCall == null ? -1 : symbolIndices.get(initialCall);
+        this.initialProcedureIndex = initialCall == null ? -1 : inputAlphabet.getCallSymbolIndex(initialCall);
+        this.activated = new boolean[numCalls];
+
+        // global ids, a procedure instance of several call symbols gets them only once
+        this.offsets = new int[numCalls];
+        this.sizes = new int[numCalls];
+        this.initialStates = new int[numCalls];
+        this.stateIDs = new StateIDs[numCalls];
+        final boolean[] shared = new boolean[numCalls];
+        final Map<MealyMachine<Integer, I, ?, O>, Integer> firstCalls = new IdentityHashMap<>();
+        int numStates = 0;
+        for (int p = 0; p < numCalls; p++) {
+            final MealyMachine<Integer, I, ?, O> procedure = procedures.get(inputAlphabet.getCallSymbol(p));
+            offsets[p] = numStates;
+            if (procedure == null || procedure.getInitialState() == null) {
+                initialStates[p] = UNDEFINED;
+            } else if (firstCalls.containsKey(procedure)) {
+                final int first = firstCalls.get(procedure);
+                offsets[p] = offsets[first];
+                sizes[p] = sizes[first];
+                stateIDs[p] = stateIDs[first];
+                initialStates[p] = initialStates[first];
+                shared[p] = true;
+            } else {
+                firstCalls.put(procedure, p);
+                stateIDs[p] = procedure.stateIDs();
+                sizes[p] = procedure.size();
+                initialStates[p] = numStates + stateIDs[p].getStateId(procedure.getInitialState());
+                numStates += procedure.size();
+            }
+        }
+
+        this.numStates = numStates;
+        this.successors = new int[numStates * numSymbols];
+        this.outputs = new int[numStates * numSymbols];
+        Arrays.fill(successors, UNDEFINED);
+        Arrays.fill(outputs, -1);
+
+        // outputs
+        final Map<O, Integer> outputIndices = Maps.newHashMapWithExpectedSize(outputAlphabet.size());
+        final List<O> outputList = new ArrayList<>(outputAlphabet.size());
+        for (O symbol : outputAlphabet) {
+            outputIndex(symbol, outputIndices, outputList);
+        }
+        this.procedureStartOutput = outputIndex(outputAlphabet.getProcedureStart(), outputIndices, outputList);
+        this.procedureEndOutput = outputIndex(outputAlphabet.getProcedureEnd(), outputIndices, outputList);
+        this.errorOutput = outputIndex(outputAlphabet.getError(), outputIndices, outputList);
+
+        // tables
+        for (int p = 0; p < numCalls; p++) {
+            final MealyMachine<Integer, I, ?, O> procedure = procedures.get(inputAlphabet.getCallSymbol(p));
+            if (procedure != null && stateIDs[p] != null && !shared[p]) {
+                compileProcedure(p, procedure, outputIndices, outputList);
+            }
+        }
+
+        this.outputSymbols = (O[]) outputList.toArray();
+    }
+
+    /**
+     * Creates an SPMM directly from its tables, see {@link CompactSPMMSerializer}. The tables are taken as they are.
+     * The procedures are only materialized from the tables when they are asked for, e.g. for the graph view.
+     */
+    @SuppressWarnings("unchecked")
+    CompactSPMM(@Nonnull SPMMInputAlphabet<I> inputAlphabet,
+                @Nonnull SPMMOutputAlphabet<O> outputAlphabet,
+                @Nullable I initialCall,
+                @Nonnull int[] offsets,
+                @Nonnull int[] initialStates,
+                @Nonnull int[] successors,
+                @Nonnull int[] outputs,
+                @Nonnull O[] outputSymbols) {
+        this.inputAlphabet = inputAlphabet;
+        this.activatedCalls = Sets.newHashSetWithExpectedSize(inputAlphabet.getNumCalls());
+        this.outputAlphabet = outputAlphabet;
+        this.initialProcedure = new InitialProcedure<>(initialCall, outputAlphabet.getError());
+
+        this.numSymbols = inputAlphabet.size();
+        this.symbolIndices = indexSymbols(inputAlphabet);
+        this.calledProcedure = calledProcedures(inputAlphabet);
+        this.callSymbolIndex = callSymbolIndices(inputAlphabet, symbolIndices);
+
+        final int numCalls = inputAlphabet.getNumCalls();
+        this.returnSymbolIndex = symbolIndices.get(inputAlphabet.getReturnSymbol());
+        this.initialCallSymbolIndex = initialCall == null ? -1 : symbolIndices.get(initialCall);
+        this.initialProcedureIndex = initialCall == null ? -1 : inputAlphabet.getCallSymbolIndex(initialCall);
+        this.activated = new boolean[numCalls];
+
+        this.offsets = offsets;
+        this.initialStates = initialStates;
+        this.successors = successors;
+        this.outputs = outputs;
+        this.outputSymbols = outputSymbols;
+
+        this.numStates = successors.length / numSymbols;
+        this.sizes = new int[numCalls];
+        this.stateIDs = new StateIDs[numCalls];
+        for (int p = 0; p < numCalls; p++) {
+            // the global ids of a procedure end where the next table starts, shared tables have the same offset
+            int end = numStates;
+            for (int q = 0; q < numCalls; q++) {
+                if (initialStates[q] != UNDEFINED && offsets[q] > offsets[p]) {
+                    end = Math.min(end, offsets[q]);
+                }
+            }
+            sizes[p] = initialStates[p] == UNDEFINED ? 0 : end - offsets[p];
+            // materialized procedures number their states like the tables
+            stateIDs[p] = LOCAL_IDS;
+        }
+
+        final List<O> outputList = Arrays.asList(outputSymbols);
+        this.procedureStartOutput = outputList.indexOf(outputAlphabet.getProcedureStart());
+        this.procedureEndOutput = outputList.indexOf(outputAlphabet.getProcedureEnd());
+        this.errorOutput = outputList.indexOf(outputAlphabet.getError());
+
+        this.procedures = new TableProcedures();
+    }
+
+    private static <I> Map<I, Integer> indexSymbols(SPMMInputAlphabet<I> inputAlphabet) {
+        final Map<I, Integer> symbolIndices = Maps.newHashMapWithExpectedSize(inputAlphabet.size());
+        for (int i = 0; i < inputAlphabet.size(); i++) {
+            symbolIndices.put(inputAlphabet.getSymbol(i), i);
+        }
+        return symbolIndices;
+    }
+
+    private static <I> int[] calledProcedures(SPMMInputAlphabet<I> inputAlphabet) {
+        final int[] calledProcedure = new int[inputAlphabet.size()];
+        for (int i = 0; i < calledProcedure.length; i++) {
+            final I symbol = inputAlphabet.getSymbol(i);
+            calledProcedure[i] = inputAlphabet.isCallSymbol(symbol) ? inputAlphabet.getCallSymbolIndex(symbol) : -1;
+        }
+        return calledProcedure;
+    }
+
+    private static <I> int[] callSymbolIndices(SPMMInputAlphabet<I> inputAlphabet, Map<I, Integer> symbolIndices) {
+        final int[] callSymbolIndex = new int[inputAlphabet.getNumCalls()];
+        for (int p = 0; p < callSymbolIndex.length; p++) {
+            callSymbolIndex[p] = symbolIndices.get(inputAlphabet.getCallSymbol(p));
+        }
+        return callSymbolIndex;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void compileProcedure(int procedureIndex,
+                                  MealyMachine<Integer, I, ?, O> procedure,
+                                  Map<O, Integer> outputIndices,
+                                  List<O> outputList) {
+        final StateIDs<Integer> ids = stateIDs[procedureIndex];
+        final int offset = offsets[procedureIndex];
+
+        // only ask for symbols the procedure actually knows, if it tells us
+        final boolean[] known = new boolean[numSymbols];
+        if (procedure instanceof InputAlphabetHolder) {
+            final InputAlphabetHolder<I> holder = (InputAlphabetHolder<I>) procedure;
+            for (int i = 0; i < numSymbols; i++) {
+                known[i] = holder.getInputAlphabet().containsSymbol(inputAlphabet.getSymbol(i));
+            }
+        } else {
+            Arrays.fill(known, true);
+        }
+
+        for (Integer state : procedure.getStates()) {
+            final int globalId = offset + ids.getStateId(state);
+
+            for (int i = 0; i < numSymbols; i++) {
+                if (!known[i]) {
+                    continue;
+                }
+                final I symbol = inputAlphabet.getSymbol(i);
+                final Integer successor = procedure.getSuccessor(state, symbol);
+                if (successor != null) {
+                    successors[globalId * numSymbols + i] = offset + ids.getStateId(successor);
+                    outputs[globalId * numSymbols + i] =
+                            outputIndex(procedure.getOutput(state, symbol), outputIndices, outputList);
+                }
+            }
+        }
+    }
+
+    private static <O> int outputIndex(O symbol, Map<O, Integer> outputIndices, List<O> outputList) {
+        Integer index = outputIndices.get(symbol);
+        if (index == null) {
+            index = outputList.size();
+            outputIndices.put(symbol, index);
+            outputList.add(symbol);
+        }
+        return index;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////
+    //////////////////////// next transition logic ////////////////////////////////////////
+    ///////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Same as {@link #getTransition(State, Object)}, but on the global ids of the compiled tables. The successor is
+     * written to the current global id of the cursor, the index of the output symbol is returned.
+     */
+    private int step(Cursor cursor, int symbol) {
+        final int current = cursor.current;
+
+        if (current < 0) {
+            if (current == INITIAL && symbol == initialCallSymbolIndex
+                    && initialStates[initialProcedureIndex] != UNDEFINED) {
+                cursor.push(INITIAL);
+                cursor.current = initialStates[initialProcedureIndex];
+                return procedureStartOutput;
+            }
+            return cursor.sink();
+        }
+
+        final int index = current * numSymbols + symbol;
+        final int callee = calledProcedure[symbol];
+
+        if (callee >= 0) {
+            if (!activated[callee] || outputs[index] == procedureStartOutput) {
+                if (initialStates[callee] == UNDEFINED) {
+                    return cursor.sink();
+                }
+                cursor.push(index);
+                cursor.current = initialStates[callee];
+                return procedureStartOutput;
+            }
+        } else if (symbol == returnSymbolIndex) {
+            // the call on top of the stack tells which procedure is left, its table may be shared
+            final int call = cursor.peek();
+            final int procedure = call == INITIAL ? initialProcedureIndex : calledProcedure[call % numSymbols];
+            if (activated[procedure] && outputs[index] == procedureEndOutput) {
+                cursor.pop();
+
+                if (call == INITIAL) {
+                    cursor.current = ACCEPT;
+                    return procedureEndOutput;
+                }
+
+                final int next = successors[call];
+                if (next == UNDEFINED) {
+                    return cursor.sink();
+                }
+                cursor.current = next;
+                return procedureEndOutput;
+            }
+        }
+
+        final int next = successors[index];
+        if (next == UNDEFINED) {
+            return cursor.sink();
+        }
+        cursor.current = next;
+        return outputs[index];
+    }
+
+    @Nullable
+    @Override
+    public MealyTransition<State<I, Integer>, O> getTransition(@Nonnull State<I, Integer> currentState,
+                                                               @Nullable I input) {
+        if (input == null) {
+            return null;
+        }
+        if (!this.isValidSPMM()) {
+            return initialProcedure.globalErrorTransition;
+
+        } else if (initialProcedure.containsState(currentState)) {
+            if (initialProcedure.initialState.equals(currentState)
+                    && initialProcedure.callSymbol.equals(input)
+                    && initialStates[initialProcedureIndex] != UNDEFINED) {
+                final PersistentStack<State<I, Integer>> stack =
+                        PersistentStack.<State<I, Integer>>empty().push(initialProcedure.initialState);
+
+                return new MealyTransition<>(
+                        new State<>(initialProcedure.callSymbol,
+                                localState(initialProcedureIndex, initialStates[initialProcedureIndex]), stack),
+                        outputAlphabet.getProcedureStart());
+            }
+            return initialProcedure.globalErrorTransition;
+        }
+
+        final Integer symbol = symbolIndices.get(input);
+        if (symbol == null) {
+            throw new IllegalStateException("could not find transition for given state and input");
+        }
+
+        final I identifier = currentState.getFirst();
+        final int procedure = inputAlphabet.getCallSymbolIndex(identifier);
+        final int current = globalId(currentState);
+        final int index = current * numSymbols + symbol;
+        final int callee = calledProcedure[symbol];
+
+        if (callee >= 0) {
+            if (!activated[callee] || outputs[index] == procedureStartOutput) {
+                if (initialStates[callee] == UNDEFINED) {
+                    return initialProcedure.globalErrorTransition;
+                }
+                return new MealyTransition<>(
+                        new State<>(input, localState(callee, initialStates[callee]), currentState.getStack(),
+                                currentState),
+                        outputAlphabet.getProcedureStart());
+            }
+        } else if (symbol == returnSymbolIndex) {
+            if (activated[procedure] && outputs[index] == procedureEndOutput) {
+                final State<I, Integer> previousState = currentState.getStack().peek();
+
+                if (previousState == initialProcedure.initialState) {
+                    if (procedure == initialProcedureIndex) {
+                        return new MealyTransition<>(initialProcedure.terminatingState,
+                                outputAlphabet.getProcedureEnd());
+                    }
+                    return initialProcedure.globalErrorTransition;
+                }
+
+                final int next = successors[globalId(previousState) * numSymbols + callSymbolIndex[procedure]];
+                if (next == UNDEFINED) {
+                    return initialProcedure.globalErrorTransition;
+                }
+                final int caller = inputAlphabet.getCallSymbolIndex(previousState.getFirst());
+                return new MealyTransition<>(
+                        new State<>(previousState.getFirst(), localState(caller, next), previousState.getStack()),
+                        outputAlphabet.getProcedureEnd());
+            }
+        }
+
+        final int next = successors[index];
+        if (next == UNDEFINED) {
+            return initialProcedure.globalErrorTransition;
+        }
+        return new MealyTransition<>(new State<>(identifier, localState(procedure, next), currentState.getStack()),
+                outputSymbols[outputs[index]]);
+    }
+
+    private int globalId(State<I, Integer> state) {
+        final int procedure = inputAlphabet.getCallSymbolIndex(state.getFirst());
+        return offsets[procedure] + stateIDs[procedure].getStateId(state.getSecond());
+    }
+
+    private Integer localState(int procedure, int globalId) {
+        return stateIDs[procedure].getState(globalId - offsets[procedure]);
+    }
+
+
+    /////////////////////////////////////////////////////////////////////////////////////////
+    //////////////////////// reading input and producing output logic ///////////////////////
+    /////////////////////////////////////////////////////////////////////////////////////////
+
+    @Nonnull
+    public Word<O> answerQuery(@Nonnull Word<I> input) {
+        return this.computeSuffixOutput(Word.epsilon(), input);
+    }
+
+    @Nonnull
+    @Override
+    /** output will only be provided for suffix
+     */
+    public Word<O> answerQuery(@Nonnull Word<I> prefix, @Nonnull Word<I> suffix) {
+        return this.computeSuffixOutput(prefix, suffix);
+    }
+
+    @Override
+    @Nonnull
+    public Word<O> computeSuffixOutput(@Nonnull Iterable<? extends I> iterable,
+                                       @Nonnull Iterable<? extends I> iterable1) {
+        final SPMMCursor<I, O> cursor = cursor();
+        for (I symbol : iterable) {
+            cursor.step(symbol);
+        }
+
+        final WordBuilder<O> wb = new WordBuilder<>();
+        for (I symbol : iterable1) {
+            wb.append(cursor.step(symbol));
+        }
+        return wb.toWord();
+    }
+
+    @Override
+    @Nonnull
+    public Word<O> computeOutput(@Nonnull Iterable<? extends I> input) {
+        return computeSuffixOutput(Collections.emptyList(), input);
+    }
+
+    @Nonnull
+    @Override
+    public SPMMCursor<I, O> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns the number of global ids of the tables. Call symbols with the same procedure instance share its ids.
+     */
+    public int getNumGlobalIds() {
+        return numStates;
+    }
+
+    @Override
+    public int getNumOutputIds() {
+        return outputSymbols.length;
+    }
+
+    @Nonnull
+    @Override
+    public O getOutputSymbol(int id) {
+        return outputSymbols[id];
+    }
+
+    @Nonnull
+    @Override
+    public IntCursor intCursor() {
+        return new Cursor();
+    }
+
+    public boolean isValidSPMM() {
+        return this.initialProcedure.callSymbol != null;
+    }
+
+    @Nonnull
+    @Override
+    public SPMMInputAlphabet<I> getInputAlphabet() {
+        return inputAlphabet;
+    }
+
+    @Override
+    public void addActivatedCall(@Nonnull I identifier) {
+        if (inputAlphabet.getCallSymbols().contains(identifier)) {
+            activatedCalls.add(identifier);
+            activated[inputAlphabet.getCallSymbolIndex(identifier)] = true;
+        } else {
+            throw new IllegalStateException("all activated calls must be symbols " +
+                    "from call alphabet of input alphabet");
+        }
+    }
+
+    @Override
+    @Nonnull
+    public Set<I> getActivatedCalls() {
+        return Collections.unmodifiableSet(activatedCalls);
+    }
+
+    @Override
+    @Nonnull
+    public SPMMInputAlphabet<I> getInputAlphabetWithOnlyActivatedCalls() {
+        return new DefaultSPMMInputAlphabet<>(
+                inputAlphabet.getInternalAlphabet(),
+                Alphabets.fromCollection(activatedCalls),
+                inputAlphabet.getReturnSymbol());
+    }
+
+    @Nonnull
+    @Override
+    public SPMMOutputAlphabet<O> getOutputAlphabet() {
+        return outputAlphabet;
+    }
+
+    @Override
+    public Graph<?, ?> graphView() {
+        return new ReachabilityView<>(initialProcedure.callSymbol,
+                getInputAlphabetWithOnlyActivatedCalls(), outputAlphabet, procedures);
+    }
+
+    @Nullable
+    @Override
+    public State<I, Integer> getInitialState() {
+        return initialProcedure.initialState;
+    }
+
+    @Override
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public Map<I, MealyMachine<Integer, I, ?, O>> getProcedures() {
+        // persistent maps are immutable already and are handed out as they are, so builders can share them
+        if (procedures instanceof PersistentMap) {
+            return (Map<I, MealyMachine<Integer, I, ?, O>>) procedures;
+        }
+        return Collections.unmodifiableMap(procedures);
+    }
+
+    @Nullable
+    @Override
+    public State<I, Integer> getSuccessor(@Nonnull State<I, Integer> currentState, @Nullable I i) {
+        final MealyTransition<State<I, Integer>, O> transition = this.getTransition(currentState, i);
+        return transition == null ? null : transition.getSuccessor();
+    }
+
+    @Nonnull
+    @Override
+    public State<I, Integer> getSuccessor(@Nonnull MealyTransition<State<I, Integer>, O> t) {
+        return t.getSuccessor();
+    }
+
+    @Nonnull
+    @Override
+    public O getTransitionOutput(@Nonnull MealyTransition<State<I, Integer>, O> t) {
+        return t.getOutput();
+    }
+
+    @Override
+    @Nullable
+    public I getInitialCall() {
+        return initialProcedure.callSymbol;
+    }
+
+    /**
+     * The procedures of an SPMM that was created from its tables. All procedures are rebuilt at the first access, their
+     * states are the local ids of the tables.
+     */
+    private final class TableProcedures extends AbstractMap<I, MealyMachine<Integer, I, ?, O>> {
+
+        private volatile Map<I, MealyMachine<Integer, I, ?, O>> materialized;
+
+        @Override
+        public Set<Entry<I, MealyMachine<Integer, I, ?, O>>> entrySet() {
+            Map<I, MealyMachine<Integer, I, ?, O>> result = materialized;
+            if (result == null) {
+                synchronized (this) {
+                    result = materialized;
+                    if (result == null) {
+                        result = materialize();
+                        materialized = result;
+                    }
+                }
+            }
+            return result.entrySet();
+        }
+
+        private Map<I, MealyMachine<Integer, I, ?, O>> materialize() {
+            final Map<I, MealyMachine<Integer, I, ?, O>> result = new LinkedHashMap<>();
+            for (int p = 0; p < callSymbolIndex.length; p++) {
+                if (initialStates[p] == UNDEFINED) {
+                    continue;
+                }
+                final int offset = offsets[p];
+                final int size = sizes[p];
+                final CompactMealy<I, O> procedure = new CompactMealy<>(inputAlphabet, size);
+                for (int s = 0; s < size; s++) {
+                    if (offset + s == initialStates[p]) {
+                        procedure.addInitialState();
+                    } else {
+                        procedure.addState();
+                    }
+                }
+                for (int s = 0; s < size; s++) {
+                    for (int i = 0; i < numSymbols; i++) {
+                        final int index = (offset + s) * numSymbols + i;
+                        if (successors[index] != UNDEFINED) {
+                            procedure.addTransition(s, inputAlphabet.getSymbol(i), successors[index] - offset,
+                                    outputSymbols[outputs[index]]);
+                        }
+                    }
+                }
+                result.put(inputAlphabet.getCallSymbol(p), procedure);
+            }
+            return Collections.unmodifiableMap(result);
+        }
+    }
+
+    /**
+     * A configuration of the compiled tables: the current global id and the stack of the global ids of the callers.
+     */
+    private final class Cursor implements SPMMCursor<I, O>, IntCursor {
+
+        private int current = INITIAL;
+        private int[] stack = new int[16];
+        private int depth;
+
+        @Override
+        public void reset() {
+            current = INITIAL;
+            depth = 0;
+        }
+
+        @Nonnull
+        @Override
+        public O step(@Nonnull I input) {
+            final Integer index = symbolIndices.get(input);
+            if (index == null) {
+                if (current >= 0) {
+                    throw new IllegalStateException("could not find transition for given state and input");
+                }
+                return outputSymbols[sink()];
+            }
+            return outputSymbols[CompactSPMM.this.step(this, index)];
+        }
+
+        @Override
+        public int step(int input) {
+            if (input < 0 || input >= numSymbols) {
+                if (current >= 0) {
+                    throw new IllegalStateException("could not find transition for given state and input");
+                }
+                return sink();
+            }
+            return CompactSPMM.this.step(this, input);
+        }
+
+        @Override
+        public int depth() {
+            return depth;
+        }
+
+        @Nonnull
+        @Override
+        public Cursor copy() {
+            final Cursor copy = new Cursor();
+            copy.current = current;
+            copy.stack = Arrays.copyOf(stack, stack.length);
+            copy.depth = depth;
+            return copy;
+        }
+
+        void push(int globalId) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            stack[depth++] = globalId;
+        }
+
+        int peek() {
+            return stack[depth - 1];
+        }
+
+        int pop() {
+            return stack[--depth];
+        }
+
+        int sink() {
+            current = SINK;
+            depth = 0;
+            return errorOutput;
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model.compactspmm;
+
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.SPMMBuilder;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.componenets.PersistentMap;
+import de.learnlib.spmm.model.componenets.State;
+import de.learnlib.spmm.util.ProcedureMinimizer;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.MealyTransition;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Builds {@link CompactSPMM}s. Procedures are compiled into the tables of the resulting SPMM on creation, so this
+ * builder is meant for systems that are simulated often (e.g. systems under learning), not for hypotheses that are
+ * rebuilt after every refinement.
+ * <p>
+ * Optionally, every procedure is minimized on creation and behaviourally equivalent procedures share one machine, see
+ * {@link ProcedureMinimizer}, and thereby one table. The minimizer is shared by all SPMMs of one builder.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+public class CompactSPMMBuilder<I, O>
+        implements SPMMBuilder<Integer, I, MealyTransition<State<I, Integer>, O>, O> {
+
+    private final ProcedureMinimizer<I, O> minimizer;
+
+    public CompactSPMMBuilder() {
+        this(false);
+    }
+
+    public CompactSPMMBuilder(boolean minimizeProcedures) {
+        this.minimizer = minimizeProcedures ? new ProcedureMinimizer<>() : null;
+    }
+
+    @Override
+    @Nonnull
+    public CompactSPMM<I, O> createSPMM(@Nonnull SPMMInputAlphabet<I> inputAlphabet,
+                                        @Nonnull SPMMOutputAlphabet<O> outputAlphabet,
+                                        @Nullable I initialCall,
+                                        @Nonnull Map<I, ? extends MealyMachine<Integer, I, ?, O>> procedures) {
+        SPMMBuilder.checkArguments(inputAlphabet, outputAlphabet, initialCall, procedures);
+        return newSPMM(inputAlphabet, outputAlphabet, initialCall,
+                minimizer == null ? procedures : minimizer.minimize(procedures, inputAlphabet));
+    }
+
+    /**
+     * Creates the SPMM from validated arguments.
+     */
+    @Nonnull
+    CompactSPMM<I, O> newSPMM(SPMMInputAlphabet<I> inputAlphabet,
+                              SPMMOutputAlphabet<O> outputAlphabet,
+                              I initialCall,
+                              Map<I, ? extends MealyMachine<Integer, I, ?, O>> procedures) {
+        return new CompactSPMM<>(inputAlphabet, outputAlphabet, initialCall, procedures);
+    }
+
+    @Override
+    @Nonnull
+    public CompactSPMM<I, O> createSPMM(@Nonnull SPMMInputAlphabet<I> inputAlphabet,
+                                        @Nonnull Collection<I> activatedCalls,
+                                        @Nonnull SPMMOutputAlphabet<O> outputAlphabet,
+                                        @Nullable I initialCall,
+                                        @Nonnull Map<I, MealyMachine<Integer, I, ?, O>> procedures) {
+        CompactSPMM<I, O> spmm = this.createSPMM(inputAlphabet, outputAlphabet, initialCall, procedures);
+        for (I call : activatedCalls) {
+            if (inputAlphabet.contains(call)) {
+                spmm.addActivatedCall(call);
+            } else {
+                throw new IllegalStateException("all activated calls must be symbols " +
+                        "from call alphabet of input alphabet");
+            }
+        }
+        return spmm;
+    }
+
+    @Override
+    @Nonnull
+    public CompactSPMM<I, O> createEmptySPMM(@Nonnull SPMMInputAlphabet<I> inputAlphabet,
+                                             @Nonnull SPMMOutputAlphabet<O> outputAlphabet) {
+        SPMMInputAlphabet<I> newInputAlphabet =
+                DefaultSPMMInputAlphabet.copyOf(inputAlphabet).retainCalls(Collections.emptySet());
+        return new CompactSPMM<>(newInputAlphabet, outputAlphabet, null, PersistentMap.empty());
+    }
+
+    @Override
+    @Nonnull
+    public CompactSPMM<I, O> copySPMMAddProcedure(
+            @Nonnull SPMM<Integer, I, MealyTransition<State<I, Integer>, O>, O> original,
+            @Nonnull I callSymbol, @Nonnull MealyMachine<Integer, I, ?, O> procedure) {
+        return createDuplicateSPMMWithNewProcedure(original, callSymbol, procedure, false);
+    }
+
+    @Override
+    @Nonnull
+    public CompactSPMM<I, O> copySPMMAddInitialCallProcedure(
+            @Nonnull SPMM<Integer, I, MealyTransition<State<I, Integer>, O>, O> original,
+            @Nonnull I callSymbol, @Nonnull MealyMachine<Integer, I, ?, O> procedure) {
+        return createDuplicateSPMMWithNewProcedure(original, callSymbol, procedure, true);
+    }
+
+    private CompactSPMM<I, O> createDuplicateSPMMWithNewProcedure(
+            SPMM<Integer, I, MealyTransition<State<I, Integer>, O>, O> original,
+            I callSymbol, MealyMachine<Integer, I, ?, O> procedure, boolean newProcedureIsInitialCall) {
+
+        // the alphabet and the procedure map are shared with the original, only the tables are compiled anew
+        final SPMMInputAlphabet<I> newInputAlphabet =
+                DefaultSPMMInputAlphabet.copyOf(original.getInputAlphabet()).withCallSymbol(callSymbol);
+
+        final Map<I, MealyMachine<Integer, I, ?, O>> newProcedures =
+                PersistentMap.<I, MealyMachine<Integer, I, ?, O>>copyOf(original.getProcedures())
+                        .plus(callSymbol, procedure);
+
+        I newInitialCall = original.getInitialCall();
+
+        if (newProcedureIsInitialCall) {
+            newInitialCall = callSymbol;
+        }
+
+        return this.createSPMM(newInputAlphabet,
+                original.getOutputAlphabet(),
+                newInitialCall,
+                newProcedures);
+    }
+
+}
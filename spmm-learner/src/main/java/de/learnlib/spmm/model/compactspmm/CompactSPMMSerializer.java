@@ -0,0 +1,291 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model.compactspmm;
+
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMOutputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.util.ProcedureMinimizer;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.impl.SimpleAlphabet;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Reads and writes {@link CompactSPMM}s in a compact, versioned binary format. Symbols are stored by name, see the
+ * codecs of the constructor, the procedures are stored as the successor and output tables of the compact SPMM.
+ * Reading memory-maps the file and copies the tables in bulk, no procedure is built until it is asked for.
+ * <p>
+ * The format (version 1, big-endian) is:
+ * <ol>
+ * <li>the magic number {@code SPMM} and the version,</li>
+ * <li>the internal, call and return input symbols, the internal output symbols, the procedure start, procedure end,
+ * error and post-return output symbols and the output symbols of the tables, each list as its length followed by
+ * its names,</li>
+ * <li>the column of every input symbol in the tables, the initial call and the activated calls as call indices,</li>
+ * <li>the number of states and the first global id and the global initial state of every procedure,</li>
+ * <li>padding up to a multiple of 8 bytes, followed by the successor and the output tables.</li>
+ * </ol>
+ * Names are written as their length followed by their UTF-8 bytes.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+public class CompactSPMMSerializer<I, O> {
+
+    private static final int MAGIC = 0x53504D4D;
+    private static final int VERSION = 1;
+
+    private final Function<? super I, String> inputEncoder;
+    private final Function<String, ? extends I> inputDecoder;
+    private final Function<? super O, String> outputEncoder;
+    private final Function<String, ? extends O> outputDecoder;
+
+    /**
+     * Creates a serializer for SPMMs whose symbols are identified by their string representation, e.g. strings or
+     * characters.
+     */
+    @Nonnull
+    public static <I, O> CompactSPMMSerializer<I, O> ofStrings(@Nonnull Function<String, ? extends I> inputDecoder,
+                                                              @Nonnull Function<String, ? extends O> outputDecoder) {
+        return new CompactSPMMSerializer<>(String::valueOf, inputDecoder, String::valueOf, outputDecoder);
+    }
+
+    public CompactSPMMSerializer(@Nonnull Function<? super I, String> inputEncoder,
+                                 @Nonnull Function<String, ? extends I> inputDecoder,
+                                 @Nonnull Function<? super O, String> outputEncoder,
+                                 @Nonnull Function<String, ? extends O> outputDecoder) {
+        this.inputEncoder = inputEncoder;
+        this.inputDecoder = inputDecoder;
+        this.outputEncoder = outputEncoder;
+        this.outputDecoder = outputDecoder;
+    }
+
+    /**
+     * Writes the given SPMM to the given file. SPMMs that are not compact are compiled into a {@link CompactSPMM}
+     * first, with minimized procedures.
+     */
+    @SuppressWarnings("unchecked")
+    public void write(@Nonnull SPMM<?, I, ?, O> spmm, @Nonnull Path file) throws IOException {
+        final CompactSPMM<I, O> compact;
+        if (spmm instanceof CompactSPMM) {
+            compact = (CompactSPMM<I, O>) spmm;
+        } else {
+            compact = new CompactSPMMBuilder<I, O>().createSPMM(spmm.getInputAlphabet(),
+                    spmm.getActivatedCalls(),
+                    spmm.getOutputAlphabet(),
+                    spmm.getInitialCall(),
+                    new ProcedureMinimizer<I, O>().minimize(spmm.getProcedures(), spmm.getInputAlphabet()));
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            final SPMMInputAlphabet<I> inputAlphabet = compact.getInputAlphabet();
+            final List<I> symbols = new ArrayList<>(inputAlphabet.getInternalAlphabet());
+            symbols.addAll(inputAlphabet.getCallAlphabet());
+            symbols.add(inputAlphabet.getReturnSymbol());
+            writeNames(out, inputAlphabet.getInternalAlphabet(), inputEncoder);
+            writeNames(out, inputAlphabet.getCallAlphabet(), inputEncoder);
+            writeName(out, inputEncoder.apply(inputAlphabet.getReturnSymbol()));
+
+            final SPMMOutputAlphabet<O> outputAlphabet = compact.getOutputAlphabet();
+            writeNames(out, outputAlphabet.getInternalOutputAlphabet(), outputEncoder);
+            writeName(out, outputEncoder.apply(outputAlphabet.getProcedureStart()));
+            writeName(out, outputEncoder.apply(outputAlphabet.getProcedureEnd()));
+            writeName(out, outputEncoder.apply(outputAlphabet.getError()));
+            writeName(out, outputEncoder.apply(outputAlphabet.getPostReturn()));
+            final List<O> outputSymbols = new ArrayList<>(compact.outputSymbols.length);
+            for (O symbol : compact.outputSymbols) {
+                outputSymbols.add(symbol);
+            }
+            writeNames(out, outputSymbols, outputEncoder);
+
+            // the columns of the tables by the position of their symbol in the lists above
+            out.writeInt(compact.numSymbols);
+            for (int i = 0; i < compact.numSymbols; i++) {
+                out.writeInt(symbols.indexOf(inputAlphabet.getSymbol(i)));
+            }
+            out.writeInt(compact.initialProcedureIndex);
+            out.writeInt(compact.getActivatedCalls().size());
+            for (I call : compact.getActivatedCalls()) {
+                out.writeInt(inputAlphabet.getCallSymbolIndex(call));
+            }
+
+            out.writeInt(compact.numStates);
+            for (int p = 0; p < compact.offsets.length; p++) {
+                out.writeInt(compact.offsets[p]);
+                out.writeInt(compact.initialStates[p]);
+            }
+
+            while (out.size() % 8 != 0) {
+                out.writeByte(0);
+            }
+            for (int successor : compact.successors) {
+                out.writeInt(successor);
+            }
+            for (int output : compact.outputs) {
+                out.writeInt(output);
+            }
+        }
+    }
+
+    /**
+     * Reads an SPMM that was written by {@link #write(SPMM, Path)}.
+     *
+     * @throws IllegalArgumentException if the file is not an SPMM file of a supported version
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public CompactSPMM<I, O> read(@Nonnull Path file) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException(file + " is not an SPMM file");
+        }
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported SPMM file version " + version);
+        }
+
+        final List<I> internals = readNames(buffer, inputDecoder);
+        final List<I> calls = readNames(buffer, inputDecoder);
+        final I returnSymbol = inputDecoder.apply(readName(buffer));
+        final SPMMInputAlphabet<I> inputAlphabet = new DefaultSPMMInputAlphabet<>(
+                new SimpleAlphabet<>(internals), new SimpleAlphabet<>(calls), returnSymbol);
+
+        final Alphabet<O> internalOutputs = new SimpleAlphabet<>(readNames(buffer, outputDecoder));
+        final O procedureStart = outputDecoder.apply(readName(buffer));
+        final O procedureEnd = outputDecoder.apply(readName(buffer));
+        final O error = outputDecoder.apply(readName(buffer));
+        final O postReturn = outputDecoder.apply(readName(buffer));
+        final SPMMOutputAlphabet<O> outputAlphabet =
+                new DefaultSPMMOutputAlphabet<>(internalOutputs, procedureStart, procedureEnd, error, postReturn);
+        final O[] outputSymbols = (O[]) readNames(buffer, outputDecoder).toArray();
+
+        final List<I> symbols = new ArrayList<>(internals);
+        symbols.addAll(calls);
+        symbols.add(returnSymbol);
+        final int numSymbols = buffer.getInt();
+        if (numSymbols != inputAlphabet.size()) {
+            throw new IllegalArgumentException("the tables of " + file + " do not match its input alphabet");
+        }
+        // the column of every stored column in the tables of the loaded SPMM
+        final int[] columns = new int[numSymbols];
+        boolean sameColumns = true;
+        for (int i = 0; i < numSymbols; i++) {
+            columns[i] = inputAlphabet.getSymbolIndex(symbols.get(buffer.getInt()));
+            sameColumns &= columns[i] == i;
+        }
+
+        final int initialProcedure = buffer.getInt();
+        final int[] activatedCalls = new int[buffer.getInt()];
+        for (int i = 0; i < activatedCalls.length; i++) {
+            activatedCalls[i] = buffer.getInt();
+        }
+
+        final int numStates = buffer.getInt();
+        final int[] offsets = new int[calls.size()];
+        final int[] initialStates = new int[calls.size()];
+        for (int p = 0; p < calls.size(); p++) {
+            offsets[p] = buffer.getInt();
+            initialStates[p] = buffer.getInt();
+        }
+
+        buffer.position((buffer.position() + 7) & ~7);
+        final IntBuffer tables = buffer.asIntBuffer();
+        final int[] successors = new int[numStates * numSymbols];
+        final int[] outputs = new int[numStates * numSymbols];
+        tables.get(successors);
+        tables.get(outputs);
+        if (!sameColumns) {
+            permuteColumns(successors, columns);
+            permuteColumns(outputs, columns);
+        }
+
+        final CompactSPMM<I, O> spmm = new CompactSPMM<>(inputAlphabet,
+                outputAlphabet,
+                initialProcedure < 0 ? null : calls.get(initialProcedure),
+                offsets,
+                initialStates,
+                successors,
+                outputs,
+                outputSymbols);
+        for (int call : activatedCalls) {
+            spmm.addActivatedCall(calls.get(call));
+        }
+        return spmm;
+    }
+
+    private static void permuteColumns(int[] table, int[] columns) {
+        final int numSymbols = columns.length;
+        final int[] row = new int[numSymbols];
+        for (int offset = 0; offset < table.length; offset += numSymbols) {
+            for (int i = 0; i < numSymbols; i++) {
+                row[columns[i]] = table[offset + i];
+            }
+            System.arraycopy(row, 0, table, offset, numSymbols);
+        }
+    }
+
+    private static <T> void writeNames(DataOutputStream out, List<T> symbols, Function<? super T, String> encoder)
+            throws IOException {
+        out.writeInt(symbols.size());
+        for (T symbol : symbols) {
+            writeName(out, encoder.apply(symbol));
+        }
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static <T> List<T> readNames(ByteBuffer buffer, Function<String, ? extends T> decoder) {
+        final int size = buffer.getInt();
+        final List<T> symbols = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            symbols.add(decoder.apply(readName(buffer)));
+        }
+        return symbols;
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
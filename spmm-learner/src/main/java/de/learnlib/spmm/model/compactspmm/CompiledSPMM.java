@@ -0,0 +1,363 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model.compactspmm;
+
+import de.learnlib.spmm.model.SPMMCursor;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import net.automatalib.automata.transout.MealyMachine;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A {@link CompactSPMM} whose tables are compiled further for simulation. Every global state becomes a node that
+ * references its successor nodes directly, and what a symbol does in a state (a local step, a procedure call, a return
+ * or a step into the sink) is decided once on compilation instead of on every step. A simulation then only follows
+ * references and the call stack holds the nodes of the callers.
+ * <p>
+ * A node is an object per state, so procedures with more states than a given limit are not compiled. A simulation
+ * steps through them on the table rows of {@link CompactSPMM}, all other procedures are still simulated on nodes.
+ * <p>
+ * The nodes are compiled on the first simulation and compiled anew after {@link #addActivatedCall(Object)}, cursors
+ * keep the activated calls they were created with. All other methods are the ones of {@link CompactSPMM}.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+public class CompiledSPMM<I, O> extends CompactSPMM<I, O> {
+
+    // actions of a symbol in a node
+    private static final byte SINK = 0;
+    private static final byte STEP = 1;
+    private static final byte CALL = 2;
+    private static final byte RETURN = 3;
+
+    // whether a procedure is compiled into nodes (by procedure index)
+    private final boolean[] compiled;
+    private volatile Program program;
+
+    // use CompiledSPMMBuilder
+    CompiledSPMM(@Nonnull SPMMInputAlphabet<I> inputAlphabet,
+                 @Nonnull SPMMOutputAlphabet<O> outputAlphabet,
+                 @Nullable I initialCall,
+                 @Nonnull Map<I, ? extends MealyMachine<Integer, I, ?, O>> procedures,
+                 int maxProcedureSize) {
+        super(inputAlphabet, outputAlphabet, initialCall, procedures);
+        this.compiled = new boolean[initialStates.length];
+        for (int p = 0; p < compiled.length; p++) {
+            compiled[p] = sizes[p] <= maxProcedureSize;
+        }
+    }
+
+    /**
+     * Returns whether the procedure of the given call symbol is simulated on compiled nodes.
+     */
+    public boolean isCompiled(@Nonnull I callSymbol) {
+        return compiled[getInputAlphabet().getCallSymbolIndex(callSymbol)];
+    }
+
+    @Override
+    public void addActivatedCall(@Nonnull I identifier) {
+        super.addActivatedCall(identifier);
+        program = null;
+    }
+
+    @Nonnull
+    @Override
+    public SPMMCursor<I, O> cursor() {
+        return new Cursor(program());
+    }
+
+    @Nonnull
+    @Override
+    public IntCursor intCursor() {
+        return new Cursor(program());
+    }
+
+    private Program program() {
+        Program result = program;
+        if (result == null) {
+            synchronized (this) {
+                result = program;
+                if (result == null) {
+                    result = new Program();
+                    program = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A compiled state. The arrays are indexed by symbol index.
+     */
+    private static final class Node {
+
+        private final int procedure;
+        // symbol index of the call symbol of the procedure of this node, -1 for the special nodes
+        private final int callSymbol;
+        // whether this node marks a state of a procedure that is not compiled
+        private final boolean table;
+        private final byte[] actions;
+        // local successors, also for call symbols, as they are needed when the callee returns
+        private final Node[] successors;
+        private final int[] outputs;
+
+        Node(int procedure, int callSymbol, int numSymbols) {
+            this(procedure, callSymbol, false, numSymbols);
+        }
+
+        Node(int procedure, int callSymbol, boolean table, int numSymbols) {
+            this.procedure = procedure;
+            this.callSymbol = callSymbol;
+            this.table = table;
+            this.actions = new byte[numSymbols];
+            this.successors = new Node[numSymbols];
+            this.outputs = new int[numSymbols];
+        }
+    }
+
+    /**
+     * The nodes of all global states of compiled procedures, built from the tables of the compact SPMM and its current
+     * activated calls. Procedures that share their tables get nodes of their own, as a node knows its procedure.
+     */
+    private final class Program {
+
+        private final Node initial = new Node(-1, -1, numSymbols);
+        private final Node accept = new Node(-1, -1, numSymbols);
+        private final Node sink = new Node(-1, -1, numSymbols);
+        // the target of a call to a procedure without initial state
+        private final Node undefined = new Node(-1, -1, numSymbols);
+        // initial node of a procedure (by procedure index), the table node for procedures that are not compiled
+        private final Node[] entries;
+        // the activated calls on compilation, used for the procedures that are not compiled
+        private final boolean[] activatedCalls = activated.clone();
+
+        Program() {
+            // the nodes of a compiled procedure by local id (by procedure index)
+            final Node[][] nodes = new Node[initialStates.length][];
+            this.entries = new Node[initialStates.length];
+            for (int p = 0; p < entries.length; p++) {
+                if (initialStates[p] == UNDEFINED) {
+                    entries[p] = undefined;
+                } else if (compiled[p]) {
+                    nodes[p] = new Node[sizes[p]];
+                    for (int s = 0; s < sizes[p]; s++) {
+                        nodes[p][s] = new Node(p, callSymbolIndex[p], numSymbols);
+                    }
+                    entries[p] = nodes[p][initialStates[p] - offsets[p]];
+                } else {
+                    // marks the states of the procedure, the cursor then holds their global id
+                    entries[p] = new Node(p, callSymbolIndex[p], true, numSymbols);
+                }
+            }
+
+            if (initialCallSymbolIndex >= 0 && initialStates[initialProcedureIndex] != UNDEFINED) {
+                initial.actions[initialCallSymbolIndex] = CALL;
+            }
+
+            // the same case distinction as CompactSPMM#step, resolved for every state and symbol
+            for (int p = 0; p < nodes.length; p++) {
+                if (nodes[p] == null) {
+                    continue;
+                }
+                for (int s = 0; s < nodes[p].length; s++) {
+                    compile(nodes[p][s], offsets[p] + s, nodes[p], offsets[p]);
+                }
+            }
+        }
+
+        private void compile(Node node, int id, Node[] procedureNodes, int offset) {
+            for (int symbol = 0; symbol < numSymbols; symbol++) {
+                final int index = id * numSymbols + symbol;
+                final int callee = calledProcedure[symbol];
+                final Node successor =
+                        successors[index] == UNDEFINED ? null : procedureNodes[successors[index] - offset];
+                node.successors[symbol] = successor;
+
+                if (callee >= 0 && (!activated[callee] || outputs[index] == procedureStartOutput)) {
+                    node.actions[symbol] = initialStates[callee] == UNDEFINED ? SINK : CALL;
+                } else if (symbol == returnSymbolIndex && activated[node.procedure] &&
+                        outputs[index] == procedureEndOutput) {
+                    node.actions[symbol] = RETURN;
+                } else if (successor != null) {
+                    node.actions[symbol] = STEP;
+                    node.outputs[symbol] = outputs[index];
+                }
+            }
+        }
+    }
+
+    /**
+     * A configuration of the compiled nodes: the current node and the stack of the nodes of the callers. Inside a
+     * procedure that is not compiled, the current node is the table node of the procedure and the global id of the
+     * state is kept separately, on the stack in a second array.
+     */
+    private final class Cursor implements SPMMCursor<I, O>, IntCursor {
+
+        private final Program program;
+        private Node current;
+        private int currentId;
+        private Node[] stack = new Node[16];
+        private int[] idStack = new int[16];
+        private int depth;
+
+        Cursor(Program program) {
+            this.program = program;
+            this.current = program.initial;
+        }
+
+        @Override
+        public void reset() {
+            current = program.initial;
+            Arrays.fill(stack, 0, depth, null);
+            depth = 0;
+        }
+
+        @Nonnull
+        @Override
+        public O step(@Nonnull I input) {
+            final Integer index = symbolIndices.get(input);
+            return outputSymbols[step(index == null ? -1 : index)];
+        }
+
+        @Override
+        public int step(int input) {
+            final Node node = current;
+            if (input < 0 || input >= numSymbols) {
+                if (node.procedure >= 0) {
+                    throw new IllegalStateException("could not find transition for given state and input");
+                }
+                return sink();
+            }
+            if (node.table) {
+                return stepOnTable(node, input);
+            }
+
+            switch (node.actions[input]) {
+                case STEP:
+                    current = node.successors[input];
+                    return node.outputs[input];
+                case CALL:
+                    push(node, -1);
+                    enter(node == program.initial ? initialProcedureIndex : calledProcedure[input]);
+                    return procedureStartOutput;
+                case RETURN:
+                    return exit(node.procedure, node.callSymbol);
+                default:
+                    return sink();
+            }
+        }
+
+        /**
+         * Same as {@link CompactSPMM#step}, for a state of a procedure that is not compiled.
+         */
+        private int stepOnTable(Node node, int input) {
+            final int index = currentId * numSymbols + input;
+            final int callee = calledProcedure[input];
+
+            if (callee >= 0) {
+                if (!program.activatedCalls[callee] || outputs[index] == procedureStartOutput) {
+                    if (initialStates[callee] == UNDEFINED) {
+                        return sink();
+                    }
+                    push(node, currentId);
+                    enter(callee);
+                    return procedureStartOutput;
+                }
+            } else if (input == returnSymbolIndex) {
+                if (program.activatedCalls[node.procedure] && outputs[index] == procedureEndOutput) {
+                    return exit(node.procedure, node.callSymbol);
+                }
+            }
+
+            final int next = successors[index];
+            if (next == UNDEFINED) {
+                return sink();
+            }
+            currentId = next;
+            return outputs[index];
+        }
+
+        private void enter(int procedure) {
+            current = program.entries[procedure];
+            currentId = initialStates[procedure];
+        }
+
+        private int exit(int procedure, int callSymbol) {
+            final Node caller = stack[--depth];
+            stack[depth] = null;
+            if (caller == program.initial) {
+                if (procedure == initialProcedureIndex) {
+                    current = program.accept;
+                    return procedureEndOutput;
+                }
+                return sink();
+            }
+            if (caller.table) {
+                final int next = successors[idStack[depth] * numSymbols + callSymbol];
+                if (next == UNDEFINED) {
+                    return sink();
+                }
+                current = caller;
+                currentId = next;
+                return procedureEndOutput;
+            }
+            final Node next = caller.successors[callSymbol];
+            if (next == null) {
+                return sink();
+            }
+            current = next;
+            return procedureEndOutput;
+        }
+
+        @Override
+        public int depth() {
+            return depth;
+        }
+
+        @Nonnull
+        @Override
+        public Cursor copy() {
+            final Cursor copy = new Cursor(program);
+            copy.current = current;
+            copy.currentId = currentId;
+            copy.stack = Arrays.copyOf(stack, stack.length);
+            copy.idStack = Arrays.copyOf(idStack, idStack.length);
+            copy.depth = depth;
+            return copy;
+        }
+
+        private void push(Node node, int id) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+                idStack = Arrays.copyOf(idStack, depth * 2);
+            }
+            stack[depth] = node;
+            idStack[depth] = id;
+            depth++;
+        }
+
+        private int sink() {
+            current = program.sink;
+            Arrays.fill(stack, 0, depth, null);
+            depth = 0;
+            return errorOutput;
+        }
+    }
+}
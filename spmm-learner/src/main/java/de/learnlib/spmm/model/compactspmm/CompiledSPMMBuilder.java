@@ -0,0 +1,55 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model.compactspmm;
+
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import net.automatalib.automata.transout.MealyMachine;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+
+/**
+ * Builds {@link CompiledSPMM}s, meant for SPMMs that are simulated very often, e.g. runtime checkers or simulated
+ * systems under learning. A compiled SPMM needs an object per state, so procedures with more states than the given
+ * limit are left on the tables of {@link CompactSPMM}, the other procedures are still compiled.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+public class CompiledSPMMBuilder<I, O> extends CompactSPMMBuilder<I, O> {
+
+    public static final int DEFAULT_MAX_PROCEDURE_SIZE = 1 << 12;
+
+    private final int maxProcedureSize;
+
+    public CompiledSPMMBuilder() {
+        this(false, DEFAULT_MAX_PROCEDURE_SIZE);
+    }
+
+    public CompiledSPMMBuilder(boolean minimizeProcedures, int maxProcedureSize) {
+        super(minimizeProcedures);
+        this.maxProcedureSize = maxProcedureSize;
+    }
+
+    @Nonnull
+    @Override
+    CompactSPMM<I, O> newSPMM(SPMMInputAlphabet<I> inputAlphabet,
+                              SPMMOutputAlphabet<O> outputAlphabet,
+                              I initialCall,
+                              Map<I, ? extends MealyMachine<Integer, I, ?, O>> procedures) {
+        return new CompiledSPMM<>(inputAlphabet, outputAlphabet, initialCall, procedures, maxProcedureSize);
+    }
+}
@@ -21,7 +21,8 @@ import javax.annotation.Nullable;
 
 public class InitialProcedure<S, I, O> {
 
-    public final State<I, S> globalSink = new State<I, S>(null, null) {
+    // the special states are shared by all SPMMs, so configurations stay valid when a hypothesis is rebuilt
+    private static final State<?, ?> GLOBAL_SINK = new State<Object, Object>(null, null) {
 
         @Override
         public String toString() {
@@ -29,7 +30,7 @@ public class InitialProcedure<S, I, O> {
         }
     };
 
-    public final State<I, S> initialState = new State<I, S>(null, null) {
+    private static final State<?, ?> INITIAL_STATE = new State<Object, Object>(null, null) {
 
         @Override
         public String toString() {
@@ -37,7 +38,7 @@ public class InitialProcedure<S, I, O> {
         }
     };
 
-    public final State<I, S> terminatingState = new State<I, S>(null, null) {
+    private static final State<?, ?> TERMINATING_STATE = new State<Object, Object>(null, null) {
 
         @Override
         public String toString() {
@@ -45,6 +46,12 @@ public class InitialProcedure<S, I, O> {
         }
     };
 
+    public final State<I, S> globalSink = special(GLOBAL_SINK);
+
+    public final State<I, S> initialState = special(INITIAL_STATE);
+
+    public final State<I, S> terminatingState = special(TERMINATING_STATE);
+
 
     public final I callSymbol;
     /**
@@ -61,6 +68,12 @@ public class InitialProcedure<S, I, O> {
     }
 
 
+    @SuppressWarnings("unchecked")
+    private static <I, S> State<I, S> special(State<?, ?> state) {
+        // the special states have neither a procedure nor a local state
+        return (State<I, S>) state;
+    }
+
     public boolean containsState(@Nullable State<I, S> state) {
         return (initialState == state ||
                 terminatingState == state ||
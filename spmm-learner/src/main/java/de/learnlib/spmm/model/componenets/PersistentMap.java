@@ -0,0 +1,355 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model.componenets;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map, implemented as a hash array mapped trie. Adding an entry copies only the path from the root to the
+ * changed node (at most seven nodes of up to 32 slots), everything else is shared with the original map. Lookups and
+ * additions take time logarithmic in the size of the map with base 32.
+ * <p>
+ * Null keys are not permitted, the mutating methods of {@link Map} throw {@link UnsupportedOperationException}.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ * @author shashko
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns a persistent map with the entries of the given map. Persistent maps are returned as they are.
+     */
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    public static <K, V> PersistentMap<K, V> copyOf(@Nonnull Map<? extends K, ? extends V> map) {
+        if (map instanceof PersistentMap) {
+            return (PersistentMap<K, V>) map;
+        }
+        PersistentMap<K, V> result = empty();
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            result = result.plus(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Returns a map that maps the given key to the given value and agrees with this map on all other keys.
+     *
+     * @throws IllegalArgumentException if the key is null
+     */
+    @Nonnull
+    public PersistentMap<K, V> plus(@Nonnull K key, @Nullable V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("key may not be null");
+        }
+        final Entry entry = new Entry(key, value, hash(key));
+        final Node newRoot = root.plus(entry, 0);
+        if (newRoot == root) {
+            return this;
+        }
+        final boolean added = root.get(key, entry.hash, 0) == null;
+        return new PersistentMap<>(newRoot, added ? size + 1 : size);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null) {
+            return null;
+        }
+        final Entry entry = root.get(key, hash(key), 0);
+        return entry == null ? null : (V) entry.getValue();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && root.get(key, hash(key), 0) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @Nonnull
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int slot(int hash, int shift) {
+        return (hash >>> shift) & MASK;
+    }
+
+    /**
+     * Creates the smallest node that holds both given entries (or nodes) with different keys.
+     */
+    private static Node pair(Object first, int firstHash, Object second, int secondHash, int shift) {
+        if (firstHash == secondHash) {
+            // only plain entries can collide, collision nodes never meet an equal hash here
+            return new CollisionNode(firstHash, new Entry[]{(Entry) first, (Entry) second});
+        }
+        final int firstSlot = slot(firstHash, shift);
+        final int secondSlot = slot(secondHash, shift);
+        if (firstSlot == secondSlot) {
+            return new BitmapNode(1 << firstSlot,
+                    new Object[]{pair(first, firstHash, second, secondHash, shift + BITS)});
+        }
+        return new BitmapNode((1 << firstSlot) | (1 << secondSlot),
+                firstSlot < secondSlot ? new Object[]{first, second} : new Object[]{second, first});
+    }
+
+    private abstract static class Node {
+
+        @Nullable
+        abstract Entry get(Object key, int hash, int shift);
+
+        /**
+         * Returns a node with the given entry, or this node if it already contains an equal mapping.
+         */
+        @Nonnull
+        abstract Node plus(Entry entry, int shift);
+
+        /**
+         * The slots of this node, each holding either an {@link Entry} or a {@link Node}.
+         */
+        abstract Object[] slots();
+    }
+
+    private static final class BitmapNode extends Node {
+
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        @Override
+        Entry get(Object key, int hash, int shift) {
+            final int bit = 1 << slot(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            final Object slot = slots[Integer.bitCount(bitmap & (bit - 1))];
+            if (slot instanceof Node) {
+                return ((Node) slot).get(key, hash, shift + BITS);
+            }
+            final Entry entry = (Entry) slot;
+            return entry.hash == hash && entry.getKey().equals(key) ? entry : null;
+        }
+
+        @Override
+        Node plus(Entry entry, int shift) {
+            final int bit = 1 << slot(entry.hash, shift);
+            final int index = Integer.bitCount(bitmap & (bit - 1));
+
+            if ((bitmap & bit) == 0) {
+                final Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = entry;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                return new BitmapNode(bitmap | bit, newSlots);
+            }
+
+            final Object slot = slots[index];
+            final Object newSlot;
+            if (slot instanceof Node) {
+                newSlot = ((Node) slot).plus(entry, shift + BITS);
+            } else {
+                final Entry existing = (Entry) slot;
+                if (existing.hash == entry.hash && existing.getKey().equals(entry.getKey())) {
+                    newSlot = existing.getValue() == entry.getValue() ? existing : entry;
+                } else {
+                    newSlot = pair(existing, existing.hash, entry, entry.hash, shift + BITS);
+                }
+            }
+            if (newSlot == slot) {
+                return this;
+            }
+            final Object[] newSlots = slots.clone();
+            newSlots[index] = newSlot;
+            return new BitmapNode(bitmap, newSlots);
+        }
+
+        @Override
+        Object[] slots() {
+            return slots;
+        }
+    }
+
+    /**
+     * Holds the entries of keys whose hashes are equal in all bits.
+     */
+    private static final class CollisionNode extends Node {
+
+        private final int hash;
+        private final Entry[] entries;
+
+        CollisionNode(int hash, Entry[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+
+        @Override
+        Entry get(Object key, int hash, int shift) {
+            if (hash != this.hash) {
+                return null;
+            }
+            for (Entry entry : entries) {
+                if (entry.getKey().equals(key)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        Node plus(Entry entry, int shift) {
+            if (entry.hash != hash) {
+                return pair(this, hash, entry, entry.hash, shift);
+            }
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].getKey().equals(entry.getKey())) {
+                    if (entries[i].getValue() == entry.getValue()) {
+                        return this;
+                    }
+                    final Entry[] newEntries = entries.clone();
+                    newEntries[i] = entry;
+                    return new CollisionNode(hash, newEntries);
+                }
+            }
+            final Entry[] newEntries = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, newEntries, 0, entries.length);
+            newEntries[entries.length] = entry;
+            return new CollisionNode(hash, newEntries);
+        }
+
+        @Override
+        Object[] slots() {
+            return entries;
+        }
+    }
+
+    private static final class Entry extends SimpleImmutableEntry<Object, Object> {
+
+        private final int hash;
+
+        Entry(Object key, Object value, int hash) {
+            super(key, value);
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Depth-first iteration over the trie, with an explicit stack of the slots that are still to visit.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+        private final Deque<Object[]> nodes = new ArrayDeque<>();
+        private final Deque<Integer> positions = new ArrayDeque<>();
+        private Entry next;
+
+        EntryIterator() {
+            nodes.push(root.slots());
+            positions.push(0);
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && !nodes.isEmpty()) {
+                final Object[] slots = nodes.peek();
+                final int position = positions.pop();
+                if (position == slots.length) {
+                    nodes.pop();
+                    continue;
+                }
+                positions.push(position + 1);
+                final Object slot = slots[position];
+                if (slot instanceof Node) {
+                    nodes.push(((Node) slot).slots());
+                    positions.push(0);
+                } else {
+                    next = (Entry) slot;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final Entry result = next;
+            advance();
+            return (Map.Entry<K, V>) (Map.Entry<?, ?>) result;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model.componenets;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * An immutable stack, implemented as a cons list. Pushing and popping is done in constant time and all stacks that
+ * result from pushing onto the same stack share their tails. Depth and hash code are computed once on construction.
+ *
+ * @param <E> element type
+ * @author shashko
+ */
+public final class PersistentStack<E> implements Iterable<E> {
+
+    private static final PersistentStack<?> EMPTY = new PersistentStack<>();
+
+    private final E top;
+    private final PersistentStack<E> rest;
+    private final int depth;
+    private final int hash;
+
+    private PersistentStack() {
+        this.top = null;
+        this.rest = null;
+        this.depth = 0;
+        this.hash = 1;
+    }
+
+    private PersistentStack(E top, PersistentStack<E> rest) {
+        this.top = top;
+        this.rest = rest;
+        this.depth = rest.depth + 1;
+        this.hash = 31 * rest.hash + spread(Objects.hashCode(top));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    public static <E> PersistentStack<E> empty() {
+        return (PersistentStack<E>) EMPTY;
+    }
+
+    @Nonnull
+    public PersistentStack<E> push(@Nullable E element) {
+        return new PersistentStack<>(element, this);
+    }
+
+    /**
+     * Returns the stack without its top element.
+     *
+     * @throws IllegalStateException if the stack is empty
+     */
+    @Nonnull
+    public PersistentStack<E> pop() {
+        if (isEmpty()) {
+            throw new IllegalStateException("cannot pop from an empty stack");
+        }
+        return rest;
+    }
+
+    /**
+     * Returns the top element of the stack.
+     *
+     * @throws IllegalStateException if the stack is empty
+     */
+    @Nullable
+    public E peek() {
+        if (isEmpty()) {
+            throw new IllegalStateException("cannot peek into an empty stack");
+        }
+        return top;
+    }
+
+    public boolean isEmpty() {
+        return depth == 0;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Iterates the elements from top to bottom.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+
+            private PersistentStack<E> current = PersistentStack.this;
+
+            @Override
+            public boolean hasNext() {
+                return !current.isEmpty();
+            }
+
+            @Override
+            public E next() {
+                if (current.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                final E result = current.top;
+                current = current.rest;
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PersistentStack)) {
+            return false;
+        }
+
+        PersistentStack<?> left = this;
+        PersistentStack<?> right = (PersistentStack<?>) o;
+
+        // walk down until both stacks share their tail
+        while (left != right) {
+            if (left.depth != right.depth || left.hash != right.hash) {
+                return false;
+            }
+            if (!Objects.equals(left.top, right.top)) {
+                return false;
+            }
+            left = left.rest;
+            right = right.rest;
+        }
+
+        return true;
+    }
+
+    /**
+     * Scrambles the hash code of an element. Elements that contain the stack they are pushed onto (as {@link State}s
+     * do) would otherwise shift the hash of the rest out of the result after a few frames.
+     */
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        // bottom to top, like java.util.Stack
+        final Object[] elements = new Object[depth];
+        int index = depth;
+        for (E element : this) {
+            elements[--index] = element;
+        }
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < elements.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(elements[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
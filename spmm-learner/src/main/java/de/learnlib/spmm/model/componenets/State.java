@@ -17,10 +17,13 @@ package de.learnlib.spmm.model.componenets;
 import de.learnlib.spmm.model.defaultspmm.DefaultSPMM;
 import net.automatalib.commons.util.Pair;
 
-import java.util.Stack;
-
 /**
- * A state in a {@link DefaultSPMM}. Consist of a location and a stack content.
+ * A state in a {@link DefaultSPMM}. Consist of a location and a stack content. The stack is a {@link PersistentStack},
+ * so states that are created by procedure calls share the stack of their caller instead of copying it.
+ * <p>
+ * The hash code is computed once on construction, so the location must not be changed via the setters of
+ * {@link Pair}. States that are created by the same {@link StateInterner} are canonical, i.e. two of them are equal if
+ * and only if they are the same object.
  *
  * @param <I> input symbol type
  * @param <S> hypothesis state type
@@ -28,7 +31,9 @@ import java.util.Stack;
  */
 public class State<I, S> extends Pair<I, S> {
 
-    private final Stack<State<I, S>> stack;
+    private final PersistentStack<State<I, S>> stack;
+    private final int hash;
+    private final StateInterner<I, S> interner;
 
     // each state STATE of the MM exists as multiple State<I, S> Objects
     // each state STATE has one State <I, S> Object per predecessor
@@ -37,21 +42,23 @@ public class State<I, S> extends Pair<I, S> {
     // and s is a STATE itself
 
     public State(I first, S second) {
-        super(first, second);
-        this.stack = new Stack<>();
+        this(first, second, PersistentStack.empty(), (StateInterner<I, S>) null);
     }
 
-    public State(I first, S second, final Stack<State<I, S>> stack) {
-        super(first, second);
-        this.stack = stack;
+    public State(I first, S second, final PersistentStack<State<I, S>> stack) {
+        this(first, second, stack, (StateInterner<I, S>) null);
     }
 
 
-    @SuppressWarnings("unchecked")
-    public State(I first, S second, Stack<State<I, S>> stack, State<I, S> newTopOfStack) {
+    public State(I first, S second, PersistentStack<State<I, S>> stack, State<I, S> newTopOfStack) {
+        this(first, second, stack.push(newTopOfStack), (StateInterner<I, S>) null);
+    }
+
+    State(I first, S second, PersistentStack<State<I, S>> stack, StateInterner<I, S> interner) {
         super(first, second);
-        this.stack = (Stack<State<I, S>>) stack.clone();
-        this.stack.add(newTopOfStack);
+        this.stack = stack;
+        this.hash = 31 * super.hashCode() + stack.hashCode();
+        this.interner = interner;
     }
 
     @Override
@@ -61,9 +68,7 @@ public class State<I, S> extends Pair<I, S> {
 
     @Override
     public int hashCode() {
-        int result = super.hashCode();
-        result = 31 * result + (getStack() != null ? getStack().hashCode() : 0);
-        return result;
+        return hash;
     }
 
     @Override
@@ -74,16 +79,28 @@ public class State<I, S> extends Pair<I, S> {
         if (o == null || getClass() != o.getClass()) {
             return false;
         }
-        if (!super.equals(o)) {
-            return false;
-        }
 
         State<?, ?> that = (State<?, ?>) o;
 
+        // canonical states of the same interner are equal only if they are identical
+        if (interner != null && interner == that.interner) {
+            return false;
+        }
+        if (hash != that.hash || !super.equals(o)) {
+            return false;
+        }
+
         return getStack().equals(that.getStack());
     }
 
-    public Stack<State<I, S>> getStack() {
+    public PersistentStack<State<I, S>> getStack() {
         return stack;
     }
+
+    /**
+     * Returns whether this state is the canonical instance of the given interner.
+     */
+    public boolean isCanonicalIn(StateInterner<?, ?> interner) {
+        return interner != null && this.interner == interner;
+    }
 }
@@ -0,0 +1,229 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.model.componenets;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A hash-consing factory for {@link State} configurations. Equal (procedure, local state, stack) triples are resolved
+ * to one canonical instance, whose stack again consists of canonical states and shares its tail with all other
+ * canonical stacks. Lookups only compare the components of the topmost frame, so interning a configuration as well as
+ * comparing two canonical configurations does not depend on the recursion depth.
+ * <p>
+ * Special states that are subclasses of {@link State} (e.g. the states of an {@link InitialProcedure}) are not copied
+ * but kept as they are, as they are compared by reference anyway.
+ * <p>
+ * The interner is thread-safe.
+ *
+ * @param <I> input symbol type
+ * @param <S> hypothesis state type
+ * @author shashko
+ */
+public class StateInterner<I, S> {
+
+    private final ConcurrentMap<StateKey, State<I, S>> states = new ConcurrentHashMap<>();
+    private final ConcurrentMap<StackKey, PersistentStack<State<I, S>>> stacks = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the canonical configuration with the given location and an empty stack.
+     */
+    @Nonnull
+    public State<I, S> state(@Nullable I procedure, @Nullable S localState) {
+        return state(procedure, localState, PersistentStack.empty());
+    }
+
+    /**
+     * Returns the canonical configuration with the given location and stack. The stack does not have to be canonical.
+     */
+    @Nonnull
+    public State<I, S> state(@Nullable I procedure,
+                             @Nullable S localState,
+                             @Nonnull PersistentStack<State<I, S>> stack) {
+        final PersistentStack<State<I, S>> canonicalStack = intern(stack);
+        return states.computeIfAbsent(new StateKey(procedure, localState, canonicalStack),
+                key -> new State<>(procedure, localState, canonicalStack, this));
+    }
+
+    /**
+     * Returns the canonical configuration that is reached by calling a procedure from the given configuration, i.e.
+     * the given caller is pushed onto its own stack.
+     */
+    @Nonnull
+    public State<I, S> call(@Nullable I procedure, @Nullable S localState, @Nonnull State<I, S> caller) {
+        final Map<PersistentStack<State<I, S>>, PersistentStack<State<I, S>>> canonicalStacks =
+                new IdentityHashMap<>();
+        return state(procedure, localState,
+                push(intern(caller.getStack(), canonicalStacks), intern(caller, canonicalStacks)));
+    }
+
+    /**
+     * Returns the canonical instance of the given configuration.
+     */
+    @Nonnull
+    public State<I, S> intern(@Nonnull State<I, S> state) {
+        return intern(state, new IdentityHashMap<>());
+    }
+
+    /**
+     * Returns the canonical instance of the given stack.
+     */
+    @Nonnull
+    public PersistentStack<State<I, S>> intern(@Nonnull PersistentStack<State<I, S>> stack) {
+        return intern(stack, new IdentityHashMap<>());
+    }
+
+    /**
+     * Interns a configuration, the canonical stacks of all stacks that were already interned in this call are taken
+     * from the given map.
+     */
+    private State<I, S> intern(State<I, S> state,
+                               Map<PersistentStack<State<I, S>>, PersistentStack<State<I, S>>> canonicalStacks) {
+        if (state.isCanonicalIn(this) || state.getClass() != State.class) {
+            return state;
+        }
+        final PersistentStack<State<I, S>> canonicalStack = intern(state.getStack(), canonicalStacks);
+        return states.computeIfAbsent(new StateKey(state.getFirst(), state.getSecond(), canonicalStack),
+                key -> new State<>(state.getFirst(), state.getSecond(), canonicalStack, this));
+    }
+
+    /**
+     * Interns a stack bottom-up and remembers the canonical instance of every non-canonical tail. The stack of a
+     * frame usually is the tail right below it, so every frame is interned in constant time and the whole stack in
+     * time linear in its depth.
+     */
+    private PersistentStack<State<I, S>> intern(
+            PersistentStack<State<I, S>> stack,
+            Map<PersistentStack<State<I, S>>, PersistentStack<State<I, S>>> canonicalStacks) {
+        // collect the non-canonical tails above the longest tail that is canonical or already interned
+        final Deque<PersistentStack<State<I, S>>> tails = new ArrayDeque<>();
+        PersistentStack<State<I, S>> tail = stack;
+        PersistentStack<State<I, S>> canonical;
+        while ((canonical = canonicalStacks.get(tail)) == null && !isCanonical(tail)) {
+            if (tail.peek() == null) {
+                throw new IllegalArgumentException("cannot intern a stack that contains null");
+            }
+            tails.push(tail);
+            tail = tail.pop();
+        }
+        if (canonical == null) {
+            canonical = tail;
+        }
+
+        while (!tails.isEmpty()) {
+            final PersistentStack<State<I, S>> original = tails.pop();
+            canonical = push(canonical, intern(original.peek(), canonicalStacks));
+            canonicalStacks.put(original, canonical);
+        }
+        return canonical;
+    }
+
+    /**
+     * Returns the number of canonical configurations created so far.
+     */
+    public int size() {
+        return states.size();
+    }
+
+    public void clear() {
+        states.clear();
+        stacks.clear();
+    }
+
+    private boolean isCanonical(PersistentStack<State<I, S>> stack) {
+        return stack.isEmpty() || stacks.get(new StackKey(stack.peek(), stack.pop())) == stack;
+    }
+
+    private PersistentStack<State<I, S>> push(PersistentStack<State<I, S>> canonicalRest, State<I, S> canonicalTop) {
+        return stacks.computeIfAbsent(new StackKey(canonicalTop, canonicalRest), key -> canonicalRest.push(canonicalTop));
+    }
+
+    /**
+     * Key of a configuration whose stack is already canonical and therefore compared by reference.
+     */
+    private static final class StateKey {
+
+        private final Object procedure;
+        private final Object localState;
+        private final PersistentStack<?> stack;
+        private final int hash;
+
+        StateKey(Object procedure, Object localState, PersistentStack<?> stack) {
+            this.procedure = procedure;
+            this.localState = localState;
+            this.stack = stack;
+            this.hash = 31 * (31 * Objects.hashCode(procedure) + Objects.hashCode(localState)) + stack.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StateKey)) {
+                return false;
+            }
+            final StateKey that = (StateKey) o;
+            return stack == that.stack &&
+                    Objects.equals(procedure, that.procedure) &&
+                    Objects.equals(localState, that.localState);
+        }
+    }
+
+    /**
+     * Key of a stack frame whose top and rest are already canonical and therefore compared by reference.
+     */
+    private static final class StackKey {
+
+        private final Object top;
+        private final PersistentStack<?> rest;
+        private final int hash;
+
+        StackKey(Object top, PersistentStack<?> rest) {
+            this.top = top;
+            this.rest = rest;
+            this.hash = 31 * rest.hashCode() + System.identityHashCode(top);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StackKey)) {
+                return false;
+            }
+            final StackKey that = (StackKey) o;
+            return top == that.top && rest == that.rest;
+        }
+    }
+}
@@ -17,19 +17,22 @@ package de.learnlib.spmm.model.defaultspmm;
 import com.google.common.collect.Sets;
 import de.learnlib.api.oracle.QueryAnswerer;
 import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.SPMMCursor;
 import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
 import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
 import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
 import de.learnlib.spmm.model.componenets.InitialProcedure;
+import de.learnlib.spmm.model.componenets.PersistentMap;
+import de.learnlib.spmm.model.componenets.PersistentStack;
 import de.learnlib.spmm.model.componenets.State;
 import de.learnlib.spmm.view.ReachabilityView;
 import net.automatalib.automata.transout.MealyMachine;
 import net.automatalib.automata.transout.impl.MealyTransition;
-import net.automatalib.commons.util.Pair;
 import net.automatalib.graphs.Graph;
 import net.automatalib.ts.simple.SimpleDTS;
 import net.automatalib.ts.transout.DeterministicTransitionOutputTS;
 import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
 import net.automatalib.words.impl.Alphabets;
 
 import javax.annotation.Nonnull;
@@ -49,10 +52,10 @@ public class DefaultSPMM<S, I, O> implements
 
 
     private final InitialProcedure<S, I, O> initialProcedure;
-    private SPMMInputAlphabet<I> inputAlphabet;
-    private Set<I> activatedCalls;
+    private final SPMMInputAlphabet<I> inputAlphabet;
+    private final Set<I> activatedCalls;
     private final SPMMOutputAlphabet<O> outputAlphabet;
-    private Map<I, ? extends MealyMachine<S, I, ?, O>> procedures;
+    private final Map<I, ? extends MealyMachine<S, I, ?, O>> procedures;
 
     // use DefaultSPMMBuilder
     DefaultSPMM(@Nonnull SPMMInputAlphabet<I> inputAlphabet,
@@ -67,6 +70,16 @@ public class DefaultSPMM<S, I, O> implements
         this.procedures = procedures;
     }
 
+    // use DefaultSPMMBuilder
+    DefaultSPMM(@Nonnull SPMMInputAlphabet<I> inputAlphabet,
+                @Nonnull Collection<I> activatedCalls,
+                @Nonnull SPMMOutputAlphabet<O> outputAlphabet,
+                @Nullable I initialCall,
+                @Nonnull Map<I, ? extends MealyMachine<S, I, ?, O>> procedures) {
+        this(inputAlphabet, outputAlphabet, initialCall, procedures);
+        this.activatedCalls.addAll(activatedCalls);
+    }
+
     /**
      * State<I,S> has in S info about call Symbol, that identifies procedure of state S
      * last output may be null, if we are at initial state
@@ -86,8 +99,8 @@ public class DefaultSPMM<S, I, O> implements
                     final MealyMachine<S, I, ?, O> calledMM = this.procedures.get(input);
 
                     final S nextState = calledMM.getInitialState();
-                    final Stack<State<I, S>> stack = new Stack<>();
-                    stack.add(initialProcedure.initialState);
+                    final PersistentStack<State<I, S>> stack =
+                            PersistentStack.<State<I, S>>empty().push(initialProcedure.initialState);
 
                     return new MealyTransition<>(
                             new State<>(initialProcedure.callSymbol, nextState, stack),
@@ -131,14 +144,22 @@ public class DefaultSPMM<S, I, O> implements
     @Override
     @Nonnull
     public Word<O> computeSuffixOutput(@Nonnull Iterable<? extends I> iterable, @Nonnull Iterable<? extends I> iterable1) {
-        State<I, S> stateAfterReadingFirstPart = this.readInputFromInitialState(iterable, false).getSecond();
-        return this.readInput(iterable1, stateAfterReadingFirstPart, true).getFirst();
+        final SPMMCursor<I, O> cursor = this.cursor();
+        for (I symbol : iterable) {
+            cursor.step(symbol);
+        }
+
+        final WordBuilder<O> wb = new WordBuilder<>();
+        for (I symbol : iterable1) {
+            wb.append(cursor.step(symbol));
+        }
+        return wb.toWord();
     }
 
     @Override
     @Nonnull
     public Word<O> computeOutput(@Nonnull Iterable<? extends I> input) {
-        return this.readInputFromInitialState(input, true).getFirst();
+        return this.computeSuffixOutput(Collections.emptyList(), input);
     }
 
     public boolean isValidSPMM() {
@@ -196,17 +217,20 @@ public class DefaultSPMM<S, I, O> implements
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public Map<I, MealyMachine<S, I, ?, O>> getProcedures() {
+        // persistent maps are immutable already and are handed out as they are, so builders can share them
+        if (procedures instanceof PersistentMap) {
+            return (Map<I, MealyMachine<S, I, ?, O>>) procedures;
+        }
         return Collections.unmodifiableMap(procedures);
     }
 
     @Nullable
     @Override
     public State<I, S> getSuccessor(@Nonnull State<I, S> currentState, @Nullable I i) {
-        if (i == null || this.getTransition(currentState, i) == null) {
-            return null;
-        }
-        return this.getTransition(currentState, i).getSuccessor();
+        final MealyTransition<State<I, S>, O> transition = this.getTransition(currentState, i);
+        return transition == null ? null : transition.getSuccessor();
     }
 
     @Nonnull
@@ -323,27 +347,149 @@ public class DefaultSPMM<S, I, O> implements
     //////////////////////// reading input and producing output logic ///////////////////////
     /////////////////////////////////////////////////////////////////////////////////////////
 
-    private Pair<Word<O>, State<I, S>> readInputFromInitialState(Iterable<? extends I> input,
-                                                                 boolean recordOutput) {
-        return readInput(input, this.initialProcedure.initialState, recordOutput);
+    @Nonnull
+    @Override
+    public SPMMCursor<I, O> cursor() {
+        return new Cursor();
     }
 
-    private Pair<Word<O>, State<I, S>> readInput(Iterable<? extends I> input,
-                                                 State<I, S> fromState,
-                                                 boolean recordOutput) {
-        List<O> outputList = new ArrayList<>();
-        State<I, S> currentState = fromState;
+    /**
+     * Follows the same transition logic as {@link #getTransition(State, Object)}, but keeps the current location and
+     * the stack in reusable buffers instead of creating new states and transitions.
+     */
+    private final class Cursor implements SPMMCursor<I, O> {
+
+        private Mode mode = Mode.INITIAL;
+        private I identifier;
+        private S state;
+
+        // the bottom entry is the frame of the initial procedure and only serves as a marker
+        private Object[] identifierStack = new Object[16];
+        private Object[] stateStack = new Object[16];
+        private int depth;
+
+        @Override
+        public void reset() {
+            mode = Mode.INITIAL;
+            clearStack();
+        }
+
+        @Nonnull
+        @Override
+        public O step(@Nonnull I input) {
+            if (!isValidSPMM() || mode != Mode.INSIDE) {
+                if (mode == Mode.INITIAL && isValidSPMM() && initialProcedure.callSymbol.equals(input)) {
+                    push(null, null);
+                    enter(input);
+                    mode = Mode.INSIDE;
+                    return outputAlphabet.getProcedureStart();
+                }
+                return error();
 
-        for (I symbol : input) {
-            MealyTransition<State<I, S>, O> transition = this.getTransition(currentState, symbol);
-            if (recordOutput) {
-                outputList.add(transition.getOutput());
+            } else if (inputAlphabet.isInternalSymbol(input)) {
+                return stepInsideProcedure(input);
+
+            } else if (inputAlphabet.isCallSymbol(input)) {
+                if (activatedCalls.contains(input)) {
+                    final O checkOutput = procedures.get(identifier).getOutput(state, input);
+                    if (!outputAlphabet.getProcedureStart().equals(checkOutput)) {
+                        return stepInsideProcedure(input);
+                    }
+                }
+                push(identifier, state);
+                enter(input);
+                return outputAlphabet.getProcedureStart();
+
+            } else if (inputAlphabet.isReturnSymbol(input)) {
+                final O checkOutput = procedures.get(identifier).getOutput(state, input);
+
+                if (activatedCalls.contains(identifier) && outputAlphabet.getProcedureEnd().equals(checkOutput)) {
+                    if (depth == 1) {
+                        if (!initialProcedure.callSymbol.equals(identifier)) {
+                            return error();
+                        }
+                        clearStack();
+                        mode = Mode.ACCEPT;
+                        return outputAlphabet.getProcedureEnd();
+                    }
+
+                    final I calledIdentifier = identifier;
+                    pop();
+                    state = procedures.get(identifier).getSuccessor(state, calledIdentifier);
+                    return outputAlphabet.getProcedureEnd();
+                }
+                return stepInsideProcedure(input);
+            }
+
+            throw new IllegalStateException("could not find transition for given state and input");
+        }
+
+        @Override
+        public int depth() {
+            return depth;
+        }
+
+        @Nonnull
+        @Override
+        public Cursor copy() {
+            final Cursor copy = new Cursor();
+            copy.mode = mode;
+            copy.identifier = identifier;
+            copy.state = state;
+            copy.identifierStack = Arrays.copyOf(identifierStack, identifierStack.length);
+            copy.stateStack = Arrays.copyOf(stateStack, stateStack.length);
+            copy.depth = depth;
+            return copy;
+        }
+
+        private O stepInsideProcedure(I input) {
+            final MealyMachine<S, I, ?, O> currentMM = procedures.get(identifier);
+            final O output = currentMM.getOutput(state, input);
+            state = currentMM.getSuccessor(state, input);
+            return output;
+        }
+
+        private void enter(I callSymbol) {
+            identifier = callSymbol;
+            state = procedures.get(callSymbol).getInitialState();
+        }
+
+        private O error() {
+            mode = Mode.SINK;
+            clearStack();
+            return outputAlphabet.getError();
+        }
+
+        private void push(I pushedIdentifier, S pushedState) {
+            if (depth == identifierStack.length) {
+                identifierStack = Arrays.copyOf(identifierStack, depth * 2);
+                stateStack = Arrays.copyOf(stateStack, depth * 2);
             }
-            currentState = transition.getSuccessor();
+            identifierStack[depth] = pushedIdentifier;
+            stateStack[depth] = pushedState;
+            depth++;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void pop() {
+            depth--;
+            identifier = (I) identifierStack[depth];
+            state = (S) stateStack[depth];
+            identifierStack[depth] = null;
+            stateStack[depth] = null;
         }
 
-        return new Pair<>(Word.fromList(outputList), currentState);
+        private void clearStack() {
+            Arrays.fill(identifierStack, 0, depth, null);
+            Arrays.fill(stateStack, 0, depth, null);
+            depth = 0;
+            identifier = null;
+            state = null;
+        }
     }
 
+    private enum Mode {
+        INITIAL, INSIDE, ACCEPT, SINK
+    }
 
 }
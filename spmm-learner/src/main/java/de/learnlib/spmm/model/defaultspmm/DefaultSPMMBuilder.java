@@ -14,21 +14,18 @@
  */
 package de.learnlib.spmm.model.defaultspmm;
 
-import com.google.common.collect.Maps;
 import de.learnlib.spmm.model.SPMM;
 import de.learnlib.spmm.model.SPMMBuilder;
 import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
 import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
 import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.componenets.PersistentMap;
 import de.learnlib.spmm.model.componenets.State;
 import net.automatalib.automata.transout.MealyMachine;
 import net.automatalib.automata.transout.impl.MealyTransition;
-import net.automatalib.words.Alphabet;
-import net.automatalib.words.impl.Alphabets;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
@@ -42,14 +39,8 @@ public class DefaultSPMMBuilder<S, I, O>
                                            @Nonnull SPMMOutputAlphabet<O> outputAlphabet,
                                            @Nullable I initialCall,
                                            @Nonnull Map<I, ? extends MealyMachine<S, I, ?, O>> procedures) {
-        if (this.inputAlphabetCorrect(inputAlphabet)
-                && this.outputAlphabetCorrect(outputAlphabet)
-                && this.proceduresCorrect(procedures, inputAlphabet)
-                && this.initialCallCorrect(inputAlphabet, initialCall)) {
-            return new DefaultSPMM<>(inputAlphabet, outputAlphabet, initialCall, procedures);
-        }
-        throw new IllegalStateException("something went wrong by building DefaultSPMM, " +
-                "check that your arguments are correct");
+        SPMMBuilder.checkArguments(inputAlphabet, outputAlphabet, initialCall, procedures);
+        return new DefaultSPMM<>(inputAlphabet, outputAlphabet, initialCall, procedures);
     }
 
     @Override
@@ -76,57 +67,9 @@ public class DefaultSPMMBuilder<S, I, O>
     @Nonnull
     public DefaultSPMM<S, I, O> createEmptySPMM(@Nonnull SPMMInputAlphabet<I> inputAlphabet,
                                                 @Nonnull SPMMOutputAlphabet<O> outputAlphabet) {
-        SPMMInputAlphabet<I> newInputAlphabet = new DefaultSPMMInputAlphabet<>(
-                inputAlphabet.getInternalAlphabet(),
-                Alphabets.fromList(new ArrayList<>()),
-                inputAlphabet.getReturnSymbol()
-        );
-        return new DefaultSPMM<>(newInputAlphabet, outputAlphabet, null, Collections.emptyMap());
-    }
-
-    private boolean inputAlphabetCorrect(SPMMInputAlphabet<I> inputAlphabet) {
-        for (I symbol : inputAlphabet) {
-            if (symbol == null) {
-                throw new IllegalArgumentException("input symbol may not be null");
-            }
-        }
-        return true;
-    }
-
-    private boolean outputAlphabetCorrect(SPMMOutputAlphabet<O> outputAlphabet) {
-        for (O symbol : outputAlphabet) {
-            if (symbol == null) {
-                throw new IllegalArgumentException("output symbol may not be null");
-            }
-        }
-        return true;
-    }
-
-
-    private boolean proceduresCorrect(Map<I, ? extends MealyMachine<S, I, ?, O>> procedures,
-                                      SPMMInputAlphabet<I> alphabet) {
-        for (I callSymbol : procedures.keySet()) {
-            if (callSymbol == null || !alphabet.isCallSymbol(callSymbol)) {
-                throw new IllegalArgumentException("every identifier in the map must be a call symbol");
-            }
-        }
-        for (MealyMachine<?, I, ?, O> mm : procedures.values()) {
-            if (mm == null) {
-                throw new IllegalArgumentException("a procedure may not be null");
-            }
-        }
-        if (procedures.size() != alphabet.getNumCalls()) {
-            throw new IllegalArgumentException("every call symbol must respond to one procedure");
-        }
-        return true;
-    }
-
-    private boolean initialCallCorrect(SPMMInputAlphabet<I> alphabet, I initialCall) {
-        // we allow initial call being null, even if spmm contains procedures
-        if (initialCall != null && !alphabet.getCallAlphabet().containsSymbol(initialCall)) {
-            throw new IllegalArgumentException("initial call must be a call symbol from input alphabet or null");
-        }
-        return true;
+        SPMMInputAlphabet<I> newInputAlphabet =
+                DefaultSPMMInputAlphabet.copyOf(inputAlphabet).retainCalls(Collections.emptySet());
+        return new DefaultSPMM<>(newInputAlphabet, outputAlphabet, null, PersistentMap.empty());
     }
 
     @Override
@@ -134,7 +77,7 @@ public class DefaultSPMMBuilder<S, I, O>
     public DefaultSPMM<S, I, O> copySPMMAddProcedure(
             @Nonnull SPMM<S, I, MealyTransition<State<I, S>, O>, O> original,
             @Nonnull I callSymbol, @Nonnull MealyMachine<S, I, ?, O> procedure) {
-        return createDublicateSPMMWithNewProcedure(original, callSymbol, procedure, false);
+        return createDuplicateSPMMWithNewProcedure(original, callSymbol, procedure, false);
     }
 
     @Override
@@ -142,28 +85,60 @@ public class DefaultSPMMBuilder<S, I, O>
     public DefaultSPMM<S, I, O> copySPMMAddInitialCallProcedure(
             @Nonnull SPMM<S, I, MealyTransition<State<I, S>, O>, O> original,
             @Nonnull I callSymbol, @Nonnull MealyMachine<S, I, ?, O> procedure) {
-        return createDublicateSPMMWithNewProcedure(original, callSymbol, procedure, true);
+        return createDuplicateSPMMWithNewProcedure(original, callSymbol, procedure, true);
 
     }
 
-    private DefaultSPMM<S, I, O> createDublicateSPMMWithNewProcedure(
+    /**
+     * The original is valid already and the copy keeps its alphabets, so the procedures are only checked to be defined
+     * for the call symbols of the original.
+     */
+    @Override
+    @Nonnull
+    public DefaultSPMM<S, I, O> copySPMMReplaceProcedures(
+            @Nonnull SPMM<S, I, MealyTransition<State<I, S>, O>, O> original,
+            @Nonnull Map<I, ? extends MealyMachine<S, I, ?, O>> procedures) {
+        final Map<I, ? extends MealyMachine<S, I, ?, O>> originalProcedures = original.getProcedures();
+        if (procedures.size() != originalProcedures.size()) {
+            throw new IllegalArgumentException("the procedures must replace the procedures of the original");
+        }
+        for (Map.Entry<I, ? extends MealyMachine<S, I, ?, O>> entry : procedures.entrySet()) {
+            if (!originalProcedures.containsKey(entry.getKey())) {
+                throw new IllegalArgumentException("the procedures must replace the procedures of the original");
+            }
+            if (entry.getValue() == null) {
+                throw new IllegalArgumentException("a procedure may not be null");
+            }
+        }
+
+        return new DefaultSPMM<>(original.getInputAlphabet(),
+                original.getActivatedCalls(),
+                original.getOutputAlphabet(),
+                original.getInitialCall(),
+                procedures);
+    }
+
+    /**
+     * Adds the procedure to persistent copies of the call alphabet and the procedure map of the original, which share
+     * everything else with the original. The original is valid already, so only the new call symbol and procedure are
+     * checked.
+     */
+    private DefaultSPMM<S, I, O> createDuplicateSPMMWithNewProcedure(
             SPMM<S, I, MealyTransition<State<I, S>, O>, O> original,
             I callSymbol, MealyMachine<S, I, ?, O> procedure, boolean newProcedureIsInitialCall) {
 
-        ArrayList<I> listOfAllCallSymbols = new ArrayList<>(original.getInputAlphabet().getCallAlphabet());
-        listOfAllCallSymbols.add(callSymbol);
-        Alphabet<I> newCallAlphabet = Alphabets.fromList(listOfAllCallSymbols);
-        SPMMInputAlphabet<I> newInputAlphabet = new DefaultSPMMInputAlphabet<>(
-                original.getInputAlphabet().getInternalAlphabet(),
-                newCallAlphabet,
-                original.getInputAlphabet().getReturnSymbol()
-        );
+        if (callSymbol == null || original.getInputAlphabet().containsSymbol(callSymbol)) {
+            throw new IllegalArgumentException("new call symbol may not be null or contained in the alphabet");
+        }
+        if (procedure == null) {
+            throw new IllegalArgumentException("a procedure may not be null");
+        }
 
-        final Map<I, MealyMachine<S, I, ?, O>> newProcedures =
-                Maps.newHashMapWithExpectedSize(original.getProcedures().size() + 1);
+        final SPMMInputAlphabet<I> newInputAlphabet =
+                DefaultSPMMInputAlphabet.copyOf(original.getInputAlphabet()).withCallSymbol(callSymbol);
 
-        newProcedures.putAll(original.getProcedures());
-        newProcedures.put(callSymbol, procedure);
+        final PersistentMap<I, MealyMachine<S, I, ?, O>> newProcedures =
+                PersistentMap.<I, MealyMachine<S, I, ?, O>>copyOf(original.getProcedures()).plus(callSymbol, procedure);
 
         I newInitialCall = original.getInitialCall();
 
@@ -171,28 +146,11 @@ public class DefaultSPMMBuilder<S, I, O>
             newInitialCall = callSymbol;
         }
 
-        return this.createSPMM(newInputAlphabet,
+        return new DefaultSPMM<>(newInputAlphabet,
                 original.getOutputAlphabet(),
                 newInitialCall,
                 newProcedures);
     }
 
-    @Override
-    public SPMMInputAlphabet<I> filterCallAlphabet(@Nonnull Collection<I> filter,
-                                                   @Nonnull SPMMInputAlphabet<I> inputAlphabet) {
-        ArrayList<I> filteredCalls = new ArrayList<>();
-        for (I call : inputAlphabet.getCallAlphabet()) {
-            if (filter.contains(call)) {
-                filteredCalls.add(call);
-            }
-        }
-        return new DefaultSPMMInputAlphabet<>(
-                inputAlphabet.getInternalAlphabet(),
-                Alphabets.fromList(filteredCalls),
-                inputAlphabet.getReturnSymbol()
-        );
-
-    }
-
 }
 
@@ -0,0 +1,57 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.monitor;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only view of a trace file, see {@link TraceWriter} for the format. A {@link MappedByteBuffer} can address at
+ * most 2 GiB, so the file is mapped in windows of 1 GiB. Every window maps a few bytes beyond its end, so a symbol
+ * pair that starts in a window can be read from that window alone. Reads are absolute and may be done concurrently.
+ */
+final class MappedTraces {
+
+    private static final int WINDOW_BITS = 30;
+    private static final long WINDOW_SIZE = 1L << WINDOW_BITS;
+    private static final long OVERLAP = 2 * Integer.BYTES;
+
+    private final MappedByteBuffer[] windows;
+    private final long size;
+
+    MappedTraces(Path file) throws IOException {
+        // the mappings stay valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            this.size = channel.size();
+            this.windows = new MappedByteBuffer[(int) ((size + WINDOW_SIZE - 1) >>> WINDOW_BITS)];
+            for (int w = 0; w < windows.length; w++) {
+                final long start = (long) w << WINDOW_BITS;
+                windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(size - start, WINDOW_SIZE + OVERLAP));
+            }
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    int getInt(long position) {
+        return windows[(int) (position >>> WINDOW_BITS)].getInt((int) (position & (WINDOW_SIZE - 1)));
+    }
+}
@@ -0,0 +1,227 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.monitor;
+
+import de.learnlib.spmm.model.IntSPMM;
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.compactspmm.CompactSPMM;
+import de.learnlib.spmm.model.compactspmm.CompiledSPMMBuilder;
+import de.learnlib.spmm.util.ProcedureMinimizer;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Checks recorded traces against an SPMM, e.g. production logs against a learned model. The SPMM is compiled into a
+ * {@link CompactSPMM} once, whose tables are then shared by all workers. Trace files (see {@link TraceWriter}) are
+ * memory-mapped and split at record boundaries into shards, which are checked concurrently, each with its own
+ * {@link IntSPMM.IntCursor}. Checking a trace does not allocate.
+ * <p>
+ * A trace deviates at the first symbol that is not part of the input alphabet or for which the model outputs an error
+ * or an output that differs from the recorded one. Such a trace is not simulated any further.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+public class TraceMonitor<I, O> {
+
+    // shards per worker, so that workers that are done early can steal more work
+    private static final int SHARDS_PER_WORKER = 4;
+    private static final long MIN_SHARD_SIZE = 1 << 16;
+
+    private final CompactSPMM<I, O> model;
+    private final ForkJoinPool pool;
+    // model output id of every output alphabet index
+    private final int[] outputIds;
+    private final int errorId;
+    private final int numInputs;
+
+    public TraceMonitor(@Nonnull SPMM<?, I, ?, O> spmm) {
+        this(spmm, ForkJoinPool.commonPool());
+    }
+
+    public TraceMonitor(@Nonnull SPMM<?, I, ?, O> spmm, @Nonnull ForkJoinPool pool) {
+        this.model = compile(spmm);
+        this.pool = pool;
+        this.numInputs = model.getInputAlphabet().size();
+
+        final Map<O, Integer> ids = new HashMap<>();
+        for (int id = 0; id < model.getNumOutputIds(); id++) {
+            ids.putIfAbsent(model.getOutputSymbol(id), id);
+        }
+        final SPMMOutputAlphabet<O> outputAlphabet = model.getOutputAlphabet();
+        this.outputIds = new int[outputAlphabet.size()];
+        for (int i = 0; i < outputIds.length; i++) {
+            outputIds[i] = ids.getOrDefault(outputAlphabet.getSymbol(i), -1);
+        }
+        this.errorId = ids.get(outputAlphabet.getError());
+    }
+
+    /**
+     * Compiles the given SPMM into a {@link CompactSPMM} with the same behaviour, if possible a
+     * {@link de.learnlib.spmm.model.compactspmm.CompiledSPMM}. Compact SPMMs are returned as they are, the procedures
+     * of other SPMMs are renumbered by a {@link ProcedureMinimizer} first.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    static <I, O> CompactSPMM<I, O> compile(@Nonnull SPMM<?, I, ?, O> spmm) {
+        if (spmm instanceof CompactSPMM) {
+            return (CompactSPMM<I, O>) spmm;
+        }
+        return new CompiledSPMMBuilder<I, O>().createSPMM(spmm.getInputAlphabet(),
+                spmm.getActivatedCalls(),
+                spmm.getOutputAlphabet(),
+                spmm.getInitialCall(),
+                new ProcedureMinimizer<I, O>().minimize(spmm.getProcedures(), spmm.getInputAlphabet()));
+    }
+
+    /**
+     * Checks all traces of the given file.
+     *
+     * @throws IllegalArgumentException if the file is not a valid trace file
+     */
+    @Nonnull
+    public TraceReport check(@Nonnull Path file) throws IOException {
+        final long start = System.nanoTime();
+        final MappedTraces traces = new MappedTraces(file);
+        final List<Shard> shards = split(traces);
+
+        if (shards.size() == 1) {
+            shards.get(0).compute();
+        } else if (!shards.isEmpty()) {
+            pool.submit(() -> ForkJoinTask.invokeAll(shards)).join();
+        }
+
+        final SortedMap<Long, Integer> deviations = new TreeMap<>();
+        long numTraces = 0;
+        long numSymbols = 0;
+        for (Shard shard : shards) {
+            deviations.putAll(shard.deviations);
+            numTraces += shard.numTraces;
+            numSymbols += shard.numSymbols;
+        }
+        final int parallelism = Math.max(1, Math.min(shards.size(), pool.getParallelism()));
+        return new TraceReport(numTraces, numSymbols, System.nanoTime() - start, parallelism, deviations);
+    }
+
+    /**
+     * Walks the record headers and cuts the file into shards of roughly equal size.
+     */
+    private List<Shard> split(MappedTraces traces) {
+        final long size = traces.size();
+        final long shardSize = Math.max(MIN_SHARD_SIZE, size / ((long) SHARDS_PER_WORKER * pool.getParallelism()));
+
+        final List<Shard> shards = new ArrayList<>();
+        long position = 0;
+        long trace = 0;
+        long shardStart = 0;
+        long shardTrace = 0;
+        while (position < size) {
+            if (size - position < Integer.BYTES) {
+                throw new IllegalArgumentException("trace file is truncated at byte " + position);
+            }
+            final int length = traces.getInt(position);
+            if (length < 0) {
+                throw new IllegalArgumentException("negative trace length at byte " + position);
+            }
+            position += Integer.BYTES + 2L * Integer.BYTES * length;
+            if (position > size) {
+                throw new IllegalArgumentException("trace file is truncated in trace " + trace);
+            }
+            trace++;
+            if (position - shardStart >= shardSize) {
+                shards.add(new Shard(traces, shardStart, position, shardTrace));
+                shardStart = position;
+                shardTrace = trace;
+            }
+        }
+        if (shardStart < position) {
+            shards.add(new Shard(traces, shardStart, position, shardTrace));
+        }
+        return shards;
+    }
+
+    /**
+     * The traces between two record boundaries.
+     */
+    private final class Shard extends RecursiveAction {
+
+        private final MappedTraces traces;
+        private final long from;
+        private final long to;
+        private final long firstTrace;
+
+        private final SortedMap<Long, Integer> deviations = new TreeMap<>();
+        private long numTraces;
+        private long numSymbols;
+
+        Shard(MappedTraces traces, long from, long to, long firstTrace) {
+            this.traces = traces;
+            this.from = from;
+            this.to = to;
+            this.firstTrace = firstTrace;
+        }
+
+        @Override
+        protected void compute() {
+            final IntSPMM.IntCursor cursor = model.intCursor();
+            long position = from;
+            while (position < to) {
+                final int length = traces.getInt(position);
+                final long symbols = position + Integer.BYTES;
+                cursor.reset();
+
+                int deviation = -1;
+                for (int i = 0; i < length; i++) {
+                    final long pair = symbols + 2L * Integer.BYTES * i;
+                    final int input = traces.getInt(pair);
+                    final int recorded = traces.getInt(pair + Integer.BYTES);
+                    // inputs outside of the alphabet have no transition, the model can only reject them
+                    if (input < 0 || input >= numInputs) {
+                        deviation = i;
+                        break;
+                    }
+                    final int output = cursor.step(input);
+                    if (output == errorId || recorded < 0 || recorded >= outputIds.length ||
+                            outputIds[recorded] != output) {
+                        deviation = i;
+                        break;
+                    }
+                }
+
+                if (deviation < 0) {
+                    numSymbols += length;
+                } else {
+                    numSymbols += deviation + 1;
+                    deviations.put(firstTrace + numTraces, deviation);
+                }
+                numTraces++;
+                position = symbols + 2L * Integer.BYTES * length;
+            }
+        }
+    }
+}
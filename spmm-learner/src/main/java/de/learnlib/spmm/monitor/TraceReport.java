@@ -0,0 +1,101 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.monitor;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.SortedMap;
+
+/**
+ * The result of checking a trace file with a {@link TraceMonitor}. Only the traces that deviate from the model are
+ * kept, every other trace conforms to it.
+ */
+public final class TraceReport {
+
+    private final long numTraces;
+    private final long numSymbols;
+    private final long elapsedNanos;
+    private final int parallelism;
+    private final SortedMap<Long, Integer> deviations;
+
+    TraceReport(long numTraces, long numSymbols, long elapsedNanos, int parallelism,
+                SortedMap<Long, Integer> deviations) {
+        this.numTraces = numTraces;
+        this.numSymbols = numSymbols;
+        this.elapsedNanos = elapsedNanos;
+        this.parallelism = parallelism;
+        this.deviations = Collections.unmodifiableSortedMap(deviations);
+    }
+
+    public long getNumTraces() {
+        return numTraces;
+    }
+
+    /**
+     * Returns the number of symbols that were simulated. The rest of a trace is skipped after its first deviation.
+     */
+    public long getNumSymbols() {
+        return numSymbols;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the number of shards that were checked concurrently.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the index of the first deviation of every deviating trace, keyed by the position of the trace in the
+     * file.
+     */
+    @Nonnull
+    public SortedMap<Long, Integer> getDeviations() {
+        return deviations;
+    }
+
+    /**
+     * Returns the index of the first symbol of the given trace whose output is an error or differs from the recorded
+     * output, or {@code -1} if the trace conforms to the model.
+     *
+     * @throws IllegalArgumentException if the file has no trace at the given position
+     */
+    public int getFirstDeviation(long trace) {
+        if (trace < 0 || trace >= numTraces) {
+            throw new IllegalArgumentException("no trace at position " + trace);
+        }
+        final Integer deviation = deviations.get(trace);
+        return deviation == null ? -1 : deviation;
+    }
+
+    public double getSymbolsPerSecond() {
+        return elapsedNanos == 0 ? 0 : numSymbols * 1e9 / elapsedNanos;
+    }
+
+    public double getSymbolsPerSecondPerCore() {
+        return getSymbolsPerSecond() / parallelism;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d traces, %d deviating, %d symbols in %.3f s (%.0f symbols/s per core on %d cores)",
+                numTraces, deviations.size(), numSymbols, elapsedNanos / 1e9, getSymbolsPerSecondPerCore(),
+                parallelism);
+    }
+}
@@ -0,0 +1,76 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.monitor;
+
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import net.automatalib.words.Word;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes traces in the binary format read by {@link TraceMonitor}. A trace file is a sequence of records, one per
+ * trace. A record is the length {@code n} of the trace followed by {@code n} pairs of an input id and the recorded
+ * output id, all as big-endian 32-bit ints. Input ids are indices in the input alphabet, output ids are indices in the
+ * output alphabet, symbols that are not contained in the alphabets are written as {@code -1}.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+public class TraceWriter<I, O> implements Closeable {
+
+    private final SPMMInputAlphabet<I> inputAlphabet;
+    private final SPMMOutputAlphabet<O> outputAlphabet;
+    private final DataOutputStream out;
+
+    public TraceWriter(@Nonnull Path file,
+                       @Nonnull SPMMInputAlphabet<I> inputAlphabet,
+                       @Nonnull SPMMOutputAlphabet<O> outputAlphabet) throws IOException {
+        this.inputAlphabet = inputAlphabet;
+        this.outputAlphabet = outputAlphabet;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    }
+
+    /**
+     * Appends a trace.
+     *
+     * @param input  the inputs of the trace
+     * @param output the recorded outputs of the trace, one per input
+     * @throws IllegalArgumentException if input and output differ in length
+     */
+    public void write(@Nonnull Word<? extends I> input, @Nonnull Word<? extends O> output) throws IOException {
+        if (input.length() != output.length()) {
+            throw new IllegalArgumentException("every input of a trace needs one recorded output");
+        }
+        out.writeInt(input.length());
+        for (int i = 0; i < input.length(); i++) {
+            final int inputCode = inputAlphabet.getSymbolCode(input.getSymbol(i));
+            final int outputCode = outputAlphabet.getSymbolCode(output.getSymbol(i));
+            out.writeInt(inputCode < 0 ? -1 : SPMMInputAlphabet.symbolIndex(inputCode));
+            out.writeInt(outputCode < 0 ? -1 : SPMMOutputAlphabet.symbolIndex(outputCode));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
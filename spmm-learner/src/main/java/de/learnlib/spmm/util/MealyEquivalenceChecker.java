@@ -0,0 +1,417 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.util;
+
+import net.automatalib.automata.concepts.StateIDs;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks Mealy machines for equivalence with the union-find algorithm of Hopcroft and Karp. Starting with the pair of
+ * initial states, pairs of states are merged into one class and only successor pairs of states that are not in the
+ * same class yet are visited, which takes near-linear time in the number of states. Only if the machines differ, the
+ * product of both machines is searched breadth-first for a shortest separating word.
+ * <p>
+ * Transitions that are undefined in one machine and defined in the other separate the machines, a missing procedure
+ * or initial state only equals another missing one.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+public class MealyEquivalenceChecker<I, O> {
+
+    private final List<I> inputs;
+    private final ForkJoinPool pool;
+
+    public MealyEquivalenceChecker(@Nonnull Collection<? extends I> inputs) {
+        this(inputs, ForkJoinPool.commonPool());
+    }
+
+    public MealyEquivalenceChecker(@Nonnull Collection<? extends I> inputs, @Nonnull ForkJoinPool pool) {
+        this.inputs = new ArrayList<>(inputs);
+        this.pool = pool;
+    }
+
+    public boolean testEquivalence(@Nullable MealyMachine<?, I, ?, O> first,
+                                   @Nullable MealyMachine<?, I, ?, O> second) {
+        return unite(first, second, null);
+    }
+
+    /**
+     * Returns a shortest word on which the given machines produce different outputs, or {@code null} if they are
+     * equivalent. The word is empty if only one of the machines is missing or has no initial state.
+     */
+    @Nullable
+    public Word<I> findSeparatingWord(@Nullable MealyMachine<?, I, ?, O> first,
+                                      @Nullable MealyMachine<?, I, ?, O> second) {
+        return findSeparatingWord(first, second, null);
+    }
+
+    /**
+     * Checks the procedures of the given call symbols in parallel.
+     *
+     * @param first               the first procedures
+     * @param second              the second procedures
+     * @param callSymbols         the call symbols of the procedures to check
+     * @param stopAtFirstMismatch whether to skip all checks that have not finished yet once two procedures differ
+     * @return the verdict for every call symbol
+     */
+    @Nonnull
+    public Result<I> checkProcedures(@Nonnull Map<I, ? extends MealyMachine<?, I, ?, O>> first,
+                                     @Nonnull Map<I, ? extends MealyMachine<?, I, ?, O>> second,
+                                     @Nonnull Collection<I> callSymbols,
+                                     boolean stopAtFirstMismatch) {
+        final AtomicBoolean mismatch = new AtomicBoolean();
+        final List<Check> checks = new ArrayList<>(callSymbols.size());
+        for (I callSymbol : callSymbols) {
+            checks.add(new Check(first.get(callSymbol), second.get(callSymbol),
+                    stopAtFirstMismatch ? mismatch : null, mismatch));
+        }
+
+        if (checks.size() == 1) {
+            checks.get(0).compute();
+        } else if (!checks.isEmpty()) {
+            pool.submit(() -> ForkJoinTask.invokeAll(checks)).join();
+        }
+
+        final Map<I, Verdict> verdicts = new LinkedHashMap<>();
+        final Map<I, Word<I>> separatingWords = new HashMap<>();
+        int index = 0;
+        for (I callSymbol : callSymbols) {
+            final Check check = checks.get(index++);
+            verdicts.put(callSymbol, check.verdict);
+            if (check.separatingWord != null) {
+                separatingWords.put(callSymbol, check.separatingWord);
+            }
+        }
+        return new Result<>(verdicts, separatingWords);
+    }
+
+    @Nullable
+    private Word<I> findSeparatingWord(MealyMachine<?, I, ?, O> first,
+                                       MealyMachine<?, I, ?, O> second,
+                                       AtomicBoolean cancelled) {
+        if (unite(first, second, cancelled)) {
+            return null;
+        }
+        if (first == null || second == null ||
+                first.getInitialState() == null || second.getInitialState() == null) {
+            return Word.epsilon();
+        }
+        return new ProductSearch<>(first, second, cancelled).run();
+    }
+
+    private boolean unite(MealyMachine<?, I, ?, O> first,
+                          MealyMachine<?, I, ?, O> second,
+                          AtomicBoolean cancelled) {
+        if (first == null || second == null) {
+            return first == second;
+        }
+        return new UnionFind<>(first, second, cancelled).run();
+    }
+
+    private static void checkCancelled(AtomicBoolean cancelled) {
+        if (cancelled != null && cancelled.get()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * The Hopcroft-Karp algorithm. The states of the first machine are the elements {@code 0} to {@code n - 1} of the
+     * union-find structure, the states of the second machine follow.
+     */
+    private final class UnionFind<S1, T1, S2, T2> {
+
+        private final MealyMachine<S1, I, T1, O> first;
+        private final MealyMachine<S2, I, T2, O> second;
+        private final AtomicBoolean cancelled;
+        private final StateIDs<S1> firstIds;
+        private final StateIDs<S2> secondIds;
+        private final int offset;
+        private final int[] parent;
+        private final int[] size;
+
+        UnionFind(MealyMachine<S1, I, T1, O> first, MealyMachine<S2, I, T2, O> second, AtomicBoolean cancelled) {
+            this.first = first;
+            this.second = second;
+            this.cancelled = cancelled;
+            this.firstIds = first.stateIDs();
+            this.secondIds = second.stateIDs();
+            this.offset = first.size();
+            this.parent = new int[offset + second.size()];
+            this.size = new int[parent.length];
+            for (int i = 0; i < parent.length; i++) {
+                parent[i] = i;
+                size[i] = 1;
+            }
+        }
+
+        boolean run() {
+            final S1 firstInit = first.getInitialState();
+            final S2 secondInit = second.getInitialState();
+            if (firstInit == null || secondInit == null) {
+                return firstInit == null && secondInit == null;
+            }
+
+            final ArrayDeque<S1> firstStates = new ArrayDeque<>();
+            final ArrayDeque<S2> secondStates = new ArrayDeque<>();
+            union(firstInit, secondInit, firstStates, secondStates);
+
+            while (!firstStates.isEmpty()) {
+                checkCancelled(cancelled);
+                final S1 s1 = firstStates.poll();
+                final S2 s2 = secondStates.poll();
+                for (I input : inputs) {
+                    final T1 t1 = first.getTransition(s1, input);
+                    final T2 t2 = second.getTransition(s2, input);
+                    if (t1 == null || t2 == null) {
+                        if (t1 != t2) {
+                            return false;
+                        }
+                        continue;
+                    }
+                    if (!Objects.equals(first.getTransitionOutput(t1), second.getTransitionOutput(t2))) {
+                        return false;
+                    }
+                    union(first.getSuccessor(t1), second.getSuccessor(t2), firstStates, secondStates);
+                }
+            }
+            return true;
+        }
+
+        private void union(S1 s1, S2 s2, ArrayDeque<S1> firstStates, ArrayDeque<S2> secondStates) {
+            final int r1 = find(firstIds.getStateId(s1));
+            final int r2 = find(offset + secondIds.getStateId(s2));
+            if (r1 == r2) {
+                return;
+            }
+            if (size[r1] < size[r2]) {
+                parent[r1] = r2;
+                size[r2] += size[r1];
+            } else {
+                parent[r2] = r1;
+                size[r1] += size[r2];
+            }
+            firstStates.add(s1);
+            secondStates.add(s2);
+        }
+
+        private int find(int element) {
+            int current = element;
+            while (parent[current] != current) {
+                // path halving
+                parent[current] = parent[parent[current]];
+                current = parent[current];
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Breadth-first search over the pairs of states reachable in the product of both machines, every pair remembers
+     * the pair and input it was reached from.
+     */
+    private final class ProductSearch<S1, T1, S2, T2> {
+
+        private final MealyMachine<S1, I, T1, O> first;
+        private final MealyMachine<S2, I, T2, O> second;
+        private final AtomicBoolean cancelled;
+        private final StateIDs<S1> firstIds;
+        private final StateIDs<S2> secondIds;
+        private final long numSecond;
+
+        private final Map<Long, Integer> visited = new HashMap<>();
+        private final List<S1> firstStates = new ArrayList<>();
+        private final List<S2> secondStates = new ArrayList<>();
+        private int[] predecessors = new int[16];
+        private int[] symbols = new int[16];
+
+        ProductSearch(MealyMachine<S1, I, T1, O> first, MealyMachine<S2, I, T2, O> second, AtomicBoolean cancelled) {
+            this.first = first;
+            this.second = second;
+            this.cancelled = cancelled;
+            this.firstIds = first.stateIDs();
+            this.secondIds = second.stateIDs();
+            this.numSecond = second.size();
+        }
+
+        Word<I> run() {
+            visit(first.getInitialState(), second.getInitialState(), -1, -1);
+
+            for (int pair = 0; pair < firstStates.size(); pair++) {
+                checkCancelled(cancelled);
+                final S1 s1 = firstStates.get(pair);
+                final S2 s2 = secondStates.get(pair);
+                for (int i = 0; i < inputs.size(); i++) {
+                    final I input = inputs.get(i);
+                    final T1 t1 = first.getTransition(s1, input);
+                    final T2 t2 = second.getTransition(s2, input);
+                    if (t1 == null && t2 == null) {
+                        continue;
+                    }
+                    if (t1 == null || t2 == null ||
+                            !Objects.equals(first.getTransitionOutput(t1), second.getTransitionOutput(t2))) {
+                        return accessWord(pair).append(input);
+                    }
+                    visit(first.getSuccessor(t1), second.getSuccessor(t2), pair, i);
+                }
+            }
+            throw new IllegalStateException("the machines are not equivalent, but no separating word was found");
+        }
+
+        private void visit(S1 s1, S2 s2, int predecessor, int symbol) {
+            final long key = firstIds.getStateId(s1) * numSecond + secondIds.getStateId(s2);
+            if (visited.putIfAbsent(key, firstStates.size()) == null) {
+                final int index = firstStates.size();
+                if (index == predecessors.length) {
+                    predecessors = Arrays.copyOf(predecessors, 2 * index);
+                    symbols = Arrays.copyOf(symbols, 2 * index);
+                }
+                predecessors[index] = predecessor;
+                symbols[index] = symbol;
+                firstStates.add(s1);
+                secondStates.add(s2);
+            }
+        }
+
+        private Word<I> accessWord(int pair) {
+            final List<I> word = new ArrayList<>();
+            for (int current = pair; predecessors[current] >= 0; current = predecessors[current]) {
+                word.add(inputs.get(symbols[current]));
+            }
+            Collections.reverse(word);
+            return Word.fromList(word);
+        }
+    }
+
+    /**
+     * The check of one pair of procedures.
+     */
+    private final class Check extends RecursiveAction {
+
+        private final MealyMachine<?, I, ?, O> first;
+        private final MealyMachine<?, I, ?, O> second;
+        // set if the check should stop early, null otherwise
+        private final AtomicBoolean cancelled;
+        private final AtomicBoolean mismatch;
+
+        private Verdict verdict = Verdict.SKIPPED;
+        private Word<I> separatingWord;
+
+        Check(MealyMachine<?, I, ?, O> first,
+              MealyMachine<?, I, ?, O> second,
+              AtomicBoolean cancelled,
+              AtomicBoolean mismatch) {
+            this.first = first;
+            this.second = second;
+            this.cancelled = cancelled;
+            this.mismatch = mismatch;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                checkCancelled(cancelled);
+                separatingWord = findSeparatingWord(first, second, cancelled);
+                if (separatingWord == null) {
+                    verdict = Verdict.EQUIVALENT;
+                } else {
+                    verdict = Verdict.DIFFERENT;
+                    mismatch.set(true);
+                }
+            } catch (CancellationException e) {
+                verdict = Verdict.SKIPPED;
+            }
+        }
+    }
+
+    public enum Verdict {
+        EQUIVALENT,
+        DIFFERENT,
+        /**
+         * The check was skipped, because other procedures differ already.
+         */
+        SKIPPED
+    }
+
+    /**
+     * The verdicts of {@link #checkProcedures(Map, Map, Collection, boolean)}.
+     *
+     * @param <I> input symbol type
+     */
+    public static final class Result<I> {
+
+        private final Map<I, Verdict> verdicts;
+        private final Map<I, Word<I>> separatingWords;
+
+        Result(Map<I, Verdict> verdicts, Map<I, Word<I>> separatingWords) {
+            this.verdicts = Collections.unmodifiableMap(verdicts);
+            this.separatingWords = Collections.unmodifiableMap(separatingWords);
+        }
+
+        /**
+         * Returns whether all checked procedures are equivalent.
+         */
+        public boolean isEquivalent() {
+            return separatingWords.isEmpty() && !verdicts.containsValue(Verdict.SKIPPED);
+        }
+
+        @Nonnull
+        public Map<I, Verdict> getVerdicts() {
+            return verdicts;
+        }
+
+        /**
+         * Returns a shortest separating word of the procedures of the given call symbol, or {@code null} if they were
+         * not found to differ.
+         */
+        @Nullable
+        public Word<I> getSeparatingWord(@Nonnull I callSymbol) {
+            return separatingWords.get(callSymbol);
+        }
+
+        /**
+         * Returns the shortest of all separating words, or {@code null} if no procedures were found to differ.
+         */
+        @Nullable
+        public Word<I> getShortestSeparatingWord() {
+            Word<I> shortest = null;
+            for (Word<I> word : separatingWords.values()) {
+                if (shortest == null || word.length() < shortest.length()) {
+                    shortest = word;
+                }
+            }
+            return shortest;
+        }
+    }
+}
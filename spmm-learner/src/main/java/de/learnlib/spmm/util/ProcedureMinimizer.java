@@ -0,0 +1,290 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.util;
+
+import net.automatalib.automata.concepts.InputAlphabetHolder;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Alphabet;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Minimizes procedures and shares equivalent ones. A procedure is reduced to the states that are reachable from its
+ * initial state, equivalent states are merged and the states are numbered in breadth-first order. The result is a
+ * canonical form, so all procedures with the same behaviour are mapped to one shared machine, across all SPMMs built
+ * with the same minimizer.
+ * <p>
+ * Transitions that are undefined in a procedure stay undefined, procedures without an initial state are mapped to an
+ * empty machine. The minimizer is not thread-safe.
+ *
+ * @param <I> input symbol type
+ * @param <O> output symbol type
+ */
+public class ProcedureMinimizer<I, O> {
+
+    private final Map<Key<O>, CompactMealy<I, O>> canonicalProcedures = new HashMap<>();
+    private final Set<MealyMachine<?, I, ?, O>> canonicalInstances =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Minimizes all given procedures, see {@link #minimize(MealyMachine, Alphabet)}.
+     */
+    @Nonnull
+    public Map<I, MealyMachine<Integer, I, ?, O>> minimize(
+            @Nonnull Map<I, ? extends MealyMachine<?, I, ?, O>> procedures,
+            @Nonnull Alphabet<I> inputs) {
+        final Map<I, MealyMachine<Integer, I, ?, O>> result = new LinkedHashMap<>();
+        for (Map.Entry<I, ? extends MealyMachine<?, I, ?, O>> entry : procedures.entrySet()) {
+            result.put(entry.getKey(), minimize(entry.getValue(), inputs));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the canonical minimal machine of the given procedure over the given inputs. Procedures that were
+     * returned by this minimizer before are returned as they are.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public MealyMachine<Integer, I, ?, O> minimize(@Nonnull MealyMachine<?, I, ?, O> procedure,
+                                                  @Nonnull Alphabet<I> inputs) {
+        if (canonicalInstances.contains(procedure)) {
+            return (MealyMachine<Integer, I, ?, O>) procedure;
+        }
+        final Minimization<?> minimization = new Minimization<>(procedure, inputs);
+        final Key<O> key = minimization.canonicalKey();
+        return canonicalProcedures.computeIfAbsent(key, k -> {
+            final CompactMealy<I, O> canonical = minimization.toCompactMealy(k);
+            canonicalInstances.add(canonical);
+            return canonical;
+        });
+    }
+
+    /**
+     * Returns the number of distinct procedures created so far.
+     */
+    public int size() {
+        return canonicalProcedures.size();
+    }
+
+    /**
+     * Partition refinement over the reachable part of one procedure.
+     */
+    private final class Minimization<S> {
+
+        private final Alphabet<I> inputs;
+        private final int numInputs;
+        // reachable states in breadth-first order, index 0 is the initial state
+        private final List<S> states = new ArrayList<>();
+        private int[] successors;
+        private List<O> outputs;
+
+        @SuppressWarnings("unchecked")
+        Minimization(MealyMachine<S, I, ?, O> procedure, Alphabet<I> inputs) {
+            this.inputs = inputs;
+            this.numInputs = inputs.size();
+
+            // only ask for symbols the procedure actually knows, if it tells us
+            final boolean[] known = new boolean[numInputs];
+            for (int i = 0; i < numInputs; i++) {
+                known[i] = !(procedure instanceof InputAlphabetHolder) ||
+                        ((InputAlphabetHolder<I>) procedure).getInputAlphabet().containsSymbol(inputs.getSymbol(i));
+            }
+
+            final Map<S, Integer> ids = new HashMap<>();
+            final List<Integer> successorList = new ArrayList<>();
+            this.outputs = new ArrayList<>();
+
+            final S init = procedure.getInitialState();
+            if (init != null) {
+                ids.put(init, 0);
+                states.add(init);
+            }
+
+            for (int s = 0; s < states.size(); s++) {
+                final S state = states.get(s);
+                for (int i = 0; i < numInputs; i++) {
+                    final I input = inputs.getSymbol(i);
+                    final S successor = known[i] ? procedure.getSuccessor(state, input) : null;
+                    if (successor == null) {
+                        successorList.add(-1);
+                        outputs.add(null);
+                    } else {
+                        Integer id = ids.get(successor);
+                        if (id == null) {
+                            id = states.size();
+                            ids.put(successor, id);
+                            states.add(successor);
+                        }
+                        successorList.add(id);
+                        outputs.add(procedure.getOutput(state, input));
+                    }
+                }
+            }
+
+            this.successors = successorList.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * Refines the partition of the reachable states until it is stable and numbers the blocks in breadth-first
+         * order of the quotient.
+         */
+        Key<O> canonicalKey() {
+            final int n = states.size();
+            if (n == 0) {
+                return new Key<>(inputs, new int[0], Collections.emptyList());
+            }
+
+            // initial partition by output rows (undefined transitions included)
+            int[] block = new int[n];
+            final Map<List<Object>, Integer> rows = new HashMap<>();
+            for (int s = 0; s < n; s++) {
+                final List<Object> row = new ArrayList<>(numInputs);
+                for (int i = 0; i < numInputs; i++) {
+                    row.add(successors[s * numInputs + i] < 0 ? Undefined.INSTANCE : outputs.get(s * numInputs + i));
+                }
+                block[s] = rows.computeIfAbsent(row, r -> rows.size());
+            }
+            int numBlocks = rows.size();
+
+            // refine by the blocks of the successors
+            while (true) {
+                final int[] next = new int[n];
+                final Map<List<Integer>, Integer> signatures = new HashMap<>();
+                for (int s = 0; s < n; s++) {
+                    final List<Integer> signature = new ArrayList<>(numInputs + 1);
+                    signature.add(block[s]);
+                    for (int i = 0; i < numInputs; i++) {
+                        final int successor = successors[s * numInputs + i];
+                        signature.add(successor < 0 ? -1 : block[successor]);
+                    }
+                    next[s] = signatures.computeIfAbsent(signature, sig -> signatures.size());
+                }
+                block = next;
+                if (signatures.size() == numBlocks) {
+                    break;
+                }
+                numBlocks = signatures.size();
+            }
+
+            // number the blocks breadth-first from the block of the initial state
+            final int[] representative = new int[numBlocks];
+            final int[] order = new int[numBlocks];
+            Arrays.fill(order, -1);
+            int numOrdered = 0;
+            order[block[0]] = numOrdered;
+            representative[numOrdered++] = 0;
+
+            final int[] canonicalSuccessors = new int[numBlocks * numInputs];
+            final List<O> canonicalOutputs = new ArrayList<>(numBlocks * numInputs);
+            for (int c = 0; c < numBlocks; c++) {
+                final int s = representative[c];
+                for (int i = 0; i < numInputs; i++) {
+                    final int successor = successors[s * numInputs + i];
+                    if (successor < 0) {
+                        canonicalSuccessors[c * numInputs + i] = -1;
+                    } else {
+                        final int b = block[successor];
+                        if (order[b] < 0) {
+                            order[b] = numOrdered;
+                            representative[numOrdered++] = successor;
+                        }
+                        canonicalSuccessors[c * numInputs + i] = order[b];
+                    }
+                    canonicalOutputs.add(outputs.get(s * numInputs + i));
+                }
+            }
+
+            return new Key<>(inputs, canonicalSuccessors, canonicalOutputs);
+        }
+
+        CompactMealy<I, O> toCompactMealy(Key<O> key) {
+            final int numStates = key.successors.length / numInputs;
+            final CompactMealy<I, O> result = new CompactMealy<>(inputs, numStates);
+            for (int s = 0; s < numStates; s++) {
+                if (s == 0) {
+                    result.addInitialState();
+                } else {
+                    result.addState();
+                }
+            }
+            for (int s = 0; s < numStates; s++) {
+                for (int i = 0; i < numInputs; i++) {
+                    final int successor = key.successors[s * numInputs + i];
+                    if (successor >= 0) {
+                        result.addTransition(s, inputs.getSymbol(i), successor, key.outputs.get(s * numInputs + i));
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Canonical form of a minimal procedure. Two keys are equal iff their procedures behave the same.
+     */
+    private static final class Key<O> {
+
+        private final Alphabet<?> inputs;
+        private final int[] successors;
+        private final List<O> outputs;
+        private final int hash;
+
+        Key(Alphabet<?> inputs, int[] successors, List<O> outputs) {
+            this.inputs = inputs;
+            this.successors = successors;
+            this.outputs = outputs;
+            this.hash = 31 * Arrays.hashCode(successors) + outputs.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key<?> that = (Key<?>) o;
+            return hash == that.hash &&
+                    Objects.equals(inputs, that.inputs) &&
+                    Arrays.equals(successors, that.successors) &&
+                    outputs.equals(that.outputs);
+        }
+    }
+
+    /**
+     * Placeholder for the output of an undefined transition, which may differ from every output symbol.
+     */
+    private enum Undefined {
+        INSTANCE
+    }
+}
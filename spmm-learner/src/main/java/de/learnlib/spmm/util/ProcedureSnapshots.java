@@ -0,0 +1,79 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.util;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Alphabet;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copies procedures into {@link CompactMealy}s. The hypotheses of most learners are views on the data structures of
+ * the learner, e.g. discrimination trees or observation tables, which are expensive to simulate and change with every
+ * refinement. A snapshot answers transitions by a table lookup and does not change anymore.
+ */
+public final class ProcedureSnapshots {
+
+    private ProcedureSnapshots() {
+    }
+
+    /**
+     * Returns a copy of the part of the given procedure that is reachable from its initial state over the given
+     * inputs. The states are numbered in breadth-first order, transitions that are undefined in the procedure stay
+     * undefined.
+     */
+    @Nonnull
+    public static <I, O> CompactMealy<I, O> snapshot(@Nonnull MealyMachine<?, I, ?, O> procedure,
+                                                     @Nonnull Alphabet<I> inputs) {
+        return copy(procedure, inputs);
+    }
+
+    private static <S, I, T, O> CompactMealy<I, O> copy(MealyMachine<S, I, T, O> procedure, Alphabet<I> inputs) {
+        final CompactMealy<I, O> result = new CompactMealy<>(inputs, procedure.size());
+        final S init = procedure.getInitialState();
+        if (init == null) {
+            return result;
+        }
+
+        final Map<S, Integer> ids = new HashMap<>();
+        final List<S> states = new ArrayList<>();
+        ids.put(init, result.addInitialState());
+        states.add(init);
+
+        for (int s = 0; s < states.size(); s++) {
+            final S state = states.get(s);
+            for (I input : inputs) {
+                final T transition = procedure.getTransition(state, input);
+                if (transition == null) {
+                    continue;
+                }
+                final S successor = procedure.getSuccessor(transition);
+                Integer id = ids.get(successor);
+                if (id == null) {
+                    id = result.addState();
+                    ids.put(successor, id);
+                    states.add(successor);
+                }
+                result.addTransition(s, input, id, procedure.getTransitionOutput(transition));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,576 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm;
+
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.spmm.membershiporacle.IntSPMMSimulatorOracle;
+import de.learnlib.spmm.model.FrozenSPMM;
+import de.learnlib.spmm.model.IntSPMM;
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.SPMMCursor;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMOutputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.compactspmm.CompactSPMM;
+import de.learnlib.spmm.model.compactspmm.CompactSPMMBuilder;
+import de.learnlib.spmm.model.compactspmm.CompactSPMMSerializer;
+import de.learnlib.spmm.model.compactspmm.CompiledSPMM;
+import de.learnlib.spmm.model.compactspmm.CompiledSPMMBuilder;
+import de.learnlib.spmm.model.componenets.State;
+import de.learnlib.spmm.model.defaultspmm.DefaultSPMMBuilder;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.util.automata.random.RandomAutomata;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import net.automatalib.words.impl.Alphabets;
+import net.automatalib.words.impl.SimpleAlphabet;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestCompactSPMM {
+
+    private final SPMMInputAlphabet<InputSymbol> inputAlphabet;
+    private final SPMMOutputAlphabet<OutputSymbol> outputAlphabet;
+
+    public TestCompactSPMM() {
+        this.inputAlphabet = new DefaultSPMMInputAlphabet<>(
+                Alphabets.fromArray(InputSymbol.a, InputSymbol.b, InputSymbol.c),
+                Alphabets.fromArray(InputSymbol.P, InputSymbol.T),
+                InputSymbol.R);
+        this.outputAlphabet = new DefaultSPMMOutputAlphabet<>(
+                Alphabets.fromArray(OutputSymbol.a, OutputSymbol.b, OutputSymbol.c),
+                OutputSymbol.open, OutputSymbol.close, OutputSymbol.error, OutputSymbol.left);
+    }
+
+    @Test
+    public void behavesLikeDefaultSPMM() {
+        for (int seed = 0; seed < 10; seed++) {
+            final Random random = new Random(seed);
+            final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                    createProcedures(random, inputAlphabet, outputAlphabet);
+
+            // only activate some calls to cover the non-activated call and return semantics, too
+            final Collection<InputSymbol> activatedCalls =
+                    seed % 2 == 0 ? inputAlphabet.getCallAlphabet() : Collections.singleton(InputSymbol.P);
+
+            final SPMM<Integer, InputSymbol, ?, OutputSymbol> defaultSPMM =
+                    new DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol>().createSPMM(
+                            inputAlphabet, activatedCalls, outputAlphabet, InputSymbol.P, procedures);
+            final SPMM<Integer, InputSymbol, ?, OutputSymbol> compactSPMM =
+                    new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                            inputAlphabet, activatedCalls, outputAlphabet, InputSymbol.P, procedures);
+
+            for (int i = 0; i < 200; i++) {
+                final Word<InputSymbol> input = randomWord(random, 1 + random.nextInt(30));
+                final Word<OutputSymbol> expected = computeOutputViaTransitions(defaultSPMM, input);
+
+                assertEquals(expected, defaultSPMM.computeOutput(input));
+                assertEquals(expected, compactSPMM.computeOutput(input));
+                assertEquals(expected, computeOutputViaTransitions(compactSPMM, input));
+
+                final int split = random.nextInt(input.length());
+                assertEquals(expected.subWord(split),
+                        compactSPMM.computeSuffixOutput(input.prefix(split), input.subWord(split)));
+            }
+        }
+    }
+
+    @Test
+    public void compiledSPMMsBehaveLikeCompactSPMMs() {
+        for (int seed = 0; seed < 10; seed++) {
+            final Random random = new Random(seed);
+            final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                    createProcedures(random, inputAlphabet, outputAlphabet);
+            final Collection<InputSymbol> activatedCalls =
+                    seed % 2 == 0 ? inputAlphabet.getCallAlphabet() : Collections.singleton(InputSymbol.P);
+
+            final CompactSPMM<InputSymbol, OutputSymbol> compactSPMM =
+                    new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                            inputAlphabet, activatedCalls, outputAlphabet, InputSymbol.P, procedures);
+            final CompactSPMM<InputSymbol, OutputSymbol> compiledSPMM =
+                    new CompiledSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                            inputAlphabet, activatedCalls, outputAlphabet, InputSymbol.P, procedures);
+            assertTrue(compiledSPMM instanceof CompiledSPMM);
+
+            final IntSPMM.IntCursor compactCursor = compactSPMM.intCursor();
+            final IntSPMM.IntCursor compiledCursor = compiledSPMM.intCursor();
+            for (int i = 0; i < 200; i++) {
+                final Word<InputSymbol> input = randomWord(random, 1 + random.nextInt(30));
+                assertEquals(compactSPMM.computeOutput(input), compiledSPMM.computeOutput(input));
+
+                compactCursor.reset();
+                compiledCursor.reset();
+                for (InputSymbol symbol : input) {
+                    final int id = inputAlphabet.getSymbolIndex(symbol);
+                    assertEquals(compactCursor.step(id), compiledCursor.step(id));
+                    assertEquals(compactCursor.depth(), compiledCursor.depth());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void largeProceduresAreNotCompiled() {
+        for (int seed = 0; seed < 6; seed++) {
+            final Random random = new Random(seed);
+            final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                    createProcedures(random, inputAlphabet, outputAlphabet);
+            // an unreachable state, so only the procedure of T exceeds the limit
+            ((CompactMealy<?, ?>) procedures.get(InputSymbol.T)).addState();
+            final int limit = procedures.get(InputSymbol.P).size();
+            final Collection<InputSymbol> activatedCalls =
+                    seed % 2 == 0 ? inputAlphabet.getCallAlphabet() : Collections.singleton(InputSymbol.P);
+
+            final CompactSPMM<InputSymbol, OutputSymbol> compactSPMM =
+                    new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                            inputAlphabet, activatedCalls, outputAlphabet, InputSymbol.P, procedures);
+            final CompactSPMM<InputSymbol, OutputSymbol> compiledSPMM =
+                    new CompiledSPMMBuilder<InputSymbol, OutputSymbol>(false, limit).createSPMM(
+                            inputAlphabet, activatedCalls, outputAlphabet, InputSymbol.P, procedures);
+
+            assertTrue(((CompiledSPMM<InputSymbol, OutputSymbol>) compiledSPMM).isCompiled(InputSymbol.P));
+            assertFalse(((CompiledSPMM<InputSymbol, OutputSymbol>) compiledSPMM).isCompiled(InputSymbol.T));
+
+            final IntSPMM.IntCursor compactCursor = compactSPMM.intCursor();
+            final IntSPMM.IntCursor compiledCursor = compiledSPMM.intCursor();
+            for (int i = 0; i < 200; i++) {
+                final Word<InputSymbol> input = randomWord(random, 1 + random.nextInt(30));
+                compactCursor.reset();
+                compiledCursor.reset();
+                for (InputSymbol symbol : input) {
+                    final int id = inputAlphabet.getSymbolIndex(symbol);
+                    assertEquals(compactCursor.step(id), compiledCursor.step(id));
+                    assertEquals(compactCursor.depth(), compiledCursor.depth());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void replacedProceduresBehaveLikeNewSPMMs() {
+        final Random random = new Random(17);
+        final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                createProcedures(random, inputAlphabet, outputAlphabet);
+        final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> replaced =
+                new HashMap<>(procedures);
+        replaced.put(InputSymbol.T, createProcedures(random, inputAlphabet, outputAlphabet).get(InputSymbol.T));
+        final Collection<InputSymbol> activatedCalls = Collections.singleton(InputSymbol.T);
+
+        final DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol> defaultBuilder = new DefaultSPMMBuilder<>();
+        final CompactSPMMBuilder<InputSymbol, OutputSymbol> compactBuilder = new CompactSPMMBuilder<>();
+        final SPMM<Integer, InputSymbol, ?, OutputSymbol> expected = defaultBuilder.createSPMM(
+                inputAlphabet, activatedCalls, outputAlphabet, InputSymbol.P, replaced);
+        final List<SPMM<Integer, InputSymbol, ?, OutputSymbol>> copies = Arrays.asList(
+                defaultBuilder.copySPMMReplaceProcedures(defaultBuilder.createSPMM(
+                        inputAlphabet, activatedCalls, outputAlphabet, InputSymbol.P, procedures), replaced),
+                compactBuilder.copySPMMReplaceProcedures(compactBuilder.createSPMM(
+                        inputAlphabet, activatedCalls, outputAlphabet, InputSymbol.P, procedures), replaced));
+
+        for (SPMM<Integer, InputSymbol, ?, OutputSymbol> copy : copies) {
+            assertEquals(expected.getActivatedCalls(), copy.getActivatedCalls());
+            assertEquals(expected.getInitialCall(), copy.getInitialCall());
+            for (int i = 0; i < 200; i++) {
+                final Word<InputSymbol> input = randomWord(random, 1 + random.nextInt(30));
+                assertEquals(expected.computeOutput(input), copy.computeOutput(input));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addedProceduresNeedANewCallSymbol() {
+        final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                createProcedures(new Random(3), inputAlphabet, outputAlphabet);
+        final DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol> builder = new DefaultSPMMBuilder<>();
+
+        builder.copySPMMAddProcedure(builder.createSPMM(inputAlphabet, outputAlphabet, InputSymbol.P, procedures),
+                InputSymbol.T, procedures.get(InputSymbol.P));
+    }
+
+    @Test
+    public void minimizedProceduresBehaveTheSame() throws IOException {
+        final CompactSPMMSerializer<InputSymbol, OutputSymbol> serializer =
+                new CompactSPMMSerializer<>(Enum::name, InputSymbol::valueOf, Enum::name, OutputSymbol::valueOf);
+        final Path file = Files.createTempFile("spmm", ".bin");
+        try {
+            for (int seed = 0; seed < 5; seed++) {
+                final Random random = new Random(seed);
+                final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                        createProcedures(random, inputAlphabet, outputAlphabet);
+                // a separately built, behaviourally identical copy, must be shared after minimization
+                procedures.put(InputSymbol.T,
+                        createProcedures(new Random(seed), inputAlphabet, outputAlphabet).get(InputSymbol.P));
+                assertNotSame(procedures.get(InputSymbol.P), procedures.get(InputSymbol.T));
+
+                final SPMM<Integer, InputSymbol, ?, OutputSymbol> defaultSPMM =
+                        new DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol>().createSPMM(inputAlphabet,
+                                inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+                final CompactSPMM<InputSymbol, OutputSymbol> minimizedSPMM =
+                        new CompactSPMMBuilder<InputSymbol, OutputSymbol>(true).createSPMM(inputAlphabet,
+                                inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+
+                final MealyMachine<Integer, InputSymbol, ?, OutputSymbol> minimized =
+                        minimizedSPMM.getProcedures().get(InputSymbol.P);
+                assertSame(minimized, minimizedSPMM.getProcedures().get(InputSymbol.T));
+                assertTrue(minimized.size() <= procedures.get(InputSymbol.P).size());
+
+                // the shared procedure is compiled into the tables once, also when it is simulated on nodes
+                serializer.write(minimizedSPMM, file);
+                final List<CompactSPMM<InputSymbol, OutputSymbol>> spmms = Arrays.asList(minimizedSPMM,
+                        new CompiledSPMMBuilder<InputSymbol, OutputSymbol>(true,
+                                CompiledSPMMBuilder.DEFAULT_MAX_PROCEDURE_SIZE).createSPMM(inputAlphabet,
+                                inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures),
+                        new CompiledSPMMBuilder<InputSymbol, OutputSymbol>(true, 0).createSPMM(inputAlphabet,
+                                inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures),
+                        serializer.read(file));
+                for (CompactSPMM<InputSymbol, OutputSymbol> spmm : spmms) {
+                    assertEquals(minimized.size(), spmm.getNumGlobalIds());
+                    for (int i = 0; i < 200; i++) {
+                        final Word<InputSymbol> input = randomWord(random, 1 + random.nextInt(30));
+                        assertEquals(defaultSPMM.computeOutput(input), spmm.computeOutput(input));
+                        assertEquals(defaultSPMM.computeOutput(input), computeOutputViaTransitions(spmm, input));
+                    }
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void cursorsCanBeReused() {
+        final Random random = new Random(42);
+        final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                createProcedures(random, inputAlphabet, outputAlphabet);
+
+        final SPMM<Integer, InputSymbol, ?, OutputSymbol> defaultSPMM =
+                new DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol>().createSPMM(
+                        inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+        final SPMM<Integer, InputSymbol, ?, OutputSymbol> compactSPMM =
+                new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                        inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+
+        final SPMMCursor<InputSymbol, OutputSymbol> defaultCursor = defaultSPMM.cursor();
+        final SPMMCursor<InputSymbol, OutputSymbol> compactCursor = compactSPMM.cursor();
+
+        for (int i = 0; i < 100; i++) {
+            final Word<InputSymbol> input = randomWord(random, 1 + random.nextInt(30));
+            State<InputSymbol, Integer> state = defaultSPMM.getInitialState();
+
+            defaultCursor.reset();
+            compactCursor.reset();
+
+            for (InputSymbol symbol : input) {
+                final OutputSymbol expected = defaultSPMM.getOutput(state, symbol);
+                state = defaultSPMM.getSuccessor(state, symbol);
+
+                assertEquals(expected, defaultCursor.step(symbol));
+                assertEquals(expected, compactCursor.step(symbol));
+                assertEquals(state.getStack().depth(), defaultCursor.depth());
+                assertEquals(state.getStack().depth(), compactCursor.depth());
+            }
+        }
+    }
+
+    @Test
+    public void copiedCursorsContinueIndependently() {
+        final Random random = new Random(13);
+        final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                createProcedures(random, inputAlphabet, outputAlphabet);
+
+        final List<SPMM<Integer, InputSymbol, ?, OutputSymbol>> spmms = Arrays.asList(
+                new DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol>().createSPMM(
+                        inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures),
+                new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                        inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures),
+                new CompiledSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                        inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures));
+
+        for (SPMM<Integer, InputSymbol, ?, OutputSymbol> spmm : spmms) {
+            for (int i = 0; i < 100; i++) {
+                final Word<InputSymbol> prefix = randomWord(random, 1 + random.nextInt(15));
+                final Word<InputSymbol> first = randomWord(random, 1 + random.nextInt(15)).subWord(1);
+                final Word<InputSymbol> second = randomWord(random, 1 + random.nextInt(15)).subWord(1);
+
+                final SPMMCursor<InputSymbol, OutputSymbol> cursor = spmm.cursor();
+                for (InputSymbol symbol : prefix) {
+                    cursor.step(symbol);
+                }
+                final SPMMCursor<InputSymbol, OutputSymbol> copy = cursor.copy();
+                assertEquals(cursor.depth(), copy.depth());
+
+                final WordBuilder<OutputSymbol> firstOutput = new WordBuilder<>();
+                for (InputSymbol symbol : first) {
+                    firstOutput.append(cursor.step(symbol));
+                }
+                final WordBuilder<OutputSymbol> secondOutput = new WordBuilder<>();
+                for (InputSymbol symbol : second) {
+                    secondOutput.append(copy.step(symbol));
+                }
+
+                assertEquals(spmm.computeSuffixOutput(prefix, first), firstOutput.toWord());
+                assertEquals(spmm.computeSuffixOutput(prefix, second), secondOutput.toWord());
+            }
+        }
+    }
+
+    @Test
+    public void intPathMatchesSymbolPath() {
+        final Random random = new Random(11);
+        final CompactSPMM<InputSymbol, OutputSymbol> spmm = new CompactSPMMBuilder<InputSymbol, OutputSymbol>()
+                .createSPMM(inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P,
+                        createProcedures(random, inputAlphabet, outputAlphabet));
+        final IntSPMMSimulatorOracle<InputSymbol, OutputSymbol> oracle = new IntSPMMSimulatorOracle<>(spmm);
+
+        for (int i = 0; i < 200; i++) {
+            final Word<InputSymbol> input = randomWord(random, 1 + random.nextInt(30));
+            final Word<OutputSymbol> expected = spmm.computeOutput(input);
+
+            final int[] ids = new int[input.length()];
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = inputAlphabet.getSymbolIndex(input.getSymbol(j));
+            }
+            final int[] outputIds = spmm.computeOutput(ids);
+            final WordBuilder<OutputSymbol> wb = new WordBuilder<>();
+            for (int id : outputIds) {
+                wb.append(spmm.getOutputSymbol(id));
+            }
+            assertEquals(expected, wb.toWord());
+
+            final int split = random.nextInt(input.length());
+            final DefaultQuery<InputSymbol, Word<OutputSymbol>> query =
+                    new DefaultQuery<>(input.prefix(split), input.subWord(split));
+            oracle.processQueries(Collections.singleton(query));
+            assertEquals(expected.subWord(split), query.getOutput());
+        }
+    }
+
+    @Test
+    public void frozenSPMMsComputeOutputsInParallel() {
+        final Random random = new Random(3);
+        final CompactSPMMBuilder<InputSymbol, OutputSymbol> builder = new CompactSPMMBuilder<>();
+        final CompactSPMM<InputSymbol, OutputSymbol> spmm = builder.createSPMM(inputAlphabet,
+                Collections.singleton(InputSymbol.P), outputAlphabet, InputSymbol.P,
+                createProcedures(random, inputAlphabet, outputAlphabet));
+        final FrozenSPMM<Integer, InputSymbol, ?, OutputSymbol> frozen = builder.freeze(builder.freeze(spmm));
+        assertSame(spmm.getInitialState(), frozen.getInitialState());
+
+        // later modifications of the original do not affect the snapshot
+        spmm.addActivatedCall(InputSymbol.T);
+        assertEquals(Collections.singleton(InputSymbol.P), frozen.getActivatedCalls());
+
+        final List<Word<InputSymbol>> inputs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            inputs.add(randomWord(random, 1 + random.nextInt(30)));
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final List<Word<OutputSymbol>> outputs = frozen.computeOutputs(inputs, pool);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertEquals(frozen.computeOutput(inputs.get(i)), outputs.get(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void frozenSPMMsCannotBeModified() {
+        final CompactSPMMBuilder<InputSymbol, OutputSymbol> builder = new CompactSPMMBuilder<>();
+        builder.freeze(builder.createEmptySPMM(inputAlphabet, outputAlphabet)).addActivatedCall(InputSymbol.P);
+    }
+
+    @Test
+    public void invalidSPMMOnlyProducesErrors() {
+        final SPMM<Integer, InputSymbol, ?, OutputSymbol> spmm =
+                new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createEmptySPMM(inputAlphabet, outputAlphabet);
+
+        assertEquals(Word.fromSymbols(OutputSymbol.error, OutputSymbol.error),
+                spmm.computeOutput(Word.fromSymbols(InputSymbol.P, InputSymbol.a)));
+    }
+
+    @Test
+    public void undefinedInitialProcedureOnlyProducesErrors() {
+        final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                createProcedures(new Random(5), inputAlphabet, outputAlphabet);
+        procedures.remove(InputSymbol.P);
+
+        final List<CompactSPMM<InputSymbol, OutputSymbol>> spmms = Arrays.asList(
+                new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                        inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures),
+                new CompiledSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                        inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures));
+        final Word<InputSymbol> input = Word.fromSymbols(InputSymbol.P, InputSymbol.a, InputSymbol.R);
+        final Word<OutputSymbol> expected =
+                Word.fromSymbols(OutputSymbol.error, OutputSymbol.error, OutputSymbol.error);
+
+        for (CompactSPMM<InputSymbol, OutputSymbol> spmm : spmms) {
+            // the cursors must agree with the transitions
+            assertEquals(expected, computeOutputViaTransitions(spmm, input));
+            assertEquals(expected, spmm.computeOutput(input));
+
+            final IntSPMM.IntCursor cursor = spmm.intCursor();
+            final int error = cursor.step(inputAlphabet.getSymbolIndex(InputSymbol.P));
+            assertEquals(OutputSymbol.error, spmm.getOutputSymbol(error));
+            assertEquals(0, cursor.depth());
+        }
+    }
+
+    @Test
+    public void serializedSPMMsBehaveTheSame() throws IOException {
+        final CompactSPMMSerializer<InputSymbol, OutputSymbol> serializer =
+                new CompactSPMMSerializer<>(Enum::name, InputSymbol::valueOf, Enum::name, OutputSymbol::valueOf);
+        final Path file = Files.createTempFile("spmm", ".bin");
+        try {
+            for (int seed = 0; seed < 4; seed++) {
+                final Random random = new Random(seed);
+                final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                        createProcedures(random, inputAlphabet, outputAlphabet);
+                final Collection<InputSymbol> activatedCalls =
+                        seed % 2 == 0 ? inputAlphabet.getCallAlphabet() : Collections.singleton(InputSymbol.P);
+
+                // non-compact SPMMs are compiled on write
+                final SPMM<Integer, InputSymbol, ?, OutputSymbol> spmm = seed < 2 ?
+                        new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                                inputAlphabet, activatedCalls, outputAlphabet, InputSymbol.P, procedures) :
+                        new DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol>().createSPMM(
+                                inputAlphabet, activatedCalls, outputAlphabet, InputSymbol.P, procedures);
+
+                serializer.write(spmm, file);
+                final CompactSPMM<InputSymbol, OutputSymbol> loaded = serializer.read(file);
+
+                assertEquals(spmm.getInitialCall(), loaded.getInitialCall());
+                assertEquals(spmm.getActivatedCalls(), loaded.getActivatedCalls());
+                assertEquals(spmm.getInputAlphabet(), loaded.getInputAlphabet());
+                assertEquals(spmm.getOutputAlphabet(), loaded.getOutputAlphabet());
+                for (int i = 0; i < 200; i++) {
+                    final Word<InputSymbol> input = randomWord(random, 1 + random.nextInt(30));
+                    assertEquals(spmm.computeOutput(input), loaded.computeOutput(input));
+                    assertEquals(spmm.computeOutput(input), computeOutputViaTransitions(loaded, input));
+                }
+
+                // the procedures are rebuilt from the tables
+                assertEquals(procedures.keySet(), loaded.getProcedures().keySet());
+                final SPMM<Integer, InputSymbol, ?, OutputSymbol> rebuilt =
+                        new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(inputAlphabet,
+                                activatedCalls, outputAlphabet, InputSymbol.P, loaded.getProcedures());
+                for (int i = 0; i < 50; i++) {
+                    final Word<InputSymbol> input = randomWord(random, 1 + random.nextInt(30));
+                    assertEquals(spmm.computeOutput(input), rebuilt.computeOutput(input));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void otherFilesAreNotRead() throws IOException {
+        final Path file = Files.createTempFile("spmm", ".bin");
+        try {
+            Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+            new CompactSPMMSerializer<>(Enum::name, InputSymbol::valueOf, Enum::name, OutputSymbol::valueOf)
+                    .read(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static <S, O> Word<O> computeOutputViaTransitions(SPMM<S, InputSymbol, ?, O> spmm,
+                                                              Word<InputSymbol> input) {
+        final WordBuilder<O> wb = new WordBuilder<>();
+        State<InputSymbol, S> state = spmm.getInitialState();
+        for (InputSymbol symbol : input) {
+            wb.append(spmm.getOutput(state, symbol));
+            state = spmm.getSuccessor(state, symbol);
+        }
+        return wb.toWord();
+    }
+
+    private Word<InputSymbol> randomWord(Random random, int length) {
+        final WordBuilder<InputSymbol> wb = new WordBuilder<>(length);
+        // mostly start with the initial call, otherwise the rest of the word is not interesting
+        wb.append(random.nextInt(10) == 0 ? InputSymbol.T : InputSymbol.P);
+        for (int i = 1; i < length; i++) {
+            wb.append(inputAlphabet.getSymbol(random.nextInt(inputAlphabet.size())));
+        }
+        return wb.toWord();
+    }
+
+    static Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> createProcedures(
+            Random random,
+            SPMMInputAlphabet<InputSymbol> inputAlphabet,
+            SPMMOutputAlphabet<OutputSymbol> outputAlphabet) {
+        final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures = new HashMap<>();
+
+        for (InputSymbol call : inputAlphabet.getCallAlphabet()) {
+            final List<InputSymbol> proceduralAlphabet = new ArrayList<>(inputAlphabet.getInternalAlphabet());
+            proceduralAlphabet.addAll(inputAlphabet.getCallAlphabet());
+
+            final CompactMealy<InputSymbol, OutputSymbol> procedure = RandomAutomata.randomMealy(random,
+                    3,
+                    new SimpleAlphabet<>(proceduralAlphabet),
+                    outputAlphabet.getInternalOutputAlphabet());
+            procedure.addAlphabetSymbol(inputAlphabet.getReturnSymbol());
+
+            final List<Integer> originalStates = new ArrayList<>(procedure.getStates());
+            final Integer sink = procedure.addState();
+            final Integer left = procedure.addState();
+            for (InputSymbol i : inputAlphabet) {
+                procedure.addTransition(sink, i, sink, outputAlphabet.getError());
+                procedure.addTransition(left, i, left, outputAlphabet.getPostReturn());
+            }
+
+            for (Integer s : originalStates) {
+                for (InputSymbol c : inputAlphabet.getCallAlphabet()) {
+                    if (random.nextInt(4) > 0) {
+                        procedure.setTransition(s, c, s, outputAlphabet.getProcedureStart());
+                    } else {
+                        procedure.setTransition(s, c, sink, outputAlphabet.getError());
+                    }
+                }
+                final List<OutputSymbol> returnOutputs =
+                        Arrays.asList(outputAlphabet.getProcedureEnd(), outputAlphabet.getError());
+                final OutputSymbol returnOutput = returnOutputs.get(random.nextInt(2));
+                procedure.setTransition(s, inputAlphabet.getReturnSymbol(),
+                        returnOutput == outputAlphabet.getError() ? sink : left, returnOutput);
+            }
+
+            procedures.put(call, procedure);
+        }
+
+        return procedures;
+    }
+}
@@ -0,0 +1,143 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm;
+
+import de.learnlib.spmm.util.MealyEquivalenceChecker;
+import de.learnlib.spmm.util.MealyEquivalenceChecker.Result;
+import de.learnlib.spmm.util.MealyEquivalenceChecker.Verdict;
+import de.learnlib.spmm.util.ProcedureMinimizer;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.util.automata.random.RandomAutomata;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.impl.Alphabets;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestMealyEquivalenceChecker {
+
+    private final Alphabet<InputSymbol> inputs = Alphabets.fromArray(InputSymbol.a, InputSymbol.b, InputSymbol.c);
+    private final List<OutputSymbol> outputs = Arrays.asList(OutputSymbol.a, OutputSymbol.b);
+
+    @Test
+    public void minimizedMachinesAreEquivalent() {
+        final MealyEquivalenceChecker<InputSymbol, OutputSymbol> checker = new MealyEquivalenceChecker<>(inputs);
+        final ProcedureMinimizer<InputSymbol, OutputSymbol> minimizer = new ProcedureMinimizer<>();
+
+        for (int seed = 0; seed < 20; seed++) {
+            final CompactMealy<InputSymbol, OutputSymbol> machine =
+                    RandomAutomata.randomMealy(new Random(seed), 20, inputs, outputs);
+            final MealyMachine<Integer, InputSymbol, ?, OutputSymbol> minimized = minimizer.minimize(machine, inputs);
+
+            assertTrue(checker.testEquivalence(machine, minimized));
+            assertNull(checker.findSeparatingWord(machine, minimized));
+        }
+    }
+
+    @Test
+    public void separatingWordsAreShortest() {
+        final MealyEquivalenceChecker<InputSymbol, OutputSymbol> checker = new MealyEquivalenceChecker<>(inputs);
+
+        for (int seed = 0; seed < 20; seed++) {
+            final Random random = new Random(seed);
+            final CompactMealy<InputSymbol, OutputSymbol> machine =
+                    RandomAutomata.randomMealy(new Random(seed), 8, inputs, outputs);
+            final CompactMealy<InputSymbol, OutputSymbol> mutated =
+                    RandomAutomata.randomMealy(new Random(seed), 8, inputs, outputs);
+
+            final Integer state = random.nextInt(mutated.size());
+            final InputSymbol input = inputs.getSymbol(random.nextInt(inputs.size()));
+            final OutputSymbol output = mutated.getOutput(state, input);
+            mutated.setTransition(state, input, mutated.getSuccessor(state, input),
+                    output == OutputSymbol.a ? OutputSymbol.b : OutputSymbol.a);
+
+            final Word<InputSymbol> separatingWord = checker.findSeparatingWord(machine, mutated);
+            if (separatingWord == null) {
+                // the mutated transition is not reachable
+                assertTrue(checker.testEquivalence(machine, mutated));
+                continue;
+            }
+
+            assertNotEquals(machine.computeOutput(separatingWord), mutated.computeOutput(separatingWord));
+            // enumerating all shorter words is only feasible for short separating words
+            if (separatingWord.length() <= 6) {
+                for (Word<InputSymbol> shorter : allWords(separatingWord.length() - 1)) {
+                    assertEquals(machine.computeOutput(shorter), mutated.computeOutput(shorter));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void proceduresAreCheckedSeparately() {
+        final MealyEquivalenceChecker<InputSymbol, OutputSymbol> checker = new MealyEquivalenceChecker<>(inputs);
+
+        final CompactMealy<InputSymbol, OutputSymbol> first = new CompactMealy<>(inputs);
+        final Integer init = first.addInitialState();
+        for (InputSymbol input : inputs) {
+            first.addTransition(init, input, init, OutputSymbol.a);
+        }
+        final CompactMealy<InputSymbol, OutputSymbol> second = new CompactMealy<>(inputs);
+        final Integer other = second.addInitialState();
+        for (InputSymbol input : inputs) {
+            second.addTransition(other, input, other, input == InputSymbol.c ? OutputSymbol.b : OutputSymbol.a);
+        }
+
+        final Map<InputSymbol, MealyMachine<?, InputSymbol, ?, OutputSymbol>> expected = new HashMap<>();
+        expected.put(InputSymbol.P, first);
+        expected.put(InputSymbol.T, first);
+        final Map<InputSymbol, MealyMachine<?, InputSymbol, ?, OutputSymbol>> actual = new HashMap<>();
+        actual.put(InputSymbol.P, first);
+        actual.put(InputSymbol.T, second);
+
+        final Result<InputSymbol> result =
+                checker.checkProcedures(expected, actual, Arrays.asList(InputSymbol.P, InputSymbol.T), false);
+
+        assertFalse(result.isEquivalent());
+        assertEquals(Verdict.EQUIVALENT, result.getVerdicts().get(InputSymbol.P));
+        assertEquals(Verdict.DIFFERENT, result.getVerdicts().get(InputSymbol.T));
+        assertEquals(Word.fromSymbols(InputSymbol.c), result.getShortestSeparatingWord());
+        assertNotNull(result.getSeparatingWord(InputSymbol.T));
+        assertNull(result.getSeparatingWord(InputSymbol.P));
+    }
+
+    private List<Word<InputSymbol>> allWords(int maxLength) {
+        final List<Word<InputSymbol>> words = new ArrayList<>();
+        words.add(Word.epsilon());
+        for (int i = 0; i < words.size(); i++) {
+            final Word<InputSymbol> word = words.get(i);
+            if (word.length() < maxLength) {
+                for (InputSymbol input : inputs) {
+                    words.add(word.append(input));
+                }
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,127 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm;
+
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
+import de.learnlib.spmm.model.componenets.PersistentMap;
+import net.automatalib.words.impl.Alphabets;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestPersistentMap {
+
+    @Test
+    public void plusKeepsTheOriginalMap() {
+        final Map<Integer, String> expected = new HashMap<>();
+        PersistentMap<Integer, String> map = PersistentMap.empty();
+        for (int i = 0; i < 5000; i++) {
+            final PersistentMap<Integer, String> previous = map;
+            map = map.plus(i, "v" + i);
+            expected.put(i, "v" + i);
+
+            assertEquals(i, previous.size());
+            assertFalse(previous.containsKey(i));
+        }
+
+        assertEquals(expected, map);
+        assertEquals(expected.hashCode(), map.hashCode());
+        assertNull(map.get(5000));
+
+        final String value = map.get(42);
+        assertSame(map, map.plus(42, value));
+
+        final PersistentMap<Integer, String> replaced = map.plus(42, "other");
+        assertEquals(map.size(), replaced.size());
+        assertEquals("other", replaced.get(42));
+        assertEquals("v42", map.get(42));
+    }
+
+    @Test
+    public void collidingKeysAreKeptApart() {
+        PersistentMap<Colliding, Integer> map = PersistentMap.empty();
+        for (int i = 0; i < 10; i++) {
+            map = map.plus(new Colliding(i), i);
+        }
+        // a key with a different hash next to the collision node
+        map = map.plus(new Colliding(-1) {
+
+            @Override
+            public int hashCode() {
+                return 32;
+            }
+        }, -1);
+
+        assertEquals(11, map.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(i), map.get(new Colliding(i)));
+        }
+        assertEquals(11, map.entrySet().stream().count());
+    }
+
+    @Test
+    public void callSymbolsAreAppendedToASharedAlphabet() {
+        final DefaultSPMMInputAlphabet<InputSymbol> alphabet = new DefaultSPMMInputAlphabet<>(
+                Alphabets.fromArray(InputSymbol.a, InputSymbol.b, InputSymbol.c),
+                Alphabets.fromArray(InputSymbol.P),
+                InputSymbol.R);
+        final DefaultSPMMInputAlphabet<InputSymbol> extended = alphabet.withCallSymbol(InputSymbol.T);
+
+        assertEquals(Arrays.asList(InputSymbol.a, InputSymbol.b, InputSymbol.c, InputSymbol.P, InputSymbol.T,
+                InputSymbol.R), extended);
+        assertEquals(1, extended.getCallSymbolIndex(InputSymbol.T));
+        assertEquals(5, extended.getSymbolIndex(InputSymbol.R));
+        assertEquals(4, alphabet.getSymbolIndex(InputSymbol.R));
+        assertFalse(alphabet.isCallSymbol(InputSymbol.T));
+
+        assertSame(extended, extended.retainCalls(Arrays.asList(InputSymbol.T, InputSymbol.P)));
+        assertEquals(alphabet, extended.retainCalls(Arrays.asList(InputSymbol.P)));
+        assertTrue(extended.retainCalls(Arrays.asList()).getCallAlphabet().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void callSymbolsMustBeNew() {
+        new DefaultSPMMInputAlphabet<>(Alphabets.fromArray(InputSymbol.a),
+                Alphabets.fromArray(InputSymbol.P),
+                InputSymbol.R).withCallSymbol(InputSymbol.a);
+    }
+
+    private static class Colliding {
+
+        private final int id;
+
+        Colliding(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Colliding && ((Colliding) o).id == id;
+        }
+    }
+}
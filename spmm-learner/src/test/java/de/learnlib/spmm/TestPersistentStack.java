@@ -0,0 +1,117 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm;
+
+import de.learnlib.spmm.model.componenets.PersistentStack;
+import de.learnlib.spmm.model.componenets.State;
+import de.learnlib.spmm.model.componenets.StateInterner;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestPersistentStack {
+
+    @Test
+    public void pushAndPopShareStructure() {
+        final PersistentStack<String> empty = PersistentStack.empty();
+        final PersistentStack<String> one = empty.push("a");
+        final PersistentStack<String> two = one.push("b");
+
+        assertTrue(empty.isEmpty());
+        assertEquals(2, two.depth());
+        assertEquals("b", two.peek());
+        assertSame(one, two.pop());
+        assertSame(empty, two.pop().pop());
+
+        // the original stack stays untouched
+        assertEquals(1, one.depth());
+        assertEquals("a", one.peek());
+        assertEquals("[a, b]", two.toString());
+    }
+
+    @Test
+    public void equalityIsStructural() {
+        final PersistentStack<String> first = PersistentStack.<String>empty().push("a").push("b");
+        final PersistentStack<String> second = PersistentStack.<String>empty().push("a").push("b");
+        final PersistentStack<String> third = PersistentStack.<String>empty().push("b").push("a");
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertNotEquals(first, third);
+        assertNotEquals(first, first.pop());
+    }
+
+    @Test
+    public void statesWithEqualStacksAreEqual() {
+        final State<InputSymbol, Integer> bottom = new State<>(InputSymbol.P, 0);
+        final PersistentStack<State<InputSymbol, Integer>> stack = PersistentStack.<State<InputSymbol, Integer>>empty()
+                .push(bottom);
+
+        final State<InputSymbol, Integer> first = new State<>(InputSymbol.T, 1, stack);
+        final State<InputSymbol, Integer> second = new State<>(InputSymbol.T, 1, PersistentStack.empty(), bottom);
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertNotEquals(first, new State<>(InputSymbol.T, 1));
+    }
+
+    @Test
+    public void internerReturnsCanonicalStates() {
+        final StateInterner<InputSymbol, Integer> interner = new StateInterner<>();
+
+        final State<InputSymbol, Integer> caller = interner.state(InputSymbol.P, 0);
+        final State<InputSymbol, Integer> first = interner.call(InputSymbol.T, 1, caller);
+        final State<InputSymbol, Integer> second = interner.intern(
+                new State<>(InputSymbol.T, 1, PersistentStack.empty(), new State<>(InputSymbol.P, 0)));
+
+        assertSame(first, second);
+        assertSame(caller, first.getStack().peek());
+        assertTrue(first.isCanonicalIn(interner));
+        assertEquals(2, interner.size());
+
+        final State<InputSymbol, Integer> other = interner.call(InputSymbol.T, 2, caller);
+        assertNotEquals(first, other);
+        assertSame(first.getStack(), other.getStack());
+        assertFalse(other.isCanonicalIn(new StateInterner<>()));
+
+        // canonical and non-canonical states are still compared structurally
+        assertEquals(first, new State<>(InputSymbol.T, 1, first.getStack()));
+    }
+
+    @Test(timeout = 10000)
+    public void internerHandlesDeepStacks() {
+        final StateInterner<InputSymbol, Integer> interner = new StateInterner<>();
+
+        // every configuration calls the next one, like the configurations of a deep recursion in a DefaultSPMM
+        final State<InputSymbol, Integer> first = deepState(1000);
+        final State<InputSymbol, Integer> canonical = interner.intern(first);
+
+        assertTrue(canonical.isCanonicalIn(interner));
+        assertEquals(1001, interner.size());
+        assertSame(canonical, interner.intern(deepState(1000)));
+    }
+
+    private static State<InputSymbol, Integer> deepState(int depth) {
+        State<InputSymbol, Integer> state = new State<>(InputSymbol.P, 0);
+        for (int i = 1; i <= depth; i++) {
+            state = new State<>(InputSymbol.P, i, state.getStack(), state);
+        }
+        return state;
+    }
+}
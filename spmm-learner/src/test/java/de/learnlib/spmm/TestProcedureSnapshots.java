@@ -0,0 +1,57 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm;
+
+import de.learnlib.spmm.util.MealyEquivalenceChecker;
+import de.learnlib.spmm.util.ProcedureSnapshots;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.util.automata.random.RandomAutomata;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.impl.Alphabets;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestProcedureSnapshots {
+
+    private final Alphabet<InputSymbol> inputs = Alphabets.fromArray(InputSymbol.a, InputSymbol.b, InputSymbol.c);
+    private final List<OutputSymbol> outputs = Arrays.asList(OutputSymbol.a, OutputSymbol.b);
+
+    @Test
+    public void snapshotsDoNotChangeWithTheProcedure() {
+        final MealyEquivalenceChecker<InputSymbol, OutputSymbol> checker = new MealyEquivalenceChecker<>(inputs);
+
+        for (int seed = 0; seed < 10; seed++) {
+            final CompactMealy<InputSymbol, OutputSymbol> procedure =
+                    RandomAutomata.randomMealy(new Random(seed), 20, inputs, outputs);
+            final CompactMealy<InputSymbol, OutputSymbol> snapshot = ProcedureSnapshots.snapshot(procedure, inputs);
+
+            assertTrue(snapshot.size() <= procedure.size());
+            assertTrue(checker.testEquivalence(procedure, snapshot));
+
+            final Integer init = procedure.getInitialState();
+            final OutputSymbol output = procedure.getOutput(init, InputSymbol.a);
+            procedure.setTransition(init, InputSymbol.a, procedure.getSuccessor(init, InputSymbol.a),
+                    output == OutputSymbol.a ? OutputSymbol.b : OutputSymbol.a);
+
+            assertFalse(checker.testEquivalence(procedure, snapshot));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm;
+
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMOutputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import net.automatalib.words.VPDAlphabet.SymbolType;
+import net.automatalib.words.Word;
+import net.automatalib.words.impl.Alphabets;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestSPMMAlphabets {
+
+    @Test
+    public void inputSymbolCodesMatchClassification() {
+        final SPMMInputAlphabet<InputSymbol> alphabet = new DefaultSPMMInputAlphabet<>(
+                Alphabets.fromArray(InputSymbol.a, InputSymbol.b, InputSymbol.c),
+                Alphabets.fromArray(InputSymbol.P, InputSymbol.T),
+                InputSymbol.R);
+
+        for (int i = 0; i < alphabet.size(); i++) {
+            final InputSymbol symbol = alphabet.getSymbol(i);
+            final int code = alphabet.getSymbolCode(symbol);
+
+            assertEquals(i, alphabet.getSymbolIndex(symbol));
+            assertEquals(i, SPMMInputAlphabet.symbolIndex(code));
+            assertEquals(alphabet.getSymbolType(symbol), SPMMInputAlphabet.symbolType(code));
+        }
+
+        assertEquals(SymbolType.CALL, alphabet.getSymbolType(InputSymbol.T));
+        assertEquals(1, alphabet.getCallSymbolIndex(InputSymbol.T));
+        assertEquals(2, alphabet.getInternalSymbolIndex(InputSymbol.c));
+        assertTrue(alphabet.isReturnSymbol(InputSymbol.R));
+        assertFalse(alphabet.isCallSymbol(InputSymbol.a));
+
+        final int[] codes = alphabet.getSymbolCodes(Word.fromSymbols(InputSymbol.P, InputSymbol.a, InputSymbol.R));
+        assertArrayEquals(new int[]{alphabet.getSymbolCode(InputSymbol.P),
+                        alphabet.getSymbolCode(InputSymbol.a),
+                        alphabet.getSymbolCode(InputSymbol.R)},
+                codes);
+    }
+
+    @Test
+    public void unknownInputSymbolsHaveNoCode() {
+        final SPMMInputAlphabet<InputSymbol> alphabet = new DefaultSPMMInputAlphabet<>(
+                Alphabets.fromArray(InputSymbol.a), Alphabets.fromArray(InputSymbol.P), InputSymbol.R);
+
+        assertEquals(-1, alphabet.getSymbolCode(InputSymbol.b));
+        assertFalse(alphabet.containsSymbol(InputSymbol.b));
+        assertFalse(alphabet.isInternalSymbol(InputSymbol.b));
+    }
+
+    @Test
+    public void derivedInputAlphabetsHaveTheirOwnCodes() {
+        final DefaultSPMMInputAlphabet<InputSymbol> base = new DefaultSPMMInputAlphabet<>(
+                Alphabets.fromArray(InputSymbol.a, InputSymbol.b), Alphabets.fromArray(InputSymbol.P), InputSymbol.R);
+        // build the codes of the base alphabet before deriving from it
+        assertEquals(2, base.getSymbolIndex(InputSymbol.P));
+
+        final DefaultSPMMInputAlphabet<InputSymbol> grown = base.withCallSymbol(InputSymbol.T);
+        final DefaultSPMMInputAlphabet<InputSymbol> shrunk = grown.retainCalls(Collections.singleton(InputSymbol.T));
+
+        assertEquals(-1, base.getSymbolCode(InputSymbol.T));
+        assertEquals(3, base.getSymbolIndex(InputSymbol.R));
+        assertEquals(3, grown.getSymbolIndex(InputSymbol.T));
+        assertEquals(4, grown.getSymbolIndex(InputSymbol.R));
+        assertEquals(-1, shrunk.getSymbolCode(InputSymbol.P));
+        assertEquals(2, shrunk.getSymbolIndex(InputSymbol.T));
+        assertEquals(SymbolType.RETURN, shrunk.getSymbolType(InputSymbol.R));
+        assertSame(grown, DefaultSPMMInputAlphabet.copyOf(grown));
+    }
+
+    @Test
+    public void overlappingOutputSymbolsKeepAllRoles() {
+        // the error symbol is used for the post return output, too
+        final SPMMOutputAlphabet<OutputSymbol> alphabet = new DefaultSPMMOutputAlphabet<>(
+                Alphabets.fromArray(OutputSymbol.a, OutputSymbol.b),
+                OutputSymbol.open, OutputSymbol.close, OutputSymbol.error, OutputSymbol.error);
+
+        final int code = alphabet.getSymbolCode(OutputSymbol.error);
+        assertTrue(SPMMOutputAlphabet.hasFlag(code, SPMMOutputAlphabet.ERROR));
+        assertTrue(SPMMOutputAlphabet.hasFlag(code, SPMMOutputAlphabet.POST_RETURN));
+        assertFalse(SPMMOutputAlphabet.hasFlag(code, SPMMOutputAlphabet.PROCEDURE_END));
+        assertTrue(alphabet.isErrorSymbol(OutputSymbol.error));
+        assertTrue(alphabet.isPostReturn(OutputSymbol.error));
+
+        // the index is the one of the first occurrence
+        assertEquals(4, alphabet.getSymbolIndex(OutputSymbol.error));
+        assertEquals(4, SPMMOutputAlphabet.symbolIndex(code));
+        assertEquals(OutputSymbol.open, alphabet.getSymbol(SPMMOutputAlphabet.symbolIndex(
+                alphabet.getSymbolCode(OutputSymbol.open))));
+
+        assertFalse(SPMMOutputAlphabet.hasFlag(alphabet.getSymbolCode(OutputSymbol.c), SPMMOutputAlphabet.ERROR));
+    }
+}
@@ -0,0 +1,121 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm;
+
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.SPMMDiff;
+import de.learnlib.spmm.model.SPMMDiff.TransitionDiff;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMOutputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.compactspmm.CompactSPMMBuilder;
+import de.learnlib.spmm.model.defaultspmm.DefaultSPMMBuilder;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Word;
+import net.automatalib.words.impl.Alphabets;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSPMMDiff {
+
+    private final SPMMInputAlphabet<InputSymbol> inputAlphabet;
+    private final SPMMOutputAlphabet<OutputSymbol> outputAlphabet;
+
+    public TestSPMMDiff() {
+        this.inputAlphabet = new DefaultSPMMInputAlphabet<>(
+                Alphabets.fromArray(InputSymbol.a, InputSymbol.b, InputSymbol.c),
+                Alphabets.fromArray(InputSymbol.P, InputSymbol.T),
+                InputSymbol.R);
+        this.outputAlphabet = new DefaultSPMMOutputAlphabet<>(
+                Alphabets.fromArray(OutputSymbol.a, OutputSymbol.b, OutputSymbol.c),
+                OutputSymbol.open, OutputSymbol.close, OutputSymbol.error, OutputSymbol.left);
+    }
+
+    @Test
+    public void equivalentSPMMsHaveNoDifferences() {
+        final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                TestCompactSPMM.createProcedures(new Random(0), inputAlphabet, outputAlphabet);
+
+        final SPMM<Integer, InputSymbol, ?, OutputSymbol> defaultSPMM =
+                new DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol>().createSPMM(
+                        inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+        final SPMM<Integer, InputSymbol, ?, OutputSymbol> minimizedSPMM =
+                new CompactSPMMBuilder<InputSymbol, OutputSymbol>(true).createSPMM(
+                        inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+
+        final SPMMDiff<InputSymbol, OutputSymbol> diff = SPMMDiff.compute(defaultSPMM, minimizedSPMM);
+        assertTrue(diff.isEmpty());
+        assertTrue(diff.getChangedProcedures().isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void changedTransitionsAreReported() {
+        for (int seed = 0; seed < 5; seed++) {
+            final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                    TestCompactSPMM.createProcedures(new Random(seed), inputAlphabet, outputAlphabet);
+            final SPMM<Integer, InputSymbol, ?, OutputSymbol> before =
+                    new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                            inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+
+            // the compact SPMM copied the procedures, change an internal output of T
+            final CompactMealy<InputSymbol, OutputSymbol> procedure =
+                    (CompactMealy<InputSymbol, OutputSymbol>) procedures.get(InputSymbol.T);
+            final Integer init = procedure.getInitialState();
+            final OutputSymbol output = procedure.getOutput(init, InputSymbol.b);
+            procedure.setTransition(init, InputSymbol.b, procedure.getSuccessor(init, InputSymbol.b),
+                    output == OutputSymbol.a ? OutputSymbol.b : OutputSymbol.a);
+            final SPMM<Integer, InputSymbol, ?, OutputSymbol> after =
+                    new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                            inputAlphabet, Collections.singleton(InputSymbol.P), outputAlphabet, InputSymbol.P,
+                            procedures);
+
+            final SPMMDiff<InputSymbol, OutputSymbol> diff = SPMMDiff.compute(before, after);
+            assertFalse(diff.isEmpty());
+            assertTrue(diff.isAlphabetEqual());
+            assertTrue(diff.getAddedCalls().isEmpty());
+            assertTrue(diff.getRemovedCalls().isEmpty());
+            assertEquals(Collections.singleton(InputSymbol.T), diff.getDeactivatedCalls());
+            assertEquals(Collections.singleton(InputSymbol.T), diff.getChangedProcedures().keySet());
+            assertEquals(Word.fromSymbols(InputSymbol.b), diff.getSeparatingWord(InputSymbol.T));
+
+            final List<TransitionDiff<InputSymbol, OutputSymbol>> transitions =
+                    diff.getChangedProcedures().get(InputSymbol.T);
+            assertEquals(Word.epsilon(), transitions.get(0).getAccessWord());
+            assertEquals(InputSymbol.b, transitions.get(0).getInput());
+            assertEquals(output, transitions.get(0).getFirstOutput());
+
+            final MealyMachine<?, InputSymbol, ?, OutputSymbol> first = before.getProcedures().get(InputSymbol.T);
+            final MealyMachine<?, InputSymbol, ?, OutputSymbol> second = after.getProcedures().get(InputSymbol.T);
+            for (TransitionDiff<InputSymbol, OutputSymbol> transition : transitions) {
+                assertEquals(first.computeOutput(transition.getAccessWord()),
+                        second.computeOutput(transition.getAccessWord()));
+                assertNotEquals(first.computeOutput(transition.getSeparatingWord()),
+                        second.computeOutput(transition.getSeparatingWord()));
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm;
+
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.SPMMEquivalenceChecker;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMOutputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.compactspmm.CompactSPMMBuilder;
+import de.learnlib.spmm.model.defaultspmm.DefaultSPMMBuilder;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Word;
+import net.automatalib.words.impl.Alphabets;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TestSPMMEquivalence {
+
+    private final SPMMInputAlphabet<InputSymbol> inputAlphabet;
+    private final SPMMOutputAlphabet<OutputSymbol> outputAlphabet;
+
+    public TestSPMMEquivalence() {
+        this.inputAlphabet = new DefaultSPMMInputAlphabet<>(
+                Alphabets.fromArray(InputSymbol.a, InputSymbol.b, InputSymbol.c),
+                Alphabets.fromArray(InputSymbol.P, InputSymbol.T),
+                InputSymbol.R);
+        this.outputAlphabet = new DefaultSPMMOutputAlphabet<>(
+                Alphabets.fromArray(OutputSymbol.a, OutputSymbol.b, OutputSymbol.c),
+                OutputSymbol.open, OutputSymbol.close, OutputSymbol.error, OutputSymbol.left);
+    }
+
+    @Test
+    public void equivalentSPMMsAreNotSeparated() {
+        for (int seed = 0; seed < 5; seed++) {
+            final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                    TestCompactSPMM.createProcedures(new Random(seed), inputAlphabet, outputAlphabet);
+
+            final SPMM<Integer, InputSymbol, ?, OutputSymbol> defaultSPMM =
+                    new DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol>().createSPMM(
+                            inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+            final SPMM<Integer, InputSymbol, ?, OutputSymbol> minimizedSPMM =
+                    new CompactSPMMBuilder<InputSymbol, OutputSymbol>(true).createSPMM(
+                            inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+
+            assertNull(SPMMEquivalenceChecker.findSeparatingWord(defaultSPMM, minimizedSPMM, 4));
+            assertNull(SPMMEquivalenceChecker.findCounterexample(defaultSPMM, minimizedSPMM, 4));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void counterexamplesAreShortest() {
+        for (int seed = 0; seed < 5; seed++) {
+            final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                    TestCompactSPMM.createProcedures(new Random(seed), inputAlphabet, outputAlphabet);
+            final SPMM<Integer, InputSymbol, ?, OutputSymbol> system =
+                    new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                            inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+
+            // the compact SPMM copied the procedures, change an internal output of the initial procedure
+            final CompactMealy<InputSymbol, OutputSymbol> procedure =
+                    (CompactMealy<InputSymbol, OutputSymbol>) procedures.get(InputSymbol.P);
+            final Integer init = procedure.getInitialState();
+            final OutputSymbol output = procedure.getOutput(init, InputSymbol.a);
+            procedure.setTransition(init, InputSymbol.a, procedure.getSuccessor(init, InputSymbol.a),
+                    output == OutputSymbol.a ? OutputSymbol.b : OutputSymbol.a);
+            final SPMM<Integer, InputSymbol, ?, OutputSymbol> hypothesis =
+                    new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                            inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+
+            final DefaultQuery<InputSymbol, Word<OutputSymbol>> counterexample =
+                    SPMMEquivalenceChecker.findCounterexample(system, hypothesis, 4);
+            assertNotNull(counterexample);
+
+            final Word<InputSymbol> input = counterexample.getInput();
+            assertEquals(system.computeOutput(input), counterexample.getOutput());
+            assertNotEquals(hypothesis.computeOutput(input), counterexample.getOutput());
+            for (Word<InputSymbol> shorter : allWords(input.length() - 1)) {
+                assertEquals(system.computeOutput(shorter), hypothesis.computeOutput(shorter));
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void separatingWordsDoNotDependOnScheduling() {
+        final ForkJoinPool sequential = new ForkJoinPool(1);
+        final ForkJoinPool parallel = new ForkJoinPool(4);
+        try {
+            for (int seed = 0; seed < 5; seed++) {
+                final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                        TestCompactSPMM.createProcedures(new Random(seed), inputAlphabet, outputAlphabet);
+                final SPMM<Integer, InputSymbol, ?, OutputSymbol> system =
+                        new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                                inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P,
+                                procedures);
+
+                // change an internal output of every state of the nested procedure, so the search has to expand
+                // several large levels before it separates the SPMMs
+                final CompactMealy<InputSymbol, OutputSymbol> procedure =
+                        (CompactMealy<InputSymbol, OutputSymbol>) procedures.get(InputSymbol.T);
+                for (Integer state : procedure.getStates()) {
+                    final Integer successor = procedure.getSuccessor(state, InputSymbol.c);
+                    final OutputSymbol output = procedure.getOutput(state, InputSymbol.c);
+                    if (output == OutputSymbol.a || output == OutputSymbol.b) {
+                        procedure.setTransition(state, InputSymbol.c, successor,
+                                output == OutputSymbol.a ? OutputSymbol.b : OutputSymbol.a);
+                    }
+                }
+                final SPMM<Integer, InputSymbol, ?, OutputSymbol> hypothesis =
+                        new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                                inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P,
+                                procedures);
+
+                final Word<InputSymbol> expected =
+                        SPMMEquivalenceChecker.findSeparatingWord(system, hypothesis, 6, sequential);
+                for (int i = 0; i < 10; i++) {
+                    assertEquals(expected, SPMMEquivalenceChecker.findSeparatingWord(system, hypothesis, 6, parallel));
+                }
+            }
+        } finally {
+            sequential.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeStackBoundsAreRejected() {
+        final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                TestCompactSPMM.createProcedures(new Random(0), inputAlphabet, outputAlphabet);
+        final SPMM<Integer, InputSymbol, ?, OutputSymbol> spmm =
+                new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                        inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+
+        SPMMEquivalenceChecker.findSeparatingWord(spmm, spmm, -1);
+    }
+
+    private List<Word<InputSymbol>> allWords(int maxLength) {
+        final List<Word<InputSymbol>> words = new ArrayList<>();
+        words.add(Word.epsilon());
+        for (int i = 0; i < words.size(); i++) {
+            final Word<InputSymbol> word = words.get(i);
+            if (word.length() < maxLength) {
+                for (InputSymbol symbol : inputAlphabet) {
+                    words.add(word.append(symbol));
+                }
+            }
+        }
+        return words;
+    }
+}
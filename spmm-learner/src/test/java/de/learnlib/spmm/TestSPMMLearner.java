@@ -0,0 +1,515 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm;
+
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.api.query.Query;
+import de.learnlib.spmm.aal.ATProvider.SimpleATProvider;
+import de.learnlib.spmm.aal.adapter.TTTAdapter;
+import de.learnlib.spmm.aal.learner.SPMMLearner;
+import de.learnlib.spmm.aal.learner.refiner.CounterexampleAnalysis;
+import de.learnlib.spmm.equivalenceoracle.SPMMEqOr;
+import de.learnlib.spmm.equivalenceoracle.SPMMEquivalenceOracle;
+import de.learnlib.spmm.membershiporacle.SPMMSimulatorOracle;
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.SPMMBuilder;
+import de.learnlib.spmm.model.SPMMEquivalenceChecker;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMOutputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.componenets.State;
+import de.learnlib.spmm.model.defaultspmm.DefaultSPMMBuilder;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.MealyTransition;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.impl.Alphabets;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestSPMMLearner {
+
+    private static final int MAX_STACK_DEPTH = 3;
+
+    private final SPMMInputAlphabet<InputSymbol> inputAlphabet;
+    private final SPMMOutputAlphabet<OutputSymbol> outputAlphabet;
+
+    public TestSPMMLearner() {
+        this.inputAlphabet = new DefaultSPMMInputAlphabet<>(
+                Alphabets.fromArray(InputSymbol.a, InputSymbol.b, InputSymbol.c),
+                Alphabets.fromArray(InputSymbol.P, InputSymbol.T),
+                InputSymbol.R);
+        this.outputAlphabet = new DefaultSPMMOutputAlphabet<>(
+                Alphabets.fromArray(OutputSymbol.a, OutputSymbol.b, OutputSymbol.c),
+                OutputSymbol.open, OutputSymbol.close, OutputSymbol.error, OutputSymbol.left);
+    }
+
+    @Test
+    public void refinesNonConformingProceduresConcurrently() {
+        // T has to read a before it may return, P has to call T before it may return. Both procedures are known
+        // before the counterexample P T a R R reveals that they terminate, so both sub-learners get the new calls at
+        // once. Their single-state hypotheses both return with an error, so the terminating sequence of P is not
+        // conform in P and in T
+        final CompactMealy<InputSymbol, OutputSymbol> p = newProcedure(2);
+        p.setTransition(0, InputSymbol.T, 1, outputAlphabet.getProcedureStart());
+        setReturn(p, 1);
+        final CompactMealy<InputSymbol, OutputSymbol> t = newProcedure(2);
+        t.setTransition(0, InputSymbol.a, 1, OutputSymbol.b);
+        t.setTransition(1, InputSymbol.a, 1, OutputSymbol.c);
+        setReturn(t, 1);
+        final SPMM<?, InputSymbol, ?, OutputSymbol> sul = createSystem(p, t);
+
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            // the queries of every sub-learner are tagged with its number, for every batch the system gets the tags
+            // of its queries are recorded
+            final AtomicInteger subLearners = new AtomicInteger();
+            final List<Set<Integer>> batches = new CopyOnWriteArrayList<>();
+            final ThreadLocal<Set<Integer>> currentBatch = new ThreadLocal<>();
+            final SPMMLearner<?, InputSymbol, ?, OutputSymbol, ?> learner = createLearner(sul, new SPMMEqOr<>(sul),
+                    queries -> {
+                        final Set<Integer> batch = new HashSet<>();
+                        currentBatch.set(batch);
+                        batches.add(batch);
+                    },
+                    counterexample -> { },
+                    (alphabet, oracle) -> new TTTAdapter<>(alphabet,
+                            new TaggingOracle(oracle, subLearners.getAndIncrement(), currentBatch)),
+                    CounterexampleAnalysis.FIRST_MISMATCH, pool);
+
+            assertNull(SPMMEquivalenceChecker.findSeparatingWord(sul, learner.computeLearnedModel(),
+                    MAX_STACK_DEPTH));
+            // the refinements of P and T are answered in one batch
+            assertEquals(2, subLearners.get());
+            assertTrue(batches.stream().anyMatch(batch -> batch.size() == 2));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void binarySearchYieldsShorterLocalCounterexamples() {
+        // P loops on a and distinguishes a second b, which the single-state hypothesis after P R does not. T only
+        // returns, it has to be reachable and terminating so that the learned model can be compared with the system
+        final CompactMealy<InputSymbol, OutputSymbol> p = newProcedure(2);
+        p.setTransition(0, InputSymbol.a, 0, OutputSymbol.a);
+        p.setTransition(0, InputSymbol.b, 1, OutputSymbol.b);
+        p.setTransition(0, InputSymbol.T, 0, outputAlphabet.getProcedureStart());
+        p.setTransition(1, InputSymbol.b, 1, OutputSymbol.c);
+        setReturn(p, 0);
+        setReturn(p, 1);
+        final CompactMealy<InputSymbol, OutputSymbol> t = newProcedure(1);
+        setReturn(t, 0);
+        final SPMM<?, InputSymbol, ?, OutputSymbol> sul = createSystem(p, t);
+
+        final SPMMLearner<?, InputSymbol, ?, OutputSymbol, ?> firstMismatch =
+                createLearner(sul, queries -> { }, CounterexampleAnalysis.FIRST_MISMATCH, ForkJoinPool.commonPool());
+        final SPMMLearner<?, InputSymbol, ?, OutputSymbol, ?> binarySearch =
+                createLearner(sul, queries -> { }, CounterexampleAnalysis.BINARY_SEARCH, ForkJoinPool.commonPool());
+
+        final Word<InputSymbol> longCounterexample = Word.fromSymbols(InputSymbol.P,
+                InputSymbol.a, InputSymbol.a, InputSymbol.a, InputSymbol.a, InputSymbol.a, InputSymbol.a,
+                InputSymbol.b, InputSymbol.b, InputSymbol.R);
+        for (SPMMLearner<?, InputSymbol, ?, OutputSymbol, ?> learner : Arrays.asList(firstMismatch, binarySearch)) {
+            assertTrue(learner.refineHypothesis(query(sul, Word.fromSymbols(InputSymbol.P, InputSymbol.R))));
+            assertTrue(learner.refineHypothesis(query(sul, longCounterexample)));
+        }
+
+        // the first mismatch refines P with its whole projection, the binary search with b b R only
+        assertTrue(binarySearch.getSumOfLocalCELengths() < firstMismatch.getSumOfLocalCELengths());
+
+        assertNull(SPMMEquivalenceChecker.findSeparatingWord(sul, firstMismatch.computeLearnedModel(),
+                MAX_STACK_DEPTH));
+        assertNull(SPMMEquivalenceChecker.findSeparatingWord(sul, binarySearch.computeLearnedModel(),
+                MAX_STACK_DEPTH));
+    }
+
+    @Test
+    public void refinesSeveralProceduresWithOneCounterexample() {
+        // both procedures may return immediately, T distinguishes a second a and P a b after a call of T
+        final CompactMealy<InputSymbol, OutputSymbol> p = newProcedure(2);
+        p.setTransition(0, InputSymbol.b, 0, OutputSymbol.b);
+        p.setTransition(0, InputSymbol.T, 1, outputAlphabet.getProcedureStart());
+        p.setTransition(1, InputSymbol.b, 1, OutputSymbol.c);
+        setReturn(p, 0);
+        setReturn(p, 1);
+        final CompactMealy<InputSymbol, OutputSymbol> t = newProcedure(2);
+        t.setTransition(0, InputSymbol.a, 1, OutputSymbol.b);
+        t.setTransition(1, InputSymbol.a, 1, OutputSymbol.c);
+        setReturn(t, 0);
+        setReturn(t, 1);
+        final SPMM<?, InputSymbol, ?, OutputSymbol> sul = createSystem(p, t);
+
+        final SPMMLearner<?, InputSymbol, ?, OutputSymbol, ?> learner =
+                createLearner(sul, queries -> { }, CounterexampleAnalysis.FIRST_MISMATCH, ForkJoinPool.commonPool());
+        assertTrue(learner.refineHypothesis(query(sul, Word.fromSymbols(InputSymbol.P, InputSymbol.R))));
+        assertTrue(learner.refineHypothesis(query(sul,
+                Word.fromSymbols(InputSymbol.P, InputSymbol.T, InputSymbol.R, InputSymbol.R))));
+        final SPMM<?, InputSymbol, ?, OutputSymbol> before = learner.getHypothesisModel();
+        final long localRefinements = learner.getNumberOfLocalRefinements();
+
+        // the single-state hypotheses first differ in T, after refining T and resuming before its call in P
+        final DefaultQuery<InputSymbol, Word<OutputSymbol>> counterexample = query(sul, Word.fromSymbols(
+                InputSymbol.P, InputSymbol.T, InputSymbol.a, InputSymbol.a, InputSymbol.R, InputSymbol.b,
+                InputSymbol.R));
+        assertTrue(learner.refineHypothesis(counterexample));
+
+        final SPMM<?, InputSymbol, ?, OutputSymbol> hypothesis = learner.getHypothesisModel();
+        assertTrue(learner.getNumberOfLocalRefinements() >= localRefinements + 2);
+        assertTrue(hypothesis.getProcedures().get(InputSymbol.P).size()
+                > before.getProcedures().get(InputSymbol.P).size());
+        assertTrue(hypothesis.getProcedures().get(InputSymbol.T).size()
+                > before.getProcedures().get(InputSymbol.T).size());
+        // a simulation from the initial configuration agrees with the resumed one
+        assertEquals(counterexample.getOutput(), hypothesis.computeOutput(counterexample.getInput()));
+
+        assertNull(SPMMEquivalenceChecker.findSeparatingWord(sul, learner.computeLearnedModel(), MAX_STACK_DEPTH));
+    }
+
+    @Test
+    public void takesSequencesFromTheOriginalCounterexample() {
+        // P distinguishes a second a and may call T, which only returns. The counterexample P a a T R R is cut after
+        // its first mismatch, which drops the call of T and the return of P
+        final CompactMealy<InputSymbol, OutputSymbol> p = newProcedure(2);
+        p.setTransition(0, InputSymbol.a, 1, OutputSymbol.b);
+        p.setTransition(1, InputSymbol.a, 1, OutputSymbol.c);
+        p.setTransition(0, InputSymbol.T, 0, outputAlphabet.getProcedureStart());
+        p.setTransition(1, InputSymbol.T, 1, outputAlphabet.getProcedureStart());
+        setReturn(p, 0);
+        setReturn(p, 1);
+        final CompactMealy<InputSymbol, OutputSymbol> t = newProcedure(1);
+        setReturn(t, 0);
+        final SPMM<?, InputSymbol, ?, OutputSymbol> sul = createSystem(p, t);
+
+        final ScriptedEquivalenceOracle<Object> eqOracle = new ScriptedEquivalenceOracle<>(query(sul,
+                Word.fromSymbols(InputSymbol.P, InputSymbol.a, InputSymbol.a, InputSymbol.T, InputSymbol.R,
+                        InputSymbol.R)));
+        final SPMMLearner<?, InputSymbol, ?, OutputSymbol, ?> learner = createLearner(sul, eqOracle,
+                queries -> { }, counterexample -> { }, TTTAdapter::new, CounterexampleAnalysis.FIRST_MISMATCH,
+                ForkJoinPool.commonPool());
+
+        // the access and terminating sequences of P and T are taken from the uncut counterexample
+        final SPMM<?, InputSymbol, ?, OutputSymbol> hypothesis = learner.computeLearnedModel();
+        assertTrue(hypothesis.getProcedures().containsKey(InputSymbol.T));
+        final Word<InputSymbol> callOfT = Word.fromSymbols(InputSymbol.P, InputSymbol.T, InputSymbol.R,
+                InputSymbol.R);
+        assertEquals(sul.computeOutput(callOfT), hypothesis.computeOutput(callOfT));
+    }
+
+    @Test
+    public void learnsGeneratedSystems() {
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (int seed = 0; seed < 5; seed++) {
+                final SPMM<?, InputSymbol, ?, OutputSymbol> sul = createRandomSystem(new Random(seed));
+                final SPMMLearner<?, InputSymbol, ?, OutputSymbol, ?> learner =
+                        createLearner(sul, queries -> { }, CounterexampleAnalysis.FIRST_MISMATCH, pool);
+
+                assertNull(SPMMEquivalenceChecker.findSeparatingWord(sul, learner.computeLearnedModel(),
+                        MAX_STACK_DEPTH));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void usesAllCounterexamplesOfARound() {
+        int maxCounterexamples = 0;
+        for (int seed = 0; seed < 5; seed++) {
+            final SPMM<?, InputSymbol, ?, OutputSymbol> sul = createRandomSystem(new Random(seed));
+            final RecordingEquivalenceOracle<Object> eqOracle = new RecordingEquivalenceOracle<>(sul);
+            final List<DefaultQuery<InputSymbol, Word<OutputSymbol>>> refinements = new ArrayList<>();
+            final SPMMLearner<?, InputSymbol, ?, OutputSymbol, ?> learner = createLearner(sul, eqOracle,
+                    queries -> { }, refinements::add, TTTAdapter::new, CounterexampleAnalysis.FIRST_MISMATCH,
+                    ForkJoinPool.commonPool());
+
+            assertNull(SPMMEquivalenceChecker.findSeparatingWord(sul, learner.computeLearnedModel(),
+                    MAX_STACK_DEPTH));
+            // every counterexample is handed to the refiner, in the order of the rounds
+            assertEquals(eqOracle.counterexamples, refinements);
+            maxCounterexamples = Math.max(maxCounterexamples, eqOracle.maxCounterexamples);
+        }
+        // at least one round found several wrong procedures
+        assertTrue(maxCounterexamples > 1);
+    }
+
+    private static DefaultQuery<InputSymbol, Word<OutputSymbol>> query(SPMM<?, InputSymbol, ?, OutputSymbol> sul,
+                                                                    Word<InputSymbol> input) {
+        return new DefaultQuery<>(input, sul.computeOutput(input));
+    }
+
+    /**
+     * Creates a random system in which every procedure may return and call every procedure in its initial state, so
+     * all procedures are reachable and terminating.
+     */
+    @SuppressWarnings("unchecked")
+    private SPMM<?, InputSymbol, ?, OutputSymbol> createRandomSystem(Random random) {
+        final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                TestCompactSPMM.createProcedures(random, inputAlphabet, outputAlphabet);
+        for (MealyMachine<Integer, InputSymbol, ?, OutputSymbol> procedure : procedures.values()) {
+            final CompactMealy<InputSymbol, OutputSymbol> compact = (CompactMealy<InputSymbol, OutputSymbol>) procedure;
+            final Integer init = compact.getInitialState();
+            for (InputSymbol call : inputAlphabet.getCallAlphabet()) {
+                compact.setTransition(init, call, init, outputAlphabet.getProcedureStart());
+            }
+            setReturn(compact, init);
+        }
+        return new DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol>().createSPMM(
+                inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+    }
+
+    private SPMM<?, InputSymbol, ?, OutputSymbol> createSystem(MealyMachine<Integer, InputSymbol, ?, OutputSymbol> p,
+                                                               MealyMachine<Integer, InputSymbol, ?, OutputSymbol> t) {
+        final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures = new HashMap<>();
+        procedures.put(InputSymbol.P, p);
+        procedures.put(InputSymbol.T, t);
+        return new DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol>().createSPMM(
+                inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+    }
+
+    /**
+     * Creates a procedure with the given number of states, all of whose transitions lead into an error sink. State
+     * {@code 0} is the initial state.
+     */
+    private CompactMealy<InputSymbol, OutputSymbol> newProcedure(int states) {
+        final CompactMealy<InputSymbol, OutputSymbol> procedure = new CompactMealy<>(inputAlphabet);
+        procedure.addInitialState();
+        for (int i = 1; i < states + 2; i++) {
+            procedure.addState();
+        }
+        final int sink = states;
+        final int left = states + 1;
+        for (InputSymbol i : inputAlphabet) {
+            for (int s = 0; s < states; s++) {
+                procedure.addTransition(s, i, sink, outputAlphabet.getError());
+            }
+            procedure.addTransition(sink, i, sink, outputAlphabet.getError());
+            procedure.addTransition(left, i, left, outputAlphabet.getPostReturn());
+        }
+        return procedure;
+    }
+
+    /**
+     * Lets the procedure return from the given state.
+     */
+    private void setReturn(CompactMealy<InputSymbol, OutputSymbol> procedure, int state) {
+        procedure.setTransition(state, inputAlphabet.getReturnSymbol(), procedure.size() - 1,
+                outputAlphabet.getProcedureEnd());
+    }
+
+    /**
+     * Creates a learner with TTT sub-learners for the given system. Every batch of membership queries is passed to
+     * the given listener before it is answered.
+     */
+    private static <S> SPMMLearner<S, InputSymbol, MealyTransition<State<InputSymbol, S>, OutputSymbol>, OutputSymbol,
+            TTTAdapter<InputSymbol, OutputSymbol>> createLearner(
+            SPMM<?, InputSymbol, ?, OutputSymbol> sul,
+            Consumer<Collection<? extends Query<InputSymbol, Word<OutputSymbol>>>> listener,
+            CounterexampleAnalysis analysis,
+            ForkJoinPool pool) {
+        return createLearner(sul, new SPMMEqOr<>(sul), listener, counterexample -> { }, TTTAdapter::new, analysis,
+                pool);
+    }
+
+    /**
+     * Same as {@link #createLearner(SPMM, Consumer, CounterexampleAnalysis, ForkJoinPool)}, but with the given
+     * equivalence oracle and sub-learners. Every counterexample of the oracle is passed to the given refinement
+     * listener before the hypothesis is refined with it.
+     */
+    private static <S> SPMMLearner<S, InputSymbol, MealyTransition<State<InputSymbol, S>, OutputSymbol>, OutputSymbol,
+            TTTAdapter<InputSymbol, OutputSymbol>> createLearner(
+            SPMM<?, InputSymbol, ?, OutputSymbol> sul,
+            SPMMEquivalenceOracle<S, InputSymbol, OutputSymbol> eqOracle,
+            Consumer<Collection<? extends Query<InputSymbol, Word<OutputSymbol>>>> listener,
+            Consumer<DefaultQuery<InputSymbol, Word<OutputSymbol>>> refinementListener,
+            BiFunction<Alphabet<InputSymbol>, MembershipOracle<InputSymbol, Word<OutputSymbol>>,
+                    TTTAdapter<InputSymbol, OutputSymbol>> learnerProvider,
+            CounterexampleAnalysis analysis,
+            ForkJoinPool pool) {
+        final MembershipOracle<InputSymbol, Word<OutputSymbol>> simulator = SPMMSimulatorOracle.create(sul, null);
+        final MembershipOracle<InputSymbol, Word<OutputSymbol>> oracle =
+                new MembershipOracle<InputSymbol, Word<OutputSymbol>>() {
+
+                    @Override
+                    public void processQueries(
+                            Collection<? extends Query<InputSymbol, Word<OutputSymbol>>> queries) {
+                        listener.accept(queries);
+                        simulator.processQueries(queries);
+                    }
+                };
+        return new SPMMLearner<S, InputSymbol, MealyTransition<State<InputSymbol, S>, OutputSymbol>, OutputSymbol,
+                TTTAdapter<InputSymbol, OutputSymbol>>(oracle,
+                eqOracle,
+                sul.getInputAlphabet(),
+                sul.getOutputAlphabet(),
+                learnerProvider,
+                new SimpleATProvider<>(sul.getInputAlphabet(), sul.getOutputAlphabet()),
+                new DefaultSPMMBuilder<>(),
+                analysis,
+                pool) {
+
+            @Override
+            protected boolean refineHypothesis(@Nonnull DefaultQuery<InputSymbol, Word<OutputSymbol>> original,
+                                               @Nonnull DefaultQuery<InputSymbol, Word<OutputSymbol>> shortened) {
+                refinementListener.accept(original);
+                return super.refineHypothesis(original, shortened);
+            }
+        };
+    }
+
+    /**
+     * Passes the queries of a sub-learner on with the given tag. When a query is answered, the tag is added to the
+     * batch that the answering thread currently simulates.
+     */
+    private static class TaggingOracle implements MembershipOracle<InputSymbol, Word<OutputSymbol>> {
+
+        private final MembershipOracle<InputSymbol, Word<OutputSymbol>> delegate;
+        private final int tag;
+        private final ThreadLocal<Set<Integer>> currentBatch;
+
+        TaggingOracle(MembershipOracle<InputSymbol, Word<OutputSymbol>> delegate,
+                      int tag,
+                      ThreadLocal<Set<Integer>> currentBatch) {
+            this.delegate = delegate;
+            this.tag = tag;
+            this.currentBatch = currentBatch;
+        }
+
+        @Override
+        public void processQueries(Collection<? extends Query<InputSymbol, Word<OutputSymbol>>> queries) {
+            final List<Query<InputSymbol, Word<OutputSymbol>>> tagged = new ArrayList<>(queries.size());
+            for (Query<InputSymbol, Word<OutputSymbol>> query : queries) {
+                tagged.add(new Query<InputSymbol, Word<OutputSymbol>>() {
+
+                    @Nonnull
+                    @Override
+                    public Word<InputSymbol> getPrefix() {
+                        return query.getPrefix();
+                    }
+
+                    @Nonnull
+                    @Override
+                    public Word<InputSymbol> getSuffix() {
+                        return query.getSuffix();
+                    }
+
+                    @Override
+                    public void answer(Word<OutputSymbol> output) {
+                        currentBatch.get().add(tag);
+                        query.answer(output);
+                    }
+                });
+            }
+            delegate.processQueries(tagged);
+        }
+    }
+
+    /**
+     * Returns the given counterexamples in one round, afterwards no counterexample is found.
+     */
+    private static class ScriptedEquivalenceOracle<S> implements SPMMEquivalenceOracle<S, InputSymbol, OutputSymbol> {
+
+        private List<DefaultQuery<InputSymbol, Word<OutputSymbol>>> counterexamples;
+
+        @SafeVarargs
+        ScriptedEquivalenceOracle(DefaultQuery<InputSymbol, Word<OutputSymbol>>... counterexamples) {
+            this.counterexamples = Arrays.asList(counterexamples);
+        }
+
+        @Nullable
+        @Override
+        public <J> DefaultQuery<InputSymbol, Word<OutputSymbol>> getSPMMQueryForCounterExample(
+                @Nonnull SPMM<S, InputSymbol, J, OutputSymbol> hypothesis,
+                @Nonnull SPMMBuilder<S, InputSymbol, J, OutputSymbol> builder,
+                @Nonnull Set<InputSymbol> activeAlphabet) {
+            final List<DefaultQuery<InputSymbol, Word<OutputSymbol>>> round =
+                    getSPMMQueriesForCounterExamples(hypothesis, builder, activeAlphabet);
+            return round.isEmpty() ? null : round.get(0);
+        }
+
+        @Nonnull
+        @Override
+        public <J> List<DefaultQuery<InputSymbol, Word<OutputSymbol>>> getSPMMQueriesForCounterExamples(
+                @Nonnull SPMM<S, InputSymbol, J, OutputSymbol> hypothesis,
+                @Nonnull SPMMBuilder<S, InputSymbol, J, OutputSymbol> builder,
+                @Nonnull Set<InputSymbol> activeAlphabet) {
+            final List<DefaultQuery<InputSymbol, Word<OutputSymbol>>> round = counterexamples;
+            counterexamples = Collections.emptyList();
+            return round;
+        }
+    }
+
+    /**
+     * Passes the counterexamples of {@link SPMMEqOr} on and records all of them and the largest number of them in one
+     * round.
+     */
+    private static class RecordingEquivalenceOracle<S> implements SPMMEquivalenceOracle<S, InputSymbol, OutputSymbol> {
+
+        private final SPMMEqOr<S, InputSymbol, OutputSymbol> delegate;
+        private final List<DefaultQuery<InputSymbol, Word<OutputSymbol>>> counterexamples = new ArrayList<>();
+        private int maxCounterexamples;
+
+        RecordingEquivalenceOracle(SPMM<?, InputSymbol, ?, OutputSymbol> sul) {
+            this.delegate = new SPMMEqOr<>(sul);
+        }
+
+        @Nullable
+        @Override
+        public <J> DefaultQuery<InputSymbol, Word<OutputSymbol>> getSPMMQueryForCounterExample(
+                @Nonnull SPMM<S, InputSymbol, J, OutputSymbol> hypothesis,
+                @Nonnull SPMMBuilder<S, InputSymbol, J, OutputSymbol> builder,
+                @Nonnull Set<InputSymbol> activeAlphabet) {
+            return delegate.getSPMMQueryForCounterExample(hypothesis, builder, activeAlphabet);
+        }
+
+        @Nonnull
+        @Override
+        public <J> List<DefaultQuery<InputSymbol, Word<OutputSymbol>>> getSPMMQueriesForCounterExamples(
+                @Nonnull SPMM<S, InputSymbol, J, OutputSymbol> hypothesis,
+                @Nonnull SPMMBuilder<S, InputSymbol, J, OutputSymbol> builder,
+                @Nonnull Set<InputSymbol> activeAlphabet) {
+            final List<DefaultQuery<InputSymbol, Word<OutputSymbol>>> counterexamples =
+                    delegate.getSPMMQueriesForCounterExamples(hypothesis, builder, activeAlphabet);
+            this.counterexamples.addAll(counterexamples);
+            maxCounterexamples = Math.max(maxCounterexamples, counterexamples.size());
+            return counterexamples;
+        }
+    }
+}
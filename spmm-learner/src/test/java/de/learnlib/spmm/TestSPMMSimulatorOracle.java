@@ -0,0 +1,173 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm;
+
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.spmm.membershiporacle.IntSPMMSimulatorOracle;
+import de.learnlib.spmm.membershiporacle.SPMMSimulatorOracle;
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMOutputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.compactspmm.CompactSPMM;
+import de.learnlib.spmm.model.compactspmm.CompactSPMMBuilder;
+import de.learnlib.spmm.model.compactspmm.CompiledSPMMBuilder;
+import de.learnlib.spmm.model.defaultspmm.DefaultSPMMBuilder;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import net.automatalib.words.impl.Alphabets;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSPMMSimulatorOracle {
+
+    @Test
+    public void answersSharedPrefixesLikeSimulation() {
+        checkOracle(null);
+    }
+
+    @Test
+    public void answersSharedPrefixesInParallel() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            checkOracle(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void answersSmallBatchesInTheCallingThread() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final SPMMInputAlphabet<InputSymbol> inputAlphabet = createInputAlphabet();
+            final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                    TestCompactSPMM.createProcedures(new Random(7), inputAlphabet, createOutputAlphabet());
+            final CompactSPMM<InputSymbol, OutputSymbol> spmm =
+                    new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(inputAlphabet,
+                            inputAlphabet.getCallAlphabet(), createOutputAlphabet(), InputSymbol.P, procedures);
+
+            // the trie is too small to be walked in the pool, but branches into a subtree large enough to be forked
+            final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+            final List<DefaultQuery<InputSymbol, Word<OutputSymbol>>> queries = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final Word<InputSymbol> input = Word.fromSymbols(i < 70 ? InputSymbol.P : InputSymbol.T,
+                        inputAlphabet.getSymbol(i % inputAlphabet.size()),
+                        inputAlphabet.getSymbol(i / inputAlphabet.size() % inputAlphabet.size()));
+                queries.add(new DefaultQuery<InputSymbol, Word<OutputSymbol>>(input) {
+
+                    @Override
+                    public void answer(Word<OutputSymbol> output) {
+                        threads.add(Thread.currentThread());
+                        super.answer(output);
+                    }
+                });
+            }
+            SPMMSimulatorOracle.create(spmm, pool).processQueries(queries);
+
+            assertEquals(Collections.singleton(Thread.currentThread()), threads);
+            for (DefaultQuery<InputSymbol, Word<OutputSymbol>> query : queries) {
+                assertEquals(spmm.computeOutput(query.getInput()), query.getOutput());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void checkOracle(ForkJoinPool pool) {
+        final SPMMInputAlphabet<InputSymbol> inputAlphabet = createInputAlphabet();
+        final SPMMOutputAlphabet<OutputSymbol> outputAlphabet = createOutputAlphabet();
+
+        final Random random = new Random(7);
+        final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures =
+                TestCompactSPMM.createProcedures(random, inputAlphabet, outputAlphabet);
+        final SPMM<Integer, InputSymbol, ?, OutputSymbol> spmm =
+                new DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol>().createSPMM(
+                        inputAlphabet,
+                        inputAlphabet.getCallAlphabet(),
+                        outputAlphabet,
+                        InputSymbol.P,
+                        procedures);
+        final CompactSPMM<InputSymbol, OutputSymbol> compactSPMM =
+                new CompactSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                        inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+        final CompactSPMM<InputSymbol, OutputSymbol> compiledSPMM =
+                new CompiledSPMMBuilder<InputSymbol, OutputSymbol>().createSPMM(
+                        inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+
+        // queries share a common access prefix and partially each other, some are duplicates
+        final Word<InputSymbol> access = Word.fromSymbols(InputSymbol.P, InputSymbol.a, InputSymbol.T);
+        final List<DefaultQuery<InputSymbol, Word<OutputSymbol>>> queries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final WordBuilder<InputSymbol> wb = new WordBuilder<>(access);
+            final int length = random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                wb.append(inputAlphabet.getSymbol(random.nextInt(inputAlphabet.size())));
+            }
+            final Word<InputSymbol> input = wb.toWord();
+            final int split = random.nextInt(input.length() + 1);
+            queries.add(new DefaultQuery<>(input.prefix(split), input.subWord(split)));
+        }
+        queries.add(new DefaultQuery<>(Word.epsilon(), Word.epsilon()));
+
+        // compact SPMMs are simulated on ids, unless the symbol based oracle is requested explicitly
+        assertTrue(SPMMSimulatorOracle.create(compactSPMM, pool) instanceof IntSPMMSimulatorOracle);
+        final List<MembershipOracle.MealyMembershipOracle<InputSymbol, OutputSymbol>> oracles = new ArrayList<>();
+        oracles.add(SPMMSimulatorOracle.create(spmm, pool));
+        oracles.add(SPMMSimulatorOracle.create(compactSPMM, pool));
+        oracles.add(SPMMSimulatorOracle.create(compiledSPMM, pool));
+        oracles.add(new SPMMSimulatorOracle<>(compactSPMM, pool));
+        oracles.add(new SPMMSimulatorOracle<>(compiledSPMM, pool));
+
+        for (MembershipOracle.MealyMembershipOracle<InputSymbol, OutputSymbol> oracle : oracles) {
+            final List<DefaultQuery<InputSymbol, Word<OutputSymbol>>> copies = new ArrayList<>(queries.size());
+            for (DefaultQuery<InputSymbol, Word<OutputSymbol>> query : queries) {
+                copies.add(new DefaultQuery<>(query.getPrefix(), query.getSuffix()));
+            }
+            oracle.processQueries(copies);
+
+            for (DefaultQuery<InputSymbol, Word<OutputSymbol>> query : copies) {
+                assertEquals(spmm.computeSuffixOutput(query.getPrefix(), query.getSuffix()), query.getOutput());
+            }
+        }
+    }
+
+    private static SPMMInputAlphabet<InputSymbol> createInputAlphabet() {
+        return new DefaultSPMMInputAlphabet<>(
+                Alphabets.fromArray(InputSymbol.a, InputSymbol.b, InputSymbol.c),
+                Alphabets.fromArray(InputSymbol.P, InputSymbol.T),
+                InputSymbol.R);
+    }
+
+    private static SPMMOutputAlphabet<OutputSymbol> createOutputAlphabet() {
+        return new DefaultSPMMOutputAlphabet<>(
+                Alphabets.fromArray(OutputSymbol.a, OutputSymbol.b, OutputSymbol.c),
+                OutputSymbol.open, OutputSymbol.close, OutputSymbol.error, OutputSymbol.left);
+    }
+}
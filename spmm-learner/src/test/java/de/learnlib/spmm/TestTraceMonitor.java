@@ -0,0 +1,114 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm;
+
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMOutputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.defaultspmm.DefaultSPMMBuilder;
+import de.learnlib.spmm.monitor.TraceMonitor;
+import de.learnlib.spmm.monitor.TraceReport;
+import de.learnlib.spmm.monitor.TraceWriter;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import net.automatalib.words.impl.Alphabets;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestTraceMonitor {
+
+    private final SPMMInputAlphabet<InputSymbol> inputAlphabet;
+    private final SPMMOutputAlphabet<OutputSymbol> outputAlphabet;
+
+    public TestTraceMonitor() {
+        this.inputAlphabet = new DefaultSPMMInputAlphabet<>(
+                Alphabets.fromArray(InputSymbol.a, InputSymbol.b, InputSymbol.c),
+                Alphabets.fromArray(InputSymbol.P, InputSymbol.T),
+                InputSymbol.R);
+        this.outputAlphabet = new DefaultSPMMOutputAlphabet<>(
+                Alphabets.fromArray(OutputSymbol.a, OutputSymbol.b, OutputSymbol.c),
+                OutputSymbol.open, OutputSymbol.close, OutputSymbol.error, OutputSymbol.left);
+    }
+
+    @Test
+    public void reportsFirstDeviationOfEveryTrace() throws IOException {
+        final Random random = new Random(7);
+        final SPMM<Integer, InputSymbol, ?, OutputSymbol> spmm =
+                new DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol>().createSPMM(inputAlphabet,
+                        inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P,
+                        TestCompactSPMM.createProcedures(random, inputAlphabet, outputAlphabet));
+
+        final int numTraces = 5000;
+        final int[] expected = new int[numTraces];
+        final Path file = Files.createTempFile("traces", ".bin");
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            try (TraceWriter<InputSymbol, OutputSymbol> writer =
+                         new TraceWriter<>(file, inputAlphabet, outputAlphabet)) {
+                for (int t = 0; t < numTraces; t++) {
+                    final Word<InputSymbol> input = randomWord(random, random.nextInt(40));
+                    final Word<OutputSymbol> output = spmm.computeOutput(input);
+
+                    // falsify some recorded outputs
+                    final int falsified = input.isEmpty() || random.nextBoolean() ? -1 : random.nextInt(input.size());
+                    final WordBuilder<OutputSymbol> recorded = new WordBuilder<>(output.size());
+                    for (int i = 0; i < output.size(); i++) {
+                        final OutputSymbol symbol = output.getSymbol(i);
+                        if (i != falsified) {
+                            recorded.append(symbol);
+                        } else {
+                            recorded.append(symbol == OutputSymbol.a ? OutputSymbol.b : OutputSymbol.a);
+                        }
+                    }
+
+                    expected[t] = -1;
+                    for (int i = 0; i < input.size() && expected[t] < 0; i++) {
+                        if (i == falsified || output.getSymbol(i) == outputAlphabet.getError()) {
+                            expected[t] = i;
+                        }
+                    }
+                    writer.write(input, recorded.toWord());
+                }
+            }
+
+            final TraceReport report = new TraceMonitor<>(spmm, pool).check(file);
+
+            assertEquals(numTraces, report.getNumTraces());
+            for (int t = 0; t < numTraces; t++) {
+                assertEquals(expected[t], report.getFirstDeviation(t));
+            }
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    private Word<InputSymbol> randomWord(Random random, int length) {
+        final WordBuilder<InputSymbol> wb = new WordBuilder<>(length);
+        for (int i = 0; i < length; i++) {
+            wb.append(i == 0 ? InputSymbol.P : inputAlphabet.getSymbol(random.nextInt(inputAlphabet.size())));
+        }
+        return wb.toWord();
+    }
+}
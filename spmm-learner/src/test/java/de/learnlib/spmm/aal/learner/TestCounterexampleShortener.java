@@ -0,0 +1,146 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.aal.learner;
+
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.spmm.InputSymbol;
+import de.learnlib.spmm.OutputSymbol;
+import de.learnlib.spmm.aal.ATProvider.ATProvider;
+import de.learnlib.spmm.aal.ATProvider.SimpleATProvider;
+import de.learnlib.spmm.membershiporacle.SPMMSimulatorOracle;
+import de.learnlib.spmm.model.SPMM;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.DefaultSPMMOutputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMInputAlphabet;
+import de.learnlib.spmm.model.alphabet.SPMMOutputAlphabet;
+import de.learnlib.spmm.model.defaultspmm.DefaultSPMMBuilder;
+import de.learnlib.util.MQUtil;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Word;
+import net.automatalib.words.impl.Alphabets;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestCounterexampleShortener {
+
+    private final SPMMInputAlphabet<InputSymbol> inputAlphabet;
+    private final SPMMOutputAlphabet<OutputSymbol> outputAlphabet;
+
+    public TestCounterexampleShortener() {
+        this.inputAlphabet = new DefaultSPMMInputAlphabet<>(
+                Alphabets.fromArray(InputSymbol.a, InputSymbol.b, InputSymbol.c),
+                Alphabets.fromArray(InputSymbol.P, InputSymbol.T),
+                InputSymbol.R);
+        this.outputAlphabet = new DefaultSPMMOutputAlphabet<>(
+                Alphabets.fromArray(OutputSymbol.a, OutputSymbol.b, OutputSymbol.c),
+                OutputSymbol.open, OutputSymbol.close, OutputSymbol.error, OutputSymbol.left);
+    }
+
+    @Test
+    public void replacesCallsAndCutsLoops() {
+        // P and T loop on a, after a call of T the system answers c, the hypothesis an error
+        final SPMM<?, InputSymbol, ?, OutputSymbol> sul = createSystem(OutputSymbol.c);
+        final SPMM<?, InputSymbol, ?, OutputSymbol> hypothesis = createSystem(outputAlphabet.getError());
+
+        final MembershipOracle<InputSymbol, Word<OutputSymbol>> oracle = SPMMSimulatorOracle.create(sul, null);
+        final ATProvider<InputSymbol, OutputSymbol> atProvider = new SimpleATProvider<>(inputAlphabet, outputAlphabet);
+        atProvider.addTerminatingSequence(InputSymbol.T, Word.fromSymbols(InputSymbol.R));
+        final CounterexampleShortener<InputSymbol, OutputSymbol> shortener =
+                new CounterexampleShortener<>(inputAlphabet, outputAlphabet, oracle, atProvider);
+
+        final Word<InputSymbol> input = Word.fromSymbols(InputSymbol.P, InputSymbol.a, InputSymbol.a,
+                InputSymbol.T, InputSymbol.a, InputSymbol.a, InputSymbol.a, InputSymbol.R, InputSymbol.c);
+        final DefaultQuery<InputSymbol, Word<OutputSymbol>> counterexample =
+                new DefaultQuery<>(input, sul.computeOutput(input));
+        assertTrue(MQUtil.isCounterexample(counterexample, hypothesis));
+
+        final DefaultQuery<InputSymbol, Word<OutputSymbol>> shortened = shortener.shorten(hypothesis, counterexample);
+
+        // the body of T is replaced by its terminating sequence and the loop of P is cut out
+        assertEquals(Word.fromSymbols(InputSymbol.P, InputSymbol.T, InputSymbol.R, InputSymbol.c),
+                shortened.getInput());
+        assertEquals(sul.computeOutput(shortened.getInput()), shortened.getOutput());
+        assertTrue(MQUtil.isCounterexample(shortened, hypothesis));
+    }
+
+    @Test
+    public void keepsQueriesThatAreNoCounterexample() {
+        final SPMM<?, InputSymbol, ?, OutputSymbol> sul = createSystem(OutputSymbol.c);
+
+        final CounterexampleShortener<InputSymbol, OutputSymbol> shortener = new CounterexampleShortener<>(
+                inputAlphabet, outputAlphabet, SPMMSimulatorOracle.create(sul, null),
+                new SimpleATProvider<>(inputAlphabet, outputAlphabet));
+
+        final Word<InputSymbol> input = Word.fromSymbols(InputSymbol.P, InputSymbol.a, InputSymbol.a, InputSymbol.R);
+        final DefaultQuery<InputSymbol, Word<OutputSymbol>> query = new DefaultQuery<>(input, sul.computeOutput(input));
+
+        assertSame(query, shortener.shorten(sul, query));
+    }
+
+    /**
+     * Creates a system in which P and T loop on a and may return, P may call T once and answers c after the call
+     * with the given output.
+     */
+    private SPMM<?, InputSymbol, ?, OutputSymbol> createSystem(OutputSymbol outputAfterCall) {
+        final CompactMealy<InputSymbol, OutputSymbol> p = newProcedure(2);
+        p.setTransition(0, InputSymbol.a, 0, OutputSymbol.a);
+        p.setTransition(0, InputSymbol.T, 1, outputAlphabet.getProcedureStart());
+        p.setTransition(1, InputSymbol.c, outputAfterCall == outputAlphabet.getError() ? 2 : 1, outputAfterCall);
+        setReturn(p, 0);
+        setReturn(p, 1);
+        final CompactMealy<InputSymbol, OutputSymbol> t = newProcedure(1);
+        t.setTransition(0, InputSymbol.a, 0, OutputSymbol.a);
+        setReturn(t, 0);
+
+        final Map<InputSymbol, MealyMachine<Integer, InputSymbol, ?, OutputSymbol>> procedures = new HashMap<>();
+        procedures.put(InputSymbol.P, p);
+        procedures.put(InputSymbol.T, t);
+        return new DefaultSPMMBuilder<Integer, InputSymbol, OutputSymbol>().createSPMM(
+                inputAlphabet, inputAlphabet.getCallAlphabet(), outputAlphabet, InputSymbol.P, procedures);
+    }
+
+    /**
+     * Creates a procedure with the given number of states followed by an error sink and a state after the return.
+     * All transitions of the regular states lead into the sink.
+     */
+    private CompactMealy<InputSymbol, OutputSymbol> newProcedure(int states) {
+        final CompactMealy<InputSymbol, OutputSymbol> procedure = new CompactMealy<>(inputAlphabet);
+        procedure.addInitialState();
+        for (int i = 1; i < states + 2; i++) {
+            procedure.addState();
+        }
+        for (InputSymbol i : inputAlphabet) {
+            for (int s = 0; s < states; s++) {
+                procedure.addTransition(s, i, states, outputAlphabet.getError());
+            }
+            procedure.addTransition(states, i, states, outputAlphabet.getError());
+            procedure.addTransition(states + 1, i, states + 1, outputAlphabet.getPostReturn());
+        }
+        return procedure;
+    }
+
+    private void setReturn(CompactMealy<InputSymbol, OutputSymbol> procedure, int state) {
+        procedure.setTransition(state, inputAlphabet.getReturnSymbol(), procedure.size() - 1,
+                outputAlphabet.getProcedureEnd());
+    }
+}
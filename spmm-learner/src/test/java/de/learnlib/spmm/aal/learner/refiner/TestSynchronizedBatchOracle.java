@@ -0,0 +1,176 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.aal.learner.refiner;
+
+import de.learnlib.api.oracle.MembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.api.query.Query;
+import net.automatalib.words.Word;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TestSynchronizedBatchOracle {
+
+    private static final int PARTIES = 4;
+    private static final List<Character> SYMBOLS = Arrays.asList('a', 'b', 'c');
+
+    @Test
+    public void combinesQueriesOfAllParties() throws Exception {
+        final LengthOracle delegate = new LengthOracle(null);
+        final SynchronizedBatchOracle<Character, Integer> oracle = new SynchronizedBatchOracle<>(delegate);
+
+        final List<List<DefaultQuery<Character, Integer>>> queries = runParties(oracle, PARTIES);
+
+        assertEquals(1, delegate.batchSizes.size());
+        assertEquals(2 * PARTIES, (int) delegate.batchSizes.get(0));
+        for (final List<DefaultQuery<Character, Integer>> partyQueries : queries) {
+            for (final DefaultQuery<Character, Integer> query : partyQueries) {
+                assertEquals(query.getInput().size(), (int) query.getOutput());
+            }
+        }
+    }
+
+    @Test
+    public void propagatesFailuresToAllParties() throws Exception {
+        final IllegalStateException failure = new IllegalStateException("delegate failed");
+        final LengthOracle delegate = new LengthOracle(failure);
+        final SynchronizedBatchOracle<Character, Integer> oracle = new SynchronizedBatchOracle<>(delegate);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(PARTIES);
+        try {
+            final List<Future<?>> futures = submitParties(executor, oracle, PARTIES, new ArrayList<>());
+            for (final Future<?> future : futures) {
+                try {
+                    future.get();
+                    fail("Every party has to see the failure of the delegate.");
+                } catch (ExecutionException e) {
+                    assertSame(failure, e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, delegate.batchSizes.size());
+    }
+
+    @Test
+    public void deregisteringAnswersWaitingParties() throws Exception {
+        final LengthOracle delegate = new LengthOracle(null);
+        final SynchronizedBatchOracle<Character, Integer> oracle = new SynchronizedBatchOracle<>(delegate);
+
+        // one more party is registered than asks queries, its deregistration completes the batch
+        oracle.register();
+        final ExecutorService executor = Executors.newFixedThreadPool(PARTIES);
+        try {
+            final List<Future<?>> futures = submitParties(executor, oracle, PARTIES, new ArrayList<>());
+            oracle.deregister();
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(Collections.singletonList(2 * PARTIES), delegate.batchSizes);
+    }
+
+    @Test
+    public void passesQueriesWithoutPartiesDirectly() {
+        final LengthOracle delegate = new LengthOracle(null);
+        final SynchronizedBatchOracle<Character, Integer> oracle = new SynchronizedBatchOracle<>(delegate);
+
+        final DefaultQuery<Character, Integer> query = new DefaultQuery<>(Word.fromSymbols('a', 'b', 'c'));
+        oracle.processQueries(Collections.singletonList(query));
+
+        assertEquals(3, (int) query.getOutput());
+        assertEquals(Collections.singletonList(1), delegate.batchSizes);
+    }
+
+    private static List<List<DefaultQuery<Character, Integer>>> runParties(
+            SynchronizedBatchOracle<Character, Integer> oracle, int parties) throws Exception {
+        final List<List<DefaultQuery<Character, Integer>>> queries = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(parties);
+        try {
+            for (final Future<?> future : submitParties(executor, oracle, parties, queries)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return queries;
+    }
+
+    /**
+     * Registers the given number of parties and submits them, every party asks two queries and deregisters.
+     */
+    private static List<Future<?>> submitParties(ExecutorService executor,
+                                                 SynchronizedBatchOracle<Character, Integer> oracle,
+                                                 int parties,
+                                                 List<List<DefaultQuery<Character, Integer>>> queries) {
+        final List<Future<?>> futures = new ArrayList<>(parties);
+        for (int i = 0; i < parties; i++) {
+            final List<DefaultQuery<Character, Integer>> partyQueries = new ArrayList<>(2);
+            partyQueries.add(new DefaultQuery<>(Word.fromList(SYMBOLS.subList(0, i % 2 + 1))));
+            partyQueries.add(new DefaultQuery<>(Word.fromList(SYMBOLS.subList(0, i % 3 + 1))));
+            queries.add(partyQueries);
+
+            oracle.register();
+            futures.add(executor.submit(() -> {
+                try {
+                    oracle.processQueries(partyQueries);
+                } finally {
+                    oracle.deregister();
+                }
+            }));
+        }
+        return futures;
+    }
+
+    /**
+     * Answers every query with the length of its input and records the size of every batch.
+     */
+    private static class LengthOracle implements MembershipOracle<Character, Integer> {
+
+        private final RuntimeException failure;
+        private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+        LengthOracle(RuntimeException failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public void processQueries(Collection<? extends Query<Character, Integer>> collection) {
+            batchSizes.add(collection.size());
+            if (failure != null) {
+                throw failure;
+            }
+            for (final Query<Character, Integer> query : collection) {
+                query.answer(query.getInput().size());
+            }
+        }
+    }
+}
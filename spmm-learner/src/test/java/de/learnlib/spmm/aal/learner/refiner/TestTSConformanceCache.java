@@ -0,0 +1,81 @@
+/* Copyright (C) 2020 Elena Shashko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spmm.aal.learner.refiner;
+
+import de.learnlib.spmm.InputSymbol;
+import net.automatalib.words.Word;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestTSConformanceCache {
+
+    private static final Word<InputSymbol> TS_OF_P = Word.fromSymbols(InputSymbol.T, InputSymbol.a, InputSymbol.R,
+            InputSymbol.R);
+    private static final Word<InputSymbol> TS_OF_T = Word.fromSymbols(InputSymbol.a, InputSymbol.R);
+
+    @Test
+    public void replacingAnEmbeddedSubModelInvalidatesAllEmbeddingSequences() {
+        final TSConformanceCache<InputSymbol> cache = new TSConformanceCache<>();
+        cache.replaceSubModel(InputSymbol.P);
+        cache.replaceSubModel(InputSymbol.T);
+
+        final long revision = cache.getRevision();
+        cache.setConform(InputSymbol.P, TS_OF_P, new HashSet<>(Arrays.asList(InputSymbol.P, InputSymbol.T)),
+                revision);
+        cache.setConform(InputSymbol.T, TS_OF_T, Collections.singleton(InputSymbol.T), revision);
+        assertTrue(cache.isKnownConform(InputSymbol.P, TS_OF_P));
+        assertTrue(cache.isKnownConform(InputSymbol.T, TS_OF_T));
+
+        // T is embedded in both terminating sequences
+        cache.replaceSubModel(InputSymbol.T);
+        assertFalse(cache.isKnownConform(InputSymbol.P, TS_OF_P));
+        assertFalse(cache.isKnownConform(InputSymbol.T, TS_OF_T));
+    }
+
+    @Test
+    public void replacingAnotherSubModelKeepsTheCheck() {
+        final TSConformanceCache<InputSymbol> cache = new TSConformanceCache<>();
+        cache.setConform(InputSymbol.T, TS_OF_T, Collections.singleton(InputSymbol.T), cache.getRevision());
+
+        cache.replaceSubModel(InputSymbol.P);
+        assertTrue(cache.isKnownConform(InputSymbol.T, TS_OF_T));
+    }
+
+    @Test
+    public void replacementsDuringTheCheckInvalidateIt() {
+        final TSConformanceCache<InputSymbol> cache = new TSConformanceCache<>();
+        final long revision = cache.getRevision();
+        cache.replaceSubModel(InputSymbol.T);
+        cache.setConform(InputSymbol.T, TS_OF_T, Collections.singleton(InputSymbol.T), revision);
+
+        assertFalse(cache.isKnownConform(InputSymbol.T, TS_OF_T));
+    }
+
+    @Test
+    public void changedTerminatingSequencesAreCheckedAgain() {
+        final TSConformanceCache<InputSymbol> cache = new TSConformanceCache<>();
+        cache.setConform(InputSymbol.T, TS_OF_T, Collections.singleton(InputSymbol.T), cache.getRevision());
+
+        assertFalse(cache.isKnownConform(InputSymbol.T, Word.fromSymbols(InputSymbol.R)));
+        cache.setNonConform(InputSymbol.T);
+        assertFalse(cache.isKnownConform(InputSymbol.T, TS_OF_T));
+    }
+}